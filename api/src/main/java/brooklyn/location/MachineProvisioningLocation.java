@@ -1,6 +1,7 @@
 package brooklyn.location;
 
 import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -19,6 +20,20 @@ public interface MachineProvisioningLocation<T extends MachineLocation> extends
      */
     T obtain(Map<?,?> flags) throws NoMachinesAvailableException;
 
+    /**
+     * Obtain several machines in this location, all with the same flags.
+     * <p>
+     * Implementations which can (e.g. clouds) should provision the machines together, in a single request where possible;
+     * others may simply call {@link #obtain(Map)} for each. Either all the machines are obtained, or none are: if any
+     * cannot be obtained then those which were are released, and the exception is thrown.
+     * 
+     * @param count the number of machines required
+     * @param flags as for {@link #obtain(Map)}
+     * @return the machines, each a child of this location
+     * @throws NoMachinesAvailableException if not enough machines are available in this location
+     */
+    List<T> obtain(int count, Map<?,?> flags) throws NoMachinesAvailableException;
+
     /**
      * Creates a new location of the same type, but with additional creation instructions in the form of flags,
      * e.g. for specifying subnets, security groups, etc
@@ -39,8 +39,16 @@ import brooklyn.entity.Entity;
  * the {@link ExecutorService} thread pool. The default is calculated as twice the number
  * of CPUs in the system plus two, giving 10 for a four core system, 18 for an eight CPU
  * server and so on.
+ * <p>
+ * Tasks which spend most of their time blocked on I/O (ssh, http, jmx, etc) should be tagged with
+ * {@link #BLOCKING_TASK_TAG}; implementations may run these in a separate thread pool
+ * from other tasks, so that the pool for other tasks can be bounded.
  */
 public interface ExecutionManager {
+    
+    /** tag for tasks which are expected to block for long periods, e.g. waiting on remote I/O */
+    public static final String BLOCKING_TASK_TAG = "brooklyn-blocking-task";
+    
     public boolean isShutdown();
     
     /** returns the task with the given ID, or null if none */ 
@@ -10,10 +10,10 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import brooklyn.enricher.basic.AbstractAggregatingEnricher;
+import brooklyn.entity.Entity;
 import brooklyn.event.AttributeSensor;
 import brooklyn.event.SensorEventListener;
 import brooklyn.util.GroovyJavaMethods;
-import brooklyn.util.flags.TypeCoercions;
 
 import com.google.common.base.Function;
 import com.google.common.base.Throwables;
@@ -21,14 +21,22 @@ import com.google.common.base.Throwables;
 /**
  * Subscribes to events from producers with a sensor of type T, aggregates them with the 
  * provided closure and emits the result on the target sensor V.
+ * <p>
+ * Alternatively an {@link IncrementalAggregator} (see {@link IncrementalAggregators}) can be supplied,
+ * which is updated as each value changes rather than re-run over every producer's value on each event;
+ * the built-in summing and averaging enrichers use these.
  * @param <T>
  */
 public class CustomAggregatingEnricher<S,T> extends AbstractAggregatingEnricher<S,T> implements SensorEventListener<S> {
     
     private static final Logger LOG = LoggerFactory.getLogger(CustomAggregatingEnricher.class);
     
+    /** null if using {@link #incrementalAggregator} */
     protected final Function<Collection<S>, T> aggregator;
     
+    /** null if using {@link #aggregator} */
+    protected final IncrementalAggregator<? super S, T> incrementalAggregator;
+    
     /**
      * The valid keys for the flags are:
      * - producers: a collection of entities to be aggregated
@@ -46,6 +54,23 @@ public class CustomAggregatingEnricher<S,T> extends AbstractAggregatingEnricher<
             Function<Collection<S>, T> aggregator, S defaultValue) {
         super(flags, source, target, defaultValue);
         this.aggregator = aggregator;
+        this.incrementalAggregator = null;
+    }
+    
+    /**
+     * As {@link #CustomAggregatingEnricher(Map, AttributeSensor, AttributeSensor, Function, Object)}, but 
+     * maintaining the aggregate incrementally as producers' values change.
+     */
+    public CustomAggregatingEnricher(Map<String,?> flags, AttributeSensor<? extends S> source, AttributeSensor<T> target,
+            IncrementalAggregator<? super S, T> aggregator, S defaultValue) {
+        super(flags, source, target, defaultValue);
+        this.aggregator = null;
+        this.incrementalAggregator = aggregator;
+    }
+    
+    public CustomAggregatingEnricher(Map<String,?> flags, AttributeSensor<? extends S> source, AttributeSensor<T> target,
+            IncrementalAggregator<? super S, T> aggregator) {
+        this(flags, source, target, aggregator, null);
     }
     
     public CustomAggregatingEnricher(Map<String,?> flags, AttributeSensor<? extends S> source, AttributeSensor<T> target,
@@ -100,8 +125,21 @@ public class CustomAggregatingEnricher<S,T> extends AbstractAggregatingEnricher<
         }
     }
     
+    @Override
+    protected void onValueAdded(Entity producer, S val) {
+        if (incrementalAggregator != null) incrementalAggregator.add(val);
+    }
+    
+    @Override
+    protected void onValueRemoved(Entity producer, S val) {
+        if (incrementalAggregator != null) incrementalAggregator.remove(val);
+    }
+    
     public T getAggregate() {
         synchronized (values) {
+            if (incrementalAggregator != null) {
+                return incrementalAggregator.getAggregate();
+            }
             return (T) aggregator.apply(values.values());
         }
     }
@@ -143,15 +181,22 @@ public class CustomAggregatingEnricher<S,T> extends AbstractAggregatingEnricher<
         return newEnricher(Collections.<String,Object>emptyMap(), source, target, aggregator, null);
     }
     
+    public static <S,T> CustomAggregatingEnricher<S,T> newEnricher(
+            Map<String,?> flags, AttributeSensor<S> source, AttributeSensor<T> target, IncrementalAggregator<? super S, T> aggregator, S defaultVal) {
+        return new CustomAggregatingEnricher<S,T>(flags, source, target, aggregator, defaultVal);
+    }
+    public static <S,T> CustomAggregatingEnricher<S,T> newEnricher(
+            Map<String,?> flags, AttributeSensor<S> source, AttributeSensor<T> target, IncrementalAggregator<? super S, T> aggregator) {
+        return newEnricher(flags, source, target, aggregator, null);
+    }
+    public static <S,T> CustomAggregatingEnricher<S,T> newEnricher(
+            AttributeSensor<S> source, AttributeSensor<T> target, IncrementalAggregator<? super S, T> aggregator) {
+        return newEnricher(Collections.<String,Object>emptyMap(), source, target, aggregator, null);
+    }
+    
     public static <N extends Number, T extends Number> CustomAggregatingEnricher<N,T> newSummingEnricher(
-            Map<String,?> flags, AttributeSensor<N> source, final AttributeSensor<T> target) {
-        
-        Function<Collection<N>, T> aggregator = new Function<Collection<N>, T>() {
-            @Override public T apply(Collection<N> vals) {
-                Object result = (vals == null || vals.isEmpty()) ? 0 : sum(vals);
-                return TypeCoercions.castPrimitive(result, (Class<T>)target.getType());
-            }
-        };
+            Map<String,?> flags, AttributeSensor<N> source, AttributeSensor<T> target) {
+        IncrementalAggregator<Number, T> aggregator = IncrementalAggregators.sum((Class<T>)target.getType());
         return new CustomAggregatingEnricher<N,T>(flags, source, target, aggregator);
     }
     public static <N extends Number> CustomAggregatingEnricher<N,N> newSummingEnricher(
@@ -174,14 +219,7 @@ public class CustomAggregatingEnricher<S,T> extends AbstractAggregatingEnricher<
     public static <N extends Number> CustomAggregatingEnricher<N,Double> newAveragingEnricher(
             Map<String,?> flags, AttributeSensor<? extends N> source, AttributeSensor<Double> target,
             N defaultValue) {
-        
-        Function<Collection<N>, Double> aggregator = new Function<Collection<N>, Double>() {
-            @Override public Double apply(Collection<N> vals) {
-                int count = count(vals);
-                return (count==0) ? 0d : ((Double) sum(vals) / count);
-            }
-        };
-        return new CustomAggregatingEnricher<N,Double>(flags, source, target, aggregator, defaultValue);
+        return new CustomAggregatingEnricher<N,Double>(flags, source, target, IncrementalAggregators.mean(), defaultValue);
     }
     /** averages the given source sensor over all children/members, storing in target */
     public static <N extends Number> CustomAggregatingEnricher<Number,Double> newAveragingEnricher(
@@ -189,16 +227,4 @@ public class CustomAggregatingEnricher<S,T> extends AbstractAggregatingEnricher<
         return newAveragingEnricher(Collections.<String,Object>emptyMap(), source, target);
     }
 
-    private static <N extends Number> double sum(Iterable<N> vals) {
-        double result = 0d;
-        if (vals!=null) for (Number val : vals) if (val!=null) result += val.doubleValue();
-        return result;
-    }
-    
-    private static int count(Iterable<? extends Object> vals) {
-        int result = 0;
-        if (vals!=null) for (Object val : vals) if (val!=null) result++;
-        return result;
-    }
-
 }
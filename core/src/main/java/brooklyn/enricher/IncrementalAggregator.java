@@ -0,0 +1,26 @@
+package brooklyn.enricher;
+
+import com.google.common.annotations.Beta;
+
+/**
+ * An aggregate over the latest values of a set of producers, which is updated as each value
+ * changes rather than recomputed over all the values (as the {@code Function<Collection<S>,T>}
+ * given to a {@link CustomAggregatingEnricher} would be).
+ * <p>
+ * When a producer's value changes, {@link #remove(Object)} is called with its old value and then
+ * {@link #add(Object)} with its new value. Values may be null. Callers are responsible for
+ * synchronization; implementations need not be thread-safe.
+ *
+ * @see IncrementalAggregators
+ */
+@Beta
+public interface IncrementalAggregator<S,T> {
+
+    /** Includes the given value in the aggregate. */
+    void add(S val);
+
+    /** Removes the given value (previously passed to {@link #add(Object)}) from the aggregate. */
+    void remove(S val);
+
+    T getAggregate();
+}
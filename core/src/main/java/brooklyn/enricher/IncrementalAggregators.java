@@ -0,0 +1,250 @@
+package brooklyn.enricher;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+import brooklyn.util.flags.TypeCoercions;
+
+import com.google.common.annotations.Beta;
+import com.google.common.collect.Multiset;
+import com.google.common.collect.TreeMultiset;
+
+/**
+ * Built-in {@link IncrementalAggregator}s over numeric values, for use with {@link CustomAggregatingEnricher}.
+ * <p>
+ * Null values are ignored by all of these (as they are by the closure-based summing and averaging
+ * enrichers). Sum, count and mean are updated in O(1); min and max in O(log n); and percentiles
+ * in O(log b), where b is the number of histogram buckets in use (bounded by the range of values,
+ * not by the number of producers).
+ */
+@Beta
+public class IncrementalAggregators {
+
+    private IncrementalAggregators() {}
+
+    /** The sum of the (non-null) values, coerced to the given type; 0 if there are none. */
+    public static <T extends Number> IncrementalAggregator<Number,T> sum(Class<T> targetType) {
+        return new Sum<T>(targetType);
+    }
+
+    /** The number of non-null values. */
+    public static IncrementalAggregator<Object,Integer> count() {
+        return new Count();
+    }
+
+    /** The mean of the non-null values; 0 if there are none. */
+    public static IncrementalAggregator<Number,Double> mean() {
+        return new Mean();
+    }
+
+    /** The smallest of the values, coerced to the given type; null if there are none. */
+    public static <T extends Number> IncrementalAggregator<Number,T> min(Class<T> targetType) {
+        return new Extreme<T>(targetType, false);
+    }
+
+    /** The largest of the values, coerced to the given type; null if there are none. */
+    public static <T extends Number> IncrementalAggregator<Number,T> max(Class<T> targetType) {
+        return new Extreme<T>(targetType, true);
+    }
+
+    /**
+     * An estimate of the given percentile (e.g. 95 for the 95th percentile) of the values,
+     * accurate to within 1%; null if there are none.
+     *
+     * @see #percentile(double, double)
+     */
+    public static IncrementalAggregator<Number,Double> percentile(double percentile) {
+        return percentile(percentile, 0.01);
+    }
+
+    /**
+     * An estimate of the given percentile of the values, from a log-bucketed histogram; the
+     * estimate is within the given relative error of the value at that rank. Unlike most
+     * streaming sketches this supports removal, as is needed when a producer's value changes.
+     */
+    public static IncrementalAggregator<Number,Double> percentile(double percentile, double relativeAccuracy) {
+        return new Percentile(percentile, relativeAccuracy);
+    }
+
+    private static boolean isIntegral(Number val) {
+        return val instanceof Integer || val instanceof Long || val instanceof Short || val instanceof Byte;
+    }
+
+    /**
+     * Keeps integral values in a long so that they sum exactly, and others in a double;
+     * the double is reset when the last non-integral value is removed, so rounding errors
+     * do not accumulate indefinitely.
+     */
+    private static class RunningSum {
+        long integralSum;
+        double fractionalSum;
+        int numFractional;
+        int count;
+
+        void add(Number val) {
+            if (val == null) return;
+            count++;
+            if (isIntegral(val)) {
+                integralSum += val.longValue();
+            } else {
+                fractionalSum += val.doubleValue();
+                numFractional++;
+            }
+        }
+
+        void remove(Number val) {
+            if (val == null) return;
+            count--;
+            if (isIntegral(val)) {
+                integralSum -= val.longValue();
+            } else {
+                fractionalSum -= val.doubleValue();
+                if (--numFractional == 0) fractionalSum = 0;
+            }
+        }
+
+        Number get() {
+            return (numFractional == 0) ? (Number) integralSum : (Number) (integralSum + fractionalSum);
+        }
+    }
+
+    private static class Sum<T extends Number> implements IncrementalAggregator<Number,T> {
+        private final Class<T> targetType;
+        private final RunningSum sum = new RunningSum();
+
+        Sum(Class<T> targetType) {
+            this.targetType = checkNotNull(targetType, "targetType");
+        }
+        @Override public void add(Number val) {
+            sum.add(val);
+        }
+        @Override public void remove(Number val) {
+            sum.remove(val);
+        }
+        @Override public T getAggregate() {
+            return TypeCoercions.castPrimitive(sum.get(), targetType);
+        }
+    }
+
+    private static class Count implements IncrementalAggregator<Object,Integer> {
+        private int count;
+
+        @Override public void add(Object val) {
+            if (val != null) count++;
+        }
+        @Override public void remove(Object val) {
+            if (val != null) count--;
+        }
+        @Override public Integer getAggregate() {
+            return count;
+        }
+    }
+
+    private static class Mean implements IncrementalAggregator<Number,Double> {
+        private final RunningSum sum = new RunningSum();
+
+        @Override public void add(Number val) {
+            sum.add(val);
+        }
+        @Override public void remove(Number val) {
+            sum.remove(val);
+        }
+        @Override public Double getAggregate() {
+            return (sum.count == 0) ? 0d : sum.get().doubleValue() / sum.count;
+        }
+    }
+
+    private static class Extreme<T extends Number> implements IncrementalAggregator<Number,T> {
+        private final Class<T> targetType;
+        private final boolean max;
+        private final TreeMultiset<Double> vals = TreeMultiset.create();
+
+        Extreme(Class<T> targetType, boolean max) {
+            this.targetType = checkNotNull(targetType, "targetType");
+            this.max = max;
+        }
+        @Override public void add(Number val) {
+            if (val != null) vals.add(val.doubleValue());
+        }
+        @Override public void remove(Number val) {
+            if (val != null) vals.remove(val.doubleValue());
+        }
+        @Override public T getAggregate() {
+            Multiset.Entry<Double> result = max ? vals.lastEntry() : vals.firstEntry();
+            return (result == null) ? null : TypeCoercions.castPrimitive(result.getElement(), targetType);
+        }
+    }
+
+    /**
+     * Histogram with logarithmically sized buckets (bucket i holds magnitudes in (gamma^(i-1), gamma^i]),
+     * kept separately for positive and negative values, so each bucket's representative value
+     * is within the relative accuracy of everything in it.
+     */
+    private static class Percentile implements IncrementalAggregator<Number,Double> {
+        private static final double MIN_MAGNITUDE = 1e-9;
+
+        private final double quantile;
+        private final double gamma;
+        private final double logGamma;
+        private final TreeMap<Integer, Integer> positive = new TreeMap<Integer, Integer>();
+        private final TreeMap<Integer, Integer> negative = new TreeMap<Integer, Integer>();
+        private int zeroCount;
+        private int count;
+
+        Percentile(double percentile, double relativeAccuracy) {
+            checkArgument(percentile >= 0 && percentile <= 100, "percentile %s must be between 0 and 100", percentile);
+            checkArgument(relativeAccuracy > 0 && relativeAccuracy < 1, "relativeAccuracy %s must be between 0 and 1", relativeAccuracy);
+            this.quantile = percentile / 100;
+            this.gamma = (1 + relativeAccuracy) / (1 - relativeAccuracy);
+            this.logGamma = Math.log(gamma);
+        }
+        @Override public void add(Number val) {
+            update(val, 1);
+        }
+        @Override public void remove(Number val) {
+            update(val, -1);
+        }
+        private void update(Number val, int delta) {
+            if (val == null) return;
+            double v = val.doubleValue();
+            if (Double.isNaN(v)) return;
+            count += delta;
+            if (Math.abs(v) < MIN_MAGNITUDE) {
+                zeroCount += delta;
+            } else {
+                TreeMap<Integer, Integer> buckets = (v > 0) ? positive : negative;
+                int index = (int) Math.ceil(Math.log(Math.abs(v)) / logGamma);
+                Integer old = buckets.get(index);
+                int updated = (old == null ? 0 : old) + delta;
+                if (updated <= 0) {
+                    buckets.remove(index);
+                } else {
+                    buckets.put(index, updated);
+                }
+            }
+        }
+        private double valueOf(int index) {
+            return 2 * Math.pow(gamma, index) / (gamma + 1);
+        }
+        @Override public Double getAggregate() {
+            if (count <= 0) return null;
+            long rank = (long) Math.floor(quantile * (count - 1));
+            long seen = 0;
+            for (Map.Entry<Integer, Integer> entry : negative.descendingMap().entrySet()) {
+                seen += entry.getValue();
+                if (seen > rank) return -valueOf(entry.getKey());
+            }
+            seen += zeroCount;
+            if (seen > rank) return 0d;
+            for (Map.Entry<Integer, Integer> entry : positive.entrySet()) {
+                seen += entry.getValue();
+                if (seen > rank) return valueOf(entry.getKey());
+            }
+            // only reachable if values were removed without having been added
+            return positive.isEmpty() ? null : valueOf(positive.lastKey());
+        }
+    }
+}
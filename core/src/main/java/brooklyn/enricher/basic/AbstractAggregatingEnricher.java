@@ -69,7 +69,9 @@ public abstract class AbstractAggregatingEnricher<S,T> extends AbstractEnricher
             S vo = values.get(producer);
             if (vo==null) {
                 S initialVal = ((EntityLocal)producer).getAttribute(source);
-                values.put(producer, initialVal != null ? initialVal : defaultValue);
+                S val = initialVal != null ? initialVal : defaultValue;
+                values.put(producer, val);
+                onValueAdded(producer, val);
                 //we might skip in onEvent in the short window while !values.containsKey(producer)
                 //but that's okay because the put which would have been done there is done here now
             } else {
@@ -85,7 +87,12 @@ public abstract class AbstractAggregatingEnricher<S,T> extends AbstractEnricher
     public S removeProducer(Entity producer) {
         if (LOG.isDebugEnabled()) LOG.debug("{} unlinked ({}, {}) from {}", new Object[] {this, producer, source, target});
         unsubscribe(producer);
-        S removed = values.remove(producer);
+        S removed;
+        synchronized (values) {
+            boolean present = values.containsKey(producer);
+            removed = values.remove(producer);
+            if (present) onValueRemoved(producer, removed);
+        }
         onUpdated();
         return removed;
     }
@@ -95,7 +102,9 @@ public abstract class AbstractAggregatingEnricher<S,T> extends AbstractEnricher
         Entity e = event.getSource();
         synchronized (values) {
             if (values.containsKey(e)) {
-                values.put(e, event.getValue());
+                S old = values.put(e, event.getValue());
+                onValueRemoved(e, old);
+                onValueAdded(e, event.getValue());
             } else {
                 if (LOG.isDebugEnabled()) LOG.debug("{} received event for unknown producer ({}); presumably that producer has recently been removed", this, e);
             }
@@ -103,6 +112,26 @@ public abstract class AbstractAggregatingEnricher<S,T> extends AbstractEnricher
         onUpdated();
     }
 
+    /**
+     * Called (while synchronized on {@link #values}) when a producer's value is put into {@link #values}, 
+     * so that sub-classes can maintain an aggregate incrementally. A changed value is reported as 
+     * {@link #onValueRemoved(Entity, Object)} for the old value then this for the new one.
+     * Defaults to no-op.
+     */
+    protected void onValueAdded(Entity producer, S val) {
+        // no-op
+    }
+
+    /**
+     * Called (while synchronized on {@link #values}) when a producer's value is removed from {@link #values}.
+     * Defaults to no-op.
+     * 
+     * @see #onValueAdded(Entity, Object)
+     */
+    protected void onValueRemoved(Entity producer, S val) {
+        // no-op
+    }
+
     /**
      * Called whenever the values for the set of producers changes (e.g. on an event, or on a member added/removed).
      * Defaults to no-op
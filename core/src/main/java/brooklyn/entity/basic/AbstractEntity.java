@@ -8,6 +8,10 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -54,7 +58,9 @@ import brooklyn.util.collections.MutableList;
 import brooklyn.util.collections.MutableMap;
 import brooklyn.util.flags.FlagUtils;
 import brooklyn.util.flags.SetFromFlag;
+import brooklyn.util.task.BasicTask;
 import brooklyn.util.task.DeferredSupplier;
+import brooklyn.util.task.ScheduledTask;
 import brooklyn.util.text.Identifiers;
 
 import com.google.common.annotations.Beta;
@@ -112,6 +118,12 @@ public abstract class AbstractEntity implements EntityLocal, EntityInternal {
     public static BasicNotificationSensor<PolicyDescriptor> POLICY_REMOVED = new BasicNotificationSensor<PolicyDescriptor>(PolicyDescriptor.class,
             "entity.policy.removed", "Policy dynamically removed from entity");
 
+    public static final ConfigKey<Boolean> PUBLISH_ATTRIBUTES_ON_CHANGE_ONLY = ConfigKeys.newBooleanConfigKey(
+            "entity.attributes.publishOnChangeOnly", 
+            "Whether setting an attribute to the value it already has should be silently ignored, rather than "+
+            "published to subscribers and the persistence change listener (can be overridden per sensor)", 
+            false);
+
     @SetFromFlag(value="id")
     private String id = Identifiers.makeRandomId(8);
     
@@ -173,6 +185,28 @@ public abstract class AbstractEntity implements EntityLocal, EntityInternal {
 
     protected transient SubscriptionTracker _subscriptionTracker;
 
+    /** sensor name to publishing options, for sensors with on-change-only or throttling configured */
+    private final ConcurrentMap<String, AttributePublishState> attributePublishStates = Maps.newConcurrentMap();
+    
+    /**
+     * the entity-wide {@link #PUBLISH_ATTRIBUTES_ON_CHANGE_ONLY}, cached so that {@link #setAttribute(AttributeSensor, Object)}
+     * need not resolve config; valid while the entity's merged config (own and inherited) is the very map it was resolved from
+     */
+    private volatile PublishOnChangeOnlyFlag publishAttributesOnChangeOnly;
+    
+    private static class PublishOnChangeOnlyFlag {
+        final Map<ConfigKey<?>,Object> config;
+        final boolean value;
+        
+        PublishOnChangeOnlyFlag(Map<ConfigKey<?>,Object> config, boolean value) {
+            this.config = config;
+            this.value = value;
+        }
+    }
+    
+    private final AtomicLong suppressedAttributePublications = new AtomicLong();
+    private final AtomicLong throttledAttributePublications = new AtomicLong();
+
     private final boolean _legacyConstruction;
     
     public AbstractEntity() {
@@ -508,6 +542,7 @@ public abstract class AbstractEntity implements EntityLocal, EntityInternal {
         Entity oldParent = parent.get();
         parent.clear();
         if (oldParent != null) oldParent.removeChild(getProxyIfAvailable());
+        refreshInheritedConfig();
     }
     
     /**
@@ -706,18 +741,116 @@ public abstract class AbstractEntity implements EntityLocal, EntityInternal {
         return (T) attributesInternal.getValue(nameParts);
     }
     
+    /**
+     * Sets the attribute, publishing the change to subscribers.
+     * <p>
+     * If on-change-only publishing applies to this sensor (see {@link #PUBLISH_ATTRIBUTES_ON_CHANGE_ONLY} 
+     * and {@link #setAttributePublishOnChangeOnly(AttributeSensor, Boolean)}), then setting the value it 
+     * already has is a no-op: nothing is published and the persistence change listener is not told. 
+     * If a minimum publish interval is set for the sensor, then publications within that interval 
+     * of the previous one are coalesced: the latest value is published once the interval has elapsed.
+     */
     @Override
     public <T> T setAttribute(AttributeSensor<T> attribute, T val) {
-        T result = attributesInternal.update(attribute, val);
+        AttributePublishState publishState = attributePublishStates.isEmpty() ? null : attributePublishStates.get(attribute.getName());
+        boolean publishOnChangeOnly = isPublishAttributesOnChangeOnly();
+        if (publishState == null && !publishOnChangeOnly) {
+            T result = attributesInternal.update(attribute, val);
+            if (result == null) {
+                // could be this is a new sensor
+                entityType.addSensorIfAbsent(attribute);
+            }
+            
+            getManagementSupport().getEntityChangeListener().onAttributeChanged(attribute);
+            return result;
+        }
+        
+        Boolean onChangeOnly = (publishState != null) ? publishState.getOnChangeOnly() : null;
+        if (onChangeOnly == null) onChangeOnly = publishOnChangeOnly;
+        
+        T result = attributesInternal.updateWithoutPublishing(attribute, val);
         if (result == null) {
             // could be this is a new sensor
             entityType.addSensorIfAbsent(attribute);
         }
+        if (onChangeOnly && Objects.equal(result, val)) {
+            suppressedAttributePublications.incrementAndGet();
+            return result;
+        }
+        
+        long delay = (publishState != null) ? publishState.reservePublish(System.currentTimeMillis()) : 0;
+        if (delay == 0) {
+            emitInternal(attribute, val);
+        } else {
+            throttledAttributePublications.incrementAndGet();
+            if (delay > 0) scheduleTrailingPublish(attribute, publishState, delay);
+        }
         
         getManagementSupport().getEntityChangeListener().onAttributeChanged(attribute);
         return result;
     }
 
+    private <T> void scheduleTrailingPublish(final AttributeSensor<T> attribute, final AttributePublishState publishState, long delay) {
+        final Runnable job = new Runnable() {
+            public void run() {
+                publishState.onTrailingPublish(System.currentTimeMillis());
+                emitInternal(attribute, getAttribute(attribute));
+            }};
+        Callable<Task<?>> taskFactory = new Callable<Task<?>>() {
+            public Task<?> call() {
+                return new BasicTask<Void>(job);
+            }};
+        try {
+            getExecutionContext().submit(new ScheduledTask(MutableMap.of("delay", delay), taskFactory));
+        } catch (Exception e) {
+            // e.g. not (or no longer) managed, so no-one to publish to; don't leave the throttle blocked
+            if (LOG.isDebugEnabled()) LOG.debug("Unable to schedule publication of throttled "+attribute+" on "+this+"; publishing now", e);
+            job.run();
+        }
+    }
+
+    /**
+     * Sets whether setting the given attribute to the value it already has should be ignored rather 
+     * than published; null means to use the entity-wide {@link #PUBLISH_ATTRIBUTES_ON_CHANGE_ONLY}.
+     */
+    @Beta
+    @Override
+    public void setAttributePublishOnChangeOnly(AttributeSensor<?> attribute, Boolean onChangeOnly) {
+        getOrCreateAttributePublishState(attribute).setOnChangeOnly(onChangeOnly);
+    }
+
+    /**
+     * Sets the minimum interval between publications of the given attribute; values set more frequently
+     * than this are coalesced, with the latest value being published at the end of the interval.
+     * Zero (the default) means every value is published immediately.
+     */
+    @Beta
+    @Override
+    public void setAttributeMinPublishInterval(AttributeSensor<?> attribute, long intervalMillis) {
+        getOrCreateAttributePublishState(attribute).setMinIntervalMillis(intervalMillis);
+    }
+
+    private AttributePublishState getOrCreateAttributePublishState(AttributeSensor<?> attribute) {
+        AttributePublishState result = attributePublishStates.get(attribute.getName());
+        if (result == null) {
+            attributePublishStates.putIfAbsent(attribute.getName(), new AttributePublishState());
+            result = attributePublishStates.get(attribute.getName());
+        }
+        return result;
+    }
+
+    /** The number of attribute sets not published because the value was unchanged. */
+    @Beta
+    public long getSuppressedAttributePublicationCount() {
+        return suppressedAttributePublications.get();
+    }
+
+    /** The number of attribute sets whose publication was deferred (and possibly coalesced) by a minimum publish interval. */
+    @Beta
+    public long getThrottledAttributePublicationCount() {
+        return throttledAttributePublications.get();
+    }
+
     @Override
     public <T> T setAttributeWithoutPublishing(AttributeSensor<T> attribute, T val) {
         T result = attributesInternal.updateWithoutPublishing(attribute, val);
@@ -831,21 +964,32 @@ public abstract class AbstractEntity implements EntityLocal, EntityInternal {
         if (val != null) setConfig(key, val);
     }
 
+    /**
+     * Inherited config is resolved lazily through the parent (see {@link EntityConfigMap}), so this
+     * just discards any cached resolution; it does not need to walk the descendants.
+     */
     @Override
     public void refreshInheritedConfig() {
-        if (getParent() != null) {
-            configsInternal.setInheritedConfig(((EntityInternal)getParent()).getAllConfig());
-        } else {
-            configsInternal.clearInheritedConfig();
-        }
-
-        refreshInheritedConfigOfChildren();
+        configsInternal.invalidateInheritedConfig();
     }
 
-    void refreshInheritedConfigOfChildren() {
-        for (Entity it : getChildren()) {
-            ((EntityInternal)it).refreshInheritedConfig();
+    /**
+     * Whether {@link #PUBLISH_ATTRIBUTES_ON_CHANGE_ONLY} is set, here or on an ancestor; resolved only when
+     * this entity's merged config has changed (which checking does not allocate, see {@link EntityConfigMap#getAllConfig()}).
+     * A value which is a task not yet done is treated as unset (and not cached), rather than blocking the caller.
+     */
+    private boolean isPublishAttributesOnChangeOnly() {
+        Map<ConfigKey<?>,Object> config = configsInternal.getAllConfig();
+        PublishOnChangeOnlyFlag cached = publishAttributesOnChangeOnly;
+        if (cached != null && cached.config == config) return cached.value;
+        
+        Object raw = config.get(PUBLISH_ATTRIBUTES_ON_CHANGE_ONLY);
+        if (raw instanceof Future && !((Future<?>)raw).isDone()) {
+            return PUBLISH_ATTRIBUTES_ON_CHANGE_ONLY.getDefaultValue();
         }
+        boolean value = Boolean.TRUE.equals(configsInternal.getConfig(PUBLISH_ATTRIBUTES_ON_CHANGE_ONLY));
+        publishAttributesOnChangeOnly = new PublishOnChangeOnlyFlag(config, value);
+        return value;
     }
 
     @Override
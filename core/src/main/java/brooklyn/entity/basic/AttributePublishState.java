@@ -0,0 +1,64 @@
+package brooklyn.entity.basic;
+
+/**
+ * Per-sensor publishing options for an entity's attribute (see
+ * {@link AbstractEntity#setAttributePublishOnChangeOnly(brooklyn.event.AttributeSensor, Boolean)} and
+ * {@link AbstractEntity#setAttributeMinPublishInterval(brooklyn.event.AttributeSensor, long)}),
+ * along with the bookkeeping needed to throttle publications of that sensor.
+ * <p>
+ * Not persisted; the options are re-applied by whatever code set them (typically the entity's
+ * {@code init} or {@code connectSensors}).
+ */
+class AttributePublishState {
+
+    /** whether to suppress identical values; null means use the entity-wide default */
+    private volatile Boolean onChangeOnly;
+
+    private volatile long minIntervalMillis;
+
+    // guarded by this
+    private long lastPublishTime = Long.MIN_VALUE;
+    private boolean trailingPublishScheduled;
+
+    Boolean getOnChangeOnly() {
+        return onChangeOnly;
+    }
+
+    void setOnChangeOnly(Boolean val) {
+        onChangeOnly = val;
+    }
+
+    long getMinIntervalMillis() {
+        return minIntervalMillis;
+    }
+
+    void setMinIntervalMillis(long val) {
+        minIntervalMillis = val;
+    }
+
+    /**
+     * Records an attempt to publish at the given time.
+     *
+     * @return 0 if the value should be published now; a positive delay (in millis) if a trailing
+     *         publication should be scheduled for that long from now; or -1 if one is already
+     *         scheduled (which will publish whatever is the latest value)
+     */
+    synchronized long reservePublish(long now) {
+        long interval = minIntervalMillis;
+        if (interval <= 0 || lastPublishTime == Long.MIN_VALUE || now - lastPublishTime >= interval) {
+            if (!trailingPublishScheduled) {
+                lastPublishTime = now;
+                return 0;
+            }
+        }
+        if (trailingPublishScheduled) return -1;
+        trailingPublishScheduled = true;
+        return Math.max(1, lastPublishTime + interval - now);
+    }
+
+    /** Records that the scheduled trailing publication is happening now (or was abandoned). */
+    synchronized void onTrailingPublish(long now) {
+        trailingPublishScheduled = false;
+        lastPublishTime = now;
+    }
+}
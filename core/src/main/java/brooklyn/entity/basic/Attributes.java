@@ -10,6 +10,7 @@ import brooklyn.event.basic.BasicAttributeSensorAndConfigKey;
 import brooklyn.event.basic.BasicNotificationSensor;
 import brooklyn.event.basic.PortAttributeSensorAndConfigKey;
 import brooklyn.event.basic.Sensors;
+import brooklyn.location.MachineProvisioningLocation;
 import brooklyn.location.basic.PortRanges;
 
 import com.google.common.collect.ImmutableList;
@@ -88,6 +89,10 @@ public interface Attributes {
 
     AttributeSensor<String> HOSTNAME = Sensors.newStringSensor( "host.name", "Host name");
     AttributeSensor<String> ADDRESS = Sensors.newStringSensor( "host.address", "Host IP address");
+
+    /** the location which provisioned the machine the entity is running on, and which should release it when the entity stops */
+    AttributeSensor<MachineProvisioningLocation> PROVISIONING_LOCATION = new BasicAttributeSensor<MachineProvisioningLocation>(
+            MachineProvisioningLocation.class, "softwareservice.provisioningLocation", "Location used to provision a machine where this is running");
 	
     /*
      * Lifecycle attributes
@@ -7,6 +7,7 @@ import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -14,6 +15,7 @@ import org.slf4j.LoggerFactory;
 import brooklyn.config.ConfigKey;
 import brooklyn.config.ConfigKey.HasConfigKey;
 import brooklyn.config.ConfigMap;
+import brooklyn.entity.Entity;
 import brooklyn.event.basic.StructuredConfigKey;
 import brooklyn.management.ExecutionContext;
 import brooklyn.util.flags.TypeCoercions;
@@ -39,11 +41,41 @@ public class EntityConfigMap implements ConfigMap {
      * entity.
      */
     private final Map<ConfigKey<?>,Object> ownConfig;
-    private final Map<ConfigKey<?>,Object> inheritedConfig = Collections.synchronizedMap(new LinkedHashMap<ConfigKey<?>, Object>());
+    
+    /**
+     * Incremented whenever this entity's own config or its parent changes. The merged config cached at
+     * this entity is only used if stamped with the current version, and if it was merged over the very map
+     * now cached by the parent (which is replaced whenever anything changes further up the chain). Config 
+     * set is therefore O(1), and each level re-merges lazily (once) when next read after a change above it.
+     */
+    private final AtomicLong version = new AtomicLong();
+    
+    /** the config visible at this entity, as merged at a given {@link #version} over the parent's merged config */
+    private static class MergedConfig {
+        final long version;
+        final Map<ConfigKey<?>,Object> inherited;
+        final Map<ConfigKey<?>,Object> all;
+        
+        MergedConfig(long version, Map<ConfigKey<?>,Object> inherited, Map<ConfigKey<?>,Object> all) {
+            this.version = version;
+            this.inherited = inherited;
+            this.all = all;
+        }
+    }
+    
+    private volatile MergedConfig mergedConfigCache;
+    
+    /** for a {@link #submap(Predicate)}, the (filtered) inherited config; otherwise null, meaning look up from the parent */
+    private final Map<ConfigKey<?>,Object> fixedInheritedConfig;
 
     public EntityConfigMap(AbstractEntity entity, Map<ConfigKey<?>, Object> storage) {
+        this(entity, storage, null);
+    }
+    
+    private EntityConfigMap(AbstractEntity entity, Map<ConfigKey<?>, Object> storage, Map<ConfigKey<?>, Object> fixedInheritedConfig) {
         this.entity = checkNotNull(entity, "entity must be specified");
         this.ownConfig = checkNotNull(storage, "storage map must be specified");
+        this.fixedInheritedConfig = fixedInheritedConfig;
     }
 
     public <T> T getConfig(ConfigKey<T> key) {
@@ -77,7 +109,9 @@ public class EntityConfigMap implements ConfigMap {
         if (ownKey instanceof ConfigKeySelfExtracting) {
             if (((ConfigKeySelfExtracting<T>)ownKey).isSet(ownConfig)) {
                 return ((ConfigKeySelfExtracting<T>)ownKey).extractValue(ownConfig, exec);
-            } else if (((ConfigKeySelfExtracting<T>)ownKey).isSet(inheritedConfig)) {
+            }
+            Map<ConfigKey<?>,Object> inheritedConfig = getInheritedConfig();
+            if (((ConfigKeySelfExtracting<T>)ownKey).isSet(inheritedConfig)) {
                 return ((ConfigKeySelfExtracting<T>)ownKey).extractValue(inheritedConfig, exec);
             }
         } else {
@@ -89,16 +123,48 @@ public class EntityConfigMap implements ConfigMap {
     @Override
     public Object getRawConfig(ConfigKey<?> key) {
         if (ownConfig.containsKey(key)) return ownConfig.get(key);
+        Map<ConfigKey<?>,Object> inheritedConfig = getInheritedConfig();
         if (inheritedConfig.containsKey(key)) return inheritedConfig.get(key);
         return null;
     }
     
-    /** returns the config visible at this entity, local and inherited (preferring local) */
+    /**
+     * Returns the config inherited from ancestors (not including this entity's own config), i.e. the
+     * parent's merged config (see {@link #getAllConfig()}).
+     */
+    protected Map<ConfigKey<?>,Object> getInheritedConfig() {
+        if (fixedInheritedConfig != null) return fixedInheritedConfig;
+        
+        Entity parent = entity.getParent();
+        return (parent != null) ? ((EntityInternal)parent).getConfigMap().getAllConfig() : Collections.<ConfigKey<?>,Object>emptyMap();
+    }
+    
+    /**
+     * Discards this entity's merged config, so it is merged again over the parent's when next required;
+     * call when this entity's parent changes (changes to its own config do so automatically). Descendants 
+     * see the change because their merged config was merged over this entity's.
+     */
+    public void invalidateInheritedConfig() {
+        version.incrementAndGet();
+    }
+    
+    /** 
+     * returns the config visible at this entity, local and inherited (preferring local); the result is
+     * cached (and shared) until this entity's config or anything above it changes
+     */
     public Map<ConfigKey<?>,Object> getAllConfig() {
+        // read the version before merging, so that a concurrent change causes a re-merge next time
+        long currentVersion = version.get();
+        Map<ConfigKey<?>,Object> inheritedConfig = getInheritedConfig();
+        MergedConfig cached = mergedConfigCache;
+        if (cached != null && cached.version == currentVersion && cached.inherited == inheritedConfig) return cached.all;
+        
         Map<ConfigKey<?>,Object> result = new LinkedHashMap<ConfigKey<?>,Object>(inheritedConfig.size()+ownConfig.size());
         result.putAll(inheritedConfig);
         result.putAll(ownConfig);
-        return Collections.unmodifiableMap(result);
+        result = Collections.unmodifiableMap(result);
+        mergedConfigCache = new MergedConfig(currentVersion, inheritedConfig, result);
+        return result;
     }
 
     /** returns the config defined at this entity, ie not inherited */
@@ -129,30 +195,23 @@ public class EntityConfigMap implements ConfigMap {
         } else {
             oldVal = ownConfig.put(key, val);
         }
-        entity.refreshInheritedConfigOfChildren();
+        invalidateInheritedConfig();
         return oldVal;
     }
     
     public void setLocalConfig(Map<ConfigKey<?>, ? extends Object> vals) {
         ownConfig.clear();
         ownConfig.putAll(vals);
-    }
-    
-    public void setInheritedConfig(Map<ConfigKey<?>, ? extends Object> vals) {
-        inheritedConfig.clear();
-        inheritedConfig.putAll(vals);
-    }
-    
-    public void clearInheritedConfig() {
-        inheritedConfig.clear();
+        invalidateInheritedConfig();
     }
 
     @Override
     public EntityConfigMap submap(Predicate<ConfigKey<?>> filter) {
-        EntityConfigMap m = new EntityConfigMap(entity, Maps.<ConfigKey<?>, Object>newLinkedHashMap());
-        for (Map.Entry<ConfigKey<?>,Object> entry: inheritedConfig.entrySet())
+        Map<ConfigKey<?>,Object> filteredInheritedConfig = Maps.newLinkedHashMap();
+        for (Map.Entry<ConfigKey<?>,Object> entry: getInheritedConfig().entrySet())
             if (filter.apply(entry.getKey()))
-                m.inheritedConfig.put(entry.getKey(), entry.getValue());
+                filteredInheritedConfig.put(entry.getKey(), entry.getValue());
+        EntityConfigMap m = new EntityConfigMap(entity, Maps.<ConfigKey<?>, Object>newLinkedHashMap(), Collections.unmodifiableMap(filteredInheritedConfig));
         for (Map.Entry<ConfigKey<?>,Object> entry: ownConfig.entrySet())
             if (filter.apply(entry.getKey()))
                 m.ownConfig.put(entry.getKey(), entry.getValue());
@@ -161,7 +220,7 @@ public class EntityConfigMap implements ConfigMap {
 
     @Override
     public String toString() {
-        return super.toString()+"[own="+Entities.sanitize(ownConfig)+"; inherited="+Entities.sanitize(inheritedConfig)+"]";
+        return super.toString()+"[own="+Entities.sanitize(ownConfig)+"; inherited="+Entities.sanitize(getInheritedConfig())+"]";
     }
     
     public Map<String,Object> asMapWithStringKeys() {
@@ -2,8 +2,11 @@ package brooklyn.entity.basic;
 
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
+import java.io.Serializable;
 import java.lang.reflect.Modifier;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
@@ -17,6 +20,7 @@ import brooklyn.config.ConfigKey.HasConfigKey;
 import brooklyn.entity.Effector;
 import brooklyn.entity.Entity;
 import brooklyn.entity.EntityType;
+import brooklyn.event.AttributeSensor;
 import brooklyn.event.Sensor;
 import brooklyn.util.exceptions.Exceptions;
 import brooklyn.util.javalang.Reflections;
@@ -24,6 +28,9 @@ import brooklyn.util.text.Strings;
 
 import com.google.common.base.Joiner;
 import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.MapMaker;
 import com.google.common.collect.Maps;
 
 /** This is the actual type of an entity instance at runtime,
@@ -35,6 +42,53 @@ public class EntityDynamicType {
 
     protected static final Logger LOG = LoggerFactory.getLogger(EntityDynamicType.class);
 
+    /**
+     * Dense integer indexes for the attribute sensors declared on an entity class, 
+     * used by {@link brooklyn.event.basic.AttributeMap} to cache those attributes' values in an array
+     * (so reads need not hash name-parts). Immutable; attribute sensors added dynamically are not indexed.
+     */
+    public static final class AttributeIndex implements Serializable {
+        private static final long serialVersionUID = -2964378372843957395L;
+        
+        public static final AttributeIndex EMPTY = new AttributeIndex(Collections.<String,Sensor<?>>emptyMap());
+        
+        private final Map<String,Integer> indexByName;
+        private final Map<List<String>,Integer> indexByNameParts;
+        
+        AttributeIndex(Map<String,Sensor<?>> sensors) {
+            ImmutableMap.Builder<String,Integer> byName = ImmutableMap.builder();
+            ImmutableMap.Builder<List<String>,Integer> byNameParts = ImmutableMap.builder();
+            int i = 0;
+            for (Sensor<?> sensor : sensors.values()) {
+                if (sensor instanceof AttributeSensor) {
+                    byName.put(sensor.getName(), i);
+                    byNameParts.put(ImmutableList.copyOf(sensor.getNameParts()), i);
+                    i++;
+                }
+            }
+            indexByName = byName.build();
+            indexByNameParts = byNameParts.build();
+        }
+        
+        /** the index of the attribute sensor with the given name, or -1 if it is not indexed */
+        public int indexOf(String attributeName) {
+            Integer result = indexByName.get(attributeName);
+            return (result != null) ? result : -1;
+        }
+        
+        /** the index of the attribute sensor with exactly these name-parts, or -1 if it is not indexed */
+        public int indexOf(Collection<String> nameParts) {
+            Integer result = indexByNameParts.get(nameParts instanceof List ? nameParts : ImmutableList.copyOf(nameParts));
+            return (result != null) ? result : -1;
+        }
+        
+        public int size() {
+            return indexByName.size();
+        }
+    }
+    
+    private static final ConcurrentMap<Class<?>, AttributeIndex> attributeIndexesByClass = new MapMaker().weakKeys().makeMap();
+
     private final Class<? extends Entity> entityClass;
     private final AbstractEntity entity;
     private volatile String name;
@@ -51,6 +105,11 @@ public class EntityDynamicType {
      */
     private final ConcurrentMap<String,Sensor<?>> sensors = new ConcurrentHashMap<String, Sensor<?>>();
 
+    /**
+     * Indexes for attribute sensors declared on the entity class (shared by all entities of this class).
+     */
+    private final AttributeIndex attributeIndex;
+
     /** 
      * Map of config keys on this entity by name.
      */
@@ -80,6 +139,15 @@ public class EntityDynamicType {
         if (LOG.isTraceEnabled())
             LOG.trace("Entity {} sensors: {}", id, Joiner.on(", ").join(sensors.keySet()));
         
+        AttributeIndex index = attributeIndexesByClass.get(clazz);
+        if (index == null) {
+            // benign race: two entities of a new class may each build an index, but only one is kept
+            AttributeIndex contender = new AttributeIndex(findSensors(clazz, null));
+            index = attributeIndexesByClass.putIfAbsent(clazz, contender);
+            if (index == null) index = contender;
+        }
+        attributeIndex = index;
+        
         buildConfigKeys(clazz, entity, configKeys, configKeyFields);
         if (LOG.isTraceEnabled())
             LOG.trace("Entity {} config keys: {}", id, Joiner.on(", ").join(configKeys.keySet()));
@@ -123,6 +191,13 @@ public class EntityDynamicType {
         return Collections.unmodifiableMap(effectors);
     }
     
+    /**
+     * Indexes of the attribute sensors declared on the entity class.
+     */
+    public AttributeIndex getAttributeIndex() {
+        return attributeIndex;
+    }
+    
     /**
      * Sensors available on this entity.
      */
@@ -34,6 +34,20 @@ public interface EntityInternal extends Entity {
      */
     <T> T setAttributeWithoutPublishing(AttributeSensor<T> sensor, T val);
 
+    /**
+     * Sets whether setting the given attribute to its current value should be ignored rather than published;
+     * null means use the entity's {@link AbstractEntity#PUBLISH_ATTRIBUTES_ON_CHANGE_ONLY}.
+     */
+    @Beta
+    void setAttributePublishOnChangeOnly(AttributeSensor<?> sensor, Boolean onChangeOnly);
+
+    /**
+     * Sets the minimum interval between publications of the given attribute; more frequent values are
+     * coalesced, with the latest published at the end of the interval.
+     */
+    @Beta
+    void setAttributeMinPublishInterval(AttributeSensor<?> sensor, long intervalMillis);
+
     EntityConfigMap getConfigMap();
 
     /**
@@ -21,6 +21,8 @@ public class BasicDownloadsManager implements DownloadResolverManager {
 
     private final List<Function<? super DownloadRequirement, String>> filenameProducers = Lists.newCopyOnWriteArrayList();
 
+    private volatile DownloadArtifactCache artifactCache;
+
     /**
      * The default is (in-order) to:
      * <ol>
@@ -29,6 +31,9 @@ public class BasicDownloadsManager implements DownloadResolverManager {
      *   <li>Use the entity's Attributes.DOWNLOAD_URL
      *   <li>Use the cloudsoft fallback repo
      * </ol>
+     * If {@link DownloadArtifactCache#ENABLED} then the artifact is also fetched to the management node
+     * and pushed to the machine, with that copy being tried first.
+     * 
      * @param config
      * @return
      */
@@ -51,6 +56,10 @@ public class BasicDownloadsManager implements DownloadResolverManager {
         result.registerFilenameProducer(FilenameProducers.firstPrimaryTargetOf(propertiesProducer));
         result.registerFilenameProducer(FilenameProducers.firstPrimaryTargetOf(attributeProducer));
         
+        if (Boolean.TRUE.equals(config.getConfig(DownloadArtifactCache.ENABLED))) {
+            result.setArtifactCache(DownloadArtifactCache.newInstance(config));
+        }
+        
         return result;
     }
     
@@ -58,6 +67,18 @@ public class BasicDownloadsManager implements DownloadResolverManager {
         return new BasicDownloadsManager();
     }
     
+    /**
+     * Sets the cache through which artifacts are fetched once on the management node and pushed to machines;
+     * or null (the default for {@link #newEmpty()}) for each machine to download its artifacts itself.
+     */
+    public void setArtifactCache(DownloadArtifactCache artifactCache) {
+        this.artifactCache = artifactCache;
+    }
+
+    public DownloadArtifactCache getArtifactCache() {
+        return artifactCache;
+    }
+    
     @Override
     public void registerPrimaryProducer(Function<? super DownloadRequirement, ? extends DownloadTargets> producer) {
         producers.add(0, checkNotNull(producer, "resolver"));
@@ -136,6 +157,18 @@ public class BasicDownloadsManager implements DownloadResolverManager {
             throw new IllegalArgumentException("No filenames matched for "+req+" (targets "+result+")");
         }
         
+        // If the artifact can be pushed to the machine from the management node's cache, then try that copy first
+        DownloadArtifactCache cache = artifactCache;
+        if (cache != null) {
+            String staged = cache.stage(req.getEntityDriver().getLocation(), result, filename);
+            if (staged != null) {
+                Set<String> withStaged = Sets.newLinkedHashSet();
+                withStaged.add(staged);
+                withStaged.addAll(result);
+                result = withStaged;
+            }
+        }
+        
         // And return the result
         return new BasicDownloadResolver(result, filename);
     }
@@ -0,0 +1,313 @@
+package brooklyn.entity.drivers.downloads;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.Lock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import brooklyn.config.ConfigKey;
+import brooklyn.config.StringConfigMap;
+import brooklyn.event.basic.BasicConfigKey;
+import brooklyn.location.Location;
+import brooklyn.location.basic.SshMachineLocation;
+import brooklyn.util.ResourceUtils;
+import brooklyn.util.text.StringEscapes.BashStringEscapes;
+import brooklyn.util.text.Strings;
+
+import com.google.common.annotations.Beta;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.MapMaker;
+import com.google.common.collect.Sets;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Closeables;
+import com.google.common.io.Files;
+import com.google.common.util.concurrent.Striped;
+
+/**
+ * A content-addressed cache, on the management node, of the artifacts that drivers download during installs.
+ * <p>
+ * Each artifact is fetched once (trying the resolver's targets in order), and stored under its sha256 checksum;
+ * the checksum is verified again before a cached file is first re-used. {@link #stage(Location, Iterable, String)}
+ * then pushes the artifact to an ssh machine (unless the machine already has a copy with a matching checksum),
+ * returning a {@code file://} url for the driver's download command to try first.
+ * <p>
+ * When a cluster of identical entities is installed, this means the artifact is downloaded from the internet
+ * once rather than once per machine. Failure to fetch or push an artifact is not fatal: the driver just falls
+ * back to downloading it on the machine itself.
+ * <p>
+ * Disabled by default; see {@link #ENABLED}.
+ */
+@Beta
+public class DownloadArtifactCache {
+
+    private static final Logger LOG = LoggerFactory.getLogger(DownloadArtifactCache.class);
+
+    public static final ConfigKey<Boolean> ENABLED = BasicConfigKey.builder(Boolean.class)
+            .name(DownloadProducerFromProperties.DOWNLOAD_CONF_PREFIX+"cache.enabled")
+            .description("Whether to fetch artifacts to the management node once, and push them to machines from there, during installs")
+            .defaultValue(false)
+            .build();
+
+    public static final ConfigKey<String> LOCAL_DIR = BasicConfigKey.builder(String.class)
+            .name(DownloadProducerFromProperties.DOWNLOAD_CONF_PREFIX+"cache.dir")
+            .description("Directory on the management node for the cached artifacts (defaults to ~/.brooklyn/download-cache)")
+            .build();
+
+    public static final ConfigKey<String> REMOTE_DIR = BasicConfigKey.builder(String.class)
+            .name(DownloadProducerFromProperties.DOWNLOAD_CONF_PREFIX+"cache.remote.dir")
+            .description("Directory on each machine to which cached artifacts are pushed (absolute, or relative to the login user's home)")
+            .defaultValue(".brooklyn/download-cache")
+            .build();
+
+    private static final String URL_INDEX_DIR = "urls";
+
+    private final File dir;
+    private final String remoteDir;
+    private final ResourceUtils resourceUtils = new ResourceUtils(this);
+
+    /** the checksum of the content fetched from each url */
+    private final ConcurrentMap<String, String> urlIndex = new ConcurrentHashMap<String, String>();
+
+    /** checksums of the cached files whose content has been verified since this cache was created */
+    private final Set<String> verified = Sets.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    /** so that concurrent installs fetch (or push) a given artifact only once; striped, so does not grow with the urls and machines seen */
+    private final Striped<Lock> locks = Striped.lazyWeakLock(64);
+
+    /** the command used on each machine to compute a sha256 checksum, or {@link #NO_CHECKSUM_COMMAND}; weakly keyed, so does not keep machines */
+    private final ConcurrentMap<SshMachineLocation, String> checksumCommands = new MapMaker().weakKeys().makeMap();
+
+    private static final String NO_CHECKSUM_COMMAND = "";
+
+    public static DownloadArtifactCache newInstance(StringConfigMap config) {
+        String localDir = config.getConfig(LOCAL_DIR);
+        File dir = Strings.isBlank(localDir)
+                ? new File(System.getProperty("user.home"), ".brooklyn/download-cache")
+                : new File(localDir.startsWith("~/") ? System.getProperty("user.home")+localDir.substring(1) : localDir);
+        return new DownloadArtifactCache(dir, config.getConfig(REMOTE_DIR));
+    }
+
+    public DownloadArtifactCache(File dir, String remoteDir) {
+        this.dir = checkNotNull(dir, "dir");
+        this.remoteDir = Strings.removeFromEnd(checkNotNull(remoteDir, "remoteDir"), "/");
+    }
+
+    public File getDir() {
+        return dir;
+    }
+
+    /**
+     * Pushes the artifact to the given location (if it is an ssh machine), fetching it into the cache first if need be.
+     *
+     * @return the {@code file://} url of the artifact on the machine, or null if it could not be staged there
+     */
+    public String stage(Location location, Iterable<String> urls, String filename) {
+        if (!(location instanceof SshMachineLocation)) return null;
+        SshMachineLocation machine = (SshMachineLocation) location;
+        try {
+            File artifact = fetch(urls, filename);
+            if (artifact == null) {
+                if (LOG.isDebugEnabled()) LOG.debug("Artifact {} not fetched to cache (tried {}); not staging on {}", new Object[] {filename, urls, machine});
+                return null;
+            }
+            return stage(machine, artifact);
+        } catch (Exception e) {
+            LOG.warn("Failed to stage artifact "+filename+" on "+machine+" (continuing, to download it there): "+e, e);
+            return null;
+        }
+    }
+
+    /**
+     * Returns the cached artifact, fetching it from the first of the urls that succeeds if it is not already cached.
+     * Urls that can only be resolved on the target machine (e.g. those referring to {@code $HOME}) are skipped.
+     *
+     * @return the cached file, or null if it could not be fetched from any of the urls
+     */
+    public File fetch(Iterable<String> urls, String filename) {
+        for (String url : urls) {
+            if (url.contains("$")) continue;
+            Lock lock = locks.get("url:"+url);
+            lock.lock();
+            try {
+                File result = lookup(url, filename);
+                if (result != null) return result;
+                try {
+                    return download(url, filename);
+                } catch (Exception e) {
+                    if (LOG.isDebugEnabled()) LOG.debug("Failed to fetch "+url+" to download cache (trying next url, if any): "+e);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Copies the cached artifact to the machine, unless it already holds a copy with a matching checksum.
+     * Nothing is copied to a machine which has no command to compute a checksum, as the copy could not be verified.
+     *
+     * @return the {@code file://} url of the artifact on the machine, or null if the copy could not be verified
+     */
+    public String stage(SshMachineLocation machine, File artifact) {
+        String checksumCommand = getChecksumCommand(machine);
+        if (checksumCommand == null) {
+            if (LOG.isDebugEnabled()) LOG.debug("Machine {} has neither sha256sum nor shasum, so a copy could not be verified; not staging {}", machine, artifact);
+            return null;
+        }
+        String checksum = checksumOf(artifact);
+        String remoteArtifactDir = remoteDir+"/"+checksum;
+        String remotePath = remoteArtifactDir+"/"+artifact.getName();
+
+        Lock lock = locks.get("machine:"+machine.getId()+":"+checksum);
+        lock.lock();
+        try {
+            if (hasArtifact(machine, checksumCommand, remotePath, checksum)) {
+                if (LOG.isDebugEnabled()) LOG.debug("Machine {} already has artifact {}; not copying", machine, remotePath);
+            } else {
+                if (LOG.isDebugEnabled()) LOG.debug("Copying artifact {} to {}:{}", new Object[] {artifact, machine, remotePath});
+                machine.execCommands("creating download cache dir", ImmutableList.of("mkdir -p "+quote(remoteArtifactDir)));
+                machine.copyTo(artifact, remotePath);
+                if (!hasArtifact(machine, checksumCommand, remotePath, checksum)) {
+                    LOG.warn("Could not verify artifact {} copied to {}:{}; not using it", new Object[] {artifact, machine, remotePath});
+                    return null;
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        return "file://"+(remotePath.startsWith("/") ? remotePath : "$HOME/"+remotePath);
+    }
+
+    private boolean hasArtifact(SshMachineLocation machine, String checksumCommand, String remotePath, String checksum) {
+        String path = quote(remotePath);
+        String command = "test -f "+path+" && "+checksumCommand+" "+path+" | grep -q '^"+checksum+"'";
+        return machine.execCommands("checking download cache", ImmutableList.of(command)) == 0;
+    }
+
+    /** @return the command to compute a sha256 checksum on the machine (probed once per machine), or null if it has none */
+    private String getChecksumCommand(SshMachineLocation machine) {
+        String result = checksumCommands.get(machine);
+        if (result == null) {
+            if (machine.execCommands("checking for checksum command", ImmutableList.of("which sha256sum")) == 0) {
+                result = "sha256sum";
+            } else if (machine.execCommands("checking for checksum command", ImmutableList.of("which shasum")) == 0) {
+                result = "shasum -a 256";
+            } else {
+                result = NO_CHECKSUM_COMMAND;
+            }
+            checksumCommands.put(machine, result);
+        }
+        return NO_CHECKSUM_COMMAND.equals(result) ? null : result;
+    }
+
+    /** @return the cached file for content previously fetched from this url, if still present and intact */
+    private File lookup(String url, String filename) {
+        String checksum = urlIndex.get(url);
+        if (checksum == null) {
+            File indexFile = indexFileFor(url);
+            if (!indexFile.isFile()) return null;
+            try {
+                checksum = Files.toString(indexFile, Charsets.UTF_8).trim();
+            } catch (IOException e) {
+                LOG.debug("Failed to read download cache index "+indexFile+" (will re-fetch "+url+"): "+e);
+                return null;
+            }
+            urlIndex.put(url, checksum);
+        }
+
+        File result = new File(new File(dir, checksum), filename);
+        if (!result.isFile()) {
+            forget(url);
+            return null;
+        }
+        if (!verified.contains(checksum)) {
+            String actual = hash(result);
+            if (!checksum.equals(actual)) {
+                LOG.warn("Artifact {} in download cache does not match its checksum (is {}); will re-fetch {}", new Object[] {result, actual, url});
+                result.delete();
+                forget(url);
+                return null;
+            }
+            verified.add(checksum);
+        }
+        return result;
+    }
+
+    private File download(String url, String filename) throws IOException {
+        dir.mkdirs();
+        File tmp = File.createTempFile("download", ".tmp", dir);
+        try {
+            InputStream in = resourceUtils.getResourceFromUrl(url);
+            OutputStream out = new FileOutputStream(tmp);
+            try {
+                ByteStreams.copy(in, out);
+            } finally {
+                Closeables.closeQuietly(in);
+                out.close();
+            }
+
+            String checksum = hash(tmp);
+            File result = new File(new File(dir, checksum), filename);
+            if (result.isFile() && checksum.equals(hash(result))) {
+                // same content already cached (e.g. fetched from another url)
+                tmp.delete();
+            } else {
+                result.getParentFile().mkdirs();
+                Files.move(tmp, result);
+            }
+            verified.add(checksum);
+
+            File indexFile = indexFileFor(url);
+            indexFile.getParentFile().mkdirs();
+            Files.write(checksum, indexFile, Charsets.UTF_8);
+            urlIndex.put(url, checksum);
+
+            LOG.info("Fetched {} to download cache as {}", url, result);
+            return result;
+        } finally {
+            if (tmp.exists()) tmp.delete();
+        }
+    }
+
+    private void forget(String url) {
+        urlIndex.remove(url);
+        indexFileFor(url).delete();
+    }
+
+    private File indexFileFor(String url) {
+        return new File(new File(dir, URL_INDEX_DIR), Hashing.sha256().hashBytes(url.getBytes(Charsets.UTF_8)).toString());
+    }
+
+    /** the checksum of a cached artifact, which is the name of the directory it is stored in */
+    @VisibleForTesting
+    static String checksumOf(File artifact) {
+        return artifact.getParentFile().getName();
+    }
+
+    @VisibleForTesting
+    static String hash(File file) {
+        try {
+            return Files.hash(file, Hashing.sha256()).toString();
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to compute checksum of "+file, e);
+        }
+    }
+
+    private static String quote(String path) {
+        return "\""+BashStringEscapes.escapeLiteralForDoubleQuotedBash(path)+"\"";
+    }
+}
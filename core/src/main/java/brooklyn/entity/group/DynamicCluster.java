@@ -68,6 +68,18 @@ public interface DynamicCluster extends AbstractGroup, Cluster {
     public static final ConfigKey<Map> CUSTOM_CHILD_FLAGS = new BasicConfigKey<Map>(
             Map.class, "dynamiccluster.customChildFlags", "Additional flags to be passed to children when they are being created", ImmutableMap.of());
 
+    @SetFromFlag("provisionInBatch")
+    public static final ConfigKey<Boolean> PROVISION_IN_BATCH = ConfigKeys.newBooleanConfigKey(
+            "dynamiccluster.provisionInBatch", "Whether, when growing by more than one in a machine-provisioning location, "+
+            "to obtain all the new members' machines in one request (then starting each member on its machine), "+
+            "rather than each member obtaining its own; the machines are obtained with the batchProvisioningFlags, "+
+            "and each member is given the location as its "+Attributes.PROVISIONING_LOCATION.getName()+" so it releases its machine when stopped", false);
+
+    @SetFromFlag("batchProvisioningFlags")
+    public static final ConfigKey<Map> BATCH_PROVISIONING_FLAGS = new BasicConfigKey<Map>(
+            Map.class, "dynamiccluster.batchProvisioningFlags", "Flags used to obtain machines when provisioning in batch; "+
+            "these must include anything the members would otherwise ask for themselves, such as inboundPorts", ImmutableMap.of());
+
     /**
      * 
      * @param memberId
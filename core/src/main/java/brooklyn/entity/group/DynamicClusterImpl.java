@@ -16,15 +16,20 @@ import org.slf4j.LoggerFactory;
 import brooklyn.entity.Entity;
 import brooklyn.entity.Group;
 import brooklyn.entity.basic.AbstractGroupImpl;
+import brooklyn.entity.basic.Attributes;
 import brooklyn.entity.basic.BasicGroup;
 import brooklyn.entity.basic.Entities;
 import brooklyn.entity.basic.EntityFactory;
 import brooklyn.entity.basic.EntityFactoryForLocation;
+import brooklyn.entity.basic.EntityLocal;
 import brooklyn.entity.basic.Lifecycle;
 import brooklyn.entity.proxying.EntitySpec;
 import brooklyn.entity.proxying.EntitySpecs;
 import brooklyn.entity.trait.Startable;
 import brooklyn.location.Location;
+import brooklyn.location.MachineLocation;
+import brooklyn.location.MachineProvisioningLocation;
+import brooklyn.location.basic.LocationConfigKeys;
 import brooklyn.management.Task;
 import brooklyn.policy.Policy;
 import brooklyn.util.GroovyJavaMethods;
@@ -33,6 +38,7 @@ import brooklyn.util.exceptions.Exceptions;
 
 import com.google.common.base.Function;
 import com.google.common.base.Preconditions;
+import com.google.common.base.Predicates;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Iterables;
@@ -220,14 +226,32 @@ public class DynamicClusterImpl extends AbstractGroupImpl implements DynamicClus
      * Increases the cluster size by the given number.
      */
     private Collection<Entity> grow(int delta) {
-        Collection<Entity> addedEntities = Lists.newArrayList();
-        for (int i = 0; i < delta; i++) {
-            addedEntities.add(addNode());
-        }
+        List<? extends MachineLocation> machines = obtainMachinesInBatch(delta);
+        
+        List<Entity> addedEntities = Lists.newArrayList();
         Map<Entity, Task<?>> tasks = Maps.newLinkedHashMap();
-        for (Entity entity: addedEntities) {
-            Map<String,?> args = ImmutableMap.of("locations", ImmutableList.of(getLocation()));
-            tasks.put(entity, entity.invoke(Startable.START, args));
+        Map<Entity, MachineLocation> batchMachines = Maps.newLinkedHashMap();
+        try {
+            for (int i = 0; i < delta; i++) {
+                addedEntities.add(addNode());
+            }
+            for (int i = 0; i < addedEntities.size(); i++) {
+                Entity entity = addedEntities.get(i);
+                Location location = getLocation();
+                if (machines != null) {
+                    // the member is responsible for releasing the machine, as though it had obtained it itself
+                    location = machines.get(i);
+                    batchMachines.put(entity, machines.get(i));
+                    ((EntityLocal)entity).setAttribute(Attributes.PROVISIONING_LOCATION, (MachineProvisioningLocation) getLocation());
+                }
+                Map<String,?> args = ImmutableMap.of("locations", ImmutableList.of(location));
+                tasks.put(entity, entity.invoke(Startable.START, args));
+            }
+        } finally {
+            // machines not handed to a member (e.g. if adding a node failed) would otherwise never be released
+            if (machines != null) {
+                releaseMachines(machines.subList(tasks.size(), machines.size()));
+            }
         }
         Map<Entity, Throwable> errors = waitForTasksOnEntityStart(tasks);
         
@@ -236,12 +260,68 @@ public class DynamicClusterImpl extends AbstractGroupImpl implements DynamicClus
                 quarantineFailedNodes(errors.keySet());
             } else {
                 cleanupFailedNodes(errors.keySet());
+                // a member which failed to start has not released its machine, and being discarded never will
+                releaseMachines(Maps.filterKeys(batchMachines, Predicates.in(errors.keySet())).values());
             }
         }
         
         return MutableList.<Entity>builder().addAll(addedEntities).removeAll(errors.keySet()).build();
     }
     
+    /**
+     * If configured to {@link DynamicCluster#PROVISION_IN_BATCH provision in batch}, obtains a machine for each
+     * new member in a single request to the provisioning location; returns null if not, or if that fails
+     * (in which case each member obtains its own machine as usual).
+     */
+    protected List<? extends MachineLocation> obtainMachinesInBatch(int count) {
+        Location location = getLocation();
+        if (count <= 1 || !getConfig(PROVISION_IN_BATCH) || !(location instanceof MachineProvisioningLocation)) {
+            return null;
+        }
+        MachineProvisioningLocation<?> provisioner = (MachineProvisioningLocation<?>) location;
+        EntitySpec<?> memberSpec = getMemberSpec();
+        List<String> tags = (memberSpec != null) ? ImmutableList.of(memberSpec.getType().getName()) : ImmutableList.<String>of();
+        
+        Map<String,Object> flags = Maps.newLinkedHashMap(provisioner.getProvisioningFlags(tags));
+        flags.putAll(getConfig(BATCH_PROVISIONING_FLAGS));
+        flags.put(LocationConfigKeys.CALLER_CONTEXT.getName(), this);
+        try {
+            logger.info("Cluster {} obtaining {} machines in {}", new Object[] {this, count, provisioner});
+            return provisioner.obtain(count, flags);
+        } catch (Exception e) {
+            logger.warn("Cluster "+this+" failed to obtain "+count+" machines in "+provisioner+"; members will each obtain their own", e);
+            return null;
+        }
+    }
+    
+    private void releaseMachines(Collection<? extends MachineLocation> machines) {
+        MachineProvisioningLocation provisioner = (MachineProvisioningLocation) getLocation();
+        for (MachineLocation machine : machines) {
+            try {
+                provisioner.release(machine);
+            } catch (Exception e) {
+                logger.warn("Cluster "+this+" failed to release unused machine "+machine+"; continuing", e);
+            }
+        }
+    }
+    
+    /**
+     * Releases any machine the given member still holds from its {@link Attributes#PROVISIONING_LOCATION provisioning location}
+     * once it has been stopped, i.e. if the member does not release the machine itself when stopped.
+     */
+    protected void releaseMachinesHeldBy(Entity member) {
+        MachineProvisioningLocation provisioner = member.getAttribute(Attributes.PROVISIONING_LOCATION);
+        if (provisioner == null) return;
+        for (Location location : member.getLocations()) {
+            if (!(location instanceof MachineLocation)) continue;
+            try {
+                provisioner.release((MachineLocation) location);
+            } catch (Exception e) {
+                logger.warn("Cluster "+this+" failed to release machine "+location+" of "+member+"; continuing", e);
+            }
+        }
+    }
+    
     private void shrink(int delta) {
         Collection<Entity> removedEntities = Lists.newArrayList();
         
@@ -256,6 +336,7 @@ public class DynamicClusterImpl extends AbstractGroupImpl implements DynamicClus
             throw Exceptions.propagate(e);
         } finally {
             for (Entity removedEntity : removedEntities) {
+                releaseMachinesHeldBy(removedEntity);
                 discardNode(removedEntity);
             }
         }
@@ -386,6 +467,7 @@ public class DynamicClusterImpl extends AbstractGroupImpl implements DynamicClus
                 }
             }
         } finally {
+            releaseMachinesHeldBy(member);
             Entities.unmanage(member);
         }
     }
@@ -1,7 +1,11 @@
 package brooklyn.entity.rebind;
 
+import java.util.Iterator;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicLong;
@@ -9,7 +13,9 @@ import java.util.concurrent.atomic.AtomicLong;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import brooklyn.config.ConfigKey;
 import brooklyn.entity.Entity;
+import brooklyn.event.basic.BasicConfigKey;
 import brooklyn.location.Location;
 import brooklyn.management.ExecutionManager;
 import brooklyn.management.Task;
@@ -21,18 +27,23 @@ import brooklyn.util.time.Time;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Throwables;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
 
 /**
- * A "simple" implementation that periodically persists all entities/locations/policies that have changed
- * since the last periodic persistence.
- * 
- * TODO A better implementation would look at a per-entity basis. When the entity was modified, then  
- * schedule a write for that entity in X milliseconds time (if not already scheduled). That would
- * prevent hammering the persister when a bunch of entity attributes change (e.g. when the entity
- * has just polled over JMX/http/etc). Such a scheduled-write approach would be similar to the 
+ * Persists entities/locations/policies that have changed, on a per-item basis.
+ * <p>
+ * When an item is modified it is marked as dirty, and a write for that item is due once it has not
+ * changed for {@link #WRITE_DELAY} (or once it has been dirty for {@link #MAX_WRITE_LATENCY}, so that
+ * an item which changes continuously is still persisted). Subsequent changes to an already-dirty item
+ * are coalesced into the pending write. That prevents hammering the persister when a bunch of entity
+ * attributes change (e.g. when the entity has just polled over JMX/http/etc). This is similar to the
  * Nagle buffering algorithm in TCP (see tcp_nodelay).
- * 
+ * <p>
+ * Dirty-marking uses concurrent maps rather than a global lock, and is cheap: the locations of a changed
+ * entity are only walked when it is persisted. A single scheduled task checks, every period, which
+ * items are due and persists them as one delta.
+ *
  * @author aled
  *
  */
@@ -40,34 +51,75 @@ public class PeriodicDeltaChangeListener implements ChangeListener {
 
     private static final Logger LOG = LoggerFactory.getLogger(PeriodicDeltaChangeListener.class);
 
-    private static class DeltaCollector {
-        Set<Location> locations = Sets.newLinkedHashSet();
-        Set<Entity> entities = Sets.newLinkedHashSet();
-        Set<Policy> policies = Sets.newLinkedHashSet();
-        Set<String> removedLocationIds = Sets.newLinkedHashSet();
-        Set<String> removedEntityIds = Sets.newLinkedHashSet();
-        Set<String> removedPolicyIds = Sets.newLinkedHashSet();
-        
-        public boolean isEmpty() {
-            return locations.isEmpty() && entities.isEmpty() && policies.isEmpty() && 
-                    removedEntityIds.isEmpty() && removedLocationIds.isEmpty() && removedPolicyIds.isEmpty();
+    public static final ConfigKey<Long> WRITE_DELAY = new BasicConfigKey<Long>(
+            Long.class, "brooklyn.persistence.writeDelay",
+            "the time, in milliseconds, that an entity/location/policy must be unchanged before it is persisted " +
+            "(0 means persist at the next period)",
+            0L);
+
+    public static final ConfigKey<Long> MAX_WRITE_LATENCY = new BasicConfigKey<Long>(
+            Long.class, "brooklyn.persistence.maxWriteLatency",
+            "the maximum time, in milliseconds, that an entity/location/policy may be dirty before it is persisted, " +
+            "even if it is still changing",
+            10*1000L);
+
+    /** records when an item became dirty, and when it last changed */
+    private static class DirtyItem<T> {
+        final T item;
+        final long firstChangedTime;
+        volatile long lastChangedTime;
+
+        DirtyItem(T item, long time) {
+            this.item = item;
+            this.firstChangedTime = time;
+            this.lastChangedTime = time;
         }
     }
-    
+
     private final ExecutionManager executionManager;
-    
+
     private final BrooklynMementoPersister persister;
 
+    private final long writeDelayMillis;
+
+    private final long maxWriteLatencyMillis;
+
     private final AtomicLong writeCount = new AtomicLong();
-    
-    private DeltaCollector deltaCollector = new DeltaCollector();
+
+    private final AtomicLong changeCount = new AtomicLong();
+
+    private final AtomicLong coalescedChangeCount = new AtomicLong();
+
+    private final AtomicLong persistedItemCount = new AtomicLong();
+
+    /** persist everything dirty (ignoring the write delay) until writeCount reaches this */
+    private final AtomicLong forceWritesUntil = new AtomicLong();
+
+    private final ConcurrentMap<String, DirtyItem<Entity>> dirtyEntities = new ConcurrentHashMap<String, DirtyItem<Entity>>();
+    private final ConcurrentMap<String, DirtyItem<Location>> dirtyLocations = new ConcurrentHashMap<String, DirtyItem<Location>>();
+    private final ConcurrentMap<String, DirtyItem<Policy>> dirtyPolicies = new ConcurrentHashMap<String, DirtyItem<Policy>>();
+    private final Set<String> removedEntityIds = Sets.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    private final Set<String> removedLocationIds = Sets.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    private final Set<String> removedPolicyIds = Sets.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
 
     private volatile boolean running = true;
 
     public PeriodicDeltaChangeListener(ExecutionManager executionManager, BrooklynMementoPersister persister, long periodMillis) {
+        this(executionManager, persister, periodMillis, WRITE_DELAY.getDefaultValue(), MAX_WRITE_LATENCY.getDefaultValue());
+    }
+
+    /**
+     * @param periodMillis          how often to check for (and persist) items whose write is due
+     * @param writeDelayMillis      see {@link #WRITE_DELAY}
+     * @param maxWriteLatencyMillis see {@link #MAX_WRITE_LATENCY}
+     */
+    public PeriodicDeltaChangeListener(ExecutionManager executionManager, BrooklynMementoPersister persister, long periodMillis,
+            long writeDelayMillis, long maxWriteLatencyMillis) {
         this.executionManager = executionManager;
         this.persister = persister;
-        
+        this.writeDelayMillis = writeDelayMillis;
+        this.maxWriteLatencyMillis = maxWriteLatencyMillis;
+
         Callable<Task<?>> taskFactory = new Callable<Task<?>>() {
             @Override public Task<Void> call() {
                 return new BasicTask<Void>(new Callable<Void>() {
@@ -90,31 +142,49 @@ public class PeriodicDeltaChangeListener implements ChangeListener {
         ScheduledTask scheduledTask = new ScheduledTask(taskFactory).period(periodMillis);
         executionManager.submit(scheduledTask);
     }
-    
+
     void stop() {
         running = false;
     }
-    
+
+    /** the number of changes notified (including the initial change that made an item dirty) */
+    public long getChangeCount() {
+        return changeCount.get();
+    }
+
+    /** the number of changes that did not need a write of their own, because the item was already dirty */
+    public long getCoalescedChangeCount() {
+        return coalescedChangeCount.get();
+    }
+
+    /** the number of entity/location/policy mementos persisted */
+    public long getPersistedItemCount() {
+        return persistedItemCount.get();
+    }
+
     /**
      * This method must only be used for testing. If required in production, then revisit implementation!
+     * <p>
+     * Pending writes are done without waiting for the {@link #WRITE_DELAY}.
      */
     @VisibleForTesting
     public void waitForPendingComplete(long timeout, TimeUnit unit) throws InterruptedException, TimeoutException {
         // Every time we finish writing, we increment a counter. We note the current val, and then
         // wait until we can guarantee that a complete additional write has been done. Not sufficient
-        // to wait for `writeCount > origWriteCount` because we might have read the value when almost 
+        // to wait for `writeCount > origWriteCount` because we might have read the value when almost
         // finished a write.
-        
+
         long startTime = System.currentTimeMillis();
         long maxEndtime = (timeout > 0) ? (startTime + unit.toMillis(timeout)) : Long.MAX_VALUE;
         long origWriteCount = writeCount.get();
+        forceWritesUntil.set(origWriteCount+2);
         while (true) {
             if (!isActive()) {
                 return; // no pending activity;
             } else if (writeCount.get() > (origWriteCount+1)) {
                 return;
             }
-            
+
             if (System.currentTimeMillis() > maxEndtime) {
                 throw new TimeoutException("Timeout waiting for pending complete of rebind-periodic-delta, after "+Time.makeTimeString(timeout, unit));
             }
@@ -125,36 +195,45 @@ public class PeriodicDeltaChangeListener implements ChangeListener {
     private boolean isActive() {
         return running && persister != null && !executionManager.isShutdown();
     }
-    
+
     private void persistNow() {
         if (isActive()) {
             try {
-                // Atomically switch the delta, so subsequent modifications will be done in the
-                // next scheduled persist
-                DeltaCollector prevDeltaCollector;
-                synchronized (this) {
-                    prevDeltaCollector = deltaCollector;
-                    deltaCollector = new DeltaCollector();
+                long now = System.currentTimeMillis();
+                boolean force = writeCount.get() < forceWritesUntil.get();
+
+                // Take the items whose write is due; anything changed after it is taken is marked dirty
+                // afresh, and written next time (the memento is generated after the item is taken).
+                PersisterDeltaImpl persisterDelta = new PersisterDeltaImpl();
+                Set<Location> locations = Sets.newLinkedHashSet();
+                for (Entity entity : takeDue(dirtyEntities, now, force)) {
+                    persisterDelta.entities.add(entity.getRebindSupport().getMemento());
+
+                    // FIXME How to let the policy/location tell us about changes? Don't do this every time!
+                    for (Location location : entity.getLocations()) {
+                        locations.addAll(TreeUtils.findLocationsInHierarchy(location));
+                    }
                 }
-                
+                locations.addAll(takeDue(dirtyLocations, now, force));
+                for (Location location : locations) {
+                    persisterDelta.locations.add(location.getRebindSupport().getMemento());
+                }
+                for (Policy policy : takeDue(dirtyPolicies, now, force)) {
+                    persisterDelta.policies.add(policy.getRebindSupport().getMemento());
+                }
+                persisterDelta.removedLocationIds = takeAll(removedLocationIds);
+                persisterDelta.removedEntityIds = takeAll(removedEntityIds);
+                persisterDelta.removedPolicyIds = takeAll(removedPolicyIds);
+
                 // Generate mementos for everything that has changed in this time period
-                if (prevDeltaCollector.isEmpty()) {
+                if (persisterDelta.entities.isEmpty() && persisterDelta.locations.isEmpty() && persisterDelta.policies.isEmpty() &&
+                        persisterDelta.removedEntityIds.isEmpty() && persisterDelta.removedLocationIds.isEmpty() && persisterDelta.removedPolicyIds.isEmpty()) {
                     if (LOG.isTraceEnabled()) LOG.trace("No changes to persist since last delta");
                 } else {
-                    PersisterDeltaImpl persisterDelta = new PersisterDeltaImpl();
-                    for (Location location : prevDeltaCollector.locations) {
-                        persisterDelta.locations.add(location.getRebindSupport().getMemento());
-                    }
-                    for (Entity entity : prevDeltaCollector.entities) {
-                        persisterDelta.entities.add(entity.getRebindSupport().getMemento());
-                    }
-                    for (Policy policy : prevDeltaCollector.policies) {
-                        persisterDelta.policies.add(policy.getRebindSupport().getMemento());
-                    }
-                    persisterDelta.removedLocationIds = prevDeltaCollector.removedLocationIds;
-                    persisterDelta.removedEntityIds = prevDeltaCollector.removedEntityIds;
-                    persisterDelta.removedPolicyIds = prevDeltaCollector.removedPolicyIds;
-                    
+                    int numItems = persisterDelta.entities.size() + persisterDelta.locations.size() + persisterDelta.policies.size();
+                    persistedItemCount.addAndGet(numItems);
+                    if (LOG.isDebugEnabled()) LOG.debug("Persisting delta of {} items; {} changes coalesced in total", numItems, coalescedChangeCount.get());
+
                     // Tell the persister to persist it
                     persister.delta(persisterDelta);
                 }
@@ -164,30 +243,61 @@ public class PeriodicDeltaChangeListener implements ChangeListener {
             }
         }
     }
-    
+
+    private <T> Set<T> takeDue(ConcurrentMap<String, DirtyItem<T>> dirty, long now, boolean force) {
+        Set<T> result = Sets.newLinkedHashSet();
+        for (Iterator<Map.Entry<String, DirtyItem<T>>> iter = dirty.entrySet().iterator(); iter.hasNext();) {
+            Map.Entry<String, DirtyItem<T>> entry = iter.next();
+            DirtyItem<T> val = entry.getValue();
+            boolean due = force || (now - val.lastChangedTime >= writeDelayMillis) || (now - val.firstChangedTime >= maxWriteLatencyMillis);
+            if (due && dirty.remove(entry.getKey(), val)) {
+                result.add(val.item);
+            }
+        }
+        return result;
+    }
+
+    private Set<String> takeAll(Set<String> ids) {
+        Set<String> result = Sets.newLinkedHashSet();
+        for (String id : Lists.newArrayList(ids)) {
+            if (ids.remove(id)) result.add(id);
+        }
+        return result;
+    }
+
+    private <T> void markDirty(ConcurrentMap<String, DirtyItem<T>> dirty, String id, T item) {
+        changeCount.incrementAndGet();
+        long now = System.currentTimeMillis();
+        DirtyItem<T> existing = dirty.get(id);
+        if (existing == null) {
+            existing = dirty.putIfAbsent(id, new DirtyItem<T>(item, now));
+        }
+        if (existing != null) {
+            // write already pending; it may have just been taken, in which case this change is
+            // captured by the memento being generated, or at worst written unnecessarily next time
+            existing.lastChangedTime = now;
+            coalescedChangeCount.incrementAndGet();
+        }
+    }
+
     @Override
-    public synchronized void onManaged(Entity entity) {
+    public void onManaged(Entity entity) {
         if (isActive()) {
             onChanged(entity);
         }
     }
 
     @Override
-    public synchronized void onManaged(Location location) {
+    public void onManaged(Location location) {
         if (isActive()) {
             onChanged(location);
         }
     }
-    
+
     @Override
-    public synchronized void onChanged(Entity entity) {
+    public void onChanged(Entity entity) {
         if (isActive()) {
-            deltaCollector.entities.add(entity);
-
-            // FIXME How to let the policy/location tell us about changes? Don't do this every time!
-            for (Location location : entity.getLocations()) {
-                deltaCollector.locations.addAll(TreeUtils.findLocationsInHierarchy(location));
-            }
+            markDirty(dirtyEntities, entity.getId(), entity);
 
             // FIXME Not including policies, because lots of places regiser anonymous inner class policies
             // (e.g. AbstractController registering a AbstractMembershipTrackingPolicy)
@@ -198,34 +308,34 @@ public class PeriodicDeltaChangeListener implements ChangeListener {
 //            }
         }
     }
-    
+
     @Override
-    public synchronized void onUnmanaged(Entity entity) {
+    public void onUnmanaged(Entity entity) {
         if (isActive()) {
-            deltaCollector.removedEntityIds.add(entity.getId());
-            deltaCollector.entities.remove(entity);
+            dirtyEntities.remove(entity.getId());
+            removedEntityIds.add(entity.getId());
         }
     }
 
     @Override
-    public synchronized void onUnmanaged(Location location) {
+    public void onUnmanaged(Location location) {
         if (isActive()) {
-            deltaCollector.removedLocationIds.add(location.getId());
-            deltaCollector.locations.remove(location);
+            dirtyLocations.remove(location.getId());
+            removedLocationIds.add(location.getId());
         }
     }
 
     @Override
-    public synchronized void onChanged(Location location) {
+    public void onChanged(Location location) {
         if (isActive()) {
-            deltaCollector.locations.add(location);
+            markDirty(dirtyLocations, location.getId(), location);
         }
     }
-    
+
     @Override
-    public synchronized void onChanged(Policy policy) {
+    public void onChanged(Policy policy) {
         if (isActive()) {
-            deltaCollector.policies.add(policy);
+            markDirty(dirtyPolicies, policy.getId(), policy);
         }
     }
 }
@@ -74,7 +74,9 @@ public class RebindManagerImpl implements RebindManager {
         this.persister = checkNotNull(val, "persister");
         
         if (running) {
-            this.realChangeListener = new PeriodicDeltaChangeListener(managementContext.getExecutionManager(), persister, periodicPersistPeriod);
+            this.realChangeListener = new PeriodicDeltaChangeListener(managementContext.getExecutionManager(), persister, periodicPersistPeriod,
+                    managementContext.getConfig().getConfig(PeriodicDeltaChangeListener.WRITE_DELAY),
+                    managementContext.getConfig().getConfig(PeriodicDeltaChangeListener.MAX_WRITE_LATENCY));
             this.changeListener = new SafeChangeListener(realChangeListener);
         }
     }
@@ -6,9 +6,15 @@ import static com.google.common.base.Preconditions.checkNotNull;
 import java.io.File;
 import java.io.FileFilter;
 import java.io.IOException;
+import java.io.Reader;
+import java.util.List;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
@@ -22,13 +28,18 @@ import brooklyn.mementos.EntityMemento;
 import brooklyn.mementos.LocationMemento;
 import brooklyn.mementos.PolicyMemento;
 import brooklyn.util.exceptions.Exceptions;
+import brooklyn.util.time.Time;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Charsets;
 import com.google.common.base.Joiner;
+import com.google.common.base.Stopwatch;
+import com.google.common.base.Throwables;
+import com.google.common.collect.Lists;
 import com.google.common.io.Files;
 import com.google.common.util.concurrent.ListeningExecutorService;
 import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 public class BrooklynMementoPersisterToMultiFile implements BrooklynMementoPersister {
 
@@ -45,17 +56,23 @@ public class BrooklynMementoPersisterToMultiFile implements BrooklynMementoPersi
     private final ConcurrentMap<String, MementoFileWriter<LocationMemento>> locationWriters = new ConcurrentHashMap<String, MementoFileWriter<LocationMemento>>();
     private final ConcurrentMap<String, MementoFileWriter<PolicyMemento>> policyWriters = new ConcurrentHashMap<String, MementoFileWriter<PolicyMemento>>();
     
+    private final XmlMementoSerializer<Object> rawSerializer;
+    
     private final MementoSerializer<Object> serializer;
 
     private final ListeningExecutorService executor;
 
     private static final int MAX_SERIALIZATION_ATTEMPTS = 5;
     
+    private static final int LOAD_PROGRESS_LOG_INTERVAL = 1000;
+    
+    private volatile int loadParallelism = Runtime.getRuntime().availableProcessors();
+    
     private volatile boolean running = true;
     
     public BrooklynMementoPersisterToMultiFile(File dir, ClassLoader classLoader) {
         this.dir = checkNotNull(dir, "dir");
-        MementoSerializer<Object> rawSerializer = new XmlMementoSerializer<Object>(classLoader);
+        this.rawSerializer = new XmlMementoSerializer<Object>(classLoader);
 //        this.serializer = new JsonMementoSerializer(classLoader);
         this.serializer = new RetryingMementoSerializer<Object>(rawSerializer, MAX_SERIALIZATION_ATTEMPTS);
         
@@ -89,6 +106,15 @@ public class BrooklynMementoPersisterToMultiFile implements BrooklynMementoPersi
         }
     }
     
+    /**
+     * Sets the number of threads used to read and deserialize memento files in {@link #loadMemento()};
+     * defaults to the number of available processors.
+     */
+    public void setLoadParallelism(int val) {
+        checkArgument(val > 0, "loadParallelism must be positive; was %s", val);
+        this.loadParallelism = val;
+    }
+    
     @Override
     public BrooklynMemento loadMemento() throws IOException {
         FileFilter fileFilter = new FileFilter() {
@@ -99,28 +125,97 @@ public class BrooklynMementoPersisterToMultiFile implements BrooklynMementoPersi
         File[] entityFiles = entitiesDir.listFiles(fileFilter);
         File[] locationFiles = locationsDir.listFiles(fileFilter);
         File[] policyFiles = policiesDir.listFiles(fileFilter);
+        int total = entityFiles.length + locationFiles.length + policyFiles.length;
+        int numThreads = Math.max(1, Math.min(loadParallelism, total));
 
-        LOG.info("Loading memento from {}; {} entities, {} locations, {} policies", 
-                new Object[] {dir, entityFiles.length, locationFiles.length, policyFiles.length});
-        
-        BrooklynMementoImpl.Builder builder = BrooklynMementoImpl.builder();
+        LOG.info("Loading memento from {}; {} entities, {} locations, {} policies, using {} threads", 
+                new Object[] {dir, entityFiles.length, locationFiles.length, policyFiles.length, numThreads});
         
-        for (File file : entityFiles) {
-            EntityMemento memento = (EntityMemento) serializer.fromString(readFile(file));
-            builder.entity(memento);
-            if (memento.isTopLevelApp()) {
-                builder.applicationId(memento.getId());
+        // Files are read and deserialized in parallel; the results are consumed (in file order) as they
+        // become available, so building the memento overlaps with loading the remaining files.
+        Stopwatch stopwatch = new Stopwatch().start();
+        ExecutorService loadExecutor = Executors.newFixedThreadPool(numThreads, new ThreadFactoryBuilder()
+                .setNameFormat("brooklyn-memento-loader-%d")
+                .setDaemon(true)
+                .build());
+        try {
+            List<Future<Object>> entityFutures = submitLoads(loadExecutor, entityFiles);
+            List<Future<Object>> locationFutures = submitLoads(loadExecutor, locationFiles);
+            List<Future<Object>> policyFutures = submitLoads(loadExecutor, policyFiles);
+            
+            BrooklynMementoImpl.Builder builder = BrooklynMementoImpl.builder();
+            int count = 0;
+            
+            for (Future<Object> future : entityFutures) {
+                EntityMemento memento = (EntityMemento) getLoaded(future);
+                builder.entity(memento);
+                if (memento.isTopLevelApp()) {
+                    builder.applicationId(memento.getId());
+                }
+                logLoadProgress(++count, total, stopwatch);
+            }
+            for (Future<Object> future : locationFutures) {
+                LocationMemento memento = (LocationMemento) getLoaded(future);
+                builder.location(memento);
+                logLoadProgress(++count, total, stopwatch);
+            }
+            for (Future<Object> future : policyFutures) {
+                PolicyMemento memento = (PolicyMemento) getLoaded(future);
+                builder.policy(memento);
+                logLoadProgress(++count, total, stopwatch);
             }
+            BrooklynMemento result = builder.build();
+            
+            long elapsed = stopwatch.elapsed(TimeUnit.MILLISECONDS);
+            LOG.info("Loaded memento from {} in {}; {} mementos ({} per second)", 
+                    new Object[] {dir, Time.makeTimeString(elapsed), total, (elapsed > 0 ? (total*1000L/elapsed) : total)});
+            return result;
+        } finally {
+            loadExecutor.shutdownNow();
         }
-        for (File file : locationFiles) {
-            LocationMemento memento = (LocationMemento) serializer.fromString(readFile(file));
-            builder.location(memento);
+    }
+    
+    private List<Future<Object>> submitLoads(ExecutorService loadExecutor, File[] files) {
+        List<Future<Object>> result = Lists.newArrayListWithCapacity(files.length);
+        for (final File file : files) {
+            result.add(loadExecutor.submit(new Callable<Object>() {
+                @Override public Object call() throws IOException {
+                    return loadFile(file);
+                }}));
         }
-        for (File file : policyFiles) {
-            PolicyMemento memento = (PolicyMemento) serializer.fromString(readFile(file));
-            builder.policy(memento);
+        return result;
+    }
+    
+    private Object getLoaded(Future<Object> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            throw Exceptions.propagate(e);
+        } catch (ExecutionException e) {
+            Throwables.propagateIfPossible(e.getCause(), IOException.class);
+            throw Exceptions.propagate(e.getCause());
+        }
+    }
+    
+    private void logLoadProgress(int count, int total, Stopwatch stopwatch) {
+        if (count % LOAD_PROGRESS_LOG_INTERVAL == 0 && count < total) {
+            LOG.info("Loading memento from {}: loaded {} of {} mementos in {}", 
+                    new Object[] {dir, count, total, Time.makeTimeString(stopwatch.elapsed(TimeUnit.MILLISECONDS))});
+        }
+    }
+    
+    /** deserializes directly from the file, rather than first reading it into a string */
+    private Object loadFile(File file) throws IOException {
+        Reader reader = Files.newReader(file, Charsets.UTF_8);
+        try {
+            return rawSerializer.deserialize(reader);
+        } catch (RuntimeException e) {
+            // the retrying serializer works on strings, so fall back to that
+            LOG.warn("Error deserializing memento "+file+"; retrying", e);
+            return serializer.fromString(readFile(file));
+        } finally {
+            reader.close();
         }
-        return builder.build();
     }
     
     @Override
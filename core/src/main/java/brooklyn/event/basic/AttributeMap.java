@@ -5,12 +5,15 @@ import static com.google.common.base.Preconditions.checkNotNull;
 import java.io.Serializable;
 import java.util.Collection;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import brooklyn.entity.Entity;
 import brooklyn.entity.basic.AbstractEntity;
+import brooklyn.entity.basic.EntityDynamicType;
+import brooklyn.entity.basic.EntityDynamicType.AttributeIndex;
 import brooklyn.event.AttributeSensor;
 
 import com.google.common.base.Joiner;
@@ -21,17 +24,32 @@ import com.google.common.collect.Maps;
 
 /**
  * A {@link Map} of {@link Entity} attribute values.
+ * <p>
+ * The values are held in the supplied storage map, keyed by name-parts. The values of attributes declared
+ * on the entity's class are also cached in an array, at the index assigned by the entity's 
+ * {@link EntityDynamicType#getAttributeIndex()}, so that reading them by sensor needs only a lookup of the
+ * sensor's name rather than hashing its name-parts through the storage map. The cache is filled as values 
+ * are read and written; every write still goes to the storage map.
  */
 public final class AttributeMap implements Serializable {
 
     static final Logger log = LoggerFactory.getLogger(AttributeMap.class);
 
     private final static Object NULL = new Object();
+    
+    /** in the cache, an attribute known not to be set; whereas null means not yet read from the storage map */
+    private final static Object ABSENT = new Object();
+    
+    private static final Joiner DOT_JOINER = Joiner.on('.');
 
     private final AbstractEntity entity;
 
     // Note that we synchronize on the top-level map, to handle concurrent updates and and gets (ENGR-2111)
     private final Map<Collection<String>, Object> values;
+    
+    // resolved lazily, as the map is created before the entity's type
+    private transient volatile AttributeIndex index;
+    private transient volatile AtomicReferenceArray<Object> cache;
 
     /**
      * Creates a new AttributeMap.
@@ -51,7 +69,7 @@ public final class AttributeMap implements Serializable {
     public Map<String, Object> asMap() {
         Map<String, Object> result = Maps.newLinkedHashMap();
         for (Map.Entry<Collection<String>, Object> entry : values.entrySet()) {
-            String sensorName = Joiner.on('.').join(entry.getKey());
+            String sensorName = DOT_JOINER.join(entry.getKey());
             Object val = (isNull(entry.getValue())) ? null : entry.getValue();
             result.put(sensorName, val);
         }
@@ -78,7 +96,8 @@ public final class AttributeMap implements Serializable {
             log.trace("setting sensor {}={} for {}", new Object[] {path, newValue, entity});
         }
 
-        T oldValue = (T) values.put(path, newValue);
+        AttributeIndex usedIndex = getIndex();
+        T oldValue = (T) put(usedIndex, usedIndex.indexOf(path), path, newValue);
         return (isNull(oldValue)) ? null : oldValue;
     }
 
@@ -103,9 +122,9 @@ public final class AttributeMap implements Serializable {
             }
         }
 
-        T oldValue = (T) update(attribute.getNameParts(), newValue);
-        
-        return (isNull(oldValue)) ? null : oldValue;
+        AttributeIndex usedIndex = getIndex();
+        Object oldValue = put(usedIndex, usedIndex.indexOf(attribute.getName()), attribute.getNameParts(), (newValue == null) ? typedNull() : newValue);
+        return (isNull(oldValue)) ? null : (T) oldValue;
     }
 
     public void remove(AttributeSensor<?> attribute) {
@@ -113,7 +132,8 @@ public final class AttributeMap implements Serializable {
             log.debug("removing attribute {} on {}", attribute.getName(), entity);
         }
 
-        remove(attribute.getNameParts());
+        AttributeIndex usedIndex = getIndex();
+        remove(usedIndex, usedIndex.indexOf(attribute.getName()), attribute.getNameParts());
     }
 
     // TODO path must be ordered(and legal to contain duplicates like "a.b.a"; list would be better
@@ -124,7 +144,8 @@ public final class AttributeMap implements Serializable {
             log.trace("removing sensor {} for {}", new Object[] {path, entity});
         }
 
-        values.remove(path);
+        AttributeIndex usedIndex = getIndex();
+        remove(usedIndex, usedIndex.indexOf(path), path);
     }
 
     /**
@@ -139,12 +160,77 @@ public final class AttributeMap implements Serializable {
         // or the leaf value if only one value. Arguably that is not required - what is/was the use-case?
         // 
         checkPath(path);
-        Object result = values.get(path);
+        Object result = get(getIndex().indexOf(path), path);
         return (isNull(result)) ? null : result;
     }
 
     public <T> T getValue(AttributeSensor<T> sensor) {
-        return (T) getValue(sensor.getNameParts());
+        Object result = get(getIndex().indexOf(sensor.getName()), sensor.getNameParts());
+        return (isNull(result)) ? null : (T) result;
+    }
+
+    private AttributeIndex getIndex() {
+        AttributeIndex result = index;
+        if (result == null) {
+            EntityDynamicType type = entity.getMutableEntityType();
+            // before the entity's type is set nothing is cached; values are just read from the map
+            if (type == null) return AttributeIndex.EMPTY;
+            // published holding the map's lock, so that any write is either seen by a later read-through or sees the cache
+            synchronized (values) {
+                if (index == null) {
+                    AttributeIndex newIndex = type.getAttributeIndex();
+                    cache = new AtomicReferenceArray<Object>(newIndex.size());
+                    index = newIndex;
+                }
+                result = index;
+            }
+        }
+        return result;
+    }
+    
+    /**
+     * Writes to the map and, if the attribute is indexed at i, to the cache, holding the map's lock so the two agree.
+     * If the index used was not the entity's actual index (its type was not yet known), the attribute is looked up 
+     * again in case the index has since been created.
+     */
+    private Object put(AttributeIndex usedIndex, int i, Collection<String> path, Object value) {
+        if (i < 0 && usedIndex == index) return values.put(path, value);
+        synchronized (values) {
+            Object oldValue = values.put(path, value);
+            setCached(i, path, value);
+            return oldValue;
+        }
+    }
+    
+    /** @see #put(AttributeIndex, int, Collection, Object) */
+    private void remove(AttributeIndex usedIndex, int i, Collection<String> path) {
+        if (i < 0 && usedIndex == index) {
+            values.remove(path);
+            return;
+        }
+        synchronized (values) {
+            values.remove(path);
+            setCached(i, path, ABSENT);
+        }
+    }
+    
+    private void setCached(int i, Collection<String> path, Object value) {
+        AttributeIndex current = index;
+        if (i < 0 && current != null) i = current.indexOf(path);
+        if (i >= 0) cache.set(i, value);
+    }
+    
+    /** reads from the cache if the attribute is indexed at i, reading through to the map on first use */
+    private Object get(int i, Collection<String> path) {
+        if (i < 0) return values.get(path);
+        Object result = cache.get(i);
+        if (result == null) {
+            result = values.get(path);
+            // only fills an empty slot, so never overwrites the value of a concurrent write
+            cache.compareAndSet(i, null, (result != null) ? result : ABSENT);
+            return result;
+        }
+        return (result == ABSENT) ? null : result;
     }
 
     @SuppressWarnings("unchecked")
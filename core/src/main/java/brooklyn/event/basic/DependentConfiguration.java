@@ -2,11 +2,17 @@ package brooklyn.event.basic;
 
 import groovy.lang.Closure;
 
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
 import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
 
 import org.slf4j.Logger;
@@ -20,12 +26,14 @@ import brooklyn.event.AttributeSensor;
 import brooklyn.event.SensorEvent;
 import brooklyn.event.SensorEventListener;
 import brooklyn.management.ExecutionContext;
+import brooklyn.management.SubscriptionContext;
 import brooklyn.management.SubscriptionHandle;
 import brooklyn.management.Task;
 import brooklyn.util.GroovyJavaMethods;
 import brooklyn.util.collections.MutableMap;
 import brooklyn.util.task.BasicExecutionContext;
 import brooklyn.util.task.BasicTask;
+import brooklyn.util.task.ListenableTask;
 import brooklyn.util.task.ParallelTask;
 import brooklyn.util.task.Tasks;
 
@@ -36,6 +44,11 @@ import com.google.common.base.Predicates;
 import com.google.common.base.Throwables;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ForwardingListenableFuture;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
 
 /** Conveniences for making tasks which run in entity {@link ExecutionContext}s, subscribing to attributes from other entities, possibly transforming those;
  * these {@link Task} instances are typically passed in {@link EntityLocal#setConfig(ConfigKey, Object)}.
@@ -77,6 +90,90 @@ public class DependentConfiguration {
                 });
     }
 
+    /** @see #attributeWhenReadyAsync(Entity, AttributeSensor, Predicate); default readiness is Groovy truth */
+    public static <T> ListenableTask<T> attributeWhenReadyAsync(Entity source, AttributeSensor<T> sensor) {
+        return attributeWhenReadyAsync(source, sensor, GroovyJavaMethods.truthPredicate());
+    }
+
+    /**
+     * As {@link #attributeWhenReady(Entity, AttributeSensor, Predicate)}, but returns a task which completes from the
+     * subscription callback when the sensor satisfies ready, rather than one which holds a thread while it waits.
+     * <p>
+     * The subscription is made (in the source entity's subscription context) when the task is first waited on or
+     * listened to, e.g. when it is resolved as config or composed; so a task which is never used leaves no subscription.
+     * It is removed when the value is ready or if the task is cancelled. The task can be passed as config as usual, and
+     * combined without blocking using {@link #transform(ListenableTask, Function)}, {@link #transformMultiple(Function, ListenableTask...)}
+     * and {@link #formatString(String, Object...)}.
+     */
+    public static <T> ListenableTask<T> attributeWhenReadyAsync(final Entity source, final AttributeSensor<T> sensor, Predicate<? super T> ready) {
+        final Predicate<? super T> readyPredicate = (ready != null) ? ready : GroovyJavaMethods.truthPredicate();
+        final SettableFuture<T> future = SettableFuture.create();
+        Map<String, String> flags = MutableMap.of("tag", "attributeWhenReady", "displayName", "retrieving "+source+" "+sensor);
+
+        T value = source.getAttribute(sensor);
+        if (readyPredicate.apply(value)) {
+            future.set(value);
+            return new ListenableTask<T>(flags, future);
+        }
+        
+        Runnable subscribe = new Runnable() {
+            public void run() {
+                if (future.isDone()) return;
+                final SubscriptionContext subscriptionContext = ((EntityInternal)source).getSubscriptionContext();
+                final SubscriptionHandle subscription = subscriptionContext.subscribe(source, sensor, new SensorEventListener<T>() {
+                    public void onEvent(SensorEvent<T> event) {
+                        setIfReady(future, event.getValue(), readyPredicate);
+                    }});
+                future.addListener(new Runnable() {
+                    public void run() {
+                        if (LOG.isDebugEnabled() && !future.isCancelled()) LOG.debug("Attribute-ready for {} in entity {}", sensor, source);
+                        subscriptionContext.unsubscribe(subscription);
+                    }},
+                    MoreExecutors.sameThreadExecutor());
+                
+                // in case the value changed before the subscription was made
+                setIfReady(future, source.getAttribute(sensor), readyPredicate);
+            }};
+        return new ListenableTask<T>(flags, new StartOnFirstUseFuture<T>(future, subscribe));
+    }
+
+    /** Runs the given job, once, when the future is first waited on or listened to. */
+    private static class StartOnFirstUseFuture<T> extends ForwardingListenableFuture.SimpleForwardingListenableFuture<T> {
+        private final Runnable start;
+        private final AtomicBoolean started = new AtomicBoolean();
+        
+        StartOnFirstUseFuture(ListenableFuture<T> delegate, Runnable start) {
+            super(delegate);
+            this.start = start;
+        }
+        private void startIfNecessary() {
+            if (started.compareAndSet(false, true)) start.run();
+        }
+        @Override
+        public void addListener(Runnable listener, Executor executor) {
+            startIfNecessary();
+            super.addListener(listener, executor);
+        }
+        @Override
+        public T get() throws InterruptedException, ExecutionException {
+            startIfNecessary();
+            return super.get();
+        }
+        @Override
+        public T get(long timeout, TimeUnit unit) throws InterruptedException, TimeoutException, ExecutionException {
+            startIfNecessary();
+            return super.get(timeout, unit);
+        }
+    }
+
+    private static <T> void setIfReady(SettableFuture<T> future, T value, Predicate<? super T> ready) {
+        try {
+            if (ready.apply(value)) future.set(value);
+        } catch (Throwable t) {
+            future.setException(t);
+        }
+    }
+
     public static <T,V> Task<V> attributePostProcessedWhenReady(Entity source, AttributeSensor<T> sensor, Closure<Boolean> ready, Closure<V> postProcess) {
         Predicate<? super T> readyPredicate = (ready != null) ? GroovyJavaMethods.predicateFromClosure(ready) : GroovyJavaMethods.truthPredicate();
         Function<? super T, V> postProcessFunction = GroovyJavaMethods.<T,V>functionFromClosure(postProcess);
@@ -182,6 +279,19 @@ public class DependentConfiguration {
         return transform(task, GroovyJavaMethods.functionFromClosure(transformer));
     }
     
+    /**
+     * As {@link #transform(Task, Function)}, but the transformer is applied when the given task completes
+     * (in the thread which completes it), so no thread is held while waiting.
+     */
+    public static <U,T> ListenableTask<T> transform(ListenableTask<U> task, Function<U,T> transformer) {
+        return new ListenableTask<T>(MutableMap.of("displayName", "transforming "+task), Futures.<U,T>transform(task, transformer));
+    }
+    
+    /** @see #transform(ListenableTask, Function) */
+    public static <U,T> ListenableTask<T> transform(ListenableTask<U> task, Closure transformer) {
+        return transform(task, GroovyJavaMethods.<U,T>functionFromClosure(transformer));
+    }
+    
     /** Returns a task which waits for multiple other tasks (submitting if necessary)
      * and performs arbitrary computation over the List of results.
      * @see #transform(Task, Function) but note argument order is reversed (counterintuitive) to allow for varargs */
@@ -196,6 +306,16 @@ public class DependentConfiguration {
         return transform(new ParallelTask(tasks), transformer);
     }
 
+    /** As {@link #transformMultiple(Function, Task...)}, but computed when the last of the tasks completes, so no thread is held while waiting.
+     * @see #transform(ListenableTask, Function) */
+    public static <U,T> ListenableTask<T> transformMultiple(Function<List<U>,T> transformer, ListenableTask<U> ...tasks) {
+        return transform(allAsList(Arrays.asList(tasks)), transformer);
+    }
+
+    private static <T> ListenableTask<List<T>> allAsList(List<? extends ListenableTask<? extends T>> tasks) {
+        return new ListenableTask<List<T>>(MutableMap.of("displayName", "waiting for "+tasks.size()+" tasks"), Futures.<T>allAsList(tasks));
+    }
+
     /** Method which returns a Future containing a string formatted using String.format,
      * where the arguments can be normal objects or tasks;
      * tasks will be waited on (submitted if necessary) and their results substituted in the call
@@ -212,10 +332,14 @@ public class DependentConfiguration {
      */
     public static Task<String> formatString(final String spec, final Object ...args) {
         List<Object> taskArgs = Lists.newArrayList();
+        boolean allListenable = true;
         for (Object arg: args)
-            if (arg instanceof Task) taskArgs.add(arg);
+            if (arg instanceof Task) {
+                taskArgs.add(arg);
+                if (!(arg instanceof ListenableTask)) allListenable = false;
+            }
             
-        return transformMultiple(new Function<List<Object>, String>() {
+        Function<List<Object>, String> formatter = new Function<List<Object>, String>() {
             @Override public String apply(List<Object> input) {
                 Iterator<Object> tri = input.iterator();
                 Object[] vv = new Object[args.length];
@@ -226,8 +350,14 @@ public class DependentConfiguration {
                     i++;
                 }
                 return String.format(spec, vv);
-            }},
-            (Task[]) taskArgs.toArray(new Task[taskArgs.size()]));
+            }};
+        
+        if (!taskArgs.isEmpty() && allListenable) {
+            // computed when the last arg is ready, rather than in a task waiting for them all
+            return transformMultiple(formatter, (ListenableTask[]) taskArgs.toArray(new ListenableTask[taskArgs.size()]));
+        } else {
+            return transformMultiple(formatter, (Task[]) taskArgs.toArray(new Task[taskArgs.size()]));
+        }
     }
 
     /** returns a task for parallel execution returning a list of values for the given sensor for the given entity list, 
@@ -251,6 +381,21 @@ public class DependentConfiguration {
         }));
     }
 
+    /** @see #listAttributesWhenReadyAsync(AttributeSensor, Iterable, Predicate) */
+    public static <T> ListenableTask<List<T>> listAttributesWhenReadyAsync(AttributeSensor<T> sensor, Iterable<Entity> entities) {
+        return listAttributesWhenReadyAsync(sensor, entities, GroovyJavaMethods.truthPredicate());
+    }
+    
+    /** As {@link #listAttributesWhenReady(AttributeSensor, Iterable, Predicate)}, but using {@link #attributeWhenReadyAsync(Entity, AttributeSensor, Predicate)}
+     * for each entity, so no threads are held while waiting */
+    public static <T> ListenableTask<List<T>> listAttributesWhenReadyAsync(AttributeSensor<T> sensor, Iterable<Entity> entities, Predicate<? super T> readiness) {
+        List<ListenableTask<T>> tasks = Lists.newArrayList();
+        for (Entity entity : entities) {
+            tasks.add(attributeWhenReadyAsync(entity, sensor, readiness));
+        }
+        return allAsList(tasks);
+    }
+
     /** @see #waitForTask(Task, Entity, String) */
     public static <T> T waitForTask(Task<T> t, Entity context) throws InterruptedException {
         return waitForTask(t, context, null);
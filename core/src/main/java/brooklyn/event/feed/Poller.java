@@ -9,6 +9,7 @@ import org.slf4j.LoggerFactory;
 
 import brooklyn.entity.basic.EntityInternal;
 import brooklyn.entity.basic.EntityLocal;
+import brooklyn.management.ExecutionManager;
 import brooklyn.management.Task;
 import brooklyn.util.collections.MutableMap;
 import brooklyn.util.task.BasicTask;
@@ -102,7 +103,8 @@ public class Poller<V> {
             if (pollJob.pollPeriod > 0) {
                 Callable<Task<?>> pollingTaskFactory = new Callable<Task<?>>() {
                     public Task<?> call() {
-                        return new BasicTask<V>(MutableMap.of("entity", entity), pollJob.wrappedJob); }
+                        // polls are typically remote calls, so run them in the execution manager's pool for blocking tasks
+                        return new BasicTask<V>(MutableMap.of("entity", entity, "tag", ExecutionManager.BLOCKING_TASK_TAG), pollJob.wrappedJob); }
                 };
                 ScheduledTask task = new ScheduledTask(MutableMap.of("period", pollJob.pollPeriod), pollingTaskFactory);
                 tasks.add((ScheduledTask) ((EntityInternal)entity).getExecutionContext().submit(task));
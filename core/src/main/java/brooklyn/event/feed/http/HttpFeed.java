@@ -5,8 +5,6 @@ import static com.google.common.base.Preconditions.checkNotNull;
 import java.io.IOException;
 import java.net.URI;
 import java.net.URL;
-import java.security.cert.CertificateException;
-import java.security.cert.X509Certificate;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -19,25 +17,27 @@ import org.apache.http.auth.AuthScope;
 import org.apache.http.auth.Credentials;
 import org.apache.http.auth.UsernamePasswordCredentials;
 import org.apache.http.client.ClientProtocolException;
+import org.apache.http.client.CredentialsProvider;
 import org.apache.http.client.HttpClient;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
-import org.apache.http.conn.scheme.Scheme;
-import org.apache.http.conn.ssl.SSLSocketFactory;
-import org.apache.http.conn.ssl.TrustStrategy;
+import org.apache.http.client.protocol.ClientContext;
 import org.apache.http.entity.ByteArrayEntity;
-import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.impl.client.BasicCredentialsProvider;
+import org.apache.http.protocol.BasicHttpContext;
+import org.apache.http.protocol.HttpContext;
 import org.apache.http.util.EntityUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import brooklyn.entity.basic.Entities;
+import brooklyn.entity.basic.EntityInternal;
 import brooklyn.entity.basic.EntityLocal;
 import brooklyn.event.feed.AbstractFeed;
 import brooklyn.event.feed.AttributePollHandler;
 import brooklyn.event.feed.DelegatingPollHandler;
 import brooklyn.event.feed.Poller;
-import brooklyn.util.exceptions.Exceptions;
+import brooklyn.management.internal.ManagementContextInternal;
 import brooklyn.util.time.Duration;
 
 import com.google.common.base.Objects;
@@ -92,6 +92,11 @@ import com.google.common.collect.Sets;
  * and it may report errors if that sensor is not available.
  * Some guidance for controlling enablement of a feed based on availability of a sensor
  * can be seen in HttpLatencyDetector (in brooklyn-policy). 
+ * <p>
+ * Requests are made with the management context's shared, pooled http client (see {@link SharedHttpClients}),
+ * so connections to an entity are kept alive and re-used between polls. A poll does not wait longer than its period
+ * for a pooled connection; and its requests time out as for the shared client, unless it sets its own
+ * {@link HttpPollConfig#timeout(Duration)}.
  * 
  * @author aled
  */
@@ -274,23 +279,25 @@ public class HttpFeed extends AbstractFeed {
 
     @Override
     protected void preStart() {
+        final HttpClient httpClient = ((ManagementContextInternal)((EntityInternal)entity).getManagementContext()).getHttpClient();
+        
         for (final HttpPollIdentifier pollInfo : polls.keySet()) {
-            // Though HttpClients are thread safe and can take advantage of connection pooling
-            // and authentication caching, the httpcomponents documentation says:
-            //    "While HttpClient instances are thread safe and can be shared between multiple
-            //     threads of execution, it is highly recommended that each thread maintains its
-            //     own dedicated instance of HttpContext.
-            //  http://hc.apache.org/httpcomponents-client-ga/tutorial/html/connmgmt.html
-            final HttpClient httpClient = createHttpClient(pollInfo);
 
             Set<HttpPollConfig<?>> configs = polls.get(pollInfo);
             long minPeriod = Integer.MAX_VALUE;
+            long minTimeout = Long.MAX_VALUE;
             Set<AttributePollHandler<? super HttpPollValue>> handlers = Sets.newLinkedHashSet();
 
             for (HttpPollConfig<?> config : configs) {
                 handlers.add(new AttributePollHandler<HttpPollValue>(config, entity, this));
                 if (config.getPeriod() > 0) minPeriod = Math.min(minPeriod, config.getPeriod());
+                if (config.getTimeout() > 0) minTimeout = Math.min(minTimeout, config.getTimeout());
             }
+            
+            // don't wait longer for a pooled connection than the poll period (the next poll will try again);
+            // otherwise the shared client's timeouts apply, unless the poll config sets its own
+            final long connectionRequestTimeout = (minPeriod < Integer.MAX_VALUE) ? minPeriod : -1;
+            final long timeout = (minTimeout < Long.MAX_VALUE) ? minTimeout : -1;
 
             Callable<HttpPollValue> pollJob;
             
@@ -298,13 +305,19 @@ public class HttpFeed extends AbstractFeed {
                 pollJob = new Callable<HttpPollValue>() {
                     public HttpPollValue call() throws Exception {
                         if (log.isTraceEnabled()) log.trace("http polling for {} sensors at {}", entity, pollInfo);
-                        return httpGet(httpClient, pollInfo.uriProvider.get(), pollInfo.headers);
+                        URI uri = pollInfo.uriProvider.get();
+                        HttpGet httpGet = new HttpGet(uri);
+                        SharedHttpClients.setTimeouts(httpGet.getParams(), connectionRequestTimeout, timeout);
+                        return httpGet(httpClient, newHttpContext(pollInfo, uri), httpGet, pollInfo.headers);
                     }};
             } else if (pollInfo.method.equals("post")) {
                 pollJob = new Callable<HttpPollValue>() {
                     public HttpPollValue call() throws Exception {
                         if (log.isTraceEnabled()) log.trace("http polling for {} sensors at {}", entity, pollInfo);
-                        return httpPost(httpClient, pollInfo.uriProvider.get(), pollInfo.headers, pollInfo.body);
+                        URI uri = pollInfo.uriProvider.get();
+                        HttpPost httpPost = new HttpPost(uri);
+                        SharedHttpClients.setTimeouts(httpPost.getParams(), connectionRequestTimeout, timeout);
+                        return httpPost(httpClient, newHttpContext(pollInfo, uri), httpPost, pollInfo.headers, pollInfo.body);
                     }};
             } else {
                 throw new IllegalStateException("Unexpected http method: "+pollInfo.method);
@@ -314,33 +327,27 @@ public class HttpFeed extends AbstractFeed {
         }
     }
 
-    private HttpClient createHttpClient(HttpPollIdentifier pollIdentifier) {
-        final DefaultHttpClient httpClient = new DefaultHttpClient();
-
-        URI uri = pollIdentifier.uriProvider.get();
-        // TODO if supplier returns null, we may wish to defer initialization until url available?
-        if (uri != null && "https".equalsIgnoreCase(uri.getScheme())) {
-            try {
-                int port = (uri.getPort() >= 0) ? uri.getPort() : 443;
-                SSLSocketFactory socketFactory = new SSLSocketFactory(
-                        new TrustAllStrategy(), SSLSocketFactory.ALLOW_ALL_HOSTNAME_VERIFIER);
-                Scheme sch = new Scheme("https", port, socketFactory);
-                httpClient.getConnectionManager().getSchemeRegistry().register(sch);
-            } catch (Exception e) {
-                log.warn("Error in HTTP Feed of {}, setting trust for uri {}", entity, uri);
-                throw Exceptions.propagate(e);
-            }
-        }
-
+    /**
+     * The http client is shared, so state such as credentials is given in a new context for each request; 
+     * the httpcomponents documentation says:
+     *    "While HttpClient instances are thread safe and can be shared between multiple
+     *     threads of execution, it is highly recommended that each thread maintains its
+     *     own dedicated instance of HttpContext.
+     *  http://hc.apache.org/httpcomponents-client-ga/tutorial/html/connmgmt.html
+     */
+    private HttpContext newHttpContext(HttpPollIdentifier pollIdentifier, URI uri) {
+        HttpContext context = new BasicHttpContext();
+        
         // Set credentials
         if (uri != null && pollIdentifier.credentials.isPresent()) {
             String hostname = uri.getHost();
             int port = uri.getPort();
-            httpClient.getCredentialsProvider().setCredentials(
-                    new AuthScope(hostname, port), pollIdentifier.credentials.get());
+            CredentialsProvider credentialsProvider = new BasicCredentialsProvider();
+            credentialsProvider.setCredentials(new AuthScope(hostname, port), pollIdentifier.credentials.get());
+            context.setAttribute(ClientContext.CREDS_PROVIDER, credentialsProvider);
         }
-
-        return httpClient;
+        
+        return context;
     }
 
     @SuppressWarnings("unchecked")
@@ -348,14 +355,13 @@ public class HttpFeed extends AbstractFeed {
         return (Poller<HttpPollValue>) poller;
     }
     
-    private HttpPollValue httpGet(HttpClient httpClient, URI uri, Map<String,String> headers) throws ClientProtocolException, IOException {
-        HttpGet httpGet = new HttpGet(uri);
+    private HttpPollValue httpGet(HttpClient httpClient, HttpContext context, HttpGet httpGet, Map<String,String> headers) throws ClientProtocolException, IOException {
         for (Map.Entry<String,String> entry : headers.entrySet()) {
             httpGet.addHeader(entry.getKey(), entry.getValue());
         }
 
         long startTime = System.currentTimeMillis();
-        HttpResponse httpResponse = httpClient.execute(httpGet);
+        HttpResponse httpResponse = httpClient.execute(httpGet, context);
         try {
             return new HttpPollValue(httpResponse, startTime);
         } finally {
@@ -363,8 +369,7 @@ public class HttpFeed extends AbstractFeed {
         }
     }
     
-    private HttpPollValue httpPost(HttpClient httpClient, URI uri, Map<String,String> headers, byte[] body) throws ClientProtocolException, IOException {
-        HttpPost httpPost = new HttpPost(uri);
+    private HttpPollValue httpPost(HttpClient httpClient, HttpContext context, HttpPost httpPost, Map<String,String> headers, byte[] body) throws ClientProtocolException, IOException {
         for (Map.Entry<String,String> entry : headers.entrySet()) {
             httpPost.addHeader(entry.getKey(), entry.getValue());
         }
@@ -374,7 +379,7 @@ public class HttpFeed extends AbstractFeed {
         }
         
         long startTime = System.currentTimeMillis();
-        HttpResponse httpResponse = httpClient.execute(httpPost);
+        HttpResponse httpResponse = httpClient.execute(httpPost, context);
         
         try {
             return new HttpPollValue(httpResponse, startTime);
@@ -382,11 +387,4 @@ public class HttpFeed extends AbstractFeed {
             EntityUtils.consume(httpResponse.getEntity());
         }
     }
-    
-    private static class TrustAllStrategy implements TrustStrategy {
-        @Override
-        public boolean isTrusted(X509Certificate[] chain, String authType) throws CertificateException {
-            return true;
-        }
-    }
 }
@@ -1,13 +1,17 @@
 package brooklyn.event.feed.http;
 
+import static com.google.common.base.Preconditions.checkArgument;
+
 import java.net.URI;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 import brooklyn.event.AttributeSensor;
 import brooklyn.event.feed.FeedConfig;
 import brooklyn.event.feed.PollConfig;
 import brooklyn.util.collections.MutableMap;
 import brooklyn.util.net.URLParamEncoder;
+import brooklyn.util.time.Duration;
 
 import com.google.common.base.Function;
 import com.google.common.base.Joiner;
@@ -24,6 +28,7 @@ public class HttpPollConfig<T> extends PollConfig<HttpPollValue, T, HttpPollConf
     private Map<String, String> vars = ImmutableMap.<String,String>of();
     private Map<String, String> headers = ImmutableMap.<String,String>of();
     private byte[] body;
+    private long timeout = -1;
 
     public static final Predicate<HttpPollValue> DEFAULT_SUCCESS = new Predicate<HttpPollValue>() {
         @Override
@@ -42,6 +47,7 @@ public class HttpPollConfig<T> extends PollConfig<HttpPollValue, T, HttpPollConf
         vars = other.vars;
         method = other.method;
         headers = other.headers;
+        timeout = other.timeout;
     }
     
     public String getSuburl() {
@@ -60,6 +66,11 @@ public class HttpPollConfig<T> extends PollConfig<HttpPollValue, T, HttpPollConf
         return body;
     }
     
+    /** the timeout for connecting, and then for each read, or -1 if not set */
+    public long getTimeout() {
+        return timeout;
+    }
+    
     public HttpPollConfig<T> method(String val) {
         this.method = val; return this;
     }
@@ -80,6 +91,17 @@ public class HttpPollConfig<T> extends PollConfig<HttpPollValue, T, HttpPollConf
         this.body = val; return this;
     }
     
+    /** sets the timeout for connecting, and then for each read, overriding the shared http client's
+     * (see {@link SharedHttpClients#SOCKET_TIMEOUT}) */
+    public HttpPollConfig<T> timeout(Duration val) {
+        checkArgument(val.toMilliseconds() > 0, "timeout must be greater than zero");
+        this.timeout = val.toMilliseconds(); return this;
+    }
+    
+    public HttpPollConfig<T> timeout(long val, TimeUnit units) {
+        return timeout(Duration.of(val, units));
+    }
+    
     public URI buildUri(URI baseUri, Map<String,String> baseUriVars) {
         String uri = (baseUri != null ? baseUri.toString() : "") + (suburl != null ? suburl : "");
         Map<String,String> allvars = concat(baseUriVars, vars);
@@ -0,0 +1,126 @@
+package brooklyn.event.feed.http;
+
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.client.params.ClientPNames;
+import org.apache.http.conn.scheme.Scheme;
+import org.apache.http.conn.scheme.SchemeRegistry;
+import org.apache.http.conn.ssl.SSLSocketFactory;
+import org.apache.http.conn.ssl.TrustStrategy;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.impl.conn.SchemeRegistryFactory;
+import org.apache.http.impl.conn.tsccm.ThreadSafeClientConnManager;
+import org.apache.http.params.HttpConnectionParams;
+import org.apache.http.params.HttpParams;
+import org.apache.http.protocol.HttpContext;
+
+import brooklyn.config.ConfigKey;
+import brooklyn.config.ConfigMap;
+import brooklyn.event.basic.BasicConfigKey;
+import brooklyn.util.exceptions.Exceptions;
+
+/**
+ * Creates the pooled {@link org.apache.http.client.HttpClient} that is shared by everything in a
+ * management context that polls over http (see {@link brooklyn.management.internal.ManagementContextInternal#getHttpClient()}).
+ * <p>
+ * Connections are kept alive between polls, so that polling an entity re-uses its connection rather
+ * than opening a new one each time. The connection limits are configured with {@link #MAX_CONNECTIONS}
+ * and {@link #MAX_CONNECTIONS_PER_ROUTE}; and so that one slow or unresponsive host does not hold on
+ * to connections (and the polling threads) indefinitely, all requests time out by default (see {@link #SOCKET_TIMEOUT} etc).
+ * An {@link HttpFeed} can set shorter timeouts for its own requests, with {@link #setTimeouts(HttpParams, long, long)}.
+ * <p>
+ * As with the clients previously created for each {@link HttpFeed}, all https certificates are trusted.
+ * Callers should use a new {@link HttpContext} for each request (e.g. to supply credentials).
+ */
+public class SharedHttpClients {
+
+    public static final ConfigKey<Integer> MAX_CONNECTIONS = new BasicConfigKey<Integer>(
+            Integer.class, "brooklyn.http.maxConnections",
+            "the maximum number of open connections in the shared http client",
+            200);
+
+    public static final ConfigKey<Integer> MAX_CONNECTIONS_PER_ROUTE = new BasicConfigKey<Integer>(
+            Integer.class, "brooklyn.http.maxConnectionsPerRoute",
+            "the maximum number of open connections in the shared http client to any one host:port",
+            4);
+
+    public static final ConfigKey<Long> KEEP_ALIVE = new BasicConfigKey<Long>(
+            Long.class, "brooklyn.http.keepAlive",
+            "how long (in milliseconds) an idle connection is kept open, if the server does not say",
+            30*1000L);
+
+    public static final ConfigKey<Integer> CONNECTION_TIMEOUT = new BasicConfigKey<Integer>(
+            Integer.class, "brooklyn.http.connectionTimeout",
+            "timeout (in milliseconds) for establishing a connection; zero means no timeout",
+            30*1000);
+
+    public static final ConfigKey<Integer> SOCKET_TIMEOUT = new BasicConfigKey<Integer>(
+            Integer.class, "brooklyn.http.socketTimeout",
+            "timeout (in milliseconds) waiting for data on a connection; zero means no timeout",
+            30*1000);
+
+    public static final ConfigKey<Long> CONNECTION_REQUEST_TIMEOUT = new BasicConfigKey<Long>(
+            Long.class, "brooklyn.http.connectionRequestTimeout",
+            "timeout (in milliseconds) waiting for a connection from the pool, when all those to a host:port are in use; zero means no timeout",
+            30*1000L);
+
+    public static DefaultHttpClient newPooledHttpClient(ConfigMap config) {
+        SchemeRegistry schemeRegistry = SchemeRegistryFactory.createDefault();
+        try {
+            SSLSocketFactory socketFactory = new SSLSocketFactory(
+                    new TrustAllStrategy(), SSLSocketFactory.ALLOW_ALL_HOSTNAME_VERIFIER);
+            schemeRegistry.register(new Scheme("https", 443, socketFactory));
+        } catch (Exception e) {
+            throw Exceptions.propagate(e);
+        }
+
+        ThreadSafeClientConnManager connectionManager = new ThreadSafeClientConnManager(schemeRegistry);
+        connectionManager.setMaxTotal(config.getConfig(MAX_CONNECTIONS));
+        connectionManager.setDefaultMaxPerRoute(config.getConfig(MAX_CONNECTIONS_PER_ROUTE));
+
+        DefaultHttpClient httpClient = new DefaultHttpClient(connectionManager);
+        HttpParams params = httpClient.getParams();
+        HttpConnectionParams.setConnectionTimeout(params, config.getConfig(CONNECTION_TIMEOUT));
+        HttpConnectionParams.setSoTimeout(params, config.getConfig(SOCKET_TIMEOUT));
+        params.setLongParameter(ClientPNames.CONN_MANAGER_TIMEOUT, config.getConfig(CONNECTION_REQUEST_TIMEOUT));
+
+        final long keepAlive = config.getConfig(KEEP_ALIVE);
+        httpClient.setKeepAliveStrategy(new DefaultConnectionKeepAliveStrategy() {
+            @Override
+            public long getKeepAliveDuration(HttpResponse response, HttpContext context) {
+                long result = super.getKeepAliveDuration(response, context);
+                return (result >= 0) ? result : keepAlive;
+            }
+        });
+
+        return httpClient;
+    }
+
+    /**
+     * Sets the timeouts for a request (or all requests, if given the client's params); values that are
+     * not positive leave the corresponding timeouts unchanged.
+     * 
+     * @param connectionRequestTimeout how long to wait for a connection from the pool
+     * @param timeout how long to wait to connect, and then for each read
+     */
+    public static void setTimeouts(HttpParams params, long connectionRequestTimeout, long timeout) {
+        if (connectionRequestTimeout > 0) {
+            params.setLongParameter(ClientPNames.CONN_MANAGER_TIMEOUT, connectionRequestTimeout);
+        }
+        if (timeout > 0) {
+            int timeoutInt = (int) Math.min(timeout, Integer.MAX_VALUE);
+            HttpConnectionParams.setConnectionTimeout(params, timeoutInt);
+            HttpConnectionParams.setSoTimeout(params, timeoutInt);
+        }
+    }
+
+    private static class TrustAllStrategy implements TrustStrategy {
+        @Override
+        public boolean isTrusted(X509Certificate[] chain, String authType) throws CertificateException {
+            return true;
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package brooklyn.event.feed.ssh;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import brooklyn.location.basic.SshMachineLocation;
+import brooklyn.util.text.Identifiers;
+import brooklyn.util.text.StringEscapes.BashStringEscapes;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+
+/**
+ * Runs several ssh poll commands as a single remote script, so that polls of a machine with the same
+ * period cost one ssh exec rather than one each.
+ * <p>
+ * Each command is run in its own sub-shell (with its own env, and with {@code set -e} as for a script
+ * run on its own), and its stdout and stderr are delimited by marker lines. {@link #demultiplex(SshMachineLocation, int, String, String)}
+ * splits the output back into the {@link SshPollValue} that each command would have given if run separately,
+ * including the ssh tool's "Executed ..., result ..." trailer on stdout (with the command's own exit status).
+ */
+class MultiplexedSshPoll {
+
+    private static final Pattern EXECUTED_TRAILER = Pattern.compile("(?:^|\n)Executed (.*), result -?[0-9]+\n?$");
+
+    private final List<String> commands;
+    private final List<Map<String, String>> envs;
+    private final String marker;
+
+    MultiplexedSshPoll(List<String> commands, List<Map<String, String>> envs) {
+        this(commands, envs, "brooklyn-sshfeed-"+Identifiers.makeRandomId(8));
+    }
+
+    MultiplexedSshPoll(List<String> commands, List<Map<String, String>> envs, String marker) {
+        this.commands = ImmutableList.copyOf(checkNotNull(commands, "commands"));
+        this.envs = ImmutableList.copyOf(checkNotNull(envs, "envs"));
+        this.marker = checkNotNull(marker, "marker");
+        if (commands.size() != envs.size()) throw new IllegalArgumentException("Mismatched commands and envs: "+commands+"; "+envs);
+    }
+
+    public String getScript() {
+        StringBuilder result = new StringBuilder();
+        // failures are reported per command; the script itself should carry on to the next command
+        result.append("set +e\n");
+        for (int i = 0; i < commands.size(); i++) {
+            result.append("echo "+beginMarker(i)+"; echo "+beginMarker(i)+" >&2\n");
+            result.append("( set -e\n");
+            for (Map.Entry<String, String> entry : envs.get(i).entrySet()) {
+                if (entry.getKey() == null || entry.getValue() == null) continue;
+                result.append("export "+entry.getKey()+"=\""+BashStringEscapes.escapeLiteralForDoubleQuotedBash(entry.getValue())+"\"\n");
+            }
+            result.append(commands.get(i)+"\n");
+            result.append(")\n");
+            // the extra newline guarantees the end marker starts a line, and is stripped when demultiplexing
+            result.append("_brooklyn_rc=$?; echo; echo "+endMarker(i)+"-$_brooklyn_rc; echo >&2; echo "+endMarker(i)+" >&2\n");
+        }
+        result.append("exit 0\n");
+        return result.toString();
+    }
+
+    /**
+     * @return the poll value for each command, in order; null for any command whose output is incomplete
+     *         (e.g. if the script was killed part way through)
+     */
+    public List<SshPollValue> demultiplex(SshMachineLocation machine, int exitStatus, String stdout, String stderr) {
+        String scriptPath = extractScriptPath(stdout);
+        List<SshPollValue> result = Lists.newArrayListWithCapacity(commands.size());
+        for (int i = 0; i < commands.size(); i++) {
+            String out = extract(stdout, i);
+            String err = extract(stderr, i);
+            Integer commandExitStatus = extractExitStatus(stdout, i);
+            if (out == null || err == null || commandExitStatus == null) {
+                result.add(null);
+            } else {
+                // as if run on its own, where the ssh tool echoes the trailer after the script's output
+                if (scriptPath != null) out += executedTrailer(scriptPath, commandExitStatus);
+                result.add(new SshPollValue(machine, commandExitStatus, out, err));
+            }
+        }
+        return result;
+    }
+
+    /** the line the ssh tool writes to stdout after running a script (unless told not to) */
+    static String executedTrailer(String scriptPath, int exitStatus) {
+        return "Executed "+scriptPath+", result "+exitStatus+"\n";
+    }
+
+    /** @return the path of the script, from the ssh tool's trailer at the end of the output; or null if there is none */
+    private String extractScriptPath(String stdout) {
+        Matcher matcher = EXECUTED_TRAILER.matcher(stdout);
+        return matcher.find() ? matcher.group(1) : null;
+    }
+
+    private String beginMarker(int i) {
+        return marker+"-begin-"+i;
+    }
+
+    private String endMarker(int i) {
+        return marker+"-end-"+i;
+    }
+
+    private String extract(String text, int i) {
+        String begin = beginMarker(i)+"\n";
+        int start = text.indexOf(begin);
+        if (start < 0) return null;
+        start += begin.length();
+        // on stdout the end marker is followed by "-" and the exit status, on stderr by the end of the line
+        int end = text.indexOf("\n"+endMarker(i)+"-", start);
+        if (end < 0) end = text.indexOf("\n"+endMarker(i)+"\n", start);
+        if (end < 0) return null;
+        return text.substring(start, end);
+    }
+
+    private Integer extractExitStatus(String stdout, int i) {
+        String end = "\n"+endMarker(i)+"-";
+        int start = stdout.indexOf(end);
+        if (start < 0) return null;
+        start += end.length();
+        int lineEnd = stdout.indexOf('\n', start);
+        String val = (lineEnd < 0) ? stdout.substring(start) : stdout.substring(start, lineEnd);
+        try {
+            return Integer.parseInt(val.trim());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
@@ -17,19 +17,27 @@ import brooklyn.entity.basic.EntityLocal;
 import brooklyn.event.feed.AbstractFeed;
 import brooklyn.event.feed.AttributePollHandler;
 import brooklyn.event.feed.DelegatingPollHandler;
+import brooklyn.event.feed.PollHandler;
 import brooklyn.event.feed.Poller;
 import brooklyn.location.basic.SshMachineLocation;
 import brooklyn.util.collections.MutableMap;
 
 import com.google.common.base.Objects;
 import com.google.common.collect.HashMultimap;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.collect.SetMultimap;
 import com.google.common.collect.Sets;
 
 /**
  * Provides a feed of attribute values, by polling over ssh.
  * 
+ * Polls with the same period are run together as a single remote script, whose output is split
+ * back into the result for each command (see {@link Builder#mergePolls(boolean)}); the ssh connection
+ * to the machine is re-used between polls.
+ * 
  * Example usage (e.g. in an entity that extends SoftwareProcessImpl):
  * <pre>
  * {@code
@@ -75,6 +83,7 @@ public class SshFeed extends AbstractFeed {
         private long period = 500;
         private TimeUnit periodUnits = TimeUnit.MILLISECONDS;
         private List<SshPollConfig<?>> polls = Lists.newArrayList();
+        private boolean mergePolls = true;
         private volatile boolean built;
         
         public Builder entity(EntityLocal val) {
@@ -97,6 +106,14 @@ public class SshFeed extends AbstractFeed {
             polls.add(config);
             return this;
         }
+        /**
+         * Whether polls with the same period should be run together as one remote script (the default),
+         * or each with its own ssh exec.
+         */
+        public Builder mergePolls(boolean val) {
+            this.mergePolls = val;
+            return this;
+        }
         public SshFeed build() {
             built = true;
             SshFeed result = new SshFeed(this);
@@ -109,7 +126,7 @@ public class SshFeed extends AbstractFeed {
         }
     }
     
-    private static class SshPollIdentifier {
+    static class SshPollIdentifier {
         final String command;
         final Map<String, String> env;
 
@@ -135,6 +152,7 @@ public class SshFeed extends AbstractFeed {
     }
     
     private final SshMachineLocation machine;
+    private final boolean mergePolls;
     
     // Treat as immutable once built
     private final SetMultimap<SshPollIdentifier, SshPollConfig<?>> polls = HashMultimap.<SshPollIdentifier,SshPollConfig<?>>create();
@@ -142,6 +160,7 @@ public class SshFeed extends AbstractFeed {
     protected SshFeed(Builder builder) {
         super(builder.entity);
         machine = checkNotNull(builder.machine, "machine");
+        mergePolls = builder.mergePolls;
         
         for (SshPollConfig<?> config : builder.polls) {
             SshPollConfig<?> configCopy = new SshPollConfig(config);
@@ -154,23 +173,62 @@ public class SshFeed extends AbstractFeed {
 
     @Override
     protected void preStart() {
+        // polls with the same period are run together, as one remote script
+        Map<Long, List<SshPollIdentifier>> pollsByPeriod = Maps.newLinkedHashMap();
+        Map<SshPollIdentifier, DelegatingPollHandler<SshPollValue>> handlersByPoll = Maps.newLinkedHashMap();
+        
         for (final SshPollIdentifier pollInfo : polls.keySet()) {
             Set<SshPollConfig<?>> configs = polls.get(pollInfo);
             long minPeriod = Integer.MAX_VALUE;
-            Set<AttributePollHandler<SshPollValue>> handlers = Sets.newLinkedHashSet();
+            Set<AttributePollHandler<? super SshPollValue>> handlers = Sets.newLinkedHashSet();
 
             for (SshPollConfig<?> config : configs) {
                 handlers.add(new AttributePollHandler<SshPollValue>(config, entity, this));
                 if (config.getPeriod() > 0) minPeriod = Math.min(minPeriod, config.getPeriod());
             }
             
-            getPoller().scheduleAtFixedRate(
-                    new Callable<SshPollValue>() {
-                        public SshPollValue call() throws Exception {
-                            return exec(pollInfo.command, pollInfo.env);
-                        }}, 
-                    new DelegatingPollHandler(handlers), 
-                    minPeriod);
+            handlersByPoll.put(pollInfo, new DelegatingPollHandler<SshPollValue>(handlers));
+            List<SshPollIdentifier> samePeriod = pollsByPeriod.get(minPeriod);
+            if (samePeriod == null) {
+                samePeriod = Lists.newArrayList();
+                pollsByPeriod.put(minPeriod, samePeriod);
+            }
+            samePeriod.add(pollInfo);
+        }
+        
+        for (Map.Entry<Long, List<SshPollIdentifier>> entry : pollsByPeriod.entrySet()) {
+            long period = entry.getKey();
+            List<SshPollIdentifier> pollInfos = entry.getValue();
+            
+            if (mergePolls && pollInfos.size() > 1) {
+                List<String> commands = Lists.newArrayList();
+                List<Map<String, String>> envs = Lists.newArrayList();
+                List<DelegatingPollHandler<SshPollValue>> handlers = Lists.newArrayList();
+                for (SshPollIdentifier pollInfo : pollInfos) {
+                    commands.add(pollInfo.command);
+                    envs.add(pollInfo.env);
+                    handlers.add(handlersByPoll.get(pollInfo));
+                }
+                final MultiplexedSshPoll multiplexed = new MultiplexedSshPoll(commands, envs);
+                
+                getMultiplexedPoller().scheduleAtFixedRate(
+                        new Callable<List<SshPollValue>>() {
+                            public List<SshPollValue> call() throws Exception {
+                                return execMultiplexed(multiplexed);
+                            }}, 
+                        new MultiplexedPollHandler(handlers), 
+                        period);
+            } else {
+                for (final SshPollIdentifier pollInfo : pollInfos) {
+                    getPoller().scheduleAtFixedRate(
+                            new Callable<SshPollValue>() {
+                                public SshPollValue call() throws Exception {
+                                    return exec(pollInfo.command, pollInfo.env);
+                                }}, 
+                            handlersByPoll.get(pollInfo), 
+                            period);
+                }
+            }
         }
     }
     
@@ -188,4 +246,69 @@ public class SshFeed extends AbstractFeed {
 
         return new SshPollValue(machine, exitStatus, new String(stdout.toByteArray()), new String(stderr.toByteArray()));
     }
+
+    @SuppressWarnings("unchecked")
+    private Poller<List<SshPollValue>> getMultiplexedPoller() {
+        return (Poller<List<SshPollValue>>) (Poller<?>) poller;
+    }
+    
+    private List<SshPollValue> execMultiplexed(MultiplexedSshPoll multiplexed) throws IOException {
+        String script = multiplexed.getScript();
+        SshPollValue result = exec(script, ImmutableMap.<String,String>of());
+        return multiplexed.demultiplex(machine, result.getExitStatus(), result.getStdout(), result.getStderr());
+    }
+    
+    /**
+     * Passes the result of each command in a merged poll to the handlers for that command; a command
+     * with no result (e.g. because the script was killed part way through) is treated as an exception.
+     */
+    private static class MultiplexedPollHandler implements PollHandler<List<SshPollValue>> {
+        private final List<DelegatingPollHandler<SshPollValue>> delegates;
+        
+        MultiplexedPollHandler(List<DelegatingPollHandler<SshPollValue>> delegates) {
+            this.delegates = ImmutableList.copyOf(delegates);
+        }
+        
+        @Override
+        public boolean checkSuccess(List<SshPollValue> val) {
+            // success is decided per command, in onSuccess
+            return true;
+        }
+
+        @Override
+        public void onSuccess(List<SshPollValue> vals) {
+            for (int i = 0; i < delegates.size(); i++) {
+                DelegatingPollHandler<SshPollValue> delegate = delegates.get(i);
+                SshPollValue val = vals.get(i);
+                try {
+                    if (val == null) {
+                        delegate.onException(new IllegalStateException("No output for command in merged ssh poll"));
+                    } else if (delegate.checkSuccess(val)) {
+                        delegate.onSuccess(val);
+                    } else {
+                        delegate.onFailure(val);
+                    }
+                } catch (Exception e) {
+                    delegate.onException(e);
+                }
+            }
+        }
+
+        @Override
+        public void onFailure(List<SshPollValue> val) {
+            onSuccess(val);
+        }
+
+        @Override
+        public void onError(Exception error) {
+            onException(error);
+        }
+
+        @Override
+        public void onException(Exception exception) {
+            for (DelegatingPollHandler<SshPollValue> delegate : delegates) {
+                delegate.onException(exception);
+            }
+        }
+    }
 }
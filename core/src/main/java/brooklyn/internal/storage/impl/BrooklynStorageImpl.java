@@ -1,69 +1,84 @@
 package brooklyn.internal.storage.impl;
 
-import java.lang.ref.WeakReference;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentMap;
 
+import brooklyn.config.BrooklynProperties;
+import brooklyn.config.ConfigKey;
+import brooklyn.event.basic.BasicConfigKey;
 import brooklyn.internal.storage.BrooklynStorage;
 import brooklyn.internal.storage.DataGrid;
 import brooklyn.internal.storage.Reference;
 
 import com.google.common.collect.ImmutableList;
-import com.google.common.collect.Maps;
+import com.google.common.collect.MapMaker;
 
 public class BrooklynStorageImpl implements BrooklynStorage {
 
+    public static final ConfigKey<String> DATAGRID_TYPE = new BasicConfigKey<String>(
+            String.class, "brooklyn.storage.datagrid",
+            "the datagrid implementation to use for storage: 'inmemory' (the default), or 'offheap' to keep suitable values outside of the heap",
+            "inmemory");
+
+    /**
+     * Creates the datagrid implementation selected by {@link #DATAGRID_TYPE}.
+     */
+    public static DataGrid newDatagrid(BrooklynProperties brooklynProperties) {
+        String type = brooklynProperties.getConfig(DATAGRID_TYPE);
+        if (type == null || "inmemory".equalsIgnoreCase(type.trim())) {
+            return new InmemoryDatagrid();
+        } else if ("offheap".equalsIgnoreCase(type.trim())) {
+            return new OffHeapDatagrid(brooklynProperties);
+        } else {
+            throw new IllegalArgumentException("Unknown datagrid type '"+type+"' for "+DATAGRID_TYPE.getName()+"; expected 'inmemory' or 'offheap'");
+        }
+    }
+
     private final DataGrid datagrid;
     private final ConcurrentMap<String, Object> refsMap;
     private final ConcurrentMap<String, Object> listsMap;
-    private final ConcurrentMap<String, WeakReference<Reference<?>>> refsCache;
-    private final ConcurrentMap<String, WeakReference<Reference<?>>> listRefsCache;
+    
+    // Weak-valued caches: a reference that is no longer used by anyone is cleared by the GC, and its
+    // entry purged via the cache's reference queue (rather than by overriding finalize(), which put
+    // every reference through the finalizer thread and delayed its collection).
+    private final ConcurrentMap<String, Reference<?>> refsCache;
+    private final ConcurrentMap<String, Reference<?>> listRefsCache;
     
     public BrooklynStorageImpl(DataGrid datagrid) {
         this.datagrid = datagrid;
         this.refsMap = datagrid.getMap("refs");
         this.listsMap = datagrid.getMap("lists");
-        this.refsCache = Maps.newConcurrentMap();
-        this.listRefsCache = Maps.newConcurrentMap();
+        this.refsCache = new MapMaker().weakValues().makeMap();
+        this.listRefsCache = new MapMaker().weakValues().makeMap();
     }
     
     @Override
     public <T> Reference<T> getReference(final String id) {
         // Can use different ref instances; no need to always return same one. Caching is an
         // optimisation to just avoid extra object creation.
-        WeakReference<Reference<?>> weakRef = refsCache.get(id);
-        Reference<?> ref = (weakRef != null) ? weakRef.get() : null;
+        Reference<?> ref = refsCache.get(id);
         if (ref == null) {
-            ref = new BackedReference<T>(refsMap, id) {
-                @Override protected void finalize() {
-                    // TODO Don't like using finalize due to performance overhead, but not
-                    // optimising yet. Could use PhantomReference instead; see
-                    // http://java.dzone.com/articles/finalization-and-phantom
-                    refsCache.remove(id);
-                }
-            };
-            refsCache.putIfAbsent(id, new WeakReference<Reference<?>>(ref));
+            ref = new BackedReference<T>(refsMap, id);
+            Reference<?> existing = refsCache.putIfAbsent(id, ref);
+            if (existing != null) ref = existing;
         }
         return (Reference<T>) ref;
     }
     
     @Override
     public <T> Reference<List<T>> getNonConcurrentList(final String id) {
-        WeakReference<Reference<?>> weakRef = listRefsCache.get(id);
-        Reference<?> ref = (weakRef != null) ? weakRef.get() : null;
+        Reference<?> ref = listRefsCache.get(id);
         if (ref == null) {
             ref = new BackedReference<List<T>>(listsMap, id) {
                 @Override public List<T> get() {
                     List<T> result = super.get();
                     return (result == null ? ImmutableList.<T>of() : Collections.unmodifiableList(result));
                 }
-                @Override protected void finalize() {
-                    listRefsCache.remove(id);
-                }
             };
-            listRefsCache.putIfAbsent(id, new WeakReference<Reference<?>>(ref));
+            Reference<?> existing = listRefsCache.putIfAbsent(id, ref);
+            if (existing != null) ref = existing;
         }
         return (Reference<List<T>>) ref;
     }
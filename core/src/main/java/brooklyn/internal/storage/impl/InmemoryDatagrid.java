@@ -1,6 +1,6 @@
 package brooklyn.internal.storage.impl;
 
-import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 
 import brooklyn.internal.storage.DataGrid;
@@ -9,41 +9,60 @@ import com.google.common.collect.Maps;
 
 /**
  * A simple implementation of datagrid backed by in-memory (unpersisted) maps, within a single JVM.
- * 
+ * <p>
+ * The map-of-maps is a (segmented) {@link ConcurrentHashMap}, so looking up an existing map
+ * does not take any lock; creating a new map is done optimistically with
+ * {@link ConcurrentMap#putIfAbsent(Object, Object)}.
+ *
  * @author aled
  */
 public class InmemoryDatagrid implements DataGrid {
 
-    private final Map<String,Map<?,?>> maps = Maps.newLinkedHashMap();
+    /** number of segments in the map-of-maps; sized for heavy concurrent access from entity threads */
+    private static final int CONCURRENCY_LEVEL = 64;
+
+    private final ConcurrentMap<String,ConcurrentMap<?,?>> maps = new ConcurrentHashMap<String,ConcurrentMap<?,?>>(16, 0.75f, CONCURRENCY_LEVEL);
 
     @SuppressWarnings("unchecked")
     @Override
     public <K, V> ConcurrentMap<K, V> getMap(String id) {
-        synchronized (maps) {
-            ConcurrentMap<K, V> result = (ConcurrentMap<K, V>) maps.get(id);
+        ConcurrentMap<K, V> result = (ConcurrentMap<K, V>) maps.get(id);
+        if (result == null) {
+            ConcurrentMap<K, V> candidate = newMap();
+            result = (ConcurrentMap<K, V>) maps.putIfAbsent(id, candidate);
             if (result == null) {
-                result = newMap();
-                maps.put(id, result);
+                result = candidate;
+            } else {
+                onDiscarded(candidate);
             }
-            return result;
         }
+        return result;
     }
-    
+
     // TODO Not doing Maps.newConcurrentMap() because needs to store null values.
     // Easy to avoid for Refererence<?> but harder for entity ConfigMap where the user
     // can insert null values.
-    // 
+    //
     // Could write a decorator that switches null values for a null marker, and back again.
     //
-    private <K,V> ConcurrentMap<K,V> newMap() {
+    protected <K,V> ConcurrentMap<K,V> newMap() {
         //return Collections.synchronizedMap(new HashMap<K, V>());
         return new ConcurrentMapAcceptingNullVals<K,V>(Maps.<K,V>newConcurrentMap());
     }
 
+    /**
+     * Called when a map is no longer part of the datagrid (either removed, or created
+     * but lost a race to be added), so that subclasses can release any resources it holds.
+     */
+    protected void onDiscarded(ConcurrentMap<?,?> map) {
+        // no-op
+    }
+
     @Override
     public void remove(String id) {
-        synchronized (maps) {
-            maps.remove(id);
+        ConcurrentMap<?,?> removed = maps.remove(id);
+        if (removed != null) {
+            onDiscarded(removed);
         }
     }
 }
@@ -0,0 +1,271 @@
+package brooklyn.internal.storage.impl;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+
+import com.google.common.base.Objects;
+import com.google.common.collect.Maps;
+
+/**
+ * A ConcurrentMap (accepting null values) whose values are held in an {@link OffHeapValueStore}
+ * where possible. Keys, and any values the store does not accept, are held on-heap.
+ * <p>
+ * Values are copied into the store on write, and decoded on each read; so this is only suitable
+ * for values whose identity does not matter (which is enforced by the store only accepting
+ * immutable value types).
+ * <p>
+ * All writes, and reads of off-heap values, for a given key are guarded by one of a fixed set
+ * of striped locks, so that a block is never freed while it is being decoded, and so that the
+ * conditional operations are atomic.
+ * <p>
+ * As with {@link ConcurrentMapAcceptingNullVals}, {@link #values()} and {@link #entrySet()}
+ * return immutable snapshots of the map's contents.
+ */
+public class OffHeapConcurrentMap<K, V> implements ConcurrentMap<K, V> {
+
+    private static final int NUM_LOCKS = 32;
+
+    private static enum Marker {
+        NULL;
+    }
+
+    /** on-heap placeholder for a value held in the store */
+    private static final class OffHeapValue {
+        final long address;
+        OffHeapValue(long address) {
+            this.address = address;
+        }
+    }
+
+    private final OffHeapValueStore store;
+    private final ConcurrentMap<K, Object> delegate = Maps.newConcurrentMap();
+    private final Object[] locks = new Object[NUM_LOCKS];
+
+    public OffHeapConcurrentMap(OffHeapValueStore store) {
+        this.store = checkNotNull(store, "store");
+        for (int i = 0; i < NUM_LOCKS; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    private Object lockFor(Object key) {
+        int h = key.hashCode();
+        h ^= (h >>> 16);
+        return locks[(h & 0x7fffffff) % NUM_LOCKS];
+    }
+
+    /** converts the value to the form held in the delegate; caller must free it if not used */
+    private Object toInternal(V value) {
+        if (value == null) return Marker.NULL;
+        long address = store.store(value);
+        return (address == OffHeapValueStore.NOT_STORED) ? value : new OffHeapValue(address);
+    }
+
+    /** converts back from the delegate's form; for an off-heap value, caller must hold the key's lock */
+    @SuppressWarnings("unchecked")
+    private V fromInternal(Object internal) {
+        if (internal == null || internal == Marker.NULL) return null;
+        if (internal instanceof OffHeapValue) return (V) store.load(((OffHeapValue)internal).address);
+        return (V) internal;
+    }
+
+    private void release(Object internal) {
+        if (internal instanceof OffHeapValue) store.free(((OffHeapValue)internal).address);
+    }
+
+    @Override
+    public V get(Object key) {
+        Object internal = delegate.get(key);
+        if (!(internal instanceof OffHeapValue)) return fromInternal(internal);
+        synchronized (lockFor(key)) {
+            return fromInternal(delegate.get(key));
+        }
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return delegate.containsKey(key);
+    }
+
+    @Override
+    public boolean containsValue(Object value) {
+        for (K key : delegate.keySet()) {
+            if (containsEntry(key, value)) return true;
+        }
+        return false;
+    }
+
+    private boolean containsEntry(Object key, Object value) {
+        synchronized (lockFor(key)) {
+            return delegate.containsKey(key) && Objects.equal(fromInternal(delegate.get(key)), value);
+        }
+    }
+
+    @Override
+    public int size() {
+        return delegate.size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return delegate.isEmpty();
+    }
+
+    @Override
+    public V put(K key, V value) {
+        Object internal = toInternal(value);
+        synchronized (lockFor(key)) {
+            Object old = delegate.put(key, internal);
+            V result = fromInternal(old);
+            release(old);
+            return result;
+        }
+    }
+
+    @Override
+    public void putAll(Map<? extends K, ? extends V> vals) {
+        for (Map.Entry<? extends K, ? extends V> entry : vals.entrySet()) {
+            put(entry.getKey(), entry.getValue());
+        }
+    }
+
+    @Override
+    public V putIfAbsent(K key, V value) {
+        synchronized (lockFor(key)) {
+            Object old = delegate.get(key);
+            if (old != null) return fromInternal(old);
+            delegate.put(key, toInternal(value));
+            return null;
+        }
+    }
+
+    @Override
+    public V remove(Object key) {
+        synchronized (lockFor(key)) {
+            Object old = delegate.remove(key);
+            V result = fromInternal(old);
+            release(old);
+            return result;
+        }
+    }
+
+    @Override
+    public boolean remove(Object key, Object value) {
+        synchronized (lockFor(key)) {
+            if (!containsEntry(key, value)) return false;
+            release(delegate.remove(key));
+            return true;
+        }
+    }
+
+    @Override
+    public V replace(K key, V value) {
+        synchronized (lockFor(key)) {
+            if (!delegate.containsKey(key)) return null;
+            return put(key, value);
+        }
+    }
+
+    @Override
+    public boolean replace(K key, V oldValue, V newValue) {
+        synchronized (lockFor(key)) {
+            if (!containsEntry(key, oldValue)) return false;
+            put(key, newValue);
+            return true;
+        }
+    }
+
+    @Override
+    public void clear() {
+        for (K key : delegate.keySet()) {
+            remove(key);
+        }
+    }
+
+    @Override
+    public Set<K> keySet() {
+        // Removal through the key set must go via this map, to free any off-heap block
+        return new AbstractSet<K>() {
+            @Override public Iterator<K> iterator() {
+                final Iterator<K> iter = delegate.keySet().iterator();
+                return new Iterator<K>() {
+                    private K last;
+                    @Override public boolean hasNext() {
+                        return iter.hasNext();
+                    }
+                    @Override public K next() {
+                        return last = iter.next();
+                    }
+                    @Override public void remove() {
+                        if (last == null) throw new IllegalStateException();
+                        OffHeapConcurrentMap.this.remove(last);
+                        last = null;
+                    }
+                };
+            }
+            @Override public int size() {
+                return delegate.size();
+            }
+            @Override public boolean contains(Object o) {
+                return delegate.containsKey(o);
+            }
+            @Override public boolean remove(Object o) {
+                if (!delegate.containsKey(o)) return false;
+                OffHeapConcurrentMap.this.remove(o);
+                return true;
+            }
+        };
+    }
+
+    @Override
+    public Set<Map.Entry<K, V>> entrySet() {
+        // Note that returns an immutable snapshot
+        Set<Map.Entry<K, V>> result = new LinkedHashSet<Map.Entry<K, V>>(delegate.size());
+        for (K key : delegate.keySet()) {
+            synchronized (lockFor(key)) {
+                if (delegate.containsKey(key)) {
+                    result.add(new AbstractMap.SimpleEntry<K,V>(key, fromInternal(delegate.get(key))));
+                }
+            }
+        }
+        return Collections.unmodifiableSet(result);
+    }
+
+    @Override
+    public Collection<V> values() {
+        // Note that returns an immutable snapshot
+        List<V> result = new ArrayList<V>(delegate.size());
+        for (Map.Entry<K, V> entry : entrySet()) {
+            result.add(entry.getValue());
+        }
+        return Collections.unmodifiableCollection(result);
+    }
+
+    @Override
+    public int hashCode() {
+        return entrySet().hashCode();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (o == this) return true;
+        if (!(o instanceof Map)) return false;
+        return Maps.newLinkedHashMap(this).equals(o);
+    }
+
+    @Override
+    public String toString() {
+        return Maps.newLinkedHashMap(this).toString();
+    }
+}
@@ -0,0 +1,60 @@
+package brooklyn.internal.storage.impl;
+
+import java.util.concurrent.ConcurrentMap;
+
+import brooklyn.config.BrooklynProperties;
+import brooklyn.config.ConfigKey;
+import brooklyn.event.basic.BasicConfigKey;
+
+/**
+ * An in-memory datagrid which keeps (suitable) values outside of the java heap,
+ * to reduce GC pressure when there are a great many string-valued attributes and config.
+ * All maps share a single {@link OffHeapValueStore}.
+ * <p>
+ * Selected with {@link BrooklynStorageImpl#DATAGRID_TYPE} set to {@code offheap}.
+ */
+public class OffHeapDatagrid extends InmemoryDatagrid {
+
+    public static final ConfigKey<Integer> MAX_SIZE_MB = new BasicConfigKey<Integer>(
+            Integer.class, "brooklyn.storage.offHeap.maxSizeMb",
+            "the maximum memory, in megabytes, to allocate outside of the heap for datagrid values; values are kept on-heap when full",
+            256);
+
+    public static final ConfigKey<Integer> SLAB_SIZE_KB = new BasicConfigKey<Integer>(
+            Integer.class, "brooklyn.storage.offHeap.slabSizeKb",
+            "the size, in kilobytes, of each direct buffer allocated (a power of two); also the largest value that can be stored off-heap",
+            1024);
+
+    public static final ConfigKey<Integer> MIN_VALUE_SIZE = new BasicConfigKey<Integer>(
+            Integer.class, "brooklyn.storage.offHeap.minValueSize",
+            "the minimum size, in bytes, of an encoded value for it to be stored off-heap; smaller values are cheaper to keep on-heap",
+            32);
+
+    private final OffHeapValueStore store;
+
+    public OffHeapDatagrid(BrooklynProperties brooklynProperties) {
+        this(new OffHeapValueStore(
+                brooklynProperties.getConfig(SLAB_SIZE_KB) * 1024,
+                brooklynProperties.getConfig(MAX_SIZE_MB) * 1024L * 1024L,
+                brooklynProperties.getConfig(MIN_VALUE_SIZE)));
+    }
+
+    public OffHeapDatagrid(OffHeapValueStore store) {
+        this.store = store;
+    }
+
+    public OffHeapValueStore getValueStore() {
+        return store;
+    }
+
+    @Override
+    protected <K, V> ConcurrentMap<K, V> newMap() {
+        return new OffHeapConcurrentMap<K,V>(store);
+    }
+
+    @Override
+    protected void onDiscarded(ConcurrentMap<?, ?> map) {
+        // frees any off-heap blocks
+        map.clear();
+    }
+}
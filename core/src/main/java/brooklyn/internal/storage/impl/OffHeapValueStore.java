@@ -0,0 +1,217 @@
+package brooklyn.internal.storage.impl;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.base.Charsets;
+
+/**
+ * Stores immutable values outside of the java heap, in direct {@link ByteBuffer} slabs.
+ * <p>
+ * Only values with a compact, identity-free encoding are stored: currently {@link String}s
+ * (as latin-1 when possible, otherwise UTF-8). Anything else (and anything too large for a
+ * block, or when the store is full) is rejected by {@link #store(Object)}, and the caller is
+ * expected to keep the value on-heap instead.
+ * <p>
+ * Memory is allocated from slabs in power-of-two size classes, with a free-list per class;
+ * a slab is never returned to the OS until the store is garbage collected.
+ * <p>
+ * This class does not protect against a block being read after it has been freed:
+ * callers must ensure that {@link #load(long)} and {@link #free(long)} for a given address
+ * do not race (see {@link OffHeapConcurrentMap}, which uses lock striping).
+ */
+public class OffHeapValueStore {
+
+    /** returned by {@link #store(Object)} when the value is not stored off-heap */
+    public static final long NOT_STORED = -1;
+
+    private static final byte TAG_STRING_LATIN1 = 1;
+    private static final byte TAG_STRING_UTF8 = 2;
+
+    /** block header: int length of payload (including tag byte) */
+    private static final int HEADER_SIZE = 4;
+    private static final int MIN_BLOCK_SIZE_BITS = 5;
+
+    private final int slabSize;
+    private final long maxSize;
+    private final int minValueSize;
+    private final int numSizeClasses;
+
+    /** copy-on-write, as slabs are added rarely but looked up on every access */
+    private final List<ByteBuffer> slabs = new CopyOnWriteArrayList<ByteBuffer>();
+    private final LongStack[] freeLists;
+    private int currentSlabOffset;
+
+    private final AtomicLong usedBytes = new AtomicLong();
+    private final AtomicLong numValues = new AtomicLong();
+    private final AtomicLong numRejected = new AtomicLong();
+
+    /**
+     * @param slabSize     size of each direct buffer allocated (must be a power of two, at least 64 bytes);
+     *                     also the largest value (once encoded) that can be stored
+     * @param maxSize      total number of bytes that may be allocated off-heap
+     * @param minValueSize values whose encoding is smaller than this are not worth storing off-heap
+     */
+    public OffHeapValueStore(int slabSize, long maxSize, int minValueSize) {
+        checkArgument(slabSize >= (1 << (MIN_BLOCK_SIZE_BITS+1)) && Integer.bitCount(slabSize) == 1, "slabSize must be a power of two, at least 64: %s", slabSize);
+        checkArgument(maxSize >= slabSize, "maxSize %s must be at least slabSize %s", maxSize, slabSize);
+        this.slabSize = slabSize;
+        this.maxSize = maxSize;
+        this.minValueSize = minValueSize;
+        this.numSizeClasses = Integer.numberOfTrailingZeros(slabSize) - MIN_BLOCK_SIZE_BITS + 1;
+        this.freeLists = new LongStack[numSizeClasses];
+        for (int i = 0; i < numSizeClasses; i++) {
+            freeLists[i] = new LongStack();
+        }
+        this.currentSlabOffset = slabSize; // forces allocation of first slab on first use
+    }
+
+    /**
+     * Encodes and stores the value off-heap, returning its address; or returns {@link #NOT_STORED}
+     * if the value is of an unsupported type, is too small to be worthwhile, is too large,
+     * or if the store is full.
+     */
+    public long store(Object value) {
+        byte[] encoded = encode(value);
+        if (encoded == null || encoded.length < minValueSize) {
+            return NOT_STORED;
+        }
+        int blockSize = HEADER_SIZE + encoded.length;
+        if (blockSize > slabSize) {
+            numRejected.incrementAndGet();
+            return NOT_STORED;
+        }
+        long address = allocate(sizeClassOf(blockSize));
+        if (address == NOT_STORED) {
+            numRejected.incrementAndGet();
+            return NOT_STORED;
+        }
+        ByteBuffer buf = slabFor(address).duplicate();
+        buf.position(offset(address));
+        buf.putInt(encoded.length);
+        buf.put(encoded);
+        usedBytes.addAndGet(blockSize);
+        numValues.incrementAndGet();
+        return address;
+    }
+
+    /** decodes the value stored at this address */
+    public Object load(long address) {
+        ByteBuffer buf = slabFor(address).duplicate();
+        buf.position(offset(address));
+        int len = buf.getInt();
+        byte tag = buf.get();
+        byte[] payload = new byte[len-1];
+        buf.get(payload);
+        switch (tag) {
+        case TAG_STRING_LATIN1: return new String(payload, Charsets.ISO_8859_1);
+        case TAG_STRING_UTF8: return new String(payload, Charsets.UTF_8);
+        default: throw new IllegalStateException("Corrupt off-heap value at "+address+": tag "+tag);
+        }
+    }
+
+    /** releases the block at this address, for re-use by subsequent values */
+    public void free(long address) {
+        int len = slabFor(address).getInt(offset(address));
+        int blockSize = HEADER_SIZE + len;
+        int sizeClass = sizeClassOf(blockSize);
+        synchronized (this) {
+            freeLists[sizeClass].push(address);
+        }
+        usedBytes.addAndGet(-blockSize);
+        numValues.decrementAndGet();
+    }
+
+    /** bytes reserved in direct buffers */
+    public long getAllocatedBytes() {
+        return (long) slabs.size() * slabSize;
+    }
+
+    /** bytes currently occupied by live values (including block headers, excluding rounding to size class) */
+    public long getUsedBytes() {
+        return usedBytes.get();
+    }
+
+    public long getNumValues() {
+        return numValues.get();
+    }
+
+    /** number of values that could have been stored, but were too large or the store was full */
+    public long getNumRejected() {
+        return numRejected.get();
+    }
+
+    private synchronized long allocate(int sizeClass) {
+        LongStack free = freeLists[sizeClass];
+        if (!free.isEmpty()) {
+            return free.pop();
+        }
+        int blockSize = 1 << (sizeClass + MIN_BLOCK_SIZE_BITS);
+        if (currentSlabOffset + blockSize > slabSize) {
+            if ((long) (slabs.size()+1) * slabSize > maxSize) {
+                return NOT_STORED;
+            }
+            slabs.add(ByteBuffer.allocateDirect(slabSize));
+            currentSlabOffset = 0;
+        }
+        long result = ((long) (slabs.size()-1) << 32) | currentSlabOffset;
+        currentSlabOffset += blockSize;
+        return result;
+    }
+
+    private ByteBuffer slabFor(long address) {
+        return slabs.get((int) (address >>> 32));
+    }
+
+    private static int offset(long address) {
+        return (int) address;
+    }
+
+    private static int sizeClassOf(int blockSize) {
+        int bits = 32 - Integer.numberOfLeadingZeros(blockSize - 1);
+        return Math.max(0, bits - MIN_BLOCK_SIZE_BITS);
+    }
+
+    /** compact encoding: a tag byte followed by the payload; or null if the value's type is not supported */
+    static byte[] encode(Object value) {
+        if (!(value instanceof String)) return null;
+        String s = (String) value;
+        boolean latin1 = true;
+        for (int i = 0; i < s.length(); i++) {
+            if (s.charAt(i) > 0xFF) {
+                latin1 = false;
+                break;
+            }
+        }
+        byte[] payload = s.getBytes(latin1 ? Charsets.ISO_8859_1 : Charsets.UTF_8);
+        byte[] result = new byte[payload.length+1];
+        result[0] = latin1 ? TAG_STRING_LATIN1 : TAG_STRING_UTF8;
+        System.arraycopy(payload, 0, result, 1, payload.length);
+        return result;
+    }
+
+    /** minimal growable stack of primitive longs, to avoid boxing free-list entries */
+    private static class LongStack {
+        private long[] vals = new long[16];
+        private int size;
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+        void push(long val) {
+            if (size == vals.length) {
+                long[] newVals = new long[size*2];
+                System.arraycopy(vals, 0, newVals, 0, size);
+                vals = newVals;
+            }
+            vals[size++] = val;
+        }
+        long pop() {
+            return vals[--size];
+        }
+    }
+}
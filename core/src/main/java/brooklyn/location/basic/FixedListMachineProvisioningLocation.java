@@ -204,6 +204,11 @@ implements MachineProvisioningLocation<T>, Closeable {
         return machine;
     }
 
+    @Override
+    public List<T> obtain(int count, Map<?,?> flags) throws NoMachinesAvailableException {
+        return LocationProvisioningUtils.obtainEach(this, count, flags);
+    }
+
     @Override
     public void release(T machine) {
         synchronized (lock) {
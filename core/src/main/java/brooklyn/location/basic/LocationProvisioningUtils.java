@@ -0,0 +1,43 @@
+package brooklyn.location.basic;
+
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import brooklyn.location.MachineLocation;
+import brooklyn.location.MachineProvisioningLocation;
+import brooklyn.location.NoMachinesAvailableException;
+import brooklyn.util.exceptions.Exceptions;
+
+import com.google.common.collect.Lists;
+
+public class LocationProvisioningUtils {
+
+    private static final Logger LOG = LoggerFactory.getLogger(LocationProvisioningUtils.class);
+
+    /** obtains the given number of machines from the location one at a time, for locations which cannot provision in batches;
+     * if any cannot be obtained, those already obtained are released and the exception is rethrown
+     * @see MachineProvisioningLocation#obtain(int, Map) */
+    public static <T extends MachineLocation> List<T> obtainEach(MachineProvisioningLocation<T> location, int count, Map<?,?> flags) throws NoMachinesAvailableException {
+        List<T> result = Lists.newArrayListWithCapacity(count);
+        try {
+            for (int i = 0; i < count; i++) {
+                result.add(location.obtain(flags));
+            }
+            return result;
+        } catch (Exception e) {
+            LOG.warn("Failed to obtain "+count+" machines in "+location+" (obtained "+result.size()+"); releasing those obtained", e);
+            for (T machine : result) {
+                try {
+                    location.release(machine);
+                } catch (Exception e2) {
+                    LOG.warn("Problem releasing "+machine+" in "+location+", after failing to obtain "+count+" machines; continuing", e2);
+                }
+            }
+            if (e instanceof NoMachinesAvailableException) throw (NoMachinesAvailableException) e;
+            throw Exceptions.propagate(e);
+        }
+    }
+}
@@ -3,6 +3,8 @@ package brooklyn.location.basic;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -54,6 +56,10 @@ public class SimulatedLocation extends AbstractLocation implements MachineProvis
         return this;
     }
 
+    public List<MachineLocation> obtain(int count, Map<?,?> flags) {
+        return Collections.<MachineLocation>nCopies(count, this);
+    }
+
     public void release(MachineLocation machine) {
     }
 
@@ -140,6 +140,7 @@ public class SshMachineLocation extends AbstractLocation implements MachineLocat
     /** specifies config keys where a change in the value does not require a new SshTool instance,
      * i.e. these can be specified per command on the tool */ 
     public static final Set<ConfigKey<?>> REUSABLE_SSH_PROPS = ImmutableSet.of(STDOUT, STDERR, SCRIPT_DIR);
+    private static final Set<String> REUSABLE_SSH_PROP_NAMES = ImmutableSet.of(STDOUT.getName(), STDERR.getName(), SCRIPT_DIR.getName());
 
     public static final Set<HasConfigKey<?>> ALL_SSH_CONFIG_KEYS = 
             ImmutableSet.<HasConfigKey<?>>builder().
@@ -281,7 +282,7 @@ public class SshMachineLocation extends AbstractLocation implements MachineLocat
     }
 
     protected <T> T execSsh(Map props, Function<SshTool,T> task) {
-        if (props.isEmpty() || Sets.difference(props.keySet(), REUSABLE_SSH_PROPS).isEmpty()) {
+        if (isReusableSshProps(props)) {
             return vanillaSshToolPool.exec(task);
         } else {
             SshTool ssh = connectSsh(props);
@@ -293,6 +294,20 @@ public class SshMachineLocation extends AbstractLocation implements MachineLocat
         }
     }
 
+    /**
+     * Whether the given props can be passed per command to a pooled {@link SshTool}, rather than requiring
+     * a new connection; keys may be given either as {@link ConfigKey}s or by name (e.g. "out" and "err").
+     */
+    protected boolean isReusableSshProps(Map<?,?> props) {
+        for (Object key : props.keySet()) {
+            String name = (key instanceof HasConfigKey) ? ((HasConfigKey<?>)key).getConfigKey().getName()
+                    : (key instanceof ConfigKey) ? ((ConfigKey<?>)key).getName()
+                    : String.valueOf(key);
+            if (!REUSABLE_SSH_PROP_NAMES.contains(name)) return false;
+        }
+        return true;
+    }
+
     protected SshTool connectSsh() {
         return connectSsh(ImmutableMap.of());
     }
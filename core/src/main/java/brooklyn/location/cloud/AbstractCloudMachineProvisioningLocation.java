@@ -2,11 +2,14 @@ package brooklyn.location.cloud;
 
 import java.io.IOException;
 import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 
 import brooklyn.location.MachineProvisioningLocation;
+import brooklyn.location.NoMachinesAvailableException;
 import brooklyn.location.basic.AbstractLocation;
 import brooklyn.location.basic.LocationCreationUtils;
+import brooklyn.location.basic.LocationProvisioningUtils;
 import brooklyn.location.basic.SshMachineLocation;
 import brooklyn.util.collections.MutableMap;
 import brooklyn.util.config.ConfigBag;
@@ -31,6 +34,12 @@ implements MachineProvisioningLocation<SshMachineLocation>, CloudLocationConfig
         return LocationCreationUtils.newSubLocation(newFlags, this);
     }
 
+    /** obtains the machines one at a time; sub-classes should override where the cloud can provision them together */
+    @Override
+    public List<SshMachineLocation> obtain(int count, Map<?,?> flags) throws NoMachinesAvailableException {
+        return LocationProvisioningUtils.obtainEach(this, count, flags);
+    }
+
     @Override
     public Map<String, Object> getProvisioningFlags(Collection<String> tags) {
         if (tags.size() > 0) {
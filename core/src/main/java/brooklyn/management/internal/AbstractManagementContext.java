@@ -10,6 +10,7 @@ import java.util.concurrent.atomic.AtomicLong;
 
 import javax.annotation.Nullable;
 
+import org.apache.http.client.HttpClient;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -29,10 +30,10 @@ import brooklyn.entity.drivers.downloads.BasicDownloadsManager;
 import brooklyn.entity.drivers.downloads.DownloadResolverManager;
 import brooklyn.entity.rebind.RebindManager;
 import brooklyn.entity.rebind.RebindManagerImpl;
+import brooklyn.event.feed.http.SharedHttpClients;
 import brooklyn.internal.storage.BrooklynStorage;
 import brooklyn.internal.storage.DataGrid;
 import brooklyn.internal.storage.impl.BrooklynStorageImpl;
-import brooklyn.internal.storage.impl.InmemoryDatagrid;
 import brooklyn.location.LocationRegistry;
 import brooklyn.location.basic.BasicLocationRegistry;
 import brooklyn.management.ExecutionContext;
@@ -69,14 +70,18 @@ public abstract class AbstractManagementContext implements ManagementContextInte
     
     private final DownloadResolverManager downloadsManager;
 
-    private final DataGrid datagrid = new InmemoryDatagrid();
+    private final DataGrid datagrid;
 
-    private final BrooklynStorage storage = new BrooklynStorageImpl(datagrid);
+    private final BrooklynStorage storage;
+
+    private volatile HttpClient httpClient;
 
     public AbstractManagementContext(BrooklynProperties brooklynProperties){
        this.configMap = brooklynProperties;
        this.entityDriverManager = new BasicEntityDriverManager();
        this.downloadsManager = BasicDownloadsManager.newDefault(configMap);
+       this.datagrid = BrooklynStorageImpl.newDatagrid(configMap);
+       this.storage = new BrooklynStorageImpl(datagrid);
     }
     
     static {
@@ -101,6 +106,7 @@ public abstract class AbstractManagementContext implements ManagementContextInte
     public void terminate() {
         running = false;
         rebindManager.stop();
+        if (httpClient != null) httpClient.getConnectionManager().shutdown();
         
         // Don't unmanage everything; different entities get given their events at different times 
         // so can cause problems (e.g. a group finds out that a member is unmanaged, before the
@@ -116,6 +122,17 @@ public abstract class AbstractManagementContext implements ManagementContextInte
         return storage;
     }
     
+    @Override
+    public HttpClient getHttpClient() {
+        // created lazily, as most management contexts (e.g. in tests) poll nothing over http
+        if (httpClient == null) {
+            synchronized (this) {
+                if (httpClient == null) httpClient = SharedHttpClients.newPooledHttpClient(configMap);
+            }
+        }
+        return httpClient;
+    }
+    
     @Override
     public RebindManager getRebindManager() {
         return rebindManager;
@@ -4,6 +4,8 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ThreadFactory;
@@ -20,11 +22,13 @@ import brooklyn.location.Location;
 import brooklyn.management.Task;
 import brooklyn.util.exceptions.Exceptions;
 import brooklyn.util.exceptions.RuntimeInterruptedException;
+import brooklyn.util.flags.TypeCoercions;
 import brooklyn.util.task.BasicExecutionManager;
 import brooklyn.util.task.ExecutionListener;
 import brooklyn.util.text.Strings;
 
 import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
 
 /**
  * Deletes record of old tasks, to prevent space leaks and the eating up of more and more memory.
@@ -39,6 +43,13 @@ import com.google.common.collect.Lists;
  *       be deleted.
  * </ul>
  * 
+ * The max tasks and max age can also be set for individual tags, either with {@link #setRetentionForTag(Object, int, long)}
+ * or (for string tags) with properties of the form <code>brooklyn.gc.tag.&lt;tag&gt;.maxTasks</code> and 
+ * <code>brooklyn.gc.tag.&lt;tag&gt;.maxTaskAge</code>.
+ * <p>
+ * Completed tasks which are retained are compacted (see {@link BasicExecutionManager#compactCompletedTasks()})
+ * on each check, unless {@link #COMPACT_COMPLETED_TASKS} is false.
+ * <p>
  * The default is to check with a period of one minute, to keep at most 100 tasks per tag, and to
  * delete old completed tasks after one day.
  * 
@@ -64,12 +75,31 @@ public class BrooklynGarbageCollector {
             "the number of milliseconds after which a completed task will be automatically deleted", 
             TimeUnit.DAYS.toMillis(1));
     
+    public static final ConfigKey<Boolean> COMPACT_COMPLETED_TASKS = new BasicConfigKey<Boolean>(
+            Boolean.class, "brooklyn.gc.compactCompletedTasks", 
+            "whether to replace retained completed tasks with compact summary records", 
+            true);
+    
+    /** prefix for per-tag retention properties, e.g. brooklyn.gc.tag.EFFECTOR.maxTasks */
+    public static final String PER_TAG_PROPERTY_PREFIX = "brooklyn.gc.tag.";
+    
+    private static class Retention {
+        final int maxTasks;
+        final long maxTaskAge;
+        Retention(int maxTasks, long maxTaskAge) {
+            this.maxTasks = maxTasks;
+            this.maxTaskAge = maxTaskAge;
+        }
+    }
+    
     private final BasicExecutionManager executionManager;
     private final ScheduledExecutorService executor;
     private final long gcPeriodMs;
     private final int maxTasksPerTag;
     private final long maxTaskAge;
     private final boolean doSystemGc;
+    private final boolean compactCompletedTasks;
+    private final ConcurrentMap<Object, Retention> retentionByTag = new ConcurrentHashMap<Object, Retention>();
     private volatile boolean running = true;
     
     public BrooklynGarbageCollector(BrooklynProperties brooklynProperties, BasicExecutionManager executionManager){
@@ -79,6 +109,8 @@ public class BrooklynGarbageCollector {
         maxTasksPerTag = brooklynProperties.getConfig(MAX_TASKS_PER_TAG);
         maxTaskAge = brooklynProperties.getConfig(MAX_TASK_AGE);
         doSystemGc = brooklynProperties.getConfig(DO_SYSTEM_GC);
+        compactCompletedTasks = brooklynProperties.getConfig(COMPACT_COMPLETED_TASKS);
+        initRetentionByTag(brooklynProperties);
         
         executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
                 @Override public Thread newThread(Runnable r) {
@@ -119,6 +151,36 @@ public class BrooklynGarbageCollector {
             TimeUnit.MILLISECONDS);
     }
 
+    private void initRetentionByTag(BrooklynProperties brooklynProperties) {
+        Set<String> tags = Sets.newLinkedHashSet();
+        for (Object key : brooklynProperties.keySet()) {
+            String name = ""+key;
+            if (!name.startsWith(PER_TAG_PROPERTY_PREFIX)) continue;
+            if (name.endsWith(".maxTasks")) {
+                tags.add(name.substring(PER_TAG_PROPERTY_PREFIX.length(), name.length()-".maxTasks".length()));
+            } else if (name.endsWith(".maxTaskAge")) {
+                tags.add(name.substring(PER_TAG_PROPERTY_PREFIX.length(), name.length()-".maxTaskAge".length()));
+            } else {
+                LOG.warn("Ignoring unknown garbage-collection property "+name);
+            }
+        }
+        for (String tag : tags) {
+            Object maxTasksVal = brooklynProperties.get(PER_TAG_PROPERTY_PREFIX+tag+".maxTasks");
+            Object maxTaskAgeVal = brooklynProperties.get(PER_TAG_PROPERTY_PREFIX+tag+".maxTaskAge");
+            setRetentionForTag(tag, 
+                    maxTasksVal != null ? TypeCoercions.coerce(maxTasksVal, Integer.class) : maxTasksPerTag, 
+                    maxTaskAgeVal != null ? TypeCoercions.coerce(maxTaskAgeVal, Long.class) : maxTaskAge);
+        }
+    }
+    
+    /**
+     * Sets the max number of tasks, and max age (in milliseconds) of completed tasks, to keep for the given tag,
+     * overriding the defaults of {@link #MAX_TASKS_PER_TAG} and {@link #MAX_TASK_AGE}.
+     */
+    public void setRetentionForTag(Object tag, int maxTasks, long maxTaskAge) {
+        retentionByTag.put(tag, new Retention(maxTasks, maxTaskAge));
+    }
+    
     public void logUsage(String prefix) {
         if (LOG.isDebugEnabled())
             LOG.debug(prefix+" - "+"using "+
@@ -163,9 +225,13 @@ public class BrooklynGarbageCollector {
         
         Set<Object> taskTags = executionManager.getTaskTags();
         for (Object tag : taskTags) {
-            if (tag == null || tag.equals(ManagementContextInternal.EFFECTOR_TAG)) {
+            if (tag == null || (tag.equals(ManagementContextInternal.EFFECTOR_TAG) && !retentionByTag.containsKey(tag))) {
                 continue; // there'll be other tags
             }
+            Retention retention = retentionByTag.get(tag);
+            int maxTasksPerTag = (retention != null) ? retention.maxTasks : this.maxTasksPerTag;
+            long maxTaskAge = (retention != null) ? retention.maxTaskAge : this.maxTaskAge;
+            
             Set<Task<?>> tasksWithTag = executionManager.getTasksWithTag(tag);
             int numTasksToDelete = (tasksWithTag.size() - maxTasksPerTag);
             if (numTasksToDelete > 0 || maxTaskAge > 0) {
@@ -194,5 +260,10 @@ public class BrooklynGarbageCollector {
                 }
             }
         }
+        
+        if (compactCompletedTasks) {
+            int compacted = executionManager.compactCompletedTasks();
+            if (LOG.isDebugEnabled()) LOG.debug("brooklyn gc compacted {} completed tasks", compacted);
+        }
     }
 }
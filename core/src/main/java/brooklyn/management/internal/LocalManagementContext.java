@@ -99,7 +99,7 @@ public class LocalManagementContext extends AbstractManagementContext {
         if (!isRunning()) throw new IllegalStateException("Management context no longer running");
         
         if (subscriptions == null) {
-            subscriptions = new LocalSubscriptionManager(getExecutionManager());
+            subscriptions = new LocalSubscriptionManager(getExecutionManager(), configMap);
         }
         return subscriptions;
     }
@@ -109,7 +109,7 @@ public class LocalManagementContext extends AbstractManagementContext {
         if (!isRunning()) throw new IllegalStateException("Management context no longer running");
         
         if (execution == null) {
-            execution = new BasicExecutionManager(shortid);
+            execution = new BasicExecutionManager(shortid, configMap);
             gc = new BrooklynGarbageCollector(configMap, execution);
         }
         return execution;
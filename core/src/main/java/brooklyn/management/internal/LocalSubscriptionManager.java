@@ -4,11 +4,13 @@ import static brooklyn.util.JavaGroovyEquivalents.elvis;
 import static brooklyn.util.JavaGroovyEquivalents.groovyTruth;
 import static brooklyn.util.JavaGroovyEquivalents.join;
 import static brooklyn.util.JavaGroovyEquivalents.mapOf;
+import static com.google.common.base.Preconditions.checkArgument;
 
 import java.util.Collection;
 import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
@@ -18,10 +20,14 @@ import java.util.concurrent.atomic.AtomicLong;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import brooklyn.config.BrooklynProperties;
+import brooklyn.config.ConfigKey;
 import brooklyn.entity.Entity;
+import brooklyn.entity.basic.AbstractEntity;
 import brooklyn.event.Sensor;
 import brooklyn.event.SensorEvent;
 import brooklyn.event.SensorEventListener;
+import brooklyn.event.basic.BasicConfigKey;
 import brooklyn.management.ExecutionManager;
 import brooklyn.management.SubscriptionHandle;
 import brooklyn.management.SubscriptionManager;
@@ -32,6 +38,8 @@ import brooklyn.util.text.Identifiers;
 import com.google.common.base.Predicate;
 import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.HashMultimap;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.MapMaker;
 import com.google.common.collect.Multimaps;
 
 /**
@@ -41,12 +49,32 @@ public class LocalSubscriptionManager extends AbstractSubscriptionManager {
     
     private static final Logger LOG = LoggerFactory.getLogger(LocalSubscriptionManager.class);
 
+    public static final ConfigKey<Boolean> BATCH_DELIVERY = new BasicConfigKey<Boolean>(
+            Boolean.class, "brooklyn.subscriptions.batchDelivery", 
+            "whether to queue events per subscriber and deliver many per task, rather than submitting one task per event", 
+            false);
+    
+    public static final ConfigKey<Integer> MAX_BATCH_SIZE = new BasicConfigKey<Integer>(
+            Integer.class, "brooklyn.subscriptions.maxBatchSize", 
+            "the maximum number of events delivered to a subscriber in a single task, when batch delivery is enabled", 
+            1000);
+    
+    public static final ConfigKey<Boolean> COALESCE_ATTRIBUTE_UPDATES = new BasicConfigKey<Boolean>(
+            Boolean.class, "brooklyn.subscriptions.coalesceAttributeUpdates", 
+            "whether, when batch delivery is enabled, attribute values superseded by a later value queued for the same subscription are skipped", 
+            false);
+    
     protected final ExecutionManager em;
     
+    private final boolean batchDelivery;
+    private final int maxBatchSize;
+    private final boolean coalesceAttributeUpdates;
+    
     private final String tostring = "SubscriptionContext("+Identifiers.getBase64IdFromValue(System.identityHashCode(this), 5)+")";
 
     private final AtomicLong totalEventsPublishedCount = new AtomicLong();
     private final AtomicLong totalEventsDeliveredCount = new AtomicLong();
+    private final AtomicLong totalEventsCoalescedCount = new AtomicLong();
     
     @SuppressWarnings("rawtypes")
     protected final ConcurrentMap<String, Subscription> allSubscriptions = new ConcurrentHashMap<String, Subscription>();
@@ -55,8 +83,33 @@ public class LocalSubscriptionManager extends AbstractSubscriptionManager {
     @SuppressWarnings("rawtypes")
     protected final ConcurrentMap<Object, Set<Subscription>> subscriptionsByToken = new ConcurrentHashMap<Object, Set<Subscription>>();
     
+    /** key used in {@link #dispatchIndex} for events which have no source entity */
+    private static final Object NO_SOURCE = new Object();
+    
+    /**
+     * Dispatch index, producer -> sensor -> immutable list of matching subscriptions (including wildcard subscriptions).
+     * <p>
+     * Read without locking by {@link #publish(SensorEvent)}; slots are built lazily on first publish
+     * (while holding the lock on this manager), and on subscribe/unsubscribe only the slots matching 
+     * the changed subscription's producer/sensor are evicted. Producers are weakly referenced so that
+     * the index does not keep unmanaged entities alive (see {@link #dispatchKey(Entity)}).
+     */
+    @SuppressWarnings("rawtypes")
+    private final ConcurrentMap<Object, ConcurrentMap<Sensor<?>, List<Subscription>>> dispatchIndex = new MapMaker().weakKeys().makeMap();
+    
+    /** mailboxes for batch delivery, keyed by subscriber execution manager tag; only used if {@link #BATCH_DELIVERY} is set */
+    private final ConcurrentMap<Object, SubscriptionDeliveryMailbox> mailboxesByTag = new ConcurrentHashMap<Object, SubscriptionDeliveryMailbox>();
+    
     public LocalSubscriptionManager(ExecutionManager m) {
+        this(m, BrooklynProperties.Factory.newEmpty());
+    }
+    
+    public LocalSubscriptionManager(ExecutionManager m, BrooklynProperties brooklynProperties) {
         this.em = m;
+        this.batchDelivery = brooklynProperties.getConfig(BATCH_DELIVERY);
+        this.maxBatchSize = brooklynProperties.getConfig(MAX_BATCH_SIZE);
+        checkArgument(maxBatchSize > 0, "%s must be positive (was %s)", MAX_BATCH_SIZE.getName(), maxBatchSize);
+        this.coalesceAttributeUpdates = brooklynProperties.getConfig(COALESCE_ATTRIBUTE_UPDATES);
     }
         
     public long getNumSubscriptions() {
@@ -71,6 +124,20 @@ public class LocalSubscriptionManager extends AbstractSubscriptionManager {
         return totalEventsDeliveredCount.get();
     }
     
+    /** number of events not delivered because a later value for the same attribute was already queued; see {@link #COALESCE_ATTRIBUTE_UPDATES} */
+    public long getTotalEventsCoalesced() {
+        return totalEventsCoalescedCount.get();
+    }
+    
+    /** number of events queued for delivery (when using batch delivery), summed across all subscribers */
+    public long getNumEventsQueued() {
+        long result = 0;
+        for (SubscriptionDeliveryMailbox mailbox : mailboxesByTag.values()) {
+            result += mailbox.getQueueSize();
+        }
+        return result;
+    }
+    
     @SuppressWarnings("unchecked")
     protected synchronized <T> SubscriptionHandle subscribe(Map<String, Object> flags, Subscription<T> s) {
         Entity producer = s.producer;
@@ -92,6 +159,7 @@ public class LocalSubscriptionManager extends AbstractSubscriptionManager {
         if (LOG.isDebugEnabled()) LOG.debug("Creating subscription {} for {} on {} {} in {}", new Object[] {s.id, s.subscriber, producer, sensor, this});
         allSubscriptions.put(s.id, s);
         addToMapOfSets(subscriptionsByToken, makeEntitySensorToken(s.producer, s.sensor), s);
+        invalidateDispatchIndex(s.producer, s.sensor);
         if (s.subscriber!=null) {
             addToMapOfSets(subscriptionsBySubscriber, s.subscriber, s);
         }
@@ -106,13 +174,84 @@ public class LocalSubscriptionManager extends AbstractSubscriptionManager {
         return (Set<SubscriptionHandle>) ((Set<?>) elvis(subscriptionsBySubscriber.get(subscriber), Collections.emptySet()));
     }
 
-    public synchronized Set<SubscriptionHandle> getSubscriptionsForEntitySensor(Entity source, Sensor<?> sensor) {
-        Set<SubscriptionHandle> subscriptions = new LinkedHashSet<SubscriptionHandle>();
-        subscriptions.addAll(elvis(subscriptionsByToken.get(makeEntitySensorToken(source, sensor)), Collections.emptySet()));
-        subscriptions.addAll(elvis(subscriptionsByToken.get(makeEntitySensorToken(null, sensor)), Collections.emptySet()));
-        subscriptions.addAll(elvis(subscriptionsByToken.get(makeEntitySensorToken(source, null)), Collections.emptySet()));
-        subscriptions.addAll(elvis(subscriptionsByToken.get(makeEntitySensorToken(null, null)), Collections.emptySet()));
-        return subscriptions;
+    public Set<SubscriptionHandle> getSubscriptionsForEntitySensor(Entity source, Sensor<?> sensor) {
+        return new LinkedHashSet<SubscriptionHandle>(getDispatchList(source, sensor));
+    }
+
+    /**
+     * Returns the (immutable) subscriptions matching the given source and sensor, including wildcards.
+     * Does not lock or allocate if the dispatch index already has an entry for this source and sensor.
+     */
+    @SuppressWarnings("rawtypes")
+    protected List<Subscription> getDispatchList(Entity source, Sensor<?> sensor) {
+        ConcurrentMap<Sensor<?>, List<Subscription>> bySensor = dispatchIndex.get(dispatchKey(source));
+        if (bySensor != null && sensor != null) {
+            List<Subscription> result = bySensor.get(sensor);
+            if (result != null) return result;
+        }
+        return buildDispatchList(source, sensor);
+    }
+    
+    @SuppressWarnings("rawtypes")
+    private synchronized List<Subscription> buildDispatchList(Entity source, Sensor<?> sensor) {
+        // done while holding the lock so that a concurrent subscribe/unsubscribe cannot evict 
+        // the slot between our reading subscriptionsByToken and storing the result
+        Object sourceKey = dispatchKey(source);
+        ConcurrentMap<Sensor<?>, List<Subscription>> bySensor = dispatchIndex.get(sourceKey);
+        if (bySensor == null) {
+            bySensor = new ConcurrentHashMap<Sensor<?>, List<Subscription>>();
+            dispatchIndex.put(sourceKey, bySensor);
+        }
+        List<Subscription> result = bySensor.get(sensor);
+        if (result != null) return result;
+        
+        Set<Subscription> subscriptions = new LinkedHashSet<Subscription>();
+        addSubscriptionsForToken(subscriptions, source, sensor);
+        addSubscriptionsForToken(subscriptions, null, sensor);
+        addSubscriptionsForToken(subscriptions, source, null);
+        addSubscriptionsForToken(subscriptions, null, null);
+        result = ImmutableList.copyOf(subscriptions);
+        if (sensor != null) bySensor.put(sensor, result);
+        return result;
+    }
+
+    /** 
+     * Index key for the given producer; entities are keyed by their proxy (as used when publishing), 
+     * because the index compares keys by identity whereas entities are equal to their proxies.
+     */
+    private static Object dispatchKey(Entity producer) {
+        if (producer == null) return NO_SOURCE;
+        if (producer instanceof AbstractEntity) return ((AbstractEntity)producer).getProxyIfAvailable();
+        return producer;
+    }
+    
+    @SuppressWarnings("rawtypes")
+    private void addSubscriptionsForToken(Set<Subscription> result, Entity source, Sensor<?> sensor) {
+        Set<Subscription> subs = subscriptionsByToken.get(makeEntitySensorToken(source, sensor));
+        if (subs != null) {
+            synchronized (subs) {
+                result.addAll(subs);
+            }
+        }
+    }
+    
+    /** evicts the dispatch slots affected by a (un)subscription to the given producer and sensor (either may be a wildcard) */
+    private synchronized void invalidateDispatchIndex(Entity producer, Sensor<?> sensor) {
+        if (producer == null && sensor == null) {
+            dispatchIndex.clear();
+        } else if (producer == null) {
+            for (ConcurrentMap<Sensor<?>, ?> bySensor : dispatchIndex.values()) {
+                bySensor.remove(sensor);
+            }
+        } else if (sensor == null) {
+            dispatchIndex.remove(dispatchKey(producer));
+            dispatchIndex.remove(producer);
+        } else {
+            ConcurrentMap<Sensor<?>, ?> bySensor = dispatchIndex.get(dispatchKey(producer));
+            if (bySensor != null) bySensor.remove(sensor);
+            bySensor = dispatchIndex.get(producer);
+            if (bySensor != null) bySensor.remove(sensor);
+        }
     }
 
     /**
@@ -127,6 +266,7 @@ public class LocalSubscriptionManager extends AbstractSubscriptionManager {
         boolean result = allSubscriptions.remove(s.id) != null;
         boolean b2 = removeFromMapOfCollections(subscriptionsByToken, makeEntitySensorToken(s.producer, s.sensor), s);
         assert result==b2;
+        invalidateDispatchIndex(s.producer, s.sensor);
         if (s.subscriber!=null) {
             boolean b3 = removeFromMapOfCollections(subscriptionsBySubscriber, s.subscriber, s);
             assert b3 == b2;
@@ -135,8 +275,11 @@ public class LocalSubscriptionManager extends AbstractSubscriptionManager {
         // TODO Requires code review: why did we previously do exactly same check twice in a row (with no synchronization in between)? 
         if ((subscriptionsBySubscriber.size() == 0 || !groovyTruth(subscriptionsBySubscriber.get(s.subscriber))) && !s.subscriberExecutionManagerTagSupplied && s.subscriberExecutionManagerTag!=null) {
             //if subscriber has gone away forget about his task; but check in synch block to ensure setTaskPreprocessor call above will win in any race
-            if ((subscriptionsBySubscriber.size() == 0 || !groovyTruth(subscriptionsBySubscriber.get(s.subscriber))))
+            if ((subscriptionsBySubscriber.size() == 0 || !groovyTruth(subscriptionsBySubscriber.get(s.subscriber)))) {
                 ((BasicExecutionManager)em).clearTaskPreprocessorForTag(s.subscriberExecutionManagerTag);
+                // any events already queued are still delivered, as the pending task holds on to the mailbox
+                mailboxesByTag.remove(s.subscriberExecutionManagerTag);
+            }
         }
 
 		//FIXME ALEX - this seems wrong
@@ -161,22 +304,37 @@ public class LocalSubscriptionManager extends AbstractSubscriptionManager {
         if (LOG.isTraceEnabled()) LOG.trace("{} got event {}", this, event);
         totalEventsPublishedCount.incrementAndGet();
         
-        Set<Subscription> subs = (Set<Subscription>) ((Set<?>) getSubscriptionsForEntitySensor(event.getSource(), event.getSensor()));
-        if (groovyTruth(subs)) {
+        List<Subscription> subs = getDispatchList(event.getSource(), event.getSensor());
+        if (!subs.isEmpty()) {
             if (LOG.isTraceEnabled()) LOG.trace("sending {}, {} to {}", new Object[] {event.getSensor().getName(), event, join(subs, ",")});
-            for (Subscription s : subs) {
+            for (int i = 0; i < subs.size(); i++) {
+                Subscription s = subs.get(i);
                 if (s.eventFilter!=null && !s.eventFilter.apply(event))
                     continue;
-                final Subscription sAtClosureCreation = s;
-                em.submit(mapOf("tag", s.subscriberExecutionManagerTag), new Runnable() {
-                    public void run() {
-                        sAtClosureCreation.listener.onEvent(event);
-                    }});
+                if (batchDelivery && s.subscriberExecutionManagerTag!=null) {
+                    getMailbox(s.subscriberExecutionManagerTag).enqueue(s, event);
+                } else {
+                    final Subscription sAtClosureCreation = s;
+                    em.submit(mapOf("tag", s.subscriberExecutionManagerTag), new Runnable() {
+                        public void run() {
+                            sAtClosureCreation.listener.onEvent(event);
+                        }});
+                }
                 totalEventsDeliveredCount.incrementAndGet();
             }
         }
     }
     
+    private SubscriptionDeliveryMailbox getMailbox(Object tag) {
+        SubscriptionDeliveryMailbox result = mailboxesByTag.get(tag);
+        if (result == null) {
+            SubscriptionDeliveryMailbox contender = new SubscriptionDeliveryMailbox(em, tag, maxBatchSize, coalesceAttributeUpdates, totalEventsCoalescedCount);
+            result = mailboxesByTag.putIfAbsent(tag, contender);
+            if (result == null) result = contender;
+        }
+        return result;
+    }
+    
     @Override
     public String toString() {
         return tostring;
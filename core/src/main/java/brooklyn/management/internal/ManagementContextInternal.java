@@ -4,6 +4,8 @@ import java.net.URL;
 import java.util.Map;
 import java.util.concurrent.ExecutionException;
 
+import org.apache.http.client.HttpClient;
+
 import brooklyn.config.ConfigKey;
 import brooklyn.entity.Effector;
 import brooklyn.entity.Entity;
@@ -40,4 +42,12 @@ public interface ManagementContextInternal extends ManagementContext {
     <T> Task<T> invokeEffector(final Entity entity, final Effector<T> eff, @SuppressWarnings("rawtypes") final Map parameters);
 
     BrooklynStorage getStorage();
+    
+    /**
+     * Returns the pooled http client shared by everything in this management context that 
+     * polls over http (e.g. {@link brooklyn.event.feed.http.HttpFeed}).
+     * 
+     * @see brooklyn.event.feed.http.SharedHttpClients
+     */
+    HttpClient getHttpClient();
 }
@@ -12,6 +12,8 @@ import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
+import org.apache.http.client.HttpClient;
+
 import brooklyn.catalog.BrooklynCatalog;
 import brooklyn.config.StringConfigMap;
 import brooklyn.entity.Application;
@@ -160,6 +162,12 @@ public class NonDeploymentManagementContext implements ManagementContextInternal
         return initialManagementContext.getStorage();
     }
     
+    @Override
+    public HttpClient getHttpClient() {
+        checkInitialManagementContextReal();
+        return initialManagementContext.getHttpClient();
+    }
+    
     @Override
     public RebindManager getRebindManager() {
         // There was a race where EffectorUtils on invoking an effector calls:
@@ -0,0 +1,163 @@
+package brooklyn.management.internal;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import brooklyn.entity.Entity;
+import brooklyn.event.AttributeSensor;
+import brooklyn.event.Sensor;
+import brooklyn.event.SensorEvent;
+import brooklyn.management.ExecutionManager;
+import brooklyn.util.collections.MutableMap;
+
+import com.google.common.base.Objects;
+
+/**
+ * Queues the events for all subscriptions of a single subscriber (i.e. sharing one execution manager tag),
+ * and delivers them in batches: one task is submitted to the {@link ExecutionManager} per batch,
+ * rather than one task per event.
+ * <p>
+ * Events are delivered in the order they were published. If coalescing is enabled, then an attribute
+ * value which is superseded (by a later value for the same subscription, producer and sensor,
+ * within the same batch) is not delivered.
+ * <p>
+ * At most one delivery task is outstanding at any time, so delivery is single-threaded for the subscriber;
+ * the task is submitted with the subscriber's tag so it also respects any scheduler set for that tag.
+ */
+class SubscriptionDeliveryMailbox {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SubscriptionDeliveryMailbox.class);
+
+    private final ExecutionManager em;
+    private final Object tag;
+    private final int maxBatchSize;
+    private final boolean coalesce;
+    private final AtomicLong coalescedCount;
+
+    private final Queue<QueuedEvent> queue = new ConcurrentLinkedQueue<QueuedEvent>();
+    private final AtomicBoolean scheduled = new AtomicBoolean(false);
+
+    private final Runnable drainJob = new Runnable() {
+        @Override public void run() {
+            drain();
+        }
+        @Override public String toString() {
+            return "subscription delivery for "+tag;
+        }
+    };
+
+    /**
+     * @param coalescedCount counter to increment for each event skipped because it was superseded
+     */
+    SubscriptionDeliveryMailbox(ExecutionManager em, Object tag, int maxBatchSize, boolean coalesce, AtomicLong coalescedCount) {
+        this.em = em;
+        this.tag = tag;
+        this.maxBatchSize = maxBatchSize;
+        this.coalesce = coalesce;
+        this.coalescedCount = coalescedCount;
+    }
+
+    /** queues the event, scheduling a delivery task if one is not already pending */
+    @SuppressWarnings("rawtypes")
+    void enqueue(Subscription subscription, SensorEvent<?> event) {
+        queue.add(new QueuedEvent(subscription, event));
+        scheduleIfNecessary();
+    }
+
+    int getQueueSize() {
+        return queue.size();
+    }
+
+    private void scheduleIfNecessary() {
+        if (!queue.isEmpty() && scheduled.compareAndSet(false, true)) {
+            em.submit(MutableMap.of("tag", tag), drainJob);
+        }
+    }
+
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+    private void drain() {
+        try {
+            List<QueuedEvent> batch = new ArrayList<QueuedEvent>(Math.min(maxBatchSize, queue.size()+1));
+            QueuedEvent next;
+            while (batch.size() < maxBatchSize && (next = queue.poll()) != null) {
+                batch.add(next);
+            }
+            if (coalesce && batch.size() > 1) {
+                markSuperseded(batch);
+            }
+            for (QueuedEvent qe : batch) {
+                if (qe.superseded) continue;
+                try {
+                    qe.subscription.listener.onEvent(qe.event);
+                } catch (Exception e) {
+                    LOG.warn("Error delivering event "+qe.event+" to "+qe.subscription+" (continuing): "+e, e);
+                }
+            }
+        } finally {
+            scheduled.set(false);
+            // anything added after our last poll needs a new task (but we do not loop here, to be fair to other subscribers)
+            scheduleIfNecessary();
+        }
+    }
+
+    /** walks backwards through the batch, marking attribute events for which a later event is already in the batch */
+    private void markSuperseded(List<QueuedEvent> batch) {
+        Set<CoalesceKey> seen = new HashSet<CoalesceKey>();
+        for (int i = batch.size()-1; i >= 0; i--) {
+            QueuedEvent qe = batch.get(i);
+            if (!(qe.event.getSensor() instanceof AttributeSensor)) continue;
+            if (!seen.add(new CoalesceKey(qe.subscription, qe.event.getSource(), qe.event.getSensor()))) {
+                qe.superseded = true;
+                coalescedCount.incrementAndGet();
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "SubscriptionDeliveryMailbox["+tag+"; queued="+queue.size()+"]";
+    }
+
+    @SuppressWarnings("rawtypes")
+    private static class QueuedEvent {
+        final Subscription subscription;
+        final SensorEvent event;
+        boolean superseded;
+
+        QueuedEvent(Subscription subscription, SensorEvent<?> event) {
+            this.subscription = subscription;
+            this.event = event;
+        }
+    }
+
+    private static class CoalesceKey {
+        final Subscription<?> subscription;
+        final Entity source;
+        final Sensor<?> sensor;
+
+        CoalesceKey(Subscription<?> subscription, Entity source, Sensor<?> sensor) {
+            this.subscription = subscription;
+            this.source = source;
+            this.sensor = sensor;
+        }
+        @Override
+        public int hashCode() {
+            return Objects.hashCode(subscription, source, sensor);
+        }
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof CoalesceKey)) return false;
+            CoalesceKey o = (CoalesceKey) obj;
+            return subscription == o.subscription && Objects.equal(source, o.source) && Objects.equal(sensor, o.sensor);
+        }
+    }
+}
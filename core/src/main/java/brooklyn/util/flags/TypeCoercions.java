@@ -16,6 +16,7 @@ import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -35,6 +36,7 @@ import com.google.common.base.Function;
 import com.google.common.base.Predicate;
 import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.MapMaker;
 import com.google.common.primitives.Primitives;
 import com.google.common.reflect.TypeToken;
 
@@ -46,6 +48,16 @@ public class TypeCoercions {
 
     private static Map<Class,Map<Class,Function>> registeredAdapters = Collections.synchronizedMap(
             new LinkedHashMap<Class,Map<Class,Function>>());
+    
+    /**
+     * Coercion plans, keyed by source class then target type; replaced (rather than cleared) whenever an
+     * adapter is registered, so that a plan computed concurrently against the old adapters is discarded.
+     */
+    private static volatile ConcurrentMap<Class<?>, ConcurrentMap<Class<?>, CoercionPlan>> coercionPlans = newCoercionPlanCache();
+    
+    private static ConcurrentMap<Class<?>, ConcurrentMap<Class<?>, CoercionPlan>> newCoercionPlanCache() {
+        return new MapMaker().weakKeys().makeMap();
+    }
         
     /** attempts to coerce 'value' to 'targetType', 
      * using a variety of strategies,
@@ -63,7 +75,7 @@ public class TypeCoercions {
     }
 
     /** see {@link #coerce(Object, Class)} */
-    @SuppressWarnings({ "unchecked", "rawtypes" })
+    @SuppressWarnings({ "unchecked" })
     public static <T> T coerce(Object value, TypeToken<T> targetTypeToken) {
         if (value==null) return null;
         // does not actually cast generified contents; that is left to the caller
@@ -71,36 +83,58 @@ public class TypeCoercions {
         
         if (targetType.isInstance(value)) return (T) value;
 
+        return (T) getCoercionPlan(value.getClass(), targetType).apply(value, targetType);
+    }
+
+    /**
+     * Returns the strategy for coercing instances of the given class to the target type, computing it
+     * (by reflection on both types and a scan of the registered adapters) the first time that pair is seen.
+     * The choice depends only on the two classes, never on the value.
+     */
+    private static CoercionPlan getCoercionPlan(Class<?> sourceType, Class<?> targetType) {
+        ConcurrentMap<Class<?>, ConcurrentMap<Class<?>, CoercionPlan>> cache = coercionPlans;
+        ConcurrentMap<Class<?>, CoercionPlan> plansFromSource = cache.get(sourceType);
+        if (plansFromSource == null) {
+            plansFromSource = new MapMaker().weakKeys().makeMap();
+            ConcurrentMap<Class<?>, CoercionPlan> existing = cache.putIfAbsent(sourceType, plansFromSource);
+            if (existing != null) plansFromSource = existing;
+        }
+        CoercionPlan result = plansFromSource.get(targetType);
+        if (result == null) {
+            result = computeCoercionPlan(sourceType, targetType);
+            plansFromSource.put(targetType, result);
+        }
+        return result;
+    }
+    
+    @SuppressWarnings({ "rawtypes" })
+    private static CoercionPlan computeCoercionPlan(Class<?> sourceType, final Class<?> targetType) {
         //deal with primitive->primitive casting
-        if (isPrimitiveOrBoxer(targetType) && isPrimitiveOrBoxer(value.getClass())) {
+        if (isPrimitiveOrBoxer(targetType) && isPrimitiveOrBoxer(sourceType)) {
             // Don't just rely on Java to do its normal casting later; if caller writes
             // long `l = coerce(new Integer(1), Long.class)` then letting java do its casting will fail,
             // because an Integer will not automatically be unboxed and cast to a long
-            return castPrimitive(value, (Class<T>)targetType);
+            return CAST_PRIMITIVE;
         }
 
         //deal with string->primitive
-        if (value instanceof String && isPrimitiveOrBoxer(targetType)) {
-            return stringToPrimitive((String)value, (Class<T>)targetType);
+        if (String.class.equals(sourceType) && isPrimitiveOrBoxer(targetType)) {
+            return STRING_TO_PRIMITIVE;
         }
 
         //deal with primitive->string
-        if (isPrimitiveOrBoxer(value.getClass()) && targetType.equals(String.class)) {
-            return (T) value.toString();
+        if (isPrimitiveOrBoxer(sourceType) && targetType.equals(String.class)) {
+            return TO_STRING;
         }
 
         //look for value.asType where Type is castable to targetType
         String targetTypeSimpleName = getVerySimpleName(targetType);
         if (targetTypeSimpleName!=null && targetTypeSimpleName.length()>0) {
-            for (Method m: value.getClass().getMethods()) {
+            for (Method m: sourceType.getMethods()) {
                 if (m.getName().startsWith("as") && m.getParameterTypes().length==0 &&
                         targetType.isAssignableFrom(m.getReturnType()) ) {
                     if (m.getName().equals("as"+getVerySimpleName(m.getReturnType()))) {
-                        try {
-                            return (T) m.invoke(value);
-                        } catch (Exception e) {
-                            throw new ClassCoercionException("Cannot coerce type "+value.getClass()+" to "+targetType.getCanonicalName()+" ("+value+"): "+m.getName()+" adapting failed, "+e);
-                        }
+                        return new InvokeMethodPlan(m, false);
                     }
                 }
             }
@@ -110,13 +144,9 @@ public class TypeCoercions {
         for (Method m: targetType.getMethods()) {
             if (((m.getModifiers()&Modifier.STATIC)==Modifier.STATIC) && 
                     m.getName().startsWith("from") && m.getParameterTypes().length==1 &&
-                    m.getParameterTypes()[0].isInstance(value)) {
+                    m.getParameterTypes()[0].isAssignableFrom(sourceType)) {
                 if (m.getName().equals("from"+getVerySimpleName(m.getParameterTypes()[0]))) {
-                    try {
-                        return (T) m.invoke(null, value);
-                    } catch (Exception e) {
-                        throw new ClassCoercionException("Cannot coerce type "+value.getClass()+" to "+targetType.getCanonicalName()+" ("+value+"): "+m.getName()+" adapting failed, "+e);
-                    }
+                    return new InvokeMethodPlan(m, true);
                 }
             }
         }
@@ -124,41 +154,103 @@ public class TypeCoercions {
        //ENHANCEMENT could look in type hierarchy of both types for a conversion method...
         
         //primitives get run through again boxed up
-        Class boxedT = UNBOXED_TO_BOXED_TYPES.get(targetType);
-        Class boxedVT = UNBOXED_TO_BOXED_TYPES.get(value.getClass());
-        if (boxedT!=null || boxedVT!=null) {
-            try {
-                if (boxedT==null) boxedT=targetType;
-                Object boxedV;
-                if (boxedVT==null) { boxedV = value; }
-                else { boxedV = boxedVT.getConstructor(value.getClass()).newInstance(value); }
-                return (T) coerce(boxedV, boxedT);
-            } catch (Exception e) {
-                throw new ClassCoercionException("Cannot coerce type "+value.getClass()+" to "+targetType.getCanonicalName()+" ("+value+"): unboxing failed, "+e);
-            }
+        //(the value's own class is never primitive, so only the target type may need boxing)
+        final Class boxedT = UNBOXED_TO_BOXED_TYPES.get(targetType);
+        if (boxedT!=null) {
+            return new CoercionPlan() {
+                @Override Object apply(Object value, Class<?> targetType) {
+                    try {
+                        return coerce(value, boxedT);
+                    } catch (Exception e) {
+                        throw new ClassCoercionException("Cannot coerce type "+value.getClass()+" to "+targetType.getCanonicalName()+" ("+value+"): unboxing failed, "+e);
+                    }
+                }
+            };
         }
 
         if (targetType.isEnum()) {
-            try {
-                return (T) Enum.valueOf((Class)targetType, ""+value);
-            } catch (IllegalArgumentException e) {
-                // some enums (eg Lifecycle) use a tostring which is different, not ideal...
-                return (T) Enum.valueOf((Class)targetType, (""+value).toUpperCase());
-            }
+            return TO_ENUM;
         }
 
         //now look in registry - TODO use registry first?
         Map<?,?> adaptersToTarget = registeredAdapters.get(targetType);
         if (adaptersToTarget!=null) {
-            for (Map.Entry e: adaptersToTarget.entrySet()) {
-                if ( ((Class)e.getKey()).isInstance(value) ) {
-                    return (T) ((Function)e.getValue()).apply(value);
+            synchronized (adaptersToTarget) {
+                for (Map.Entry e: adaptersToTarget.entrySet()) {
+                    if ( ((Class)e.getKey()).isAssignableFrom(sourceType) ) {
+                        final Function fn = (Function) e.getValue();
+                        return new CoercionPlan() {
+                            @SuppressWarnings("unchecked")
+                            @Override Object apply(Object value, Class<?> targetType) {
+                                return fn.apply(value);
+                            }
+                        };
+                    }
                 }
             }
         }
                 
         //not found
-        throw new ClassCoercionException("Cannot coerce type "+value.getClass()+" to "+targetType.getCanonicalName()+" ("+value+"): no adapter known");
+        return NO_COERCION;
+    }
+
+    /** how to coerce a value of a particular type to a particular target type; see {@link #getCoercionPlan(Class, Class)} */
+    private static abstract class CoercionPlan {
+        abstract Object apply(Object value, Class<?> targetType);
+    }
+    
+    private static final CoercionPlan CAST_PRIMITIVE = new CoercionPlan() {
+        @Override Object apply(Object value, Class<?> targetType) {
+            return castPrimitive(value, targetType);
+        }
+    };
+    
+    private static final CoercionPlan STRING_TO_PRIMITIVE = new CoercionPlan() {
+        @Override Object apply(Object value, Class<?> targetType) {
+            return stringToPrimitive((String)value, targetType);
+        }
+    };
+    
+    private static final CoercionPlan TO_STRING = new CoercionPlan() {
+        @Override Object apply(Object value, Class<?> targetType) {
+            return value.toString();
+        }
+    };
+    
+    private static final CoercionPlan TO_ENUM = new CoercionPlan() {
+        @SuppressWarnings({ "unchecked", "rawtypes" })
+        @Override Object apply(Object value, Class<?> targetType) {
+            try {
+                return Enum.valueOf((Class)targetType, ""+value);
+            } catch (IllegalArgumentException e) {
+                // some enums (eg Lifecycle) use a tostring which is different, not ideal...
+                return Enum.valueOf((Class)targetType, (""+value).toUpperCase());
+            }
+        }
+    };
+    
+    private static final CoercionPlan NO_COERCION = new CoercionPlan() {
+        @Override Object apply(Object value, Class<?> targetType) {
+            throw new ClassCoercionException("Cannot coerce type "+value.getClass()+" to "+targetType.getCanonicalName()+" ("+value+"): no adapter known");
+        }
+    };
+    
+    /** calls value.asTargetType(), or static TargetType.fromType(value) */
+    private static class InvokeMethodPlan extends CoercionPlan {
+        private final Method method;
+        private final boolean isStatic;
+        
+        InvokeMethodPlan(Method method, boolean isStatic) {
+            this.method = method;
+            this.isStatic = isStatic;
+        }
+        @Override Object apply(Object value, Class<?> targetType) {
+            try {
+                return isStatic ? method.invoke(null, value) : method.invoke(value);
+            } catch (Exception e) {
+                throw new ClassCoercionException("Cannot coerce type "+value.getClass()+" to "+targetType.getCanonicalName()+" ("+value+"): "+method.getName()+" adapting failed, "+e);
+            }
+        }
     }
 
     /**
@@ -327,6 +419,7 @@ public class TypeCoercions {
             registeredAdapters.put(targetType, sources);
         }
         sources.put(sourceType, fn);
+        coercionPlans = newCoercionPlanCache();
     }
     
     static {
@@ -18,6 +18,7 @@ import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.SynchronousQueue;
@@ -30,6 +31,9 @@ import java.util.concurrent.atomic.AtomicLong;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import brooklyn.config.BrooklynProperties;
+import brooklyn.config.ConfigKey;
+import brooklyn.event.basic.BasicConfigKey;
 import brooklyn.management.ExecutionManager;
 import brooklyn.management.Task;
 import brooklyn.util.text.Identifiers;
@@ -41,10 +45,49 @@ import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 /**
  * TODO javadoc
+ * <p>
+ * Tasks are run in one of two thread pools: tasks tagged with {@link ExecutionManager#BLOCKING_TASK_TAG}
+ * run in the blocking pool, and all others in the main pool. The maximum size of each can be configured 
+ * (see {@link #MAX_THREADS} and {@link #MAX_BLOCKING_THREADS}); by default both are unbounded.
+ * Be careful when bounding the main pool: tasks which wait on other tasks (e.g. effectors waiting on
+ * their sub-tasks) can deadlock if all threads are taken by waiting tasks.
+ * <p>
+ * {@link ExecutionManager#BLOCKING_TASK_TAG} only selects the pool, so tasks are not indexed by it: 
+ * {@link #getTasksWithTag(Object)} for that tag is always empty.
  */
 public class BasicExecutionManager implements ExecutionManager {
     private static final Logger log = LoggerFactory.getLogger(BasicExecutionManager.class);
 
+    public static final ConfigKey<Integer> MAX_THREADS = new BasicConfigKey<Integer>(
+            Integer.class, "brooklyn.executionManager.maxThreads", 
+            "the maximum number of threads for running (non-blocking) tasks; zero or negative means unbounded", 
+            0);
+    
+    public static final ConfigKey<Integer> MAX_BLOCKING_THREADS = new BasicConfigKey<Integer>(
+            Integer.class, "brooklyn.executionManager.maxBlockingThreads", 
+            "the maximum number of threads for running tasks tagged as blocking; zero or negative means unbounded", 
+            0);
+    
+    public static final ConfigKey<Integer> SINGLE_THREADED_SCHEDULER_MAX_QUEUE_SIZE = new BasicConfigKey<Integer>(
+            Integer.class, "brooklyn.executionManager.singleThreadedScheduler.maxQueueSize", 
+            "the high-water mark for tasks queued in each SingleThreadedScheduler (e.g. per subscriber); zero or negative means unbounded", 
+            0);
+    
+    public static final ConfigKey<SingleThreadedScheduler.OverflowPolicy> SINGLE_THREADED_SCHEDULER_OVERFLOW_POLICY = new BasicConfigKey<SingleThreadedScheduler.OverflowPolicy>(
+            SingleThreadedScheduler.OverflowPolicy.class, "brooklyn.executionManager.singleThreadedScheduler.overflowPolicy", 
+            "what a SingleThreadedScheduler does when its queue reaches the high-water mark (WARN, BLOCK or DROP_OLDEST)", 
+            SingleThreadedScheduler.OverflowPolicy.WARN);
+    
+    public static final ConfigKey<Long> SINGLE_THREADED_SCHEDULER_MAX_BLOCK_TIME = new BasicConfigKey<Long>(
+            Long.class, "brooklyn.executionManager.singleThreadedScheduler.maxBlockTime", 
+            "the longest time (in milliseconds) the BLOCK overflow policy makes a submitter wait, before accepting the submission regardless; zero or negative means no limit", 
+            SingleThreadedScheduler.DEFAULT_MAX_BLOCK_TIME);
+    
+    public static final ConfigKey<Long> THREAD_KEEP_ALIVE = new BasicConfigKey<Long>(
+            Long.class, "brooklyn.executionManager.threadKeepAlive", 
+            "the time, in milliseconds, that an idle thread is kept before being released", 
+            1000L);
+
     /**
      * Renaming threads can really helps with debugging etc; however it's a massive performance hit (2x)
      * <p>
@@ -89,6 +132,8 @@ public class BasicExecutionManager implements ExecutionManager {
     private final ThreadFactory daemonThreadFactory;
     
     private final ExecutorService runner;
+    
+    private final ExecutorService blockingRunner;
         
 	private final ScheduledExecutorService delayedRunner;
 	
@@ -108,6 +153,12 @@ public class BasicExecutionManager implements ExecutionManager {
 
     private ConcurrentMap<Object, TaskScheduler> schedulerByTag = new ConcurrentHashMap<Object, TaskScheduler>();
     
+    private final int singleThreadedSchedulerMaxQueueSize;
+    
+    private final SingleThreadedScheduler.OverflowPolicy singleThreadedSchedulerOverflowPolicy;
+    
+    private final long singleThreadedSchedulerMaxBlockTime;
+    
     private final AtomicLong totalTaskCount = new AtomicLong();
     
     private final AtomicInteger incompleteTaskCount = new AtomicInteger();
@@ -117,17 +168,48 @@ public class BasicExecutionManager implements ExecutionManager {
     private final List<ExecutionListener> listeners = new CopyOnWriteArrayList<ExecutionListener>();
     
     public BasicExecutionManager(String contextid) {
+        this(contextid, BrooklynProperties.Factory.newEmpty());
+    }
+    
+    public BasicExecutionManager(String contextid, BrooklynProperties brooklynProperties) {
         threadFactory = newThreadFactory(contextid);
         daemonThreadFactory = new ThreadFactoryBuilder()
                 .setThreadFactory(threadFactory)
                 .setDaemon(true)
                 .build();
-                
-        // use Executors.newCachedThreadPool(daemonThreadFactory), but timeout of 1s rather than 60s for better shutdown!
-        runner = new ThreadPoolExecutor(0, Integer.MAX_VALUE, 1L, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(), 
-                daemonThreadFactory);
+        ThreadFactory blockingThreadFactory = new ThreadFactoryBuilder()
+                .setThreadFactory(threadFactory)
+                .setNameFormat("brooklyn-execmanager-"+contextid+"-blocking-%d")
+                .setDaemon(true)
+                .build();
+        
+        long keepAliveMs = brooklynProperties.getConfig(THREAD_KEEP_ALIVE);
+        runner = newExecutor(brooklynProperties.getConfig(MAX_THREADS), keepAliveMs, daemonThreadFactory);
+        blockingRunner = newExecutor(brooklynProperties.getConfig(MAX_BLOCKING_THREADS), keepAliveMs, blockingThreadFactory);
             
         delayedRunner = new ScheduledThreadPoolExecutor(1, daemonThreadFactory);
+        
+        singleThreadedSchedulerMaxQueueSize = brooklynProperties.getConfig(SINGLE_THREADED_SCHEDULER_MAX_QUEUE_SIZE);
+        singleThreadedSchedulerOverflowPolicy = brooklynProperties.getConfig(SINGLE_THREADED_SCHEDULER_OVERFLOW_POLICY);
+        singleThreadedSchedulerMaxBlockTime = brooklynProperties.getConfig(SINGLE_THREADED_SCHEDULER_MAX_BLOCK_TIME);
+    }
+    
+    /**
+     * Creates a pool which grows up to the given number of threads, queueing tasks beyond that,
+     * and which releases threads idle for the given time. 
+     * If maxThreads is not positive the pool is unbounded (as for {@link java.util.concurrent.Executors#newCachedThreadPool()}).
+     */
+    protected ExecutorService newExecutor(int maxThreads, long keepAliveMs, ThreadFactory threadFactory) {
+        if (maxThreads <= 0) {
+            // use Executors.newCachedThreadPool(daemonThreadFactory), but short timeout rather than 60s for better shutdown!
+            return new ThreadPoolExecutor(0, Integer.MAX_VALUE, keepAliveMs, TimeUnit.MILLISECONDS, new SynchronousQueue<Runnable>(), 
+                    threadFactory);
+        } else {
+            ThreadPoolExecutor result = new ThreadPoolExecutor(maxThreads, maxThreads, keepAliveMs, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(), 
+                    threadFactory);
+            result.allowCoreThreadTimeOut(true);
+            return result;
+        }
     }
     
 	/** 
@@ -148,6 +230,7 @@ public class BasicExecutionManager implements ExecutionManager {
 	
     public void shutdownNow() {
         runner.shutdownNow();
+        blockingRunner.shutdownNow();
     }
     
     public void addListener(ExecutionListener listener) {
@@ -174,7 +257,7 @@ public class BasicExecutionManager implements ExecutionManager {
     }
 
     public void deleteTask(Task<?> task) {
-        Set<?> tags = checkNotNull((BasicTask<?>)task, "task").tags;
+        Set<?> tags = checkNotNull(task, "task").getTags();
         if (tags != null) {
             for (Object tag : tags) {
                 Set<Task> tasks = getMutableTasksWithTagOrNull(tag);
@@ -203,6 +286,65 @@ public class BasicExecutionManager implements ExecutionManager {
     public long getNumInMemoryTasks() {
         return tasksById.size();
     }
+    
+    /**
+     * Replaces each completed {@link BasicTask} known to this manager by a {@link CompletedTaskSummary},
+     * so that the job, result and other references held by the task can be garbage collected
+     * while a record of the task (with just a string of its result) is retained.
+     * <p>
+     * {@link ScheduledTask}s are not compacted, nor are tasks whose summary cannot be created (which are logged).
+     * 
+     * @return the number of tasks compacted
+     */
+    public int compactCompletedTasks() {
+        int count = 0;
+        for (Task<?> task : tasksById.values()) {
+            if (!(task instanceof BasicTask) || task instanceof ScheduledTask) continue;
+            if (!task.isDone()) continue;
+            // the result future completes after afterEnd sets the end time, unless the task was cancelled before starting
+            if (task.getEndTimeUtc() < 0 && !task.isCancelled()) continue;
+            
+            Task<?> summary;
+            try {
+                summary = CompletedTaskSummary.of(task, this);
+            } catch (Exception e) {
+                // e.g. the result's toString failed; leave this task as it is, rather than stopping the compaction (and gc)
+                log.warn("Unable to compact completed task "+task.getId()+" (leaving it uncompacted): "+e, e);
+                continue;
+            }
+            if (tasksById.replace(task.getId(), task, summary)) {
+                for (Object tag : task.getTags()) {
+                    Set<Task> tasks = getMutableTasksWithTagOrNull(tag);
+                    if (tasks != null) {
+                        synchronized (tasks) {
+                            // tasks are equal by id, so must remove the old one before adding its replacement
+                            if (tasks.remove(task)) tasks.add(summary);
+                        }
+                    }
+                }
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /** number of threads currently in the main pool */
+    public int getNumThreads() {
+        return (runner instanceof ThreadPoolExecutor) ? ((ThreadPoolExecutor)runner).getPoolSize() : -1;
+    }
+    
+    /** number of threads currently in the pool for tasks tagged with {@link ExecutionManager#BLOCKING_TASK_TAG} */
+    public int getNumBlockingThreads() {
+        return (blockingRunner instanceof ThreadPoolExecutor) ? ((ThreadPoolExecutor)blockingRunner).getPoolSize() : -1;
+    }
+    
+    /** number of tasks waiting for a thread, across both pools (always zero if the pools are unbounded) */
+    public long getNumQueuedTasks() {
+        long result = 0;
+        if (runner instanceof ThreadPoolExecutor) result += ((ThreadPoolExecutor)runner).getQueue().size();
+        if (blockingRunner instanceof ThreadPoolExecutor) result += ((ThreadPoolExecutor)blockingRunner).getQueue().size();
+        return result;
+    }
 
     private Set<Task> getMutableTasksWithTag(Object tag) {
         if (tag == null) {
@@ -336,15 +478,18 @@ public class BasicExecutionManager implements ExecutionManager {
     protected <T> Task<T> submitNewTask(final Map flags, final Task<T> task) {
         if (task instanceof ScheduledTask)
             return submitNewScheduledTask(flags, (ScheduledTask)task);
+        if (task instanceof ListenableTask)
+            return submitNewListenableTask(flags, (ListenableTask<T>)task);
+        
+        // check before beforeSubmit, so that a rejected task is not counted as incomplete
+        if (((BasicTask)task).job==null) 
+            throw new NullPointerException("Task "+task+" submitted with with null job: job must be supplied.");
         
         tasksById.put(task.getId(), task);
         totalTaskCount.incrementAndGet();
         
         beforeSubmit(flags, task);
         
-        if (((BasicTask)task).job==null) 
-            throw new NullPointerException("Task "+task+" submitted with with null job: job must be supplied.");
-        
         Callable job = new Callable() { public Object call() {
             Object result = null;
             Throwable error = null;
@@ -355,6 +500,14 @@ public class BasicExecutionManager implements ExecutionManager {
                             "["+task.getId().substring(0, 8)+"]";
                     Thread.currentThread().setName(newThreadName);
                 }
+                // a scheduler may call this (e.g. to complete a dropped submission) before submit has set the result
+                if (((BasicTask)task).getResult()==null) {
+                    try {
+                        ((BasicTask)task).blockUntilStarted();
+                    } catch (CancellationException e) {
+                        // handled below, as for any task cancelled before it starts
+                    }
+                }
                 beforeStart(flags, task);
                 if (!task.isCancelled()) {
                     result = ((BasicTask)task).job.call();
@@ -368,7 +521,11 @@ public class BasicExecutionManager implements ExecutionManager {
                 afterEnd(flags, task);
             }
             if (error!=null) {
-                log.warn("Error while running task "+task+" (rethrowing): "+error.getMessage(), error);
+                if (error instanceof CancellationException) {
+                    if (log.isDebugEnabled()) log.debug("Task "+task+" cancelled");
+                } else {
+                    log.warn("Error while running task "+task+" (rethrowing): "+error.getMessage(), error);
+                }
                 throw Throwables.propagate(error);
             }
             return result;
@@ -388,6 +545,8 @@ public class BasicExecutionManager implements ExecutionManager {
         if (schedulers!=null && !schedulers.isEmpty()) {
 			if (schedulers.size()>1) log.warn("multiple schedulers detected, using only the first, for "+task+": "+schedulers);
             future = schedulers.iterator().next().submit(job);
+        } else if (((BasicTask)task).tags.contains(BLOCKING_TASK_TAG)) {
+            future = blockingRunner.submit(job);
         } else {
             future = runner.submit(job);
         }
@@ -396,6 +555,21 @@ public class BasicExecutionManager implements ExecutionManager {
         return task;
     }
 
+    /**
+     * Records the task, so it is visible by id and by tag (and so can be garbage collected), but does not run it: 
+     * it is completed by its future, not by a job. It is therefore not counted as active or incomplete.
+     */
+    protected <T> Task<T> submitNewListenableTask(Map flags, ListenableTask<T> task) {
+        // the same task may be submitted repeatedly, e.g. each time config referring to it is resolved
+        if (tasksById.putIfAbsent(task.getId(), task) != null) return task;
+        totalTaskCount.incrementAndGet();
+        
+        Task currentTask = getCurrentTask();
+        if (currentTask!=null) task.submittedByTask = currentTask;
+        addTags(flags, task);
+        return task;
+    }
+    
     @SuppressWarnings("deprecation")
     protected void beforeSubmit(Map flags, Task<?> task) {
         incompleteTaskCount.incrementAndGet();
@@ -404,12 +578,7 @@ public class BasicExecutionManager implements ExecutionManager {
         if (currentTask!=null) ((BasicTask)task).submittedByTask = currentTask;
         ((BasicTask)task).submitTimeUtc = System.currentTimeMillis();
         
-        if (flags.get("tag")!=null) ((BasicTask)task).tags.add(flags.remove("tag"));
-        if (flags.get("tags")!=null) ((BasicTask)task).tags.addAll((Collection)flags.remove("tags"));
-
-        for (Object tag: ((BasicTask)task).tags) {
-            getMutableTasksWithTag(tag).add(task);
-        }
+        addTags(flags, task);
         
         List tagLinkedPreprocessors = new ArrayList();
         for (Object tag: ((BasicTask)task).tags) {
@@ -446,6 +615,18 @@ public class BasicExecutionManager implements ExecutionManager {
     }
 
     @SuppressWarnings("deprecation")
+    /** adds any tags in the flags to the task, and indexes the task by all its tags */
+    private void addTags(Map flags, Task<?> task) {
+        if (flags.get("tag")!=null) ((BasicTask)task).tags.add(flags.remove("tag"));
+        if (flags.get("tags")!=null) ((BasicTask)task).tags.addAll((Collection)flags.remove("tags"));
+
+        for (Object tag: ((BasicTask)task).tags) {
+            // not indexed, otherwise every (e.g. poll) task which blocks would be retained under it
+            if (BLOCKING_TASK_TAG.equals(tag)) continue;
+            getMutableTasksWithTag(tag).add(task);
+        }
+    }
+    
     protected void afterEnd(Map flags, Task<?> task) {
         activeTaskCount.decrementAndGet();
         incompleteTaskCount.decrementAndGet();
@@ -462,7 +643,7 @@ public class BasicExecutionManager implements ExecutionManager {
         PerThreadCurrentTaskHolder.perThreadCurrentTask.remove();
         ((BasicTask)task).endTimeUtc = System.currentTimeMillis();
         //clear thread _after_ endTime set, so we won't get a null thread when there is no end-time
-        if (RENAME_THREADS) {
+        if (RENAME_THREADS && ((BasicTask)task).thread!=null) {
             String newThreadName = "brooklyn-"+Identifiers.makeRandomId(8);
             ((BasicTask)task).thread.setName(newThreadName);
         }
@@ -531,6 +712,18 @@ public class BasicExecutionManager implements ExecutionManager {
         return schedulerByTag.get(tag);
     }
     
+    /** returns the number of tasks queued in each {@link SingleThreadedScheduler}, keyed by tag, for those with queued tasks */
+    public Map<Object, Integer> getSchedulerQueueSizesByTag() {
+        Map<Object, Integer> result = new LinkedHashMap<Object, Integer>();
+        for (Map.Entry<Object, TaskScheduler> entry : schedulerByTag.entrySet()) {
+            if (entry.getValue() instanceof SingleThreadedScheduler) {
+                int size = ((SingleThreadedScheduler)entry.getValue()).getQueueSize();
+                if (size > 0) result.put(entry.getKey(), size);
+            }
+        }
+        return result;
+    }
+    
     /**
      * Forgets that any preprocessor was associated with a tag.
      *
@@ -559,6 +752,11 @@ public class BasicExecutionManager implements ExecutionManager {
                 TaskScheduler schedulerI = scheduler.newInstance();
                 // allow scheduler to have a nice name, for logging etc
                 if (schedulerI instanceof CanSetName) ((CanSetName)schedulerI).setName(""+tag);
+                if (schedulerI instanceof SingleThreadedScheduler) {
+                    ((SingleThreadedScheduler)schedulerI).setMaxQueueSize(singleThreadedSchedulerMaxQueueSize);
+                    ((SingleThreadedScheduler)schedulerI).setOverflowPolicy(singleThreadedSchedulerOverflowPolicy);
+                    ((SingleThreadedScheduler)schedulerI).setMaxBlockTime(singleThreadedSchedulerMaxBlockTime);
+                }
                 setTaskSchedulerForTag(tag, schedulerI);
             } catch (InstantiationException e) {
                 throw Throwables.propagate(e);
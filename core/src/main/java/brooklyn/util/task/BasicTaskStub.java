@@ -6,7 +6,17 @@ import brooklyn.util.text.Identifiers;
 import com.google.common.base.Objects;
 
 public class BasicTaskStub implements TaskStub {
-    private String id = Identifiers.makeRandomId(8);
+    private final String id;
+    
+    public BasicTaskStub() {
+        this(Identifiers.makeRandomId(8));
+    }
+    
+    /** for use when creating a record of an existing task, e.g. {@link CompletedTaskSummary} */
+    protected BasicTaskStub(String id) {
+        this.id = id;
+    }
+    
     public String getId() {
         return id;
     }
@@ -0,0 +1,172 @@
+package brooklyn.util.task;
+
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import brooklyn.management.ExecutionManager;
+import brooklyn.management.Task;
+import brooklyn.util.exceptions.Exceptions;
+import brooklyn.util.text.Strings;
+
+/**
+ * A compact, immutable record of a {@link Task} which has completed.
+ * <p>
+ * Used by {@link BasicExecutionManager#compactCompletedTasks()} to replace completed {@link BasicTask}s
+ * which are being retained (e.g. for display in the web console), so that their job, result future,
+ * thread and other references can be garbage collected. The outcome (error or cancellation) and status 
+ * text are captured at the point of compaction; of the result, only its type and a string (truncated to 
+ * {@link #MAX_RESULT_STRING_LENGTH}) are kept, so {@link #get()} fails for a task which returned a value.
+ */
+public class CompletedTaskSummary<T> extends BasicTaskStub implements Task<T> {
+
+    public static final int MAX_RESULT_STRING_LENGTH = 1000;
+
+    private final ExecutionManager executionManager;
+    private final Set<Object> tags;
+    private final String displayName;
+    private final String description;
+    private final long submitTimeUtc;
+    private final long startTimeUtc;
+    private final long endTimeUtc;
+    private final String submittedByTaskId;
+    private final boolean cancelled;
+    private final Class<?> resultType;
+    private final String resultString;
+    private final Throwable error;
+    private final String statusSummary;
+    private final String statusDetail;
+    private final String statusDetailMultiline;
+
+    /**
+     * Creates a summary of the given task, which must be done.
+     * 
+     * @param executionManager used to look up the submitting task, on request
+     */
+    public static <T> CompletedTaskSummary<T> of(Task<T> task, ExecutionManager executionManager) {
+        if (!task.isDone()) throw new IllegalStateException("Cannot summarise task "+task+"; not yet done");
+        Object result = null;
+        Throwable error = null;
+        boolean cancelled = task.isCancelled();
+        if (!cancelled) {
+            try {
+                result = task.get();
+            } catch (CancellationException e) {
+                cancelled = true;
+            } catch (ExecutionException e) {
+                error = (e.getCause() != null) ? e.getCause() : e;
+            } catch (InterruptedException e) {
+                throw Exceptions.propagate(e);
+            }
+        }
+        return new CompletedTaskSummary<T>(task, executionManager, cancelled, result, error);
+    }
+    
+    protected CompletedTaskSummary(Task<T> task, ExecutionManager executionManager, boolean cancelled, Object result, Throwable error) {
+        super(task.getId());
+        this.executionManager = executionManager;
+        this.tags = Collections.unmodifiableSet(new LinkedHashSet<Object>(task.getTags()));
+        this.displayName = task.getDisplayName();
+        this.description = task.getDescription();
+        this.submitTimeUtc = task.getSubmitTimeUtc();
+        this.startTimeUtc = task.getStartTimeUtc();
+        this.endTimeUtc = task.getEndTimeUtc();
+        this.submittedByTaskId = (task.getSubmittedByTask() != null) ? task.getSubmittedByTask().getId() : null;
+        this.cancelled = cancelled;
+        this.resultType = (result != null) ? result.getClass() : null;
+        this.resultString = (result != null) ? Strings.maxlen(result.toString(), MAX_RESULT_STRING_LENGTH) : null;
+        this.error = error;
+        this.statusSummary = task.getStatusSummary();
+        this.statusDetail = task.getStatusDetail(false);
+        this.statusDetailMultiline = task.getStatusDetail(true);
+    }
+
+    @Override
+    public Set<Object> getTags() { return tags; }
+    @Override
+    public long getSubmitTimeUtc() { return submitTimeUtc; }
+    @Override
+    public long getStartTimeUtc() { return startTimeUtc; }
+    @Override
+    public long getEndTimeUtc() { return endTimeUtc; }
+    @Override
+    public String getDisplayName() { return displayName; }
+    @Override
+    public String getDescription() { return description; }
+
+    /** the submitting task, if still known to the execution manager (otherwise null) */
+    @Override
+    public Task<?> getSubmittedByTask() {
+        return (submittedByTaskId != null) ? executionManager.getTask(submittedByTaskId) : null;
+    }
+
+    @Override
+    public Thread getThread() { return null; }
+    @Override
+    public boolean isSubmitted() { return submitTimeUtc >= 0; }
+    @Override
+    public boolean isBegun() { return startTimeUtc >= 0; }
+    @Override
+    public boolean isError() { return cancelled || error != null; }
+    @Override
+    public boolean isCancelled() { return cancelled; }
+    @Override
+    public boolean isDone() { return true; }
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) { return false; }
+
+    @Override
+    public void blockUntilStarted() {
+        if (cancelled) throw new CancellationException();
+    }
+    @Override
+    public void blockUntilEnded() {
+        // already ended
+    }
+
+    /** the type of the task's result, or null if it returned null (or failed) */
+    public Class<?> getResultType() { return resultType; }
+    /** the toString of the task's result, truncated to {@link #MAX_RESULT_STRING_LENGTH}; or null if it returned null (or failed) */
+    public String getResultString() { return resultString; }
+
+    /**
+     * Returns null if the task returned null, or throws as the task did; but throws {@link IllegalStateException} 
+     * if the task returned a value, as that is not retained (see {@link #getResultType()} and {@link #getResultString()}).
+     */
+    @Override
+    public T get() throws InterruptedException, ExecutionException {
+        if (cancelled) throw new CancellationException();
+        if (error != null) throw new ExecutionException(error);
+        if (resultType != null) throw new IllegalStateException("Result of "+this+" no longer available, "+
+                "as task has been compacted (result was "+resultType.getName()+": "+resultString+")");
+        return null;
+    }
+    @Override
+    public T get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException {
+        return get();
+    }
+    @Override
+    public T getUnchecked() {
+        try {
+            return get();
+        } catch (InterruptedException e) {
+            throw Exceptions.propagate(e);
+        } catch (ExecutionException e) {
+            throw Exceptions.propagate(e);
+        }
+    }
+
+    @Override
+    public String getStatusSummary() { return statusSummary; }
+    @Override
+    public String getStatusDetail(boolean multiline) { return multiline ? statusDetailMultiline : statusDetail; }
+
+    @Override
+    public String toString() {
+        return "Task["+(displayName!=null && displayName.length()>0 ? displayName+" " : "")+
+                (!tags.isEmpty() ? tags+"; " : "")+getId()+"]";
+    }
+}
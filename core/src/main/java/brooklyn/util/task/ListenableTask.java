@@ -0,0 +1,85 @@
+package brooklyn.util.task;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import com.google.common.annotations.Beta;
+import com.google.common.util.concurrent.ListenableFuture;
+
+/**
+ * A {@link brooklyn.management.Task} whose result is supplied by a {@link ListenableFuture}, typically
+ * completed from a callback (such as a sensor subscription), rather than computed by a job running in a
+ * thread of the execution manager.
+ * <p>
+ * The task is treated as already submitted, so submitting it (e.g. when resolving config) just records it
+ * with the execution manager, and no thread is held while waiting for the result; only callers of {@link #get()} 
+ * block. Use {@link #addListener(Runnable, Executor)} to act on the result without blocking.
+ * <p>
+ * Nothing is done to the future on construction (it may start work when first listened to or waited on), 
+ * so the end time is recorded when the task is first seen to be done.
+ */
+@Beta
+public class ListenableTask<T> extends BasicTask<T> implements ListenableFuture<T> {
+
+    private final ListenableFuture<T> future;
+
+    public ListenableTask(Map<?,?> flags, ListenableFuture<T> future) {
+        super(flags);
+        this.future = checkNotNull(future, "future");
+        submitTimeUtc = System.currentTimeMillis();
+        startTimeUtc = submitTimeUtc;
+        initResult(future);
+    }
+
+    @Override
+    public boolean isDone() {
+        boolean result = super.isDone();
+        if (result) recordEnd();
+        return result;
+    }
+    
+    @Override
+    public long getEndTimeUtc() {
+        isDone();
+        return endTimeUtc;
+    }
+    
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        boolean result = super.cancel(mayInterruptIfRunning);
+        isDone();
+        return result;
+    }
+    
+    @Override
+    public T get() throws InterruptedException, ExecutionException {
+        try {
+            return super.get();
+        } finally {
+            isDone();
+        }
+    }
+    
+    @Override
+    public T get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+        try {
+            return super.get(timeout, unit);
+        } finally {
+            isDone();
+        }
+    }
+    
+    private void recordEnd() {
+        if (endTimeUtc < 0) endTimeUtc = System.currentTimeMillis();
+    }
+
+    @Override
+    public void addListener(Runnable listener, Executor executor) {
+        future.addListener(listener, executor);
+    }
+}
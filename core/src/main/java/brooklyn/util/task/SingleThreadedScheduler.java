@@ -1,5 +1,7 @@
 package brooklyn.util.task;
 
+import static com.google.common.base.Preconditions.checkNotNull;
+
 import java.util.Map;
 import java.util.Queue;
 import java.util.concurrent.Callable;
@@ -8,14 +10,18 @@ import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import brooklyn.management.Task;
+import brooklyn.util.exceptions.Exceptions;
 
 /**
  * Instances of this class ensures that {@link Task}s it is shown execute with in-order
@@ -25,15 +31,52 @@ import brooklyn.management.Task;
  * {@link #onEnd(Map)} (but not necessarily all in the same thread).  The order is that in which
  * it is submitted.
  * <p>
- * This implementation does so by blocking on a {@link ConcurrentLinkedQueue}, <em>after</em>
- * the task is started in a thread (and {@link Task#isStarted()} returns true), but (of course)
- * <em>before</em> the {@link Task#job} actually gets invoked.
+ * This implementation does not lock: submissions are added to a {@link ConcurrentLinkedQueue}, and 
+ * whichever thread wins a compare-and-set on the running flag (either the submitter, or the thread 
+ * finishing the previous task) hands the next submission to the executor. No thread is consumed
+ * by queued tasks.
+ * <p>
+ * The queue can be bounded by setting a {@link #setMaxQueueSize(int) high-water mark}, and an 
+ * {@link OverflowPolicy} for what to do when it is reached. By default the queue is unbounded,
+ * and a warning is logged as it backs up.
+ * <p>
+ * A submission which is cancelled (or dropped) before it starts is not run in order, but its callable
+ * is still called, so that the submitter can complete its bookkeeping (see {@link TaskScheduler#submit(Callable)}).
  */
 public class SingleThreadedScheduler implements TaskScheduler, CanSetName {
     private static final Logger LOG = LoggerFactory.getLogger(SingleThreadedScheduler.class);
     
+    /** what to do when a submission would take the queue above its {@link SingleThreadedScheduler#setMaxQueueSize(int) maximum size} */
+    public enum OverflowPolicy {
+        /** accept the submission regardless, logging a warning as the queue grows */
+        WARN,
+        /**
+         * block the submitting thread until there is space (unless it is the thread running this scheduler's current task),
+         * for at most the {@link SingleThreadedScheduler#setMaxBlockTime(long) maximum block time}, after which the 
+         * submission is accepted regardless. The bound matters when tasks of two full schedulers submit to each other: 
+         * each would otherwise wait forever for the other to make space.
+         */
+        BLOCK,
+        /** accept the submission, cancelling the oldest queued submission */
+        DROP_OLDEST
+    }
+    
     private final Queue<QueuedSubmission<?>> order = new ConcurrentLinkedQueue<QueuedSubmission<?>>();
+    /** tracked separately as {@link ConcurrentLinkedQueue#size()} is not constant-time */
+    private final AtomicInteger queueSize = new AtomicInteger();
     private final AtomicBoolean running = new AtomicBoolean(false);
+    private volatile Thread runningThread;
+    private final Object capacityMonitor = new Object();
+    
+    private final AtomicInteger peakQueueSize = new AtomicInteger();
+    private final AtomicLong droppedCount = new AtomicLong();
+    private final AtomicLong blockedCount = new AtomicLong();
+    
+    private volatile int maxQueueSize = 0;
+    private volatile OverflowPolicy overflowPolicy = OverflowPolicy.WARN;
+    private volatile long maxBlockTime = DEFAULT_MAX_BLOCK_TIME;
+    
+    public static final long DEFAULT_MAX_BLOCK_TIME = 10*1000;
     
     private ExecutorService executor;
 
@@ -51,43 +94,183 @@ public class SingleThreadedScheduler implements TaskScheduler, CanSetName {
     
     public void injectExecutor(ExecutorService executor) { this.executor = executor; }
 
-    public synchronized <T> Future<T> submit(Callable<T> c) {
-        if (running.compareAndSet(false, true)) {
+    /** sets the high-water mark for queued submissions; zero or negative means unbounded */
+    public void setMaxQueueSize(int maxQueueSize) {
+        this.maxQueueSize = maxQueueSize;
+    }
+    
+    public int getMaxQueueSize() {
+        return maxQueueSize;
+    }
+    
+    public void setOverflowPolicy(OverflowPolicy overflowPolicy) {
+        this.overflowPolicy = checkNotNull(overflowPolicy, "overflowPolicy");
+    }
+    
+    public OverflowPolicy getOverflowPolicy() {
+        return overflowPolicy;
+    }
+    
+    /** 
+     * sets the longest time (in milliseconds) that {@link OverflowPolicy#BLOCK} makes a submitter wait for space,
+     * before accepting the submission regardless; zero or negative means no limit (which risks deadlock)
+     */
+    public void setMaxBlockTime(long maxBlockTime) {
+        this.maxBlockTime = maxBlockTime;
+    }
+    
+    public long getMaxBlockTime() {
+        return maxBlockTime;
+    }
+    
+    /** number of submissions queued (not including any currently executing) */
+    public int getQueueSize() {
+        return queueSize.get();
+    }
+    
+    /** largest number of submissions that have been queued at once */
+    public int getPeakQueueSize() {
+        return peakQueueSize.get();
+    }
+    
+    /** number of queued submissions cancelled due to {@link OverflowPolicy#DROP_OLDEST} */
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+    
+    /** number of submissions which had to wait for space due to {@link OverflowPolicy#BLOCK} */
+    public long getBlockedCount() {
+        return blockedCount.get();
+    }
+    
+    public <T> Future<T> submit(Callable<T> c) {
+        if (queueSize.get() == 0 && running.compareAndSet(false, true)) {
+            // nothing queued and nothing running: can start immediately
             return executeNow(c);
-        } else {
-            WrappingFuture<T> f = new WrappingFuture<T>();
-            order.add(new QueuedSubmission<T>(c, f));
-            int size = order.size();
-            if (size>0 && (size == 10 || (size<=500 && (size%100)==0) || (size%1000)==0) && size!=lastSizeWarn) {
-                LOG.warn("{} is backing up, {} tasks queued", this, size);
-                lastSizeWarn = size;
-            }
-            return f;
         }
+        
+        int max = maxQueueSize;
+        if (max > 0 && overflowPolicy == OverflowPolicy.BLOCK) {
+            awaitCapacity(max);
+        }
+        
+        WrappingFuture<T> f = new WrappingFuture<T>();
+        order.add(new QueuedSubmission<T>(c, f));
+        int size = queueSize.incrementAndGet();
+        recordPeak(size);
+        
+        if (max > 0 && size > max && overflowPolicy == OverflowPolicy.DROP_OLDEST) {
+            dropOldest(max);
+        } else if (size>0 && (size == 10 || (size<=500 && (size%100)==0) || (size%1000)==0) && size!=lastSizeWarn) {
+            LOG.warn("{} is backing up, {} tasks queued", this, size);
+            lastSizeWarn = size;
+        }
+        
+        runNextIfIdle();
+        return f;
     }
-    int lastSizeWarn = 0;
+    volatile int lastSizeWarn = 0;
 
+    private void recordPeak(int size) {
+        int peak;
+        while (size > (peak = peakQueueSize.get())) {
+            if (peakQueueSize.compareAndSet(peak, size)) break;
+        }
+    }
+    
+    private void awaitCapacity(int max) {
+        if (Thread.currentThread() == runningThread) {
+            // submitted from within our own task; blocking would deadlock
+            return;
+        }
+        if (queueSize.get() < max) return;
+        blockedCount.incrementAndGet();
+        long maxBlock = maxBlockTime;
+        long end = (maxBlock > 0) ? System.currentTimeMillis() + maxBlock : Long.MAX_VALUE;
+        synchronized (capacityMonitor) {
+            while (queueSize.get() >= max && Thread.currentThread() != runningThread) {
+                long remaining = end - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    LOG.warn("{} still full ({} tasks queued) after blocking submitter for {}ms; accepting submission regardless", 
+                            new Object[] {this, queueSize.get(), maxBlock});
+                    return;
+                }
+                try {
+                    capacityMonitor.wait(Math.min(100, remaining));
+                } catch (InterruptedException e) {
+                    throw Exceptions.propagate(e);
+                }
+            }
+        }
+    }
+    
+    private void dropOldest(int max) {
+        while (queueSize.get() > max) {
+            QueuedSubmission<?> qs = order.poll();
+            if (qs == null) break;
+            queueSize.decrementAndGet();
+            qs.f.cancel(false);
+            completeCancelled(qs);
+            long dropped = droppedCount.incrementAndGet();
+            if (dropped == 1 || (dropped%1000) == 0) {
+                LOG.warn("{} is full ({} tasks queued), dropped oldest submission ({} dropped in total)", new Object[] {this, max, dropped});
+            }
+        }
+    }
+    
+    /** 
+     * starts the next non-cancelled queued submission, if there is one and no submission is currently running;
+     * safe to call from any thread, as only the thread which wins the CAS on {@link #running} will dequeue
+     */
     @SuppressWarnings({ "rawtypes", "unchecked" })
-    private synchronized void onEnd() {
-        boolean done = false;
-        while (!done) {
-            if (order.isEmpty()) {
+    private void runNextIfIdle() {
+        while (queueSize.get() > 0 && running.compareAndSet(false, true)) {
+            QueuedSubmission<?> qs = order.poll();
+            if (qs == null) {
+                // queue drained by someone else (e.g. dropped) between our check and our poll
                 running.set(false);
-                done = true;
-            } else {
-                QueuedSubmission<?> qs = order.remove();
-                if (!qs.f.isCancelled()) {
-                    Future future = executeNow(qs.c);
-                    qs.f.setDelegate(future);
-                    done = true;
+                continue;
+            }
+            queueSize.decrementAndGet();
+            if (overflowPolicy == OverflowPolicy.BLOCK) {
+                synchronized (capacityMonitor) {
+                    capacityMonitor.notifyAll();
                 }
             }
+            if (qs.f.isCancelled()) {
+                running.set(false);
+                completeCancelled(qs);
+                continue;
+            }
+            Future future = executeNow(qs.c);
+            qs.f.setDelegate(future);
+            return;
         }
     }
 
-    private synchronized <T> Future<T> executeNow(final Callable<T> c) {
+    /**
+     * calls the callable of a submission cancelled before it started, outside of the single-threaded order; 
+     * its future is already cancelled, so it just completes the submitter's bookkeeping
+     */
+    private void completeCancelled(QueuedSubmission<?> qs) {
+        try {
+            executor.submit(qs.c);
+        } catch (RejectedExecutionException e) {
+            // e.g. shutting down
+            if (LOG.isDebugEnabled()) LOG.debug("Unable to complete cancelled submission to "+this+": "+e);
+        }
+    }
+
+    private void onEnd() {
+        runningThread = null;
+        running.set(false);
+        runNextIfIdle();
+    }
+
+    private <T> Future<T> executeNow(final Callable<T> c) {
         return executor.submit(new Callable<T>() {
             public T call() throws Exception {
+                runningThread = Thread.currentThread();
                 try {
                     return c.call();
                 } finally {
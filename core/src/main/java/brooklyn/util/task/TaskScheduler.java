@@ -19,6 +19,10 @@ public interface TaskScheduler {
     /**
      * Called by {@link BasicExecutionManager} when preprocessor is associated with an
      * execution manager.
+     * <p>
+     * If the returned future is cancelled before the callable starts, the scheduler should still call it
+     * (though not necessarily in order), so that the execution manager can record the task as ended;
+     * the callables submitted by {@link BasicExecutionManager} do not run the task's job in that case.
      */
     public <T> Future<T> submit(Callable<T> c);
 }
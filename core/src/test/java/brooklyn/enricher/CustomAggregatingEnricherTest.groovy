@@ -155,6 +155,28 @@ class CustomAggregatingEnricherTest {
         assertEquals cae.getAggregate(), 4.5d
     }
     
+    @Test
+    public void testIncrementalMaxTracksChangedAndRemovedProducers() {
+        TestEntity p1 = app.createAndManageChild(EntitySpecs.spec(TestEntity.class)); 
+        TestEntity p2 = app.createAndManageChild(EntitySpecs.spec(TestEntity.class));
+        
+        CustomAggregatingEnricher<Integer,Integer> cae = CustomAggregatingEnricher.<Integer,Integer>newEnricher(
+                intSensor, new BasicAttributeSensor<Integer>(Integer.class, "target sensor"), 
+                IncrementalAggregators.max(Integer.class), producers:[p1, p2])
+        producer.addEnricher(cae)
+        assertEquals cae.getAggregate(), null
+        
+        cae.onEvent(intSensor.newEvent(p1, 3))
+        cae.onEvent(intSensor.newEvent(p2, 5))
+        assertEquals cae.getAggregate(), 5
+        
+        cae.onEvent(intSensor.newEvent(p2, 1))
+        assertEquals cae.getAggregate(), 3
+        
+        cae.removeProducer(p1)
+        assertEquals cae.getAggregate(), 1
+    }
+    
     @Test
     public void testAddingAndRemovingProducers() {
         TestEntity p1 = app.createAndManageChild(EntitySpecs.spec(TestEntity.class)); 
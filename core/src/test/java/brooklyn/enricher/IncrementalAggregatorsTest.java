@@ -0,0 +1,138 @@
+package brooklyn.enricher;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.testng.annotations.Test;
+
+public class IncrementalAggregatorsTest {
+
+    @Test
+    public void testSumIsExactForIntegralValues() throws Exception {
+        IncrementalAggregator<Number, Long> sum = IncrementalAggregators.sum(Long.class);
+        assertEquals(sum.getAggregate(), (Long)0L);
+
+        sum.add(Long.MAX_VALUE - 10);
+        sum.add(3);
+        sum.add(null);
+        assertEquals(sum.getAggregate(), (Long)(Long.MAX_VALUE - 7));
+
+        sum.remove(3);
+        assertEquals(sum.getAggregate(), (Long)(Long.MAX_VALUE - 10));
+    }
+
+    @Test
+    public void testSumOfMixedValues() throws Exception {
+        IncrementalAggregator<Number, Double> sum = IncrementalAggregators.sum(Double.class);
+        sum.add(1);
+        sum.add(0.1);
+        sum.add(0.2);
+        assertEquals(sum.getAggregate(), 1.3, 0.0000001);
+
+        sum.remove(0.1);
+        sum.remove(0.2);
+        assertEquals(sum.getAggregate(), (Double)1d);
+    }
+
+    @Test
+    public void testCountAndMeanIgnoreNulls() throws Exception {
+        IncrementalAggregator<Object, Integer> count = IncrementalAggregators.count();
+        IncrementalAggregator<Number, Double> mean = IncrementalAggregators.mean();
+        assertEquals(mean.getAggregate(), 0d);
+
+        for (Number val : new Number[] {2, null, 4.5, 6}) {
+            count.add(val);
+            mean.add(val);
+        }
+        assertEquals(count.getAggregate(), (Integer)3);
+        assertEquals(mean.getAggregate(), 12.5/3, 0.0000001);
+
+        count.remove(4.5);
+        mean.remove(4.5);
+        assertEquals(count.getAggregate(), (Integer)2);
+        assertEquals(mean.getAggregate(), 4d);
+    }
+
+    @Test
+    public void testMinAndMaxTrackRemovals() throws Exception {
+        IncrementalAggregator<Number, Integer> min = IncrementalAggregators.min(Integer.class);
+        IncrementalAggregator<Number, Integer> max = IncrementalAggregators.max(Integer.class);
+        assertNull(min.getAggregate());
+        assertNull(max.getAggregate());
+
+        for (int val : new int[] {5, 1, 9, 1, 9}) {
+            min.add(val);
+            max.add(val);
+        }
+        assertEquals(min.getAggregate(), (Integer)1);
+        assertEquals(max.getAggregate(), (Integer)9);
+
+        min.remove(1);
+        max.remove(9);
+        assertEquals(min.getAggregate(), (Integer)1);
+        assertEquals(max.getAggregate(), (Integer)9);
+
+        min.remove(1);
+        max.remove(9);
+        assertEquals(min.getAggregate(), (Integer)5);
+        assertEquals(max.getAggregate(), (Integer)5);
+    }
+
+    @Test
+    public void testPercentileWithinRelativeAccuracy() throws Exception {
+        IncrementalAggregator<Number, Double> p95 = IncrementalAggregators.percentile(95, 0.01);
+        IncrementalAggregator<Number, Double> median = IncrementalAggregators.percentile(50, 0.01);
+        assertNull(p95.getAggregate());
+
+        for (int i = 1; i <= 1000; i++) {
+            p95.add(i);
+            median.add(i);
+        }
+        assertWithinRelative(p95.getAggregate(), 950, 0.01);
+        assertWithinRelative(median.getAggregate(), 500, 0.01);
+
+        // replacing the top half of the values with small ones moves the percentiles down
+        for (int i = 501; i <= 1000; i++) {
+            p95.remove(i);
+            p95.add(i - 500);
+            median.remove(i);
+            median.add(i - 500);
+        }
+        assertWithinRelative(p95.getAggregate(), 475, 0.01);
+        assertWithinRelative(median.getAggregate(), 250, 0.01);
+    }
+
+    @Test
+    public void testPercentileOfNegativeAndZeroValues() throws Exception {
+        IncrementalAggregator<Number, Double> median = IncrementalAggregators.percentile(50);
+        median.add(-10);
+        median.add(0);
+        median.add(10);
+        assertEquals(median.getAggregate(), 0d);
+
+        median.remove(10);
+        median.add(-20);
+        assertWithinRelative(median.getAggregate(), -10, 0.01);
+    }
+
+    @Test
+    public void testPercentileOfRandomValues() throws Exception {
+        Random random = new Random(1234);
+        IncrementalAggregator<Number, Double> p99 = IncrementalAggregators.percentile(99, 0.02);
+        double[] vals = new double[10000];
+        for (int i = 0; i < vals.length; i++) {
+            vals[i] = random.nextDouble() * 1000;
+            p99.add(vals[i]);
+        }
+        Arrays.sort(vals);
+        assertWithinRelative(p99.getAggregate(), vals[(int)Math.floor(0.99 * (vals.length - 1))], 0.02);
+    }
+
+    private void assertWithinRelative(Double actual, double expected, double accuracy) {
+        assertTrue(Math.abs(actual - expected) <= Math.abs(expected) * accuracy, "actual="+actual+"; expected="+expected);
+    }
+}
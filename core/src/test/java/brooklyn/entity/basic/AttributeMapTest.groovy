@@ -1,6 +1,8 @@
 package brooklyn.entity.basic;
 
 import static org.testng.Assert.assertEquals
+import static org.testng.Assert.assertFalse
+import static org.testng.Assert.assertTrue
 
 import java.util.concurrent.ExecutorService
 import java.util.concurrent.Executors
@@ -21,13 +23,15 @@ public class AttributeMapTest {
 
     Application app;
     AttributeMap map
+    Map storage
     private final BasicAttributeSensor<Integer> exampleSensor = [ Integer, "attributeMapTest.exampleSensor", "" ]
 
     @BeforeMethod(alwaysRun=true)
     public void setUp() {
         app = new TestApplicationImpl()
         TestEntity e = new TestEntityImpl(app)
-        map = new AttributeMap(e, Collections.synchronizedMap(new LinkedHashMap()));
+        storage = Collections.synchronizedMap(new LinkedHashMap())
+        map = new AttributeMap(e, storage);
         Entities.startManagement(app);
     }
     
@@ -134,4 +138,83 @@ public class AttributeMapTest {
         assertEquals(map.getValue(childSensor), "childValue")
         assertEquals(map.getValue(sensor), "parentValue")
     }
+    
+    @Test
+    public void testDeclaredAndDynamicSensorsAreHeldInStorage() {
+        BasicAttributeSensor<String> dynamicSensor = [ String, "attributeMapTest.dynamic", "" ]
+        
+        map.update(TestEntity.SEQUENCE, 123)
+        map.update(dynamicSensor, "dynamicVal")
+        
+        assertEquals(map.getValue(TestEntity.SEQUENCE), 123)
+        assertEquals(map.getValue(TestEntity.SEQUENCE.getNameParts()), 123)
+        assertEquals(map.getValue(dynamicSensor), "dynamicVal")
+        
+        assertEquals(storage.keySet(), [TestEntity.SEQUENCE.getNameParts(), dynamicSensor.getNameParts()] as Set)
+        assertEquals(storage.get(TestEntity.SEQUENCE.getNameParts()), 123)
+        assertEquals(map.asMap().get(TestEntity.SEQUENCE.getName()), 123)
+        assertEquals(map.asMap().get(dynamicSensor.getName()), "dynamicVal")
+        
+        map.update(TestEntity.SEQUENCE, null)
+        assertEquals(map.getValue(TestEntity.SEQUENCE), null)
+        assertTrue(map.asMap().containsKey(TestEntity.SEQUENCE.getName()))
+        
+        map.remove(TestEntity.SEQUENCE)
+        assertFalse(map.asMap().containsKey(TestEntity.SEQUENCE.getName()))
+        assertFalse(storage.containsKey(TestEntity.SEQUENCE.getNameParts()))
+        assertEquals(map.getValue(TestEntity.SEQUENCE), null)
+    }
+    
+    @Test
+    public void testDeclaredSensorReadThroughFromStorage() {
+        storage.put(TestEntity.SEQUENCE.getNameParts(), 123)
+        assertEquals(map.getValue(TestEntity.SEQUENCE), 123)
+        
+        map.update(TestEntity.SEQUENCE.getNameParts(), 456)
+        assertEquals(map.getValue(TestEntity.SEQUENCE), 456)
+    }
+    
+    @Test
+    public void testPathWithDotIsNotTheSameAsSensorNameParts() {
+        map.update(TestEntity.SEQUENCE, 123)
+        map.update([TestEntity.SEQUENCE.getName()], 456)
+        
+        assertEquals(map.getValue(TestEntity.SEQUENCE), 123)
+        assertEquals(map.getValue([TestEntity.SEQUENCE.getName()]), 456)
+        assertEquals(map.asRawMap().size(), 2)
+    }
+    
+    @Test
+    public void testWriteWhileIndexCreatedIsSeenByLaterReads() {
+        TypeRacingEntity e = new TypeRacingEntity()
+        Map storage2 = Collections.synchronizedMap(new LinkedHashMap())
+        AttributeMap map2 = new AttributeMap(e, storage2)
+        e.racingMap = map2
+        e.racing = true
+        
+        // the write finds no type, but the index is created (and the value cached, by another call) before the value is stored
+        map2.update(TestEntity.SEQUENCE.getNameParts(), 123)
+        assertEquals(storage2.get(TestEntity.SEQUENCE.getNameParts()), 123)
+        assertEquals(map2.getValue(TestEntity.SEQUENCE), 123)
+        
+        map2.update(TestEntity.SEQUENCE, 456)
+        assertEquals(map2.getValue(TestEntity.SEQUENCE), 456)
+        assertEquals(map2.asMap().get(TestEntity.SEQUENCE.getName()), 456)
+    }
+    
+    /** on request, reports no type (as if not yet set) while meanwhile the map's index is created and used */
+    static class TypeRacingEntity extends TestEntityImpl {
+        AttributeMap racingMap
+        boolean racing
+        
+        @Override
+        public EntityDynamicType getMutableEntityType() {
+            if (racing) {
+                racing = false
+                racingMap.getValue(TestEntity.SEQUENCE)
+                return null
+            }
+            return super.getMutableEntityType()
+        }
+    }
 }
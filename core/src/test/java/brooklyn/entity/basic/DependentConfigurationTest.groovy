@@ -13,6 +13,9 @@ import brooklyn.management.Task
 import brooklyn.util.task.BasicExecutionContext;
 import brooklyn.util.task.BasicExecutionManager
 import brooklyn.util.task.BasicTask
+import brooklyn.util.task.ListenableTask
+
+import com.google.common.util.concurrent.SettableFuture
 
 /** Tests the standalone routines in dependent configuration.
  * See e.g. LocalEntitiesTest for tests of attributeWhenReady etc.
@@ -45,4 +48,48 @@ public class DependentConfigurationTest {
         Assert.assertEquals(t.get(1, TimeUnit.SECONDS), "http://localhost:8081/");
     }
 
+    @Test
+    public void testFormatStringWithNoTaskArgs() {
+        Task t = DependentConfiguration.formatString("%s://%s/", "http", "localhost");
+        ec.submit(t);
+        Assert.assertEquals(t.get(1, TimeUnit.SECONDS), "http://localhost/");
+        assertNoIncompleteTasksEventually();
+    }
+
+    @Test
+    public void testFormatStringWithOnlyAsyncArgs() {
+        SettableFuture<String> host = SettableFuture.create();
+        Task t = DependentConfiguration.formatString("%s://%s/", "http", new ListenableTask<String>([:], host));
+        Assert.assertTrue(t instanceof ListenableTask, "task="+t);
+        ec.submit(t);
+        Assert.assertEquals(em.getNumIncompleteTasks(), 0);
+        
+        host.set("localhost");
+        Assert.assertEquals(t.get(1, TimeUnit.SECONDS), "http://localhost/");
+        Assert.assertEquals(em.getNumIncompleteTasks(), 0);
+    }
+
+    @Test
+    public void testListenableTaskIsRecordedWhenSubmittedAndEndTimeSetWhenDone() {
+        SettableFuture<String> host = SettableFuture.create();
+        ListenableTask<String> t = new ListenableTask<String>([:], host)
+        em.submit([tag:"mytag"], t)
+        Assert.assertEquals(em.getTask(t.getId()), t)
+        Assert.assertEquals(em.getTasksWithTag("mytag"), [t] as Set)
+        Assert.assertEquals(em.getNumIncompleteTasks(), 0)
+        Assert.assertEquals(t.getEndTimeUtc(), -1)
+        
+        host.set("localhost");
+        Assert.assertTrue(t.isDone())
+        Assert.assertTrue(t.getEndTimeUtc() >= t.getSubmitTimeUtc(), "end="+t.getEndTimeUtc())
+    }
+
+    private void assertNoIncompleteTasksEventually() {
+        long end = System.currentTimeMillis() + 10*1000;
+        while (em.getNumIncompleteTasks() > 0 && System.currentTimeMillis() < end) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(em.getNumIncompleteTasks(), 0);
+    }
+
 }
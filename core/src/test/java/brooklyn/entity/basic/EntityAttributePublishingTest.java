@@ -0,0 +1,172 @@
+package brooklyn.entity.basic;
+
+import static org.testng.Assert.assertEquals;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import brooklyn.entity.proxying.EntitySpecs;
+import brooklyn.event.SensorEvent;
+import brooklyn.event.SensorEventListener;
+import brooklyn.management.Task;
+import brooklyn.management.internal.LocalManagementContext;
+import brooklyn.test.Asserts;
+import brooklyn.test.entity.TestApplication;
+import brooklyn.test.entity.TestEntity;
+import brooklyn.util.task.BasicTask;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Tests on-change-only and throttled publishing of attributes, as configured by
+ * {@link AbstractEntity#PUBLISH_ATTRIBUTES_ON_CHANGE_ONLY} and {@link EntityInternal}.
+ */
+public class EntityAttributePublishingTest {
+
+    private LocalManagementContext managementContext;
+    private TestApplication app;
+    private List<Integer> received;
+
+    @BeforeMethod(alwaysRun=true)
+    public void setUp() {
+        managementContext = new LocalManagementContext();
+        app = ApplicationBuilder.newManagedApp(TestApplication.class, managementContext);
+        received = new CopyOnWriteArrayList<Integer>();
+    }
+
+    @AfterMethod(alwaysRun=true)
+    public void tearDown() {
+        if (managementContext != null) Entities.destroyAll(managementContext);
+    }
+
+    @Test
+    public void testPublishesIdenticalValuesByDefault() throws Exception {
+        TestEntity entity = app.createAndManageChild(EntitySpecs.spec(TestEntity.class));
+        subscribe(entity);
+
+        entity.setAttribute(TestEntity.SEQUENCE, 1);
+        entity.setAttribute(TestEntity.SEQUENCE, 1);
+        assertReceivedEventually(ImmutableList.of(1, 1));
+    }
+
+    @Test
+    public void testSuppressesIdenticalValuesWhenConfiguredOnEntity() throws Exception {
+        TestEntity entity = app.createAndManageChild(EntitySpecs.spec(TestEntity.class)
+                .configure(AbstractEntity.PUBLISH_ATTRIBUTES_ON_CHANGE_ONLY, true));
+        subscribe(entity);
+
+        entity.setAttribute(TestEntity.SEQUENCE, 1);
+        entity.setAttribute(TestEntity.SEQUENCE, 1);
+        entity.setAttribute(TestEntity.SEQUENCE, 2);
+        entity.setAttribute(TestEntity.SEQUENCE, 2);
+        entity.setAttribute(TestEntity.SEQUENCE, 1);
+        assertReceivedEventually(ImmutableList.of(1, 2, 1));
+        assertEquals(entity.getAttribute(TestEntity.SEQUENCE), (Integer)1);
+    }
+
+    @Test
+    public void testSuppressesIdenticalValuesWhenConfiguredAfterCreation() throws Exception {
+        TestEntity entity = app.createAndManageChild(EntitySpecs.spec(TestEntity.class));
+        entity.setConfig(AbstractEntity.PUBLISH_ATTRIBUTES_ON_CHANGE_ONLY, true);
+        subscribe(entity);
+
+        entity.setAttribute(TestEntity.SEQUENCE, 1);
+        entity.setAttribute(TestEntity.SEQUENCE, 1);
+        entity.setAttribute(TestEntity.SEQUENCE, 2);
+        assertReceivedEventually(ImmutableList.of(1, 2));
+    }
+
+    @Test
+    public void testSuppressesIdenticalValuesWhenConfiguredOnParent() throws Exception {
+        TestApplication app2 = ApplicationBuilder.newManagedApp(EntitySpecs.spec(TestApplication.class)
+                .configure(AbstractEntity.PUBLISH_ATTRIBUTES_ON_CHANGE_ONLY, true), managementContext);
+        TestEntity entity = app2.createAndManageChild(EntitySpecs.spec(TestEntity.class));
+        subscribe(entity);
+
+        entity.setAttribute(TestEntity.SEQUENCE, 1);
+        entity.setAttribute(TestEntity.SEQUENCE, 1);
+        entity.setAttribute(TestEntity.SEQUENCE, 2);
+        assertReceivedEventually(ImmutableList.of(1, 2));
+    }
+
+    @Test
+    public void testSuppressesIdenticalValuesWhenConfiguredOnParentAfterChildCreated() throws Exception {
+        TestEntity entity = app.createAndManageChild(EntitySpecs.spec(TestEntity.class));
+        subscribe(entity);
+        entity.setAttribute(TestEntity.SEQUENCE, 1);
+        entity.setAttribute(TestEntity.SEQUENCE, 1);
+        assertReceivedEventually(ImmutableList.of(1, 1));
+        
+        app.setConfig(AbstractEntity.PUBLISH_ATTRIBUTES_ON_CHANGE_ONLY, true);
+        entity.setAttribute(TestEntity.SEQUENCE, 1);
+        entity.setAttribute(TestEntity.SEQUENCE, 2);
+        assertReceivedEventually(ImmutableList.of(1, 1, 2));
+    }
+
+    @Test(timeOut=10000)
+    public void testUnresolvedTaskConfigDoesNotBlockSetAttribute() throws Exception {
+        TestEntity entity = app.createAndManageChild(EntitySpecs.spec(TestEntity.class));
+        Task<Boolean> neverRun = new BasicTask<Boolean>(new Callable<Boolean>() {
+            public Boolean call() { return true; }});
+        entity.setConfig(AbstractEntity.PUBLISH_ATTRIBUTES_ON_CHANGE_ONLY, neverRun);
+        subscribe(entity);
+
+        entity.setAttribute(TestEntity.SEQUENCE, 1);
+        entity.setAttribute(TestEntity.SEQUENCE, 1);
+        assertReceivedEventually(ImmutableList.of(1, 1));
+    }
+
+    @Test
+    public void testPerSensorSettingOverridesEntity() throws Exception {
+        TestEntity entity = app.createAndManageChild(EntitySpecs.spec(TestEntity.class)
+                .configure(AbstractEntity.PUBLISH_ATTRIBUTES_ON_CHANGE_ONLY, true));
+        entity.setAttributePublishOnChangeOnly(TestEntity.SEQUENCE, false);
+        subscribe(entity);
+
+        entity.setAttribute(TestEntity.SEQUENCE, 1);
+        entity.setAttribute(TestEntity.SEQUENCE, 1);
+        assertReceivedEventually(ImmutableList.of(1, 1));
+    }
+
+    @Test
+    public void testThrottledSensorPublishesLatestValue() throws Exception {
+        TestEntity entity = app.createAndManageChild(EntitySpecs.spec(TestEntity.class));
+        entity.setAttributeMinPublishInterval(TestEntity.SEQUENCE, 200);
+        subscribe(entity);
+
+        for (int i = 0; i < 100; i++) {
+            entity.setAttribute(TestEntity.SEQUENCE, i);
+        }
+
+        // first value is published immediately; the rest are coalesced into a publication of the latest
+        Asserts.succeedsEventually(new Runnable() {
+            public void run() {
+                assertEquals(received, ImmutableList.of(0, 99));
+            }});
+        Thread.sleep(300);
+        assertEquals(received, ImmutableList.of(0, 99));
+        assertEquals(entity.getAttribute(TestEntity.SEQUENCE), (Integer)99);
+    }
+
+    private void subscribe(TestEntity entity) {
+        app.subscribe(entity, TestEntity.SEQUENCE, new SensorEventListener<Integer>() {
+            @Override public void onEvent(SensorEvent<Integer> event) {
+                received.add(event.getValue());
+            }});
+    }
+
+    private void assertReceivedEventually(final List<Integer> expected) throws Exception {
+        Asserts.succeedsEventually(new Runnable() {
+            public void run() {
+                assertEquals(received, expected);
+            }});
+        // and no more arrive
+        Thread.sleep(100);
+        assertEquals(received, expected);
+    }
+}
@@ -1,10 +1,13 @@
 package brooklyn.entity.basic;
 
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertSame;
 import static org.testng.Assert.assertTrue;
 import static org.testng.Assert.fail;
 
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.Callable;
 import java.util.concurrent.CountDownLatch;
 
@@ -177,6 +180,46 @@ public class EntityConfigMapUsageTest {
         assertEquals(e3.getConfig(strKey), "aval");
     }
 
+    @Test
+    public void testChangedConfigSeenByDescendantsAfterBeingRead() throws Exception {
+        TestEntity e = app.createAndManageChild(EntitySpecs.spec(TestEntity.class)
+                .configure(strKey, "aval"));
+        TestEntity e2 = e.createAndManageChild(EntitySpecs.spec(TestEntity.class));
+        TestEntity e3 = e2.createAndManageChild(EntitySpecs.spec(TestEntity.class));
+        assertEquals(e3.getConfig(strKey), "aval");
+        
+        // inherited config is resolved lazily and cached; a later change must not see a stale value
+        ((EntityLocal)e).setConfig(strKey, "bval");
+        assertEquals(e3.getConfig(strKey), "bval");
+        assertEquals(e3.getAllConfig().get(strKey), "bval");
+        
+        ((EntityLocal)e2).setConfig(strKey, "cval");
+        assertEquals(e.getConfig(strKey), "bval");
+        assertEquals(e3.getConfig(strKey), "cval");
+    }
+
+    @Test
+    public void testMergedConfigOnlyRecomputedAfterChangeInOwnChain() throws Exception {
+        TestEntity e = app.createAndManageChild(EntitySpecs.spec(TestEntity.class)
+                .configure(strKey, "aval"));
+        TestEntity e2 = e.createAndManageChild(EntitySpecs.spec(TestEntity.class));
+        TestEntity other = app.createAndManageChild(EntitySpecs.spec(TestEntity.class));
+        
+        Map<ConfigKey<?>,Object> config = e2.getAllConfig();
+        assertSame(e2.getAllConfig(), config);
+        
+        // a change elsewhere in the tree does not invalidate this entity's config
+        ((EntityLocal)other).setConfig(strKey, "bval");
+        assertSame(e2.getAllConfig(), config);
+        
+        // but a change to an ancestor does
+        ((EntityLocal)e).setConfig(strKey, "cval");
+        Map<ConfigKey<?>,Object> config2 = e2.getAllConfig();
+        assertNotSame(config2, config);
+        assertEquals(config2.get(strKey), "cval");
+        assertSame(e2.getAllConfig(), config2);
+    }
+
     // This has been relaxed to a warning, with a message saying "may not be supported in future versions"
     @Test(enabled=false)
     public void testConfigCannotBeSetAfterApplicationIsStarted() throws Exception {
@@ -0,0 +1,218 @@
+package brooklyn.entity.drivers.downloads;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.io.File;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import brooklyn.config.BrooklynProperties;
+import brooklyn.entity.drivers.downloads.DownloadResolverManager.DownloadRequirement;
+import brooklyn.entity.drivers.downloads.DownloadResolverManager.DownloadTargets;
+import brooklyn.entity.rebind.RebindTestUtils;
+import brooklyn.location.basic.SimulatedLocation;
+import brooklyn.location.basic.SshMachineLocation;
+import brooklyn.util.collections.MutableMap;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Function;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Maps;
+import com.google.common.io.Files;
+
+public class DownloadArtifactCacheTest {
+
+    private File sourceDir;
+    private File cacheDir;
+    private File source;
+    private DownloadArtifactCache cache;
+
+    @BeforeMethod(alwaysRun=true)
+    public void setUp() throws Exception {
+        sourceDir = Files.createTempDir();
+        cacheDir = Files.createTempDir();
+        source = new File(sourceDir, "myartifact.tar.gz");
+        Files.write("mycontents", source, Charsets.UTF_8);
+        cache = new DownloadArtifactCache(cacheDir, ".brooklyn/download-cache");
+    }
+
+    @AfterMethod(alwaysRun=true)
+    public void tearDown() throws Exception {
+        if (sourceDir != null) RebindTestUtils.deleteMementoDir(sourceDir);
+        if (cacheDir != null) RebindTestUtils.deleteMementoDir(cacheDir);
+    }
+
+    @Test
+    public void testFetchStoresArtifactUnderItsChecksum() throws Exception {
+        File result = cache.fetch(ImmutableList.of(source.toURI().toString()), "myfile.tar.gz");
+
+        assertEquals(result.getName(), "myfile.tar.gz");
+        assertEquals(DownloadArtifactCache.checksumOf(result), DownloadArtifactCache.hash(source));
+        assertEquals(Files.toString(result, Charsets.UTF_8), "mycontents");
+    }
+
+    @Test
+    public void testFetchesOnlyOnce() throws Exception {
+        String url = source.toURI().toString();
+        File result = cache.fetch(ImmutableList.of(url), "myfile.tar.gz");
+        source.delete();
+
+        assertEquals(cache.fetch(ImmutableList.of(url), "myfile.tar.gz"), result);
+
+        // and a new cache in the same dir re-uses the artifact too
+        DownloadArtifactCache cache2 = new DownloadArtifactCache(cacheDir, ".brooklyn/download-cache");
+        assertEquals(cache2.fetch(ImmutableList.of(url), "myfile.tar.gz"), result);
+    }
+
+    @Test
+    public void testRefetchesIfCachedArtifactDoesNotMatchChecksum() throws Exception {
+        String url = source.toURI().toString();
+        File result = cache.fetch(ImmutableList.of(url), "myfile.tar.gz");
+        Files.write("corrupted", result, Charsets.UTF_8);
+
+        DownloadArtifactCache cache2 = new DownloadArtifactCache(cacheDir, ".brooklyn/download-cache");
+        File result2 = cache2.fetch(ImmutableList.of(url), "myfile.tar.gz");
+        assertEquals(result2, result);
+        assertEquals(Files.toString(result2, Charsets.UTF_8), "mycontents");
+    }
+
+    @Test
+    public void testTriesEachUrlInTurnSkippingThoseOnlyResolvableOnTheMachine() throws Exception {
+        String missingUrl = new File(sourceDir, "doesnotexist.tar.gz").toURI().toString();
+        File result = cache.fetch(ImmutableList.of("file://$HOME/.brooklyn/repository/myartifact.tar.gz", missingUrl, source.toURI().toString()), "myfile.tar.gz");
+
+        assertEquals(Files.toString(result, Charsets.UTF_8), "mycontents");
+    }
+
+    @Test
+    public void testFetchReturnsNullIfNoUrlSucceeds() throws Exception {
+        String missingUrl = new File(sourceDir, "doesnotexist.tar.gz").toURI().toString();
+        assertNull(cache.fetch(ImmutableList.of(missingUrl), "myfile.tar.gz"));
+    }
+
+    @Test
+    public void testDoesNotStageOnNonSshLocation() throws Exception {
+        assertNull(cache.stage(new SimulatedLocation(), ImmutableList.of(source.toURI().toString()), "myfile.tar.gz"));
+    }
+
+    @Test
+    public void testStageCopiesToMachineOnlyIfChecksumDoesNotMatch() throws Exception {
+        RecordingSshMachineLocation machine = new RecordingSshMachineLocation();
+        File artifact = cache.fetch(ImmutableList.of(source.toURI().toString()), "myfile.tar.gz");
+        String remotePath = ".brooklyn/download-cache/"+DownloadArtifactCache.hash(source)+"/myfile.tar.gz";
+
+        assertEquals(cache.stage(machine, artifact), "file://$HOME/"+remotePath);
+        assertEquals(machine.copies, ImmutableList.of(remotePath));
+
+        // the machine now has a copy with a matching checksum, so it is not copied again
+        assertEquals(cache.stage(machine, artifact), "file://$HOME/"+remotePath);
+        assertEquals(machine.copies, ImmutableList.of(remotePath));
+        assertEquals(machine.summaries.get(machine.summaries.size()-1), "checking download cache");
+
+        // but it is if the copy there is different
+        machine.files.put(remotePath, "differentchecksum");
+        assertEquals(cache.stage(machine, artifact), "file://$HOME/"+remotePath);
+        assertEquals(machine.copies, ImmutableList.of(remotePath, remotePath));
+    }
+
+    @Test
+    public void testStageReturnsNullIfCopyCannotBeVerified() throws Exception {
+        RecordingSshMachineLocation machine = new RecordingSshMachineLocation() {
+            @Override public int copyTo(File src, String destination) {
+                copies.add(destination);
+                return 1;
+            }
+        };
+        File artifact = cache.fetch(ImmutableList.of(source.toURI().toString()), "myfile.tar.gz");
+        assertNull(cache.stage(machine, artifact));
+    }
+
+    @Test
+    public void testDoesNotStageOnMachineWithoutChecksumCommand() throws Exception {
+        RecordingSshMachineLocation machine = new RecordingSshMachineLocation();
+        machine.hasChecksumCommand = false;
+        File artifact = cache.fetch(ImmutableList.of(source.toURI().toString()), "myfile.tar.gz");
+
+        assertNull(cache.stage(machine, artifact));
+        assertNull(cache.stage(machine, artifact));
+        assertEquals(machine.copies, ImmutableList.of());
+        // probed (for each command) only once
+        assertEquals(machine.summaries, ImmutableList.of("checking for checksum command", "checking for checksum command"));
+    }
+
+    @Test
+    public void testDownloadsManagerTriesStagedCopyFirst() throws Exception {
+        final String url = source.toURI().toString();
+        RecordingSshMachineLocation machine = new RecordingSshMachineLocation();
+        BasicDownloadsManager manager = BasicDownloadsManager.newEmpty();
+        manager.registerProducer(new Function<DownloadRequirement, DownloadTargets>() {
+            @Override public DownloadTargets apply(DownloadRequirement input) {
+                return BasicDownloadTargets.builder().addPrimary(url).build();
+            }});
+        manager.setArtifactCache(cache);
+
+        DownloadResolver resolver = manager.newDownloader(new MyEntityDriver(null, machine));
+        String staged = "file://$HOME/.brooklyn/download-cache/"+DownloadArtifactCache.hash(source)+"/myartifact.tar.gz";
+        assertEquals(resolver.getTargets(), ImmutableList.of(staged, url));
+        assertEquals(resolver.getFilename(), "myartifact.tar.gz");
+    }
+
+    @Test
+    public void testNewInstanceUsesConfiguredDir() throws Exception {
+        BrooklynProperties props = BrooklynProperties.Factory.newEmpty();
+        props.put(DownloadArtifactCache.LOCAL_DIR, cacheDir.getAbsolutePath());
+        assertEquals(DownloadArtifactCache.newInstance(props).getDir(), cacheDir);
+
+        BasicDownloadsManager manager = BasicDownloadsManager.newDefault(props);
+        assertNull(manager.getArtifactCache());
+
+        props.put(DownloadArtifactCache.ENABLED, true);
+        assertTrue(BasicDownloadsManager.newDefault(props).getArtifactCache() != null);
+    }
+
+    /**
+     * Records the commands executed and files copied, rather than using ssh; a file exists on the machine 
+     * (with the checksum of its contents) once copied there. The machine has sha256sum unless told otherwise.
+     */
+    private static class RecordingSshMachineLocation extends SshMachineLocation {
+        final List<String> summaries = new CopyOnWriteArrayList<String>();
+        final List<String> copies = new CopyOnWriteArrayList<String>();
+        final Map<String, String> files = Maps.newConcurrentMap();
+        volatile boolean hasChecksumCommand = true;
+
+        RecordingSshMachineLocation() {
+            super(MutableMap.of("address", "localhost"));
+        }
+
+        @Override
+        public int execCommands(String summaryForLogging, List<String> commands) {
+            summaries.add(summaryForLogging);
+            if (summaryForLogging.equals("checking for checksum command")) {
+                return hasChecksumCommand ? 0 : 1;
+            }
+            if (summaryForLogging.equals("checking download cache")) {
+                String command = Iterables.getOnlyElement(commands);
+                for (Map.Entry<String, String> file : files.entrySet()) {
+                    if (command.contains("\""+file.getKey()+"\"") && command.contains("'^"+file.getValue()+"'")) return 0;
+                }
+                return 1;
+            }
+            return 0;
+        }
+
+        @Override
+        public int copyTo(File src, String destination) {
+            copies.add(destination);
+            files.put(destination, DownloadArtifactCache.hash(src));
+            return 0;
+        }
+    }
+}
@@ -16,11 +16,14 @@ import org.testng.annotations.Test
 import brooklyn.entity.Application
 import brooklyn.entity.Entity
 import brooklyn.entity.basic.ApplicationBuilder
+import brooklyn.entity.basic.Attributes
 import brooklyn.entity.basic.Entities
 import brooklyn.entity.proxying.EntitySpecs
 import brooklyn.entity.trait.Changeable
 import brooklyn.location.Location
+import brooklyn.location.basic.FixedListMachineProvisioningLocation
 import brooklyn.location.basic.SimulatedLocation
+import brooklyn.location.basic.SshMachineLocation
 import brooklyn.management.Task
 import brooklyn.test.TestUtils
 import brooklyn.test.entity.TestApplication
@@ -152,6 +155,77 @@ class DynamicClusterTest {
         assertEquals entity.application, app
     }
 
+    @Test
+    public void resizeWithProvisionInBatchStartsMembersOnMachinesObtainedTogether() {
+        List<SshMachineLocation> machines = (1..3).collect { new SshMachineLocation(address:"localhost") }
+        FixedListMachineProvisioningLocation<SshMachineLocation> machineLoc =
+                new FixedListMachineProvisioningLocation<SshMachineLocation>(machines:machines)
+        DynamicCluster cluster = app.createAndManageChild(EntitySpecs.spec(DynamicCluster.class)
+                .configure("memberSpec", EntitySpecs.spec(TestEntity.class))
+                .configure(DynamicCluster.PROVISION_IN_BATCH, true));
+        
+        cluster.start([machineLoc])
+        cluster.resize(3)
+        
+        assertEquals machineLoc.getInUse().size(), 3
+        Set<Location> memberLocs = cluster.getMembers().collect { Iterables.getOnlyElement(it.getLocations()) } as Set
+        assertEquals memberLocs, machines as Set
+        cluster.getMembers().each { assertEquals it.getAttribute(Attributes.PROVISIONING_LOCATION), machineLoc }
+        
+        cluster.resize(1)
+        assertEquals machineLoc.getInUse().size(), 1
+        assertEquals machineLoc.getAvailable().size(), 2
+    }
+
+    @Test
+    public void resizeWithProvisionInBatchReleasesMachinesOfMembersWhichFailToStart() {
+        List<SshMachineLocation> machines = (1..3).collect { new SshMachineLocation(address:"localhost") }
+        FixedListMachineProvisioningLocation<SshMachineLocation> machineLoc =
+                new FixedListMachineProvisioningLocation<SshMachineLocation>(machines:machines)
+        final AtomicInteger counter = new AtomicInteger(0)
+        DynamicCluster cluster = app.createAndManageChild(EntitySpecs.spec(DynamicCluster.class)
+                .configure("initialSize", 0)
+                .configure(DynamicCluster.PROVISION_IN_BATCH, true)
+                .configure("factory", { properties ->
+                    int num = counter.incrementAndGet();
+                    return new FailingEntity(properties, (num==2))
+                }));
+        
+        cluster.start([machineLoc])
+        cluster.resize(3)
+        
+        assertEquals cluster.getCurrentSize(), 2
+        assertEquals machineLoc.getInUse().size(), 2
+        assertEquals machineLoc.getAvailable().size(), 1
+    }
+
+    @Test
+    public void resizeWithProvisionInBatchReleasesMachinesNotHandedToMembers() {
+        List<SshMachineLocation> machines = (1..3).collect { new SshMachineLocation(address:"localhost") }
+        FixedListMachineProvisioningLocation<SshMachineLocation> machineLoc =
+                new FixedListMachineProvisioningLocation<SshMachineLocation>(machines:machines)
+        final AtomicInteger counter = new AtomicInteger(0)
+        DynamicCluster cluster = app.createAndManageChild(EntitySpecs.spec(DynamicCluster.class)
+                .configure("initialSize", 0)
+                .configure(DynamicCluster.PROVISION_IN_BATCH, true)
+                .configure("factory", { properties ->
+                    int num = counter.incrementAndGet();
+                    if (num == 2) throw new IllegalStateException("Simulating failure to create member for test")
+                    return new TestEntityImpl(properties)
+                }));
+        
+        cluster.start([machineLoc])
+        try {
+            cluster.resize(3)
+            fail()
+        } catch (Exception e) {
+            if (Exceptions.getFirstThrowableOfType(e, IllegalStateException.class) == null) throw e
+        }
+        
+        assertEquals machineLoc.getInUse().size(), 0
+        assertEquals machineLoc.getAvailable().size(), 3
+    }
+
     @Test
     public void currentSizePropertyReflectsActualClusterSize() {
         DynamicCluster cluster = app.createAndManageChild(EntitySpecs.spec(DynamicCluster.class)
@@ -1,8 +1,11 @@
 package brooklyn.entity.hello;
 
 import static brooklyn.event.basic.DependentConfiguration.attributeWhenReady;
+import static brooklyn.event.basic.DependentConfiguration.attributeWhenReadyAsync;
+import static brooklyn.event.basic.DependentConfiguration.formatString;
 import static brooklyn.event.basic.DependentConfiguration.transform;
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
 import static org.testng.Assert.assertNotNull;
 import static org.testng.Assert.assertNull;
 import static org.testng.Assert.assertTrue;
@@ -13,6 +16,7 @@ import java.util.List;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicReference;
 
 import org.slf4j.Logger;
@@ -30,10 +34,12 @@ import brooklyn.event.SensorEvent;
 import brooklyn.event.SensorEventListener;
 import brooklyn.location.basic.SimulatedLocation;
 import brooklyn.management.EntityManager;
+import brooklyn.management.SubscriptionManager;
 import brooklyn.management.Task;
 import brooklyn.test.Asserts;
 import brooklyn.test.entity.TestApplication;
 import brooklyn.util.collections.MutableMap;
+import brooklyn.util.task.ListenableTask;
 import brooklyn.util.time.Time;
 
 import com.google.common.base.Function;
@@ -262,4 +268,67 @@ public class LocalEntitiesTest {
         assertEquals(son.getConfig(HelloEntity.MY_NAME), "Danny");
     }
 
+    @Test
+    public void testConfigSetFromAttributeWhenReadyAsyncTransformations() throws Exception {
+        app.setConfig(HelloEntity.MY_NAME, "Bob");
+        
+        final HelloEntity dad = app.createAndManageChild(EntitySpecs.spec(HelloEntity.class));
+        final ListenableTask<String> task = transform(attributeWhenReadyAsync(dad, HelloEntity.FAVOURITE_NAME), new Function<String,String>() {
+                public String apply(String input) {
+                    return input+input.charAt(input.length()-1)+"y";
+                }});
+        HelloEntity son = entityManager.createEntity(EntitySpecs.spec(HelloEntity.class)
+                .parent(dad)
+                .configure(HelloEntity.MY_NAME, task));
+        Entities.manage(son);
+        
+        app.start(ImmutableList.of(loc));
+        assertFalse(task.isDone());
+        ((EntityLocal)dad).setAttribute(HelloEntity.FAVOURITE_NAME, "Dan");
+        assertEquals(son.getConfig(HelloEntity.MY_NAME), "Danny");
+        
+        // subscription is removed once the value is ready
+        Asserts.succeedsEventually(new Runnable() {
+            public void run() {
+                assertTrue(app.getManagementContext().getSubscriptionManager().getSubscriptionsForEntitySensor(dad, HelloEntity.FAVOURITE_NAME).isEmpty());
+            }});
+    }
+    
+    @Test
+    public void testAttributeWhenReadyAsyncSubscribesOnFirstUseAndUnsubscribesOnCancel() throws Exception {
+        final HelloEntity dad = app.createAndManageChild(EntitySpecs.spec(HelloEntity.class));
+        final SubscriptionManager subscriptionManager = app.getManagementContext().getSubscriptionManager();
+        
+        ListenableTask<String> task = attributeWhenReadyAsync(dad, HelloEntity.FAVOURITE_NAME);
+        assertTrue(subscriptionManager.getSubscriptionsForEntitySensor(dad, HelloEntity.FAVOURITE_NAME).isEmpty());
+        
+        try {
+            task.get(10, TimeUnit.MILLISECONDS);
+            fail("task="+task);
+        } catch (TimeoutException e) {
+            // expected: not yet ready
+        }
+        assertEquals(subscriptionManager.getSubscriptionsForEntitySensor(dad, HelloEntity.FAVOURITE_NAME).size(), 1);
+        
+        task.cancel(true);
+        assertTrue(task.isCancelled());
+        assertTrue(subscriptionManager.getSubscriptionsForEntitySensor(dad, HelloEntity.FAVOURITE_NAME).isEmpty());
+    }
+    
+    @Test
+    public void testFormatStringFromAttributeWhenReadyAsync() throws Exception {
+        HelloEntity dad = app.createAndManageChild(EntitySpecs.spec(HelloEntity.class));
+        HelloEntity mum = app.createAndManageChild(EntitySpecs.spec(HelloEntity.class));
+        ((EntityLocal)mum).setAttribute(HelloEntity.FAVOURITE_NAME, "Sue");
+        
+        Task<String> task = formatString("%s and %s", 
+                attributeWhenReadyAsync(dad, HelloEntity.FAVOURITE_NAME), 
+                attributeWhenReadyAsync(mum, HelloEntity.FAVOURITE_NAME));
+        assertTrue(task instanceof ListenableTask, "task="+task);
+        assertFalse(task.isDone());
+        
+        ((EntityLocal)dad).setAttribute(HelloEntity.FAVOURITE_NAME, "Dan");
+        assertEquals(task.get(10, TimeUnit.SECONDS), "Dan and Sue");
+    }
+
 }
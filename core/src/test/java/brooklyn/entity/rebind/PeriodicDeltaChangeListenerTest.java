@@ -0,0 +1,129 @@
+package brooklyn.entity.rebind;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import brooklyn.entity.basic.ApplicationBuilder;
+import brooklyn.entity.basic.Entities;
+import brooklyn.entity.proxying.EntitySpecs;
+import brooklyn.management.internal.LocalManagementContext;
+import brooklyn.mementos.BrooklynMemento;
+import brooklyn.mementos.BrooklynMementoPersister;
+import brooklyn.mementos.EntityMemento;
+import brooklyn.test.Asserts;
+import brooklyn.test.entity.TestApplication;
+import brooklyn.test.entity.TestEntity;
+
+public class PeriodicDeltaChangeListenerTest {
+
+    private LocalManagementContext managementContext;
+    private TestApplication app;
+    private TestEntity entity;
+    private RecordingPersister persister;
+    private PeriodicDeltaChangeListener listener;
+
+    @BeforeMethod(alwaysRun=true)
+    public void setUp() throws Exception {
+        managementContext = new LocalManagementContext();
+        app = ApplicationBuilder.newManagedApp(TestApplication.class, managementContext);
+        entity = app.createAndManageChild(EntitySpecs.spec(TestEntity.class));
+        persister = new RecordingPersister();
+    }
+
+    @AfterMethod(alwaysRun=true)
+    public void tearDown() throws Exception {
+        if (listener != null) listener.stop();
+        if (managementContext != null) Entities.destroyAll(managementContext);
+    }
+
+    @Test
+    public void testCoalescesRepeatedChangesIntoOneWrite() throws Exception {
+        listener = new PeriodicDeltaChangeListener(managementContext.getExecutionManager(), persister, 10, 200, 10*1000);
+
+        for (int i = 0; i < 100; i++) {
+            listener.onChanged(entity);
+        }
+        Asserts.succeedsEventually(new Runnable() {
+            public void run() {
+                assertEquals(persister.countEntityWrites(entity.getId()), 1);
+            }});
+        Thread.sleep(250);
+
+        assertEquals(persister.countEntityWrites(entity.getId()), 1);
+        assertEquals(listener.getChangeCount(), 100);
+        assertEquals(listener.getCoalescedChangeCount(), 99);
+    }
+
+    @Test
+    public void testContinuouslyChangingEntityIsWrittenWithinMaxLatency() throws Exception {
+        listener = new PeriodicDeltaChangeListener(managementContext.getExecutionManager(), persister, 10, 60*1000, 100);
+
+        long endTime = System.currentTimeMillis() + 2000;
+        while (System.currentTimeMillis() < endTime && persister.countEntityWrites(entity.getId()) == 0) {
+            listener.onChanged(entity);
+            Thread.sleep(10);
+        }
+        assertTrue(persister.countEntityWrites(entity.getId()) > 0);
+    }
+
+    @Test
+    public void testWaitForPendingCompleteIgnoresWriteDelay() throws Exception {
+        listener = new PeriodicDeltaChangeListener(managementContext.getExecutionManager(), persister, 10, 60*1000, 60*1000);
+
+        listener.onChanged(entity);
+        listener.waitForPendingComplete(10, TimeUnit.SECONDS);
+        assertEquals(persister.countEntityWrites(entity.getId()), 1);
+    }
+
+    @Test
+    public void testUnmanagedEntityIsRemovedRatherThanWritten() throws Exception {
+        listener = new PeriodicDeltaChangeListener(managementContext.getExecutionManager(), persister, 10, 200, 10*1000);
+
+        listener.onChanged(entity);
+        listener.onUnmanaged(entity);
+        Asserts.succeedsEventually(new Runnable() {
+            public void run() {
+                assertTrue(persister.removedEntityIds.contains(entity.getId()));
+            }});
+        assertFalse(persister.countEntityWrites(entity.getId()) > 0);
+    }
+
+    private static class RecordingPersister implements BrooklynMementoPersister {
+        final List<Delta> deltas = new CopyOnWriteArrayList<Delta>();
+        final List<String> removedEntityIds = new CopyOnWriteArrayList<String>();
+
+        int countEntityWrites(String id) {
+            int result = 0;
+            for (Delta delta : deltas) {
+                for (EntityMemento memento : delta.entities()) {
+                    if (id.equals(memento.getId())) result++;
+                }
+            }
+            return result;
+        }
+
+        @Override public BrooklynMemento loadMemento() {
+            throw new UnsupportedOperationException();
+        }
+        @Override public void checkpoint(BrooklynMemento memento) {
+            throw new UnsupportedOperationException();
+        }
+        @Override public void delta(Delta delta) {
+            deltas.add(delta);
+            removedEntityIds.addAll(delta.removedEntityIds());
+        }
+        @Override public void stop() {
+        }
+        @Override public void waitForWritesCompleted(long timeout, TimeUnit unit) {
+        }
+    }
+}
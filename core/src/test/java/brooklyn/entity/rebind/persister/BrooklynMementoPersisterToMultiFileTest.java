@@ -0,0 +1,71 @@
+package brooklyn.entity.rebind.persister;
+
+import static org.testng.Assert.assertEquals;
+
+import java.io.File;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import brooklyn.entity.Entity;
+import brooklyn.entity.basic.ApplicationBuilder;
+import brooklyn.entity.proxying.EntitySpecs;
+import brooklyn.entity.rebind.RebindTestUtils;
+import brooklyn.management.internal.LocalManagementContext;
+import brooklyn.mementos.BrooklynMemento;
+import brooklyn.test.entity.TestApplication;
+import brooklyn.test.entity.TestEntity;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Sets;
+import com.google.common.io.Files;
+
+public class BrooklynMementoPersisterToMultiFileTest {
+
+    private static final int NUM_ENTITIES = 50;
+
+    private ClassLoader classLoader = getClass().getClassLoader();
+    private LocalManagementContext managementContext;
+    private TestApplication app;
+    private File mementoDir;
+
+    @BeforeMethod(alwaysRun=true)
+    public void setUp() throws Exception {
+        mementoDir = Files.createTempDir();
+        managementContext = RebindTestUtils.newPersistingManagementContext(mementoDir, classLoader, 1);
+        app = ApplicationBuilder.newManagedApp(EntitySpecs.spec(TestApplication.class), managementContext);
+    }
+
+    @AfterMethod(alwaysRun=true)
+    public void tearDown() throws Exception {
+        if (managementContext != null) managementContext.terminate();
+        if (mementoDir != null) RebindTestUtils.deleteMementoDir(mementoDir);
+    }
+
+    @Test
+    public void testLoadsAllMementosInParallel() throws Exception {
+        Set<String> expectedIds = Sets.newLinkedHashSet();
+        expectedIds.add(app.getId());
+        for (int i = 0; i < NUM_ENTITIES; i++) {
+            Entity entity = app.createAndManageChild(EntitySpecs.spec(TestEntity.class));
+            expectedIds.add(entity.getId());
+        }
+        managementContext.getRebindManager().waitForPendingComplete(10, TimeUnit.SECONDS);
+
+        BrooklynMementoPersisterToMultiFile persister = new BrooklynMementoPersisterToMultiFile(mementoDir, classLoader);
+        try {
+            persister.setLoadParallelism(4);
+            BrooklynMemento memento = persister.loadMemento();
+
+            assertEquals(ImmutableSet.copyOf(memento.getEntityIds()), expectedIds);
+            assertEquals(ImmutableList.copyOf(memento.getApplicationIds()), ImmutableList.of(app.getId()));
+            assertEquals(memento.getEntityMemento(app.getId()).getChildren().size(), NUM_ENTITIES);
+        } finally {
+            persister.stop();
+        }
+    }
+}
@@ -1,12 +1,18 @@
 package brooklyn.event.feed.http;
 
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
 import static org.testng.Assert.assertTrue;
 import static org.testng.Assert.fail;
 
+import java.net.InetAddress;
+import java.net.ServerSocket;
 import java.net.URL;
 import java.util.concurrent.Callable;
 
+import org.apache.http.client.params.ClientPNames;
+import org.apache.http.params.HttpConnectionParams;
+import org.apache.http.params.HttpParams;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.testng.Assert;
@@ -23,10 +29,12 @@ import brooklyn.event.basic.BasicAttributeSensor;
 import brooklyn.event.basic.Sensors;
 import brooklyn.location.Location;
 import brooklyn.location.basic.LocalhostMachineProvisioningLocation;
+import brooklyn.management.internal.ManagementContextInternal;
 import brooklyn.test.Asserts;
 import brooklyn.test.entity.TestApplication;
 import brooklyn.test.entity.TestEntity;
 import brooklyn.util.collections.MutableMap;
+import brooklyn.util.time.Duration;
 
 import com.google.common.base.Functions;
 import com.google.common.base.Predicates;
@@ -92,6 +100,30 @@ public class HttpFeedTest {
         assertSensorEventually(SENSOR_STRING, "{\"foo\":\"myfoo\"}", TIMEOUT_MS);
     }
     
+    @Test
+    public void testReusesConnectionsOfSharedHttpClient() throws Exception {
+        feed = HttpFeed.builder()
+                .entity(entity)
+                .baseUrl(baseUrl)
+                .poll(new HttpPollConfig<Integer>(SENSOR_INT)
+                        .period(100)
+                        .onSuccess(HttpValueFunctions.responseCode()))
+                .build();
+        
+        assertSensorEventually(SENSOR_INT, (Integer)200, TIMEOUT_MS);
+        Asserts.succeedsEventually(ImmutableMap.of("timeout", TIMEOUT_MS), new Runnable() {
+            public void run() {
+                assertTrue(server.getRequestCount() >= 3, "requestCount="+server.getRequestCount());
+            }});
+        
+        // subsequent polls are sent over the first poll's connection
+        server.takeRequest();
+        assertTrue(server.takeRequest().getSequenceNumber() > 0);
+        
+        ManagementContextInternal managementContext = (ManagementContextInternal) app.getManagementContext();
+        assertSame(managementContext.getHttpClient(), managementContext.getHttpClient());
+    }
+    
     @Test
     public void testPollsAndParsesHttpPostResponse() throws Exception {
         feed = HttpFeed.builder()
@@ -162,6 +194,38 @@ public class HttpFeedTest {
         server.shutdown();
     }
 
+    @Test
+    public void testUsesExceptionHandlerOnTimeout() throws Exception {
+        // accepts connections, but never responds
+        ServerSocket unresponsiveServer = new ServerSocket(0, 50, InetAddress.getLocalHost());
+        try {
+            feed = HttpFeed.builder()
+                    .entity(entity)
+                    .baseUri("http://"+InetAddress.getLocalHost().getHostAddress()+":"+unresponsiveServer.getLocalPort()+"/")
+                    .poll(new HttpPollConfig<Integer>(SENSOR_INT)
+                            .period(100)
+                            .timeout(Duration.millis(100))
+                            .onSuccess(HttpValueFunctions.responseCode())
+                            .onException(Functions.constant(-1)))
+                    .build();
+    
+            assertSensorEventually(SENSOR_INT, -1, TIMEOUT_MS);
+        } finally {
+            unresponsiveServer.close();
+        }
+    }
+    
+    @Test
+    public void testSharedHttpClientTimesOutByDefault() throws Exception {
+        ManagementContextInternal managementContext = (ManagementContextInternal) app.getManagementContext();
+        HttpParams params = managementContext.getHttpClient().getParams();
+        
+        assertEquals(HttpConnectionParams.getSoTimeout(params), (int) SharedHttpClients.SOCKET_TIMEOUT.getDefaultValue());
+        assertEquals(HttpConnectionParams.getConnectionTimeout(params), (int) SharedHttpClients.CONNECTION_TIMEOUT.getDefaultValue());
+        assertEquals(params.getLongParameter(ClientPNames.CONN_MANAGER_TIMEOUT, 0), (long) SharedHttpClients.CONNECTION_REQUEST_TIMEOUT.getDefaultValue());
+        assertTrue(HttpConnectionParams.getSoTimeout(params) > 0);
+    }
+
     @Test(groups="Integration")
     // marked integration as it takes a wee while
     public void testSuspendResume() throws Exception {
@@ -0,0 +1,85 @@
+package brooklyn.event.feed.ssh;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.util.List;
+import java.util.Map;
+
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+public class MultiplexedSshPollTest {
+
+    private static final Map<String,String> NO_ENV = ImmutableMap.of();
+    
+    @Test
+    public void testScriptRunsEachCommandWithItsOwnEnv() {
+        MultiplexedSshPoll poll = new MultiplexedSshPoll(
+                ImmutableList.of("echo a", "echo $FOO"),
+                ImmutableList.<Map<String,String>>of(NO_ENV, ImmutableMap.of("FOO", "b \"c\"")),
+                "M");
+        String script = poll.getScript();
+        
+        assertTrue(script.contains("echo a\n"), script);
+        assertTrue(script.contains("export FOO=\"b \\\"c\\\"\"\n"), script);
+        assertTrue(script.indexOf("M-begin-0") < script.indexOf("echo a"), script);
+        assertTrue(script.indexOf("M-begin-1") > script.indexOf("M-end-0"), script);
+        assertTrue(script.indexOf("export FOO") > script.indexOf("M-begin-1"), script);
+    }
+    
+    @Test
+    public void testDemultiplexesOutputAndExitStatus() {
+        MultiplexedSshPoll poll = new MultiplexedSshPoll(
+                ImmutableList.of("echo a", "printf b; echo err >&2; exit 7"),
+                ImmutableList.of(NO_ENV, NO_ENV),
+                "M");
+        String stdout = "M-begin-0\na\n\nM-end-0-0\nM-begin-1\nb\nM-end-1-7\n";
+        String stderr = "M-begin-0\n\nM-end-0\nM-begin-1\nerr\n\nM-end-1\n";
+        
+        List<SshPollValue> vals = poll.demultiplex(null, 0, stdout, stderr);
+        
+        assertEquals(vals.size(), 2);
+        assertEquals(vals.get(0).getExitStatus(), 0);
+        assertEquals(vals.get(0).getStdout(), "a\n");
+        assertEquals(vals.get(0).getStderr(), "");
+        assertEquals(vals.get(1).getExitStatus(), 7);
+        assertEquals(vals.get(1).getStdout(), "b");
+        assertEquals(vals.get(1).getStderr(), "err\n");
+    }
+    
+    @Test
+    public void testDemultiplexedStdoutHasSameTrailerAsSingleScript() {
+        MultiplexedSshPoll poll = new MultiplexedSshPoll(
+                ImmutableList.of("echo a", "printf b; exit 7"),
+                ImmutableList.of(NO_ENV, NO_ENV),
+                "M");
+        String stdout = "M-begin-0\na\n\nM-end-0-0\nM-begin-1\nb\nM-end-1-7\nExecuted /tmp/brooklyn-123-abc.sh, result 0\n";
+        String stderr = "M-begin-0\n\nM-end-0\nM-begin-1\n\nM-end-1\n";
+        
+        List<SshPollValue> vals = poll.demultiplex(null, 0, stdout, stderr);
+        
+        // exactly the stdout of each command run with execScript on its own (where the trailer follows the command's output directly)
+        assertEquals(vals.get(0).getStdout(), "a\nExecuted /tmp/brooklyn-123-abc.sh, result 0\n");
+        assertEquals(vals.get(1).getStdout(), "bExecuted /tmp/brooklyn-123-abc.sh, result 7\n");
+        assertEquals(vals.get(1).getStderr(), "");
+    }
+    
+    @Test
+    public void testIncompleteOutputGivesNoValue() {
+        MultiplexedSshPoll poll = new MultiplexedSshPoll(
+                ImmutableList.of("echo a", "sleep 100"),
+                ImmutableList.of(NO_ENV, NO_ENV),
+                "M");
+        String stdout = "M-begin-0\na\n\nM-end-0-0\nM-begin-1\n";
+        String stderr = "M-begin-0\n\nM-end-0\nM-begin-1\n";
+        
+        List<SshPollValue> vals = poll.demultiplex(null, 137, stdout, stderr);
+        
+        assertEquals(vals.get(0).getStdout(), "a\n");
+        assertNull(vals.get(1));
+    }
+}
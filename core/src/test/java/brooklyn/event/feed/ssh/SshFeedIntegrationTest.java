@@ -124,4 +124,64 @@ public class SshFeedIntegrationTest {
                 assertTrue(val != null && val.contains("Exit status 123"), "val=" + val);
             }});
     }
+    
+    @Test(groups="Integration")
+    public void testMergedPollsReturnEachCommandsResult() throws Exception {
+        feed = SshFeed.builder()
+                .entity(entity)
+                .machine(machine)
+                .poll(new SshPollConfig<String>(SENSOR_STRING)
+                        .command("echo hello")
+                        .onSuccess(stdoutWithoutScriptPath()))
+                .poll(new SshPollConfig<Integer>(SENSOR_INT)
+                        .command("echo goodbye; exit 123")
+                        .checkSuccess(Predicates.alwaysTrue())
+                        .onSuccess(SshValueFunctions.exitStatus()))
+                .build();
+
+        EntityTestUtils.assertAttributeEqualsEventually(entity, SENSOR_STRING, "hello\nExecuted <script>, result 0\n");
+        EntityTestUtils.assertAttributeEqualsEventually(entity, SENSOR_INT, 123);
+    }
+    
+    @Test(groups="Integration")
+    public void testMergedPollsGiveSameStdoutAsSeparatePolls() throws Exception {
+        final AttributeSensor<String> separateSensor = Sensors.newStringSensor("aSeparateString", "");
+        final String cmd = "printf hello; exit 3";
+        
+        feed = SshFeed.builder()
+                .entity(entity)
+                .machine(machine)
+                .poll(new SshPollConfig<String>(SENSOR_STRING)
+                        .command(cmd)
+                        .checkSuccess(Predicates.alwaysTrue())
+                        .onSuccess(stdoutWithoutScriptPath()))
+                .poll(new SshPollConfig<Integer>(SENSOR_INT)
+                        .command("exit 0")
+                        .onSuccess(SshValueFunctions.exitStatus()))
+                .build();
+        SshFeed separateFeed = SshFeed.builder()
+                .entity(entity)
+                .machine(machine)
+                .mergePolls(false)
+                .poll(new SshPollConfig<String>(separateSensor)
+                        .command(cmd)
+                        .checkSuccess(Predicates.alwaysTrue())
+                        .onSuccess(stdoutWithoutScriptPath()))
+                .build();
+        try {
+            EntityTestUtils.assertAttributeEqualsEventually(entity, separateSensor, "helloExecuted <script>, result 3\n");
+            EntityTestUtils.assertAttributeEqualsEventually(entity, SENSOR_STRING, entity.getAttribute(separateSensor));
+        } finally {
+            separateFeed.stop();
+        }
+    }
+    
+    /** the stdout, with the (randomly named) script path in the ssh tool's trailer replaced by {@code <script>} */
+    private static Function<SshPollValue, String> stdoutWithoutScriptPath() {
+        return new Function<SshPollValue, String>() {
+            @Override
+            public String apply(SshPollValue input) {
+                return input.getStdout().replaceAll("Executed .*, result", "Executed <script>, result");
+            }};
+    }
 }
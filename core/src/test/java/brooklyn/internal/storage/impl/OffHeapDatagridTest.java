@@ -0,0 +1,167 @@
+package brooklyn.internal.storage.impl;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import brooklyn.config.BrooklynProperties;
+import brooklyn.internal.storage.BrooklynStorage;
+import brooklyn.internal.storage.DataGrid;
+import brooklyn.internal.storage.Reference;
+
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+
+public class OffHeapDatagridTest {
+
+    private static final String LONG_VAL = Strings.repeat("x", 100);
+    private static final String LONG_UNICODE_VAL = Strings.repeat("\u00e9\u20ac", 50);
+
+    private OffHeapValueStore store;
+    private OffHeapDatagrid datagrid;
+
+    @BeforeMethod(alwaysRun=true)
+    public void setUp() throws Exception {
+        store = new OffHeapValueStore(1024, 4096, 16);
+        datagrid = new OffHeapDatagrid(store);
+    }
+
+    @Test
+    public void testStoresLongStringsOffHeap() throws Exception {
+        Map<String, Object> map = datagrid.getMap("mymap");
+        map.put("k1", LONG_VAL);
+        map.put("k2", LONG_UNICODE_VAL);
+
+        assertEquals(map.get("k1"), LONG_VAL);
+        assertEquals(map.get("k2"), LONG_UNICODE_VAL);
+        assertEquals(store.getNumValues(), 2);
+        assertEquals(map, ImmutableMap.of("k1", LONG_VAL, "k2", LONG_UNICODE_VAL));
+    }
+
+    @Test
+    public void testKeepsOtherValuesOnHeap() throws Exception {
+        Map<String, Object> map = datagrid.getMap("mymap");
+        Object obj = new Object();
+        map.put("short", "abc");
+        map.put("obj", obj);
+        map.put("null", null);
+
+        assertEquals(map.get("short"), "abc");
+        assertSame(map.get("obj"), obj);
+        assertNull(map.get("null"));
+        assertTrue(map.containsKey("null"));
+        assertEquals(store.getNumValues(), 0);
+    }
+
+    @Test
+    public void testFreesBlocksOnOverwriteAndRemove() throws Exception {
+        Map<String, Object> map = datagrid.getMap("mymap");
+        map.put("k1", LONG_VAL);
+        assertEquals(map.put("k1", LONG_VAL+"2"), LONG_VAL);
+        assertEquals(store.getNumValues(), 1);
+
+        assertEquals(map.remove("k1"), LONG_VAL+"2");
+        assertEquals(store.getNumValues(), 0);
+        assertEquals(store.getUsedBytes(), 0);
+    }
+
+    @Test
+    public void testReusesFreedBlocks() throws Exception {
+        Map<String, Object> map = datagrid.getMap("mymap");
+        for (int i = 0; i < 1000; i++) {
+            map.put("k", LONG_VAL+i);
+        }
+        assertEquals(map.get("k"), LONG_VAL+999);
+        assertEquals(store.getAllocatedBytes(), 1024);
+        assertEquals(store.getNumRejected(), 0);
+    }
+
+    @Test
+    public void testFallsBackToHeapWhenFull() throws Exception {
+        Map<String, Object> map = datagrid.getMap("mymap");
+        for (int i = 0; i < 100; i++) {
+            map.put("k"+i, LONG_VAL+i);
+        }
+        for (int i = 0; i < 100; i++) {
+            assertEquals(map.get("k"+i), LONG_VAL+i);
+        }
+        assertTrue(store.getNumRejected() > 0);
+        assertEquals(store.getAllocatedBytes(), 4096);
+    }
+
+    @Test
+    public void testConditionalOperations() throws Exception {
+        Map<String, Object> map = datagrid.getMap("mymap");
+        ConcurrentMap<String, Object> cmap = datagrid.getMap("mymap");
+
+        assertNull(cmap.putIfAbsent("k1", LONG_VAL));
+        assertEquals(cmap.putIfAbsent("k1", "other"), LONG_VAL);
+        assertFalse(cmap.replace("k1", "wrong", "other"));
+        assertTrue(cmap.replace("k1", LONG_VAL, LONG_UNICODE_VAL));
+        assertEquals(map.get("k1"), LONG_UNICODE_VAL);
+        assertFalse(cmap.remove("k1", LONG_VAL));
+        assertTrue(cmap.remove("k1", LONG_UNICODE_VAL));
+        assertTrue(map.isEmpty());
+        assertEquals(store.getNumValues(), 0);
+    }
+
+    @Test
+    public void testKeySetIteratorRemoveFreesBlocks() throws Exception {
+        Map<String, Object> map = datagrid.getMap("mymap");
+        map.put("k1", LONG_VAL);
+        map.put("k2", LONG_VAL);
+        assertEquals(map.keySet(), ImmutableSet.of("k1", "k2"));
+
+        for (Iterator<String> iter = map.keySet().iterator(); iter.hasNext();) {
+            iter.next();
+            iter.remove();
+        }
+        assertTrue(map.isEmpty());
+        assertEquals(store.getNumValues(), 0);
+    }
+
+    @Test
+    public void testRemoveMapFreesBlocks() throws Exception {
+        datagrid.getMap("mymap").put("k1", LONG_VAL);
+        datagrid.remove("mymap");
+
+        assertEquals(store.getNumValues(), 0);
+        assertTrue(datagrid.getMap("mymap").isEmpty());
+    }
+
+    @Test
+    public void testBrooklynStorageOverOffHeapDatagrid() throws Exception {
+        BrooklynStorage storage = new BrooklynStorageImpl(datagrid);
+        Reference<Object> ref = storage.getReference("mykey");
+        ref.set(LONG_VAL);
+        assertEquals(storage.getReference("mykey").get(), LONG_VAL);
+
+        Reference<List<String>> listRef = storage.getNonConcurrentList("mylist");
+        listRef.set(Arrays.asList("a", "b"));
+        assertEquals(listRef.get(), Arrays.asList("a", "b"));
+    }
+
+    @Test
+    public void testDatagridTypeSelectedByConfig() throws Exception {
+        BrooklynProperties props = BrooklynProperties.Factory.newEmpty();
+        assertEquals(BrooklynStorageImpl.newDatagrid(props).getClass(), InmemoryDatagrid.class);
+
+        props.put(BrooklynStorageImpl.DATAGRID_TYPE, "offheap");
+        DataGrid result = BrooklynStorageImpl.newDatagrid(props);
+        assertEquals(result.getClass(), OffHeapDatagrid.class);
+        result.getMap("mymap").put("k1", LONG_VAL);
+        assertEquals(result.getMap("mymap").get("k1"), LONG_VAL);
+    }
+}
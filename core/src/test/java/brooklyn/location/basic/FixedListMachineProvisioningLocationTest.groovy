@@ -57,6 +57,27 @@ public class FixedListMachineProvisioningLocationTest {
         fail "Did not throw NoMachinesAvailableException as expected"
     }
 
+    @Test
+    public void canObtainSeveralMachinesAtOnce() {
+        SshMachineLocation machine2 = new SshMachineLocation(address:Inet4Address.getByName('192.168.144.201'));
+        provisioner2 = new FixedListMachineProvisioningLocation<SshMachineLocation>(machines:[ machine, machine2 ]);
+        List<SshMachineLocation> obtained = provisioner2.obtain(2, [:])
+        assertEquals(obtained as Set, ImmutableSet.of(machine, machine2));
+        assertEquals(provisioner2.getAvailable(), ImmutableSet.of());
+    }
+
+    @Test
+    public void obtainingSeveralMachinesReleasesAllIfNotEnoughAvailable() {
+        try {
+            provisioner.obtain(2, [:])
+            fail "Did not throw NoMachinesAvailableException as expected"
+        } catch (NoMachinesAvailableException e) {
+            // expected
+        }
+        assertEquals(provisioner.getAvailable(), ImmutableSet.of(machine));
+        assertEquals(provisioner.getInUse(), ImmutableSet.of());
+    }
+
     @Test
     public void canGetAMachineReturnItAndObtainItAgain() {
         SshMachineLocation obtained = provisioner.obtain()
@@ -0,0 +1,115 @@
+package brooklyn.management.internal;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import brooklyn.config.BrooklynProperties;
+import brooklyn.entity.basic.ApplicationBuilder;
+import brooklyn.entity.basic.Entities;
+import brooklyn.entity.proxying.EntitySpecs;
+import brooklyn.event.SensorEvent;
+import brooklyn.event.SensorEventListener;
+import brooklyn.test.Asserts;
+import brooklyn.test.entity.TestApplication;
+import brooklyn.test.entity.TestEntity;
+import brooklyn.util.task.BasicExecutionManager;
+
+/**
+ * Tests {@link LocalSubscriptionManager} with {@link LocalSubscriptionManager#BATCH_DELIVERY} enabled.
+ */
+public class LocalSubscriptionManagerBatchDeliveryTest {
+
+    private static final int NUM_EVENTS = 1000;
+
+    private LocalManagementContext managementContext;
+    private TestApplication app;
+    private TestEntity entity;
+
+    @BeforeMethod(alwaysRun=true)
+    public void setup() {
+        BrooklynProperties props = BrooklynProperties.Factory.newEmpty();
+        props.put(LocalSubscriptionManager.BATCH_DELIVERY, true);
+        props.put(LocalSubscriptionManager.COALESCE_ATTRIBUTE_UPDATES, false);
+        setupWith(props);
+    }
+
+    private void setupWith(BrooklynProperties props) {
+        if (managementContext != null) Entities.destroyAll(managementContext);
+        managementContext = new LocalManagementContext(props);
+        app = ApplicationBuilder.newManagedApp(TestApplication.class, managementContext);
+        entity = app.createAndManageChild(EntitySpecs.spec(TestEntity.class));
+    }
+
+    @AfterMethod(alwaysRun=true)
+    public void tearDown() {
+        if (managementContext != null) Entities.destroyAll(managementContext);
+        managementContext = null;
+    }
+
+    @Test
+    public void testDeliversAllEventsInOrder() throws Exception {
+        final List<Integer> received = new CopyOnWriteArrayList<Integer>();
+        app.subscribe(entity, TestEntity.SEQUENCE, new SensorEventListener<Integer>() {
+            @Override public void onEvent(SensorEvent<Integer> event) {
+                received.add(event.getValue());
+            }});
+
+        for (int i = 0; i < NUM_EVENTS; i++) {
+            entity.setAttribute(TestEntity.SEQUENCE, i);
+        }
+
+        Asserts.succeedsEventually(new Runnable() {
+            public void run() {
+                assertEquals(received.size(), NUM_EVENTS);
+            }});
+        for (int i = 0; i < NUM_EVENTS; i++) {
+            assertEquals(received.get(i), (Integer)i);
+        }
+    }
+
+    @Test(expectedExceptions=IllegalArgumentException.class)
+    public void testRejectsNonPositiveMaxBatchSize() throws Exception {
+        BrooklynProperties props = BrooklynProperties.Factory.newEmpty();
+        props.put(LocalSubscriptionManager.BATCH_DELIVERY, true);
+        props.put(LocalSubscriptionManager.MAX_BATCH_SIZE, 0);
+        new LocalSubscriptionManager(new BasicExecutionManager("test"), props);
+    }
+
+    @Test
+    public void testCoalescesSupersededAttributeValues() throws Exception {
+        BrooklynProperties props = BrooklynProperties.Factory.newEmpty();
+        props.put(LocalSubscriptionManager.BATCH_DELIVERY, true);
+        props.put(LocalSubscriptionManager.COALESCE_ATTRIBUTE_UPDATES, true);
+        setupWith(props);
+        final LocalSubscriptionManager subscriptionManager = (LocalSubscriptionManager) managementContext.getSubscriptionManager();
+
+        final List<Integer> received = new CopyOnWriteArrayList<Integer>();
+        app.subscribe(entity, TestEntity.SEQUENCE, new SensorEventListener<Integer>() {
+            @Override public void onEvent(SensorEvent<Integer> event) {
+                received.add(event.getValue());
+            }});
+
+        for (int i = 0; i < NUM_EVENTS; i++) {
+            entity.setAttribute(TestEntity.SEQUENCE, i);
+        }
+
+        // the most recent value is always delivered; others may have been skipped, but never re-ordered
+        Asserts.succeedsEventually(new Runnable() {
+            public void run() {
+                assertTrue(received.size() > 0);
+                assertEquals(received.get(received.size()-1), (Integer)(NUM_EVENTS-1));
+                assertEquals(subscriptionManager.getNumEventsQueued(), 0);
+            }});
+        for (int i = 1; i < received.size(); i++) {
+            assertTrue(received.get(i) > received.get(i-1), "received="+received);
+        }
+        assertEquals(received.size() + subscriptionManager.getTotalEventsCoalesced(), NUM_EVENTS);
+    }
+}
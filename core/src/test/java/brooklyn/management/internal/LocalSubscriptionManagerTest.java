@@ -123,6 +123,32 @@ public class LocalSubscriptionManagerTest {
         assertEquals(events.get(0).getSource().getId(), member.getId());
     }
     
+    @Test
+    public void testSubscriptionsChangedAfterPublishingAreHonoured() throws Exception {
+        LocalSubscriptionManager subscriptionManager = (LocalSubscriptionManager) app.getManagementContext().getSubscriptionManager();
+        
+        // publish first, so that the dispatch index has an entry for this entity+sensor
+        entity.setSequenceValue(1);
+        int initialCount = subscriptionManager.getSubscriptionsForEntitySensor(entity, TestEntity.SEQUENCE).size();
+        
+        SensorEventListener<Object> noopListener = new SensorEventListener<Object>() {
+            @Override public void onEvent(SensorEvent<Object> event) {
+            }};
+        SubscriptionHandle exact = app.subscribe(entity, TestEntity.SEQUENCE, noopListener);
+        assertEquals(subscriptionManager.getSubscriptionsForEntitySensor(entity, TestEntity.SEQUENCE).size(), initialCount+1);
+        
+        SubscriptionHandle wildcardEntity = app.subscribe(null, TestEntity.SEQUENCE, noopListener);
+        SubscriptionHandle wildcardSensor = app.subscribe(entity, null, noopListener);
+        assertEquals(subscriptionManager.getSubscriptionsForEntitySensor(entity, TestEntity.SEQUENCE).size(), initialCount+3);
+        
+        app.unsubscribe(entity, exact);
+        app.unsubscribe(null, wildcardEntity);
+        assertEquals(subscriptionManager.getSubscriptionsForEntitySensor(entity, TestEntity.SEQUENCE).size(), initialCount+1);
+        
+        app.unsubscribe(entity, wildcardSensor);
+        assertEquals(subscriptionManager.getSubscriptionsForEntitySensor(entity, TestEntity.SEQUENCE).size(), initialCount);
+    }
+    
     // Regression test for ConcurrentModificationException in issue #327
     @Test(groups="Integration")
     public void testConcurrentSubscribingAndPublishing() throws Exception {
@@ -0,0 +1,81 @@
+package brooklyn.qa.performance;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import brooklyn.internal.storage.BrooklynStorage;
+import brooklyn.internal.storage.Reference;
+import brooklyn.internal.storage.impl.BrooklynStorageImpl;
+import brooklyn.internal.storage.impl.InmemoryDatagrid;
+
+/**
+ * Measures creation of many short-lived storage references (as happens for short-lived entities),
+ * logging the GC count and time incurred so that the cost of the reference cache can be compared.
+ */
+public class BrooklynStoragePerformanceTest extends AbstractPerformanceTest {
+
+    private BrooklynStorage storage;
+
+    @BeforeMethod(alwaysRun=true)
+    @Override
+    public void setUp() {
+        super.setUp();
+        storage = new BrooklynStorageImpl(new InmemoryDatagrid());
+    }
+
+    @Test(groups={"Integration", "Acceptance"})
+    public void testGetManyShortLivedReferences() {
+        int numIterations = 1000000;
+        double minRatePerSec = 100000 * PERFORMANCE_EXPECTATION;
+        final AtomicInteger counter = new AtomicInteger();
+
+        measureWithGcAndAssert("getShortLivedReference", numIterations, minRatePerSec, new Runnable() {
+            @Override public void run() {
+                String id = "ref-"+counter.incrementAndGet();
+                Reference<Object> ref = storage.getReference(id);
+                ref.set(id);
+                storage.remove(id);
+            }});
+    }
+
+    @Test(groups={"Integration", "Acceptance"})
+    public void testGetSameReferenceRepeatedly() {
+        int numIterations = 1000000;
+        double minRatePerSec = 1000000 * PERFORMANCE_EXPECTATION;
+        storage.getReference("myref").set("myval");
+
+        measureWithGcAndAssert("getSameReference", numIterations, minRatePerSec, new Runnable() {
+            @Override public void run() {
+                storage.getReference("myref").get();
+            }});
+    }
+
+    private void measureWithGcAndAssert(String prefix, int numIterations, double minRatePerSec, Runnable r) {
+        long gcCountBefore = totalGcCount();
+        long gcTimeBefore = totalGcTime();
+        measureAndAssert(prefix, numIterations, minRatePerSec, r);
+        String msg = prefix+": gcCount="+(totalGcCount()-gcCountBefore)+"; gcTimeMillis="+(totalGcTime()-gcTimeBefore);
+        LOG.info(msg);
+        System.out.println(msg+"\n");
+    }
+
+    private static long totalGcCount() {
+        long result = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            result += Math.max(0, gc.getCollectionCount());
+        }
+        return result;
+    }
+
+    private static long totalGcTime() {
+        long result = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            result += Math.max(0, gc.getCollectionTime());
+        }
+        return result;
+    }
+}
@@ -0,0 +1,53 @@
+package brooklyn.qa.performance;
+
+import static org.testng.Assert.assertEquals;
+
+import java.net.InetAddress;
+import java.util.Set;
+
+import org.testng.annotations.Test;
+
+import brooklyn.util.flags.TypeCoercions;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Measures the common coercions (as used for config reads, flag setting and effector parameters),
+ * each of which needs a coercion strategy to be chosen for the (value type, target type) pair.
+ */
+public class TypeCoercionsPerformanceTest extends AbstractPerformanceTest {
+
+    @Test(groups={"Integration", "Acceptance"})
+    public void testCoerceStringToInteger() {
+        int numIterations = 1000000;
+        double minRatePerSec = 100000 * PERFORMANCE_EXPECTATION;
+        
+        measureAndAssert("coerceStringToInteger", numIterations, minRatePerSec, new Runnable() {
+            @Override public void run() {
+                assertEquals(TypeCoercions.coerce("123", Integer.class), (Integer)123);
+            }});
+    }
+    
+    @Test(groups={"Integration", "Acceptance"})
+    public void testCoerceListToSetViaRegisteredAdapter() {
+        int numIterations = 1000000;
+        double minRatePerSec = 100000 * PERFORMANCE_EXPECTATION;
+        final ImmutableList<String> val = ImmutableList.of("a", "b");
+        
+        measureAndAssert("coerceListToSet", numIterations, minRatePerSec, new Runnable() {
+            @Override public void run() {
+                assertEquals(TypeCoercions.coerce(val, Set.class).size(), 2);
+            }});
+    }
+    
+    @Test(groups={"Integration", "Acceptance"})
+    public void testCoerceStringToInetAddressViaRegisteredAdapter() {
+        int numIterations = 100000;
+        double minRatePerSec = 10000 * PERFORMANCE_EXPECTATION;
+        
+        measureAndAssert("coerceStringToInetAddress", numIterations, minRatePerSec, new Runnable() {
+            @Override public void run() {
+                TypeCoercions.coerce("127.0.0.1", InetAddress.class);
+            }});
+    }
+}
@@ -12,6 +12,7 @@ import org.testng.annotations.Test;
 import brooklyn.util.flags.ClassCoercionException;
 import brooklyn.util.flags.TypeCoercions;
 
+import com.google.common.base.Function;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.reflect.TypeToken;
@@ -117,6 +118,28 @@ public class TypeCoercionsTest {
         TypeCoercions.coerce(new Object(), TypeToken.of(Integer.class));
     }
 
+    @Test
+    public void testAdapterRegisteredAfterFailedCoercionIsUsed() {
+        try {
+            TypeCoercions.coerce(new LateAdaptedSource(), LateAdaptedTarget.class);
+            Assert.fail();
+        } catch (ClassCoercionException e) {
+            // expected: no adapter yet (and the failure is cached until an adapter is registered)
+        }
+        TypeCoercions.registerAdapter(LateAdaptedSource.class, LateAdaptedTarget.class, new Function<LateAdaptedSource, LateAdaptedTarget>() {
+            @Override public LateAdaptedTarget apply(LateAdaptedSource input) {
+                return new LateAdaptedTarget();
+            }});
+        
+        Assert.assertTrue(TypeCoercions.coerce(new LateAdaptedSource(), LateAdaptedTarget.class) instanceof LateAdaptedTarget);
+    }
+
+    public static class LateAdaptedSource {
+    }
+    
+    public static class LateAdaptedTarget {
+    }
+    
     public static class WithAs {
         String value;
         public WithAs(Object x) { value = ""+x; }
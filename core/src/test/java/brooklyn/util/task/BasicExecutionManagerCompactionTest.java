@@ -0,0 +1,158 @@
+package brooklyn.util.task;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import brooklyn.management.Task;
+import brooklyn.util.collections.MutableMap;
+
+import com.google.common.collect.Iterables;
+
+public class BasicExecutionManagerCompactionTest {
+
+    private BasicExecutionManager em;
+
+    @BeforeMethod(alwaysRun=true)
+    public void setUp() {
+        em = new BasicExecutionManager("test");
+    }
+
+    @AfterMethod(alwaysRun=true)
+    public void tearDown() {
+        if (em != null) em.shutdownNow();
+    }
+
+    @Test
+    public void testCompactsSuccessfulTask() throws Exception {
+        Task<String> task = em.submit(MutableMap.of("tag", "mytag", "displayName", "mytask"), new Callable<String>() {
+            public String call() {
+                return "myresult";
+            }});
+        task.get();
+        task.blockUntilEnded();
+
+        assertEquals(em.compactCompletedTasks(), 1);
+
+        Task<?> summary = em.getTask(task.getId());
+        assertTrue(summary instanceof CompletedTaskSummary, "summary="+summary);
+        assertEquals(((CompletedTaskSummary<?>)summary).getResultType(), String.class);
+        assertEquals(((CompletedTaskSummary<?>)summary).getResultString(), "myresult");
+        assertEquals(summary.getDisplayName(), "mytask");
+        assertEquals(summary.getEndTimeUtc(), task.getEndTimeUtc());
+        assertEquals(summary.getStatusSummary(), task.getStatusSummary());
+        assertTrue(summary.getTags().contains("mytag"));
+        assertTrue(summary.isDone());
+        assertFalse(summary.isError());
+
+        Task<?> taskWithTag = Iterables.getOnlyElement(em.getTasksWithTag("mytag"));
+        assertTrue(taskWithTag instanceof CompletedTaskSummary, "task="+taskWithTag);
+
+        // already compacted
+        assertEquals(em.compactCompletedTasks(), 0);
+    }
+
+    @Test
+    public void testCompactedTaskDoesNotRetainResult() throws Exception {
+        final StringBuilder bigResult = new StringBuilder();
+        for (int i = 0; i < CompletedTaskSummary.MAX_RESULT_STRING_LENGTH; i++) bigResult.append("ab");
+        Task<StringBuilder> task = em.submit(MutableMap.of("displayName", "bigresult"), new Callable<StringBuilder>() {
+            public StringBuilder call() {
+                return bigResult;
+            }});
+        task.get();
+        task.blockUntilEnded();
+        while (task.getEndTimeUtc() < 0) Thread.sleep(10);
+
+        assertEquals(em.compactCompletedTasks(), 1);
+        CompletedTaskSummary<?> summary = (CompletedTaskSummary<?>) em.getTask(task.getId());
+        assertEquals(summary.getResultType(), StringBuilder.class);
+        assertEquals(summary.getResultString(), bigResult.substring(0, CompletedTaskSummary.MAX_RESULT_STRING_LENGTH));
+        try {
+            summary.get();
+            fail();
+        } catch (IllegalStateException e) {
+            // expected; the result itself is not retained
+        }
+    }
+
+    @Test
+    public void testTaskWhichCannotBeSummarisedIsLeftAndOthersCompacted() throws Exception {
+        Task<Object> badTask = em.submit(MutableMap.of("displayName", "bad"), new Callable<Object>() {
+            public Object call() {
+                return new Object() {
+                    @Override public String toString() {
+                        throw new IllegalStateException("simulated toString failure");
+                    }};
+            }});
+        Task<String> goodTask = em.submit(MutableMap.of("displayName", "good"), new Callable<String>() {
+            public String call() {
+                return "myresult";
+            }});
+        for (Task<?> task : new Task<?>[] {badTask, goodTask}) {
+            task.get();
+            while (task.getEndTimeUtc() < 0) Thread.sleep(10);
+        }
+
+        assertEquals(em.compactCompletedTasks(), 1);
+        assertTrue(em.getTask(badTask.getId()) == badTask, "task="+em.getTask(badTask.getId()));
+        assertTrue(em.getTask(goodTask.getId()) instanceof CompletedTaskSummary, "task="+em.getTask(goodTask.getId()));
+    }
+
+    @Test
+    public void testCompactsFailedTask() throws Exception {
+        Task<String> task = em.submit(MutableMap.of("tag", "mytag"), new Callable<String>() {
+            public String call() {
+                throw new IllegalStateException("simulated failure");
+            }});
+        task.blockUntilEnded();
+        while (!task.isDone()) Thread.sleep(10);
+
+        assertEquals(em.compactCompletedTasks(), 1);
+        Task<?> summary = em.getTask(task.getId());
+        assertTrue(summary.isError());
+        try {
+            summary.get();
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException, "cause="+e.getCause());
+        }
+    }
+
+    @Test
+    public void testDoesNotCompactIncompleteTask() throws Exception {
+        final Object lock = new Object();
+        Task<?> task;
+        synchronized (lock) {
+            task = em.submit(new Runnable() {
+                public void run() {
+                    synchronized (lock) {}
+                }});
+            assertEquals(em.compactCompletedTasks(), 0);
+            assertEquals(em.getTask(task.getId()), task);
+        }
+        task.get();
+    }
+
+    @Test
+    public void testDeleteCompactedTask() throws Exception {
+        Task<?> task = em.submit(MutableMap.of("tag", "mytag"), new Runnable() {
+            public void run() {}
+        });
+        task.get();
+        task.blockUntilEnded();
+        em.compactCompletedTasks();
+
+        em.deleteTask(em.getTask(task.getId()));
+        assertEquals(em.getTask(task.getId()), null);
+        assertTrue(em.getTasksWithTag("mytag").isEmpty());
+    }
+}
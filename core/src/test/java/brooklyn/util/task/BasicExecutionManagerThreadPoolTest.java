@@ -0,0 +1,98 @@
+package brooklyn.util.task;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+import brooklyn.config.BrooklynProperties;
+import brooklyn.management.ExecutionManager;
+import brooklyn.management.Task;
+import brooklyn.util.collections.MutableMap;
+
+import com.google.common.collect.Lists;
+
+public class BasicExecutionManagerThreadPoolTest {
+
+    private BasicExecutionManager em;
+
+    @AfterMethod(alwaysRun=true)
+    public void tearDown() {
+        if (em != null) em.shutdownNow();
+    }
+
+    @Test
+    public void testBoundedPoolLimitsConcurrentTasks() throws Exception {
+        BrooklynProperties props = BrooklynProperties.Factory.newEmpty();
+        props.put(BasicExecutionManager.MAX_THREADS, 2);
+        em = new BasicExecutionManager("test", props);
+
+        final AtomicInteger concurrent = new AtomicInteger();
+        final AtomicInteger maxConcurrent = new AtomicInteger();
+        List<Task<?>> tasks = Lists.newArrayList();
+        for (int i = 0; i < 10; i++) {
+            tasks.add(em.submit(new Runnable() {
+                public void run() {
+                    int now = concurrent.incrementAndGet();
+                    synchronized (maxConcurrent) {
+                        if (now > maxConcurrent.get()) maxConcurrent.set(now);
+                    }
+                    try {
+                        Thread.sleep(20);
+                    } catch (InterruptedException e) {
+                        throw new RuntimeException(e);
+                    } finally {
+                        concurrent.decrementAndGet();
+                    }
+                }}));
+        }
+        for (Task<?> task : tasks) {
+            task.get();
+        }
+        assertTrue(maxConcurrent.get() <= 2, "maxConcurrent="+maxConcurrent);
+        assertTrue(em.getNumThreads() <= 2, "threads="+em.getNumThreads());
+    }
+
+    @Test
+    public void testBlockingTasksUseSeparatePool() throws Exception {
+        BrooklynProperties props = BrooklynProperties.Factory.newEmpty();
+        props.put(BasicExecutionManager.MAX_THREADS, 1);
+        em = new BasicExecutionManager("test", props);
+
+        // occupy the only thread in the main pool; blocking tasks must still run
+        final CountDownLatch release = new CountDownLatch(1);
+        Task<?> blocker = em.submit(new Runnable() {
+            public void run() {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+            }});
+        try {
+            Task<String> blockingTask = em.submit(MutableMap.of("tag", ExecutionManager.BLOCKING_TASK_TAG), new Callable<String>() {
+                public String call() {
+                    return Thread.currentThread().getName();
+                }});
+            String threadName = blockingTask.get(10, TimeUnit.SECONDS);
+            assertTrue(threadName.contains("blocking"), "thread="+threadName);
+            assertFalse(blocker.isDone());
+            
+            // the tag just selects the pool; tasks are not retained under it
+            assertFalse(em.getTaskTags().contains(ExecutionManager.BLOCKING_TASK_TAG));
+            assertTrue(em.getTasksWithTag(ExecutionManager.BLOCKING_TASK_TAG).isEmpty());
+        } finally {
+            release.countDown();
+        }
+        blocker.get();
+        assertEquals(em.getNumQueuedTasks(), 0);
+    }
+}
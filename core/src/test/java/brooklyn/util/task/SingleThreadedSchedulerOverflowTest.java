@@ -0,0 +1,221 @@
+package brooklyn.util.task;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+import brooklyn.config.BrooklynProperties;
+import brooklyn.management.Task;
+import brooklyn.test.Asserts;
+import brooklyn.util.collections.MutableMap;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+
+public class SingleThreadedSchedulerOverflowTest {
+
+    private static final String TAG = "category1";
+
+    private BasicExecutionManager em;
+
+    @AfterMethod(alwaysRun=true)
+    public void tearDown() {
+        if (em != null) em.shutdownNow();
+    }
+
+    private void newExecutionManager(int maxQueueSize, SingleThreadedScheduler.OverflowPolicy policy) {
+        newExecutionManager(maxQueueSize, policy, SingleThreadedScheduler.DEFAULT_MAX_BLOCK_TIME);
+    }
+
+    private void newExecutionManager(int maxQueueSize, SingleThreadedScheduler.OverflowPolicy policy, long maxBlockTime) {
+        BrooklynProperties props = BrooklynProperties.Factory.newEmpty();
+        props.put(BasicExecutionManager.SINGLE_THREADED_SCHEDULER_MAX_QUEUE_SIZE, maxQueueSize);
+        props.put(BasicExecutionManager.SINGLE_THREADED_SCHEDULER_OVERFLOW_POLICY, policy);
+        props.put(BasicExecutionManager.SINGLE_THREADED_SCHEDULER_MAX_BLOCK_TIME, maxBlockTime);
+        em = new BasicExecutionManager("test", props);
+        em.setTaskSchedulerForTag(TAG, SingleThreadedScheduler.class);
+    }
+
+    private Task<?> submitLatched(final CountDownLatch latch) {
+        return em.submit(MutableMap.of("tag", TAG), new Runnable() {
+            public void run() {
+                try {
+                    latch.await();
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+            }});
+    }
+
+    private Task<?> submitRecording(final List<Integer> result, final int val) {
+        return em.submit(MutableMap.of("tag", TAG), new Runnable() {
+            public void run() {
+                result.add(val);
+            }});
+    }
+
+    @Test
+    public void testDropOldestKeepsMostRecentSubmissions() throws Exception {
+        newExecutionManager(5, SingleThreadedScheduler.OverflowPolicy.DROP_OLDEST);
+        SingleThreadedScheduler scheduler = (SingleThreadedScheduler) em.getTaskSchedulerForTag(TAG);
+
+        CountDownLatch latch = new CountDownLatch(1);
+        submitLatched(latch);
+
+        final List<Integer> result = new CopyOnWriteArrayList<Integer>();
+        List<Task<?>> tasks = Lists.newArrayList();
+        for (int i = 0; i < 10; i++) {
+            tasks.add(submitRecording(result, i));
+        }
+        assertEquals(scheduler.getQueueSize(), 5);
+        assertEquals(em.getSchedulerQueueSizesByTag().get(TAG), (Integer)5);
+        assertEquals(scheduler.getDroppedCount(), 5);
+
+        latch.countDown();
+        for (int i = 5; i < 10; i++) {
+            tasks.get(i).get();
+        }
+        for (int i = 0; i < 5; i++) {
+            assertTrue(tasks.get(i).isCancelled());
+        }
+        assertEquals(result, Lists.newArrayList(5, 6, 7, 8, 9));
+        assertEquals(scheduler.getPeakQueueSize(), 6);
+    }
+
+    @Test
+    public void testDroppedSubmissionsAreRecordedAsEnded() throws Exception {
+        newExecutionManager(2, SingleThreadedScheduler.OverflowPolicy.DROP_OLDEST);
+        final List<Task<?>> done = new CopyOnWriteArrayList<Task<?>>();
+        em.addListener(new ExecutionListener() {
+            public void onTaskDone(Task<?> task) {
+                done.add(task);
+            }});
+
+        CountDownLatch latch = new CountDownLatch(1);
+        try {
+            submitLatched(latch);
+            final List<Integer> result = new CopyOnWriteArrayList<Integer>();
+            final List<Task<?>> tasks = Lists.newArrayList();
+            for (int i = 0; i < 5; i++) {
+                tasks.add(submitRecording(result, i));
+            }
+
+            // the three dropped are ended straight away, without waiting for the running task
+            Asserts.succeedsEventually(new Runnable() {
+                public void run() {
+                    assertEquals(ImmutableSet.copyOf(done), ImmutableSet.copyOf(tasks.subList(0, 3)));
+                }});
+            for (Task<?> task : tasks.subList(0, 3)) {
+                assertTrue(task.isCancelled());
+                assertTrue(task.getEndTimeUtc() > 0, "task="+task);
+            }
+            assertEquals(em.getNumIncompleteTasks(), 3);
+
+            latch.countDown();
+            Asserts.succeedsEventually(new Runnable() {
+                public void run() {
+                    assertEquals(em.getNumIncompleteTasks(), 0);
+                    assertEquals(done.size(), 6);
+                }});
+            assertEquals(result, Lists.newArrayList(3, 4));
+        } finally {
+            latch.countDown();
+        }
+    }
+
+    @Test
+    public void testCancelledQueuedSubmissionIsRecordedAsEnded() throws Exception {
+        newExecutionManager(0, SingleThreadedScheduler.OverflowPolicy.WARN);
+
+        CountDownLatch latch = new CountDownLatch(1);
+        try {
+            submitLatched(latch);
+            final List<Integer> result = new CopyOnWriteArrayList<Integer>();
+            Task<?> cancelled = submitRecording(result, 0);
+            submitRecording(result, 1);
+            cancelled.cancel(true);
+
+            latch.countDown();
+            Asserts.succeedsEventually(new Runnable() {
+                public void run() {
+                    assertEquals(em.getNumIncompleteTasks(), 0);
+                }});
+            assertEquals(result, Lists.newArrayList(1));
+        } finally {
+            latch.countDown();
+        }
+    }
+
+    @Test
+    public void testBlockPolicyAcceptsSubmissionAfterMaxBlockTime() throws Exception {
+        newExecutionManager(1, SingleThreadedScheduler.OverflowPolicy.BLOCK, 100);
+        SingleThreadedScheduler scheduler = (SingleThreadedScheduler) em.getTaskSchedulerForTag(TAG);
+
+        CountDownLatch latch = new CountDownLatch(1);
+        try {
+            submitLatched(latch);
+            final List<Integer> result = new CopyOnWriteArrayList<Integer>();
+            submitRecording(result, 0);
+
+            // would block forever, as the running task never completes until we release the latch
+            long start = System.currentTimeMillis();
+            submitRecording(result, 1);
+            assertTrue(System.currentTimeMillis() - start >= 100);
+            assertEquals(scheduler.getQueueSize(), 2);
+            assertEquals(scheduler.getBlockedCount(), 1);
+
+            latch.countDown();
+            Asserts.succeedsEventually(new Runnable() {
+                public void run() {
+                    assertEquals(result, Lists.newArrayList(0, 1));
+                }});
+        } finally {
+            latch.countDown();
+        }
+    }
+
+    @Test
+    public void testBlockPolicyBlocksSubmitterUntilSpace() throws Exception {
+        newExecutionManager(2, SingleThreadedScheduler.OverflowPolicy.BLOCK);
+        SingleThreadedScheduler scheduler = (SingleThreadedScheduler) em.getTaskSchedulerForTag(TAG);
+
+        CountDownLatch latch = new CountDownLatch(1);
+        submitLatched(latch);
+
+        final List<Integer> result = new CopyOnWriteArrayList<Integer>();
+        submitRecording(result, 0);
+        submitRecording(result, 1);
+
+        final CountDownLatch submitted = new CountDownLatch(1);
+        Thread submitter = new Thread() {
+            public void run() {
+                submitRecording(result, 2);
+                submitted.countDown();
+            }
+        };
+        submitter.start();
+        try {
+            assertFalse(submitted.await(100, TimeUnit.MILLISECONDS));
+            assertEquals(scheduler.getQueueSize(), 2);
+
+            latch.countDown();
+            assertTrue(submitted.await(10, TimeUnit.SECONDS));
+            Asserts.succeedsEventually(new Runnable() {
+                public void run() {
+                    assertEquals(result, Lists.newArrayList(0, 1, 2));
+                }});
+            assertEquals(scheduler.getBlockedCount(), 1);
+        } finally {
+            latch.countDown();
+            submitter.interrupt();
+        }
+    }
+}
@@ -4,7 +4,16 @@ import static brooklyn.location.jclouds.pool.MachinePoolPredicates.matching;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
 
 import org.jclouds.compute.domain.NodeMetadata;
@@ -23,7 +32,17 @@ import brooklyn.util.task.BasicExecutionContext;
 
 import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 
+/**
+ * A {@link MachinePool} whose machines are provisioned through, and managed as children of, a {@link JcloudsLocation}.
+ * <p>
+ * The pool can also keep a number of machines "warm" for given templates (see {@link #setWarmTarget(ReusableMachineTemplate, int)}):
+ * unclaimed machines which are known to be reachable, so can be handed out in seconds rather than minutes.
+ * {@link #startWarming(long)} starts a background thread which periodically refreshes the pool and tops up the warm machines;
+ * and a {@link JcloudsLocation} configured with this pool (see {@link JcloudsLocationConfig#MACHINE_POOL}) 
+ * claims a warm machine, when there is one, before provisioning a new one.
+ */
 public class BrooklynMachinePool extends MachinePool {
 
     private static final Logger log = LoggerFactory.getLogger(BrooklynMachinePool.class);
@@ -32,12 +51,24 @@ public class BrooklynMachinePool extends MachinePool {
     final List<Task<?>> activeTasks = new ArrayList<Task<?>>();
     final String providerLocationId;
     
+    /** number of warm machines to keep for each template */
+    final Map<ReusableMachineTemplate,Integer> warmTargets = new LinkedHashMap<ReusableMachineTemplate,Integer>();
+    /** unclaimed machines which are known to be reachable; synchronized on the pool instance */
+    final Map<NodeMetadata,JcloudsSshMachineLocation> warmMachines = new LinkedHashMap<NodeMetadata,JcloudsSshMachineLocation>();
+    final AtomicBoolean toppingUp = new AtomicBoolean(false);
+    private volatile ScheduledExecutorService warmingExecutor;
+    
     public BrooklynMachinePool(JcloudsLocation l) {
         super(l.getComputeService());
         providerLocationId = l.getJcloudsProviderLocationId();
         this.location = l;
     }
     
+    /** the location through which this pool's machines are provisioned */
+    public JcloudsLocation getLocation() {
+        return location;
+    }
+    
     /** claims a machine with the indicated spec, creating if necessary */
     public SshMachineLocation obtain(ReusableMachineTemplate t) {
         MachineSet previous = unclaimed(matching(t));
@@ -56,7 +87,10 @@ public class BrooklynMachinePool extends MachinePool {
                     throw Throwables.propagate(e);
                 }
             }
-            if (result!=null) return result;
+            if (result!=null) {
+                location.claimedFromMachinePool(result, this);
+                return result;
+            }
             if (previous.contains(m)) {
                 log.debug("could not bind to previous existing machine "+m+"; blacklisting and trying a new one");
                 addToBlacklist(new MachineSet(m));
@@ -66,6 +100,26 @@ public class BrooklynMachinePool extends MachinePool {
         }
     }
     
+    /** as super, but the claimed machines are no longer warm */
+    @Override
+    public MachineSet claim(int count, ReusableMachineTemplate t) {
+        MachineSet result = super.claim(count, t);
+        noLongerWarm(result);
+        return result;
+    }
+
+    /** as super, but the claimed machines are no longer warm */
+    @Override
+    public MachineSet claim(MachineSet set) {
+        MachineSet result = super.claim(set);
+        noLongerWarm(result);
+        return result;
+    }
+    
+    protected synchronized void noLongerWarm(MachineSet set) {
+        for (NodeMetadata m: set) warmMachines.remove(m);
+    }
+    
     protected MachineSet filterForAllowedMachines(MachineSet input) {
         MachineSet result = super.filterForAllowedMachines(input);
         if (providerLocationId!=null) {
@@ -78,7 +132,13 @@ public class BrooklynMachinePool extends MachinePool {
     protected SshMachineLocation toSshMachineLocation(NodeMetadata m) {
         try {
             JcloudsSshMachineLocation sshM = location.rebindMachine(m);
-            if (sshM.exec(Arrays.asList("whoami")) != 0) {
+            boolean reachable = false;
+            try {
+                reachable = (sshM.exec(Arrays.asList("whoami")) == 0);
+            } finally {
+                if (!reachable) unbind(sshM);
+            }
+            if (!reachable) {
                 log.warn("cannot bind to machine "+m);
                 return null;
             }
@@ -88,17 +148,18 @@ public class BrooklynMachinePool extends MachinePool {
         }
     }
     
+    /** unregisters a location bound (by {@link #toSshMachineLocation(NodeMetadata)}) to one of the pool's machines
+     * which is not being kept; the VM itself is left alone */
+    protected void unbind(SshMachineLocation machine) {
+        if (machine instanceof JcloudsSshMachineLocation) {
+            location.unregisterJcloudsSshMachineLocation((JcloudsSshMachineLocation) machine);
+        }
+    }
+    
     @Override
     public MachineSet create(int count, ReusableMachineTemplate template) {
         List<NodeMetadata> nodes = new ArrayList<NodeMetadata>();
-        for (int i=0; i<count; i++) {
-            // TODO this in parallel
-            JcloudsSshMachineLocation m;
-            try {
-                m = location.obtain(MutableMap.of("callerContext", ""+this+"("+template+")"), template);
-            } catch (Exception e) {
-                throw Throwables.propagate(e);
-            }
+        for (JcloudsSshMachineLocation m: obtainMachines(count, template)) {
             nodes.add(m.getNode());
         }
         MachineSet result = new MachineSet(nodes);
@@ -106,6 +167,22 @@ public class BrooklynMachinePool extends MachinePool {
         return result;
     }
 
+    /** obtains the given number of machines of the indicated template from the location, in parallel */
+    protected List<JcloudsSshMachineLocation> obtainMachines(int count, ReusableMachineTemplate template) {
+        List<JcloudsSshMachineLocation> result = new ArrayList<JcloudsSshMachineLocation>();
+        try {
+            List<SshMachineLocation> machines = location.obtain(count, MutableMap.of(
+                    "callerContext", ""+this+"("+template+")", 
+                    JcloudsLocationConfig.TEMPLATE_BUILDER, template));
+            for (SshMachineLocation m: machines) {
+                result.add((JcloudsSshMachineLocation) m);
+            }
+        } catch (Exception e) {
+            throw Throwables.propagate(e);
+        }
+        return result;
+    }
+
     public boolean unclaim(SshMachineLocation location) {
         init();
         if (location instanceof JcloudsSshMachineLocation)
@@ -118,6 +195,188 @@ public class BrooklynMachinePool extends MachinePool {
             return destroy(new MachineSet( ((JcloudsSshMachineLocation)location).getNode()) ) > 0;
         return false;
     }
+    
+    /** returns a claimed warm machine to the pool, still warm (and still bound to its location),
+     * e.g. when whoever claimed it could not use it after all */
+    public void unclaimWarm(JcloudsSshMachineLocation machine) {
+        init();
+        synchronized (this) {
+            unclaim(new MachineSet(machine.getNode()));
+            warmMachines.put(machine.getNode(), machine);
+        }
+    }
+    
+    /** notes that the given machine has been released by its location (so its VM destroyed) */
+    public void released(SshMachineLocation location) {
+        if (location instanceof JcloudsSshMachineLocation) {
+            NodeMetadata node = ((JcloudsSshMachineLocation)location).getNode();
+            synchronized (this) { warmMachines.remove(node); }
+            forget(new MachineSet(node));
+        }
+    }
+
+    // ------------- warm machines ------------------------
+    
+    /** sets the number of warm (unclaimed and reachable) machines to keep for the given template; zero for none */
+    public void setWarmTarget(ReusableMachineTemplate template, int count) {
+        synchronized (warmTargets) {
+            if (count > 0) warmTargets.put(template, count);
+            else warmTargets.remove(template);
+        }
+    }
+    
+    public Map<ReusableMachineTemplate,Integer> getWarmTargets() {
+        synchronized (warmTargets) { return ImmutableMap.copyOf(warmTargets); }
+    }
+    
+    /** the warm machines matching the given template */
+    public synchronized List<JcloudsSshMachineLocation> getWarmMachines(ReusableMachineTemplate template) {
+        List<JcloudsSshMachineLocation> result = new ArrayList<JcloudsSshMachineLocation>();
+        for (Map.Entry<NodeMetadata,JcloudsSshMachineLocation> entry: warmMachines.entrySet()) {
+            if (matching(template).apply(entry.getKey())) result.add(entry.getValue());
+        }
+        return result;
+    }
+    
+    /** claims a warm machine matching the given template, if there is one (otherwise returns null);
+     * if warming, the warm machines are then topped up in the background */
+    public JcloudsSshMachineLocation claimWarm(ReusableMachineTemplate template) {
+        JcloudsSshMachineLocation result = null;
+        synchronized (this) {
+            for (Iterator<Map.Entry<NodeMetadata,JcloudsSshMachineLocation>> it = warmMachines.entrySet().iterator(); it.hasNext(); ) {
+                Map.Entry<NodeMetadata,JcloudsSshMachineLocation> entry = it.next();
+                if (!matching(template).apply(entry.getKey())) continue;
+                it.remove();
+                try {
+                    claim(new MachineSet(entry.getKey()));
+                } catch (IllegalArgumentException e) {
+                    // claimed by other means since it was warmed
+                    continue;
+                }
+                result = entry.getValue();
+                break;
+            }
+        }
+        if (result != null) {
+            if (log.isDebugEnabled()) log.debug("Pool "+this+", claimed warm machine "+result+" for "+template);
+            ScheduledExecutorService executor = warmingExecutor;
+            if (executor != null) {
+                try {
+                    executor.execute(new Runnable() {
+                        public void run() { topUpWarmMachinesQuietly(); }});
+                } catch (RejectedExecutionException e) {
+                    // stopped warming since we checked
+                }
+            }
+        }
+        return result;
+    }
+    
+    /** brings the warm machines for each template up to its target: first by adopting unclaimed machines
+     * which match the template and are reachable, then by creating new machines;
+     * does nothing if a top-up is already in progress */
+    public void topUpWarmMachines() {
+        if (!toppingUp.compareAndSet(false, true)) return;
+        try {
+            init();
+            synchronized (this) {
+                // drop any warm machines which have gone (e.g. terminated outside of brooklyn)
+                MachineSet current = all();
+                for (Iterator<NodeMetadata> it = warmMachines.keySet().iterator(); it.hasNext(); ) {
+                    NodeMetadata node = it.next();
+                    if (!current.contains(node)) {
+                        if (log.isDebugEnabled()) log.debug("Pool "+this+", warm machine "+node+" no longer detected; discarding");
+                        it.remove();
+                    }
+                }
+            }
+            
+            for (Map.Entry<ReusableMachineTemplate,Integer> entry: getWarmTargets().entrySet()) {
+                ReusableMachineTemplate template = entry.getKey();
+                int needed = entry.getValue() - getWarmMachines(template).size();
+                
+                for (NodeMetadata m: unclaimed(matching(template))) {
+                    if (needed <= 0) break;
+                    synchronized (this) {
+                        if (warmMachines.containsKey(m)) continue;
+                    }
+                    SshMachineLocation machine = null;
+                    try {
+                        machine = toSshMachineLocation(m);
+                    } catch (Exception e) {
+                        log.debug("Pool "+this+", cannot bind to existing machine "+m+" to warm it (will blacklist): "+e);
+                    }
+                    if (machine != null) {
+                        boolean kept;
+                        synchronized (this) {
+                            // may have been claimed while we were binding to it
+                            kept = !isClaimed(m);
+                            if (kept) warmMachines.put(m, (JcloudsSshMachineLocation) machine);
+                        }
+                        if (kept) needed--;
+                        else unbind(machine);
+                    } else {
+                        addToBlacklist(new MachineSet(m));
+                    }
+                }
+                
+                if (needed > 0) {
+                    log.info("Pool "+this+", creating "+needed+" warm machine"+(needed == 1 ? "" : "s")+" of "+template);
+                    List<JcloudsSshMachineLocation> machines = obtainMachines(needed, template);
+                    List<NodeMetadata> nodes = new ArrayList<NodeMetadata>();
+                    for (JcloudsSshMachineLocation m: machines) nodes.add(m.getNode());
+                    registerNewNodes(new MachineSet(nodes), template);
+                    List<JcloudsSshMachineLocation> notKept = new ArrayList<JcloudsSshMachineLocation>();
+                    synchronized (this) {
+                        for (JcloudsSshMachineLocation m: machines) {
+                            if (!isClaimed(m.getNode())) warmMachines.put(m.getNode(), m);
+                            else notKept.add(m);
+                        }
+                    }
+                    // claimed by template while being created, so whoever claimed it binds to it themselves
+                    for (JcloudsSshMachineLocation m: notKept) unbind(m);
+                }
+            }
+        } finally {
+            toppingUp.set(false);
+        }
+    }
+    
+    protected void topUpWarmMachinesQuietly() {
+        try {
+            topUpWarmMachines();
+        } catch (Exception e) {
+            log.warn("Pool "+this+", failed to top up warm machines (continuing): "+e, e);
+        }
+    }
+    
+    /** starts a background thread which, every period, refreshes the pool and tops up the warm machines */
+    public synchronized void startWarming(long periodMillis) {
+        if (warmingExecutor != null) throw new IllegalStateException("Pool "+this+" is already warming");
+        warmingExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override public Thread newThread(Runnable r) {
+                    Thread result = new Thread(r, "brooklyn-machinepool-warming-"+getPoolName());
+                    result.setDaemon(true);
+                    return result;
+                }});
+        warmingExecutor.scheduleWithFixedDelay(new Runnable() {
+                @Override public void run() {
+                    try {
+                        refresh();
+                    } catch (Exception e) {
+                        log.warn("Pool "+BrooklynMachinePool.this+", failed to refresh (continuing): "+e, e);
+                    }
+                    topUpWarmMachinesQuietly();
+                }}, 0, periodMillis, TimeUnit.MILLISECONDS);
+    }
+    
+    /** stops warming; the warm machines remain in the pool */
+    public synchronized void stopWarming() {
+        if (warmingExecutor != null) {
+            warmingExecutor.shutdownNow();
+            warmingExecutor = null;
+        }
+    }
 
     // TODO we need to remove stale tasks somewhere
     protected <T> Task<T> addTask(Task<T> t) {
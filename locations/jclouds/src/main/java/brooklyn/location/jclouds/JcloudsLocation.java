@@ -2,6 +2,7 @@ package brooklyn.location.jclouds;
 
 import static brooklyn.util.GroovyJavaMethods.elvis;
 import static brooklyn.util.GroovyJavaMethods.truth;
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 import static java.util.concurrent.TimeUnit.MILLISECONDS;
 import static java.util.concurrent.TimeUnit.SECONDS;
@@ -19,6 +20,10 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import javax.annotation.Nullable;
 
@@ -35,6 +40,7 @@ import org.jclouds.compute.domain.OsFamily;
 import org.jclouds.compute.domain.Template;
 import org.jclouds.compute.domain.TemplateBuilder;
 import org.jclouds.compute.domain.TemplateBuilderSpec;
+import org.jclouds.compute.domain.internal.TemplateImpl;
 import org.jclouds.compute.options.TemplateOptions;
 import org.jclouds.domain.Credentials;
 import org.jclouds.domain.LoginCredentials;
@@ -57,6 +63,7 @@ import brooklyn.location.basic.LocationConfigUtils;
 import brooklyn.location.basic.LocationCreationUtils;
 import brooklyn.location.basic.SshMachineLocation;
 import brooklyn.location.cloud.AbstractCloudMachineProvisioningLocation;
+import brooklyn.location.jclouds.pool.ReusableMachineTemplate;
 import brooklyn.location.jclouds.templates.PortableTemplateBuilder;
 import brooklyn.util.collections.MutableMap;
 import brooklyn.util.config.ConfigBag;
@@ -114,7 +121,11 @@ public class JcloudsLocation extends AbstractCloudMachineProvisioningLocation im
     public static final List<String> NON_ADDABLE_USERS = ImmutableList.<String>builder().add(ROOT_USERNAME).addAll(ROOT_ALIASES).build();
     
     private final Map<String,Map<String, ? extends Object>> tagMapping = Maps.newLinkedHashMap();
-    private final Map<JcloudsSshMachineLocation,String> vmInstanceIds = Maps.newLinkedHashMap();
+    private final Map<JcloudsSshMachineLocation,String> vmInstanceIds = Collections.synchronizedMap(Maps.<JcloudsSshMachineLocation,String>newLinkedHashMap());
+    /** the pool each machine handed out by this location was claimed from, so the pool can be told when it is released */
+    private final Map<SshMachineLocation,BrooklynMachinePool> machinePools = Collections.synchronizedMap(Maps.<SshMachineLocation,BrooklynMachinePool>newLinkedHashMap());
+    /** templates resolved recently, keyed by the config which determined them; see {@link #makeTemplateCacheKey(ComputeService, ConfigBag)} */
+    private final ConcurrentMap<List<Object>,CachedTemplate> templateCache = Maps.newConcurrentMap();
 
     public JcloudsLocation() {
        super();
@@ -312,6 +323,9 @@ public class JcloudsLocation extends AbstractCloudMachineProvisioningLocation im
         ConfigBag setup = ConfigBag.newInstanceExtending(getConfigBag(), flags);
         setCreationString(setup);
         
+        JcloudsSshMachineLocation pooled = claimFromMachinePool(setup);
+        if (pooled != null) return pooled;
+        
         final ComputeService computeService = JcloudsUtil.findComputeService(setup);
         String groupId = elvis(setup.get(GROUP_ID), new CloudMachineNamer(setup).generateNewGroupId());
         NodeMetadata node = null;
@@ -330,42 +344,7 @@ public class JcloudsLocation extends AbstractCloudMachineProvisioningLocation im
             if (node == null)
                 throw new IllegalStateException("No nodes returned by jclouds create-nodes in " + setup.getDescription());
 
-            LoginCredentials initialCredentials = extractVmCredentials(setup, node);
-            if (initialCredentials != null)
-                node = NodeMetadataBuilder.fromNodeMetadata(node).credentials(initialCredentials).build();
-            else
-                // only happens if something broke above...
-                initialCredentials = LoginCredentials.fromCredentials(node.getCredentials());
-            
-            // Wait for the VM to be reachable over SSH
-            waitForReachable(computeService, node, initialCredentials, setup);
-            
-            String vmHostname = getPublicHostname(node, setup);
-            JcloudsSshMachineLocation sshLocByHostname = registerJcloudsSshMachineLocation(node, vmHostname, setup);
-            
-            // Apply same securityGroups rules to iptables, if iptables is running on the node
-            String waitForSshable = setup.get(WAIT_FOR_SSHABLE);
-            if (!(waitForSshable!=null && "false".equalsIgnoreCase(waitForSshable))) {
-                if (setup.get(JcloudsLocationConfig.MAP_DEV_RANDOM_TO_DEV_URANDOM))
-                    sshLocByHostname.execCommands("using urandom instead of random", 
-                        Arrays.asList("sudo mv /dev/random /dev/random-real", "sudo ln -s /dev/urandom /dev/random"));
-                
-                if (setup.get(OPEN_IPTABLES)) {
-                    mapSecurityGroupRuleToIpTables(computeService, node, initialCredentials, "eth0", 
-                            (Iterable<Integer>) setup.get(INBOUND_PORTS));
-                }
-                
-            } else {
-                // Otherwise would break CloudStack, where port-forwarding means that jclouds opinion 
-                // of using port 22 is wrong.
-            }
-            
-            // Apply any optional app-specific customization.
-            for (JcloudsLocationCustomizer customizer : getCustomizers(setup)) {
-                customizer.customize(computeService, sshLocByHostname);
-            }
-            
-            return sshLocByHostname;
+            return connectAndCustomizeNode(computeService, node, setup);
         } catch (RunNodesException e) {
             if (e.getNodeErrors().size() > 0) {
                 node = Iterables.get(e.getNodeErrors().keySet(), 0);
@@ -383,6 +362,243 @@ public class JcloudsLocation extends AbstractCloudMachineProvisioningLocation im
 
     }
 
+    /** config which affects how a machine is set up once created (users, credentials, ports, etc);
+     * a warm machine from the {@link #MACHINE_POOL} is only used if it was set up with the same values */
+    public static final List<ConfigKey<?>> MACHINE_SETUP_PROPERTIES = ImmutableList.<ConfigKey<?>>of(
+            USER, PASSWORD, PUBLIC_KEY_FILE, PUBLIC_KEY_DATA, PRIVATE_KEY_FILE, PRIVATE_KEY_DATA, 
+            LOGIN_USER, LOGIN_USER_PASSWORD, LOGIN_USER_PRIVATE_KEY_DATA, LOGIN_USER_PRIVATE_KEY_FILE, 
+            KEY_PAIR, EXTRA_PUBLIC_KEY_DATA_TO_AUTH, DONT_CREATE_USER, CUSTOM_CREDENTIALS, 
+            SECURITY_GROUPS, INBOUND_PORTS, OPEN_IPTABLES, USER_METADATA, USER_DATA_UUENCODED, 
+            MAP_DEV_RANDOM_TO_DEV_URANDOM);
+    
+    /** claims a warm machine from the {@link #MACHINE_POOL}, if one is configured and has a machine matching
+     * the {@link #MACHINE_POOL_TEMPLATE}; returns null otherwise, including when a template builder is given explicitly
+     * (as when the pool itself obtains machines), and when the caller's {@link #MACHINE_SETUP_PROPERTIES} or
+     * customizers differ from those the pool's machines were set up with */
+    protected JcloudsSshMachineLocation claimFromMachinePool(ConfigBag setup) {
+        BrooklynMachinePool pool = setup.get(MACHINE_POOL);
+        ReusableMachineTemplate template = setup.get(MACHINE_POOL_TEMPLATE);
+        if (pool == null || template == null || setup.get(TEMPLATE_BUILDER) != null) return null;
+        
+        String mismatch = findMachineSetupMismatch(setup, pool.getLocation().getConfigBag());
+        if (mismatch != null) {
+            LOG.debug("Not using warm machines in pool {} for {}, as {} differs from the pool's; creating VM", 
+                    new Object[] {pool, setup.getDescription(), mismatch});
+            return null;
+        }
+        
+        JcloudsSshMachineLocation result = pool.claimWarm(template);
+        if (result != null) {
+            claimedFromMachinePool(result, pool);
+            LOG.info("Claimed warm machine {} from pool {} for {}", new Object[] {result, pool, setup.getDescription()});
+        } else {
+            LOG.debug("No warm machine in pool {} for {}; creating VM", pool, setup.getDescription());
+        }
+        return result;
+    }
+
+    /** claims up to the given number of warm machines from the {@link #MACHINE_POOL}, as for {@link #claimFromMachinePool(ConfigBag)} */
+    protected List<SshMachineLocation> claimFromMachinePool(int count, ConfigBag setup) {
+        List<SshMachineLocation> result = Lists.newArrayList();
+        while (result.size() < count) {
+            JcloudsSshMachineLocation machine = claimFromMachinePool(setup);
+            if (machine == null) break;
+            result.add(machine);
+        }
+        return result;
+    }
+    
+    /** returns the name of the first machine setup config (or "customizers") which differs between the two bags, or null if none */
+    protected String findMachineSetupMismatch(ConfigBag setup, ConfigBag poolSetup) {
+        for (ConfigKey<?> key : MACHINE_SETUP_PROPERTIES) {
+            if (!Objects.equal(setup.peek(key), poolSetup.peek(key))) return key.getName();
+        }
+        if (!ImmutableList.copyOf(getCustomizers(setup)).equals(ImmutableList.copyOf(getCustomizers(poolSetup)))) return "customizers";
+        return null;
+    }
+    
+    /** records that the given machine, to be handed out by this location, was claimed from the given pool */
+    void claimedFromMachinePool(SshMachineLocation machine, BrooklynMachinePool pool) {
+        machinePools.put(machine, pool);
+    }
+    
+    /** returns claimed warm machines to their pool (still warm), e.g. when other machines could not be obtained alongside them */
+    private void unclaimQuietly(ConfigBag setup, List<SshMachineLocation> machines) {
+        BrooklynMachinePool pool = setup.get(MACHINE_POOL);
+        for (SshMachineLocation machine : machines) {
+            try {
+                machinePools.remove(machine);
+                pool.unclaimWarm((JcloudsSshMachineLocation) machine);
+            } catch (Exception e) {
+                LOG.warn("Problem returning "+machine+" to pool "+pool+"; continuing", e);
+            }
+        }
+    }
+
+    /** obtains the machines, first by claiming warm machines from the {@link #MACHINE_POOL} (if configured),
+     * then by using a single jclouds create-nodes call for the rest (so the template is built just once),
+     * waiting for them to be reachable and setting them up in parallel;
+     * if any fail then all the new VMs are released or destroyed, and any warm machines returned to the pool
+     * @see #obtain(Map) */
+    @Override
+    public List<SshMachineLocation> obtain(int count, Map<?,?> flags) throws NoMachinesAvailableException {
+        checkArgument(count >= 0, "count must not be negative (was %s)", count);
+        if (count == 0) return ImmutableList.of();
+        if (count == 1) return ImmutableList.<SshMachineLocation>of(obtain(flags));
+        
+        ConfigBag setup = ConfigBag.newInstanceExtending(getConfigBag(), flags);
+        setCreationString(setup);
+        
+        List<SshMachineLocation> pooled = claimFromMachinePool(count, setup);
+        if (pooled.size() == count) return pooled;
+        if (pooled.isEmpty()) return createMachines(count, setup);
+        
+        LOG.info("Claimed {} warm machines for {}; creating {} more", new Object[] {pooled.size(), setup.getDescription(), count - pooled.size()});
+        try {
+            List<SshMachineLocation> result = Lists.newArrayList(pooled);
+            result.addAll(createMachines(count - pooled.size(), setup));
+            return result;
+        } catch (RuntimeException e) {
+            unclaimQuietly(setup, pooled);
+            throw e;
+        }
+    }
+    
+    /** creates the given number of VMs in a single jclouds create-nodes call, then sets them up in parallel */
+    protected List<SshMachineLocation> createMachines(int count, ConfigBag setup) {
+        final ComputeService computeService = JcloudsUtil.findComputeService(setup);
+        String groupId = elvis(setup.get(GROUP_ID), new CloudMachineNamer(setup).generateNewGroupId());
+        Set<? extends NodeMetadata> nodes;
+        try {
+            LOG.info("Creating "+count+" VMs in "+setup.getDescription()+" for "+this);
+
+            Template template = buildTemplate(computeService, setup);
+
+            if (!setup.getUnusedConfig().isEmpty())
+                LOG.debug("NOTE: unused flags passed to obtain VMs in "+setup.getDescription()+": "+
+                        setup.getUnusedConfig());
+            
+            nodes = computeService.createNodesInGroup(groupId, count, template);
+            LOG.debug("jclouds created {} for {}", nodes, setup.getDescription());
+        } catch (RunNodesException e) {
+            LOG.error("Failed to start {} VMs for {}: {}", new Object[] {count, setup.getDescription(), e.getMessage()});
+            destroyNodesQuietly(computeService, e.getSuccessfulNodes());
+            destroyNodesQuietly(computeService, e.getNodeErrors().keySet());
+            throw Throwables.propagate(e);
+        } catch (Exception e) {
+            LOG.error("Failed to start {} VMs for {}: {}", new Object[] {count, setup.getDescription(), e.getMessage()});
+            LOG.debug(Throwables.getStackTraceAsString(e));
+            throw Throwables.propagate(e);
+        }
+        
+        if (nodes.size() != count) {
+            destroyNodesQuietly(computeService, nodes);
+            throw new IllegalStateException("Requested "+count+" nodes but jclouds create-nodes returned "+nodes.size()+" in "+setup.getDescription());
+        }
+        
+        // wait for each VM to be reachable, and set it up, in parallel
+        ExecutorService executor = Executors.newFixedThreadPool(nodes.size());
+        Map<NodeMetadata, Future<JcloudsSshMachineLocation>> futures = Maps.newLinkedHashMap();
+        try {
+            for (final NodeMetadata node : nodes) {
+                final ConfigBag nodeSetup = ConfigBag.newInstanceCopying(setup);
+                futures.put(node, executor.submit(new Callable<JcloudsSshMachineLocation>() {
+                    public JcloudsSshMachineLocation call() throws Exception {
+                        return connectAndCustomizeNode(computeService, node, nodeSetup);
+                    }}));
+            }
+            
+            List<SshMachineLocation> result = Lists.newArrayList();
+            List<NodeMetadata> failedNodes = Lists.newArrayList();
+            Exception failure = null;
+            for (Map.Entry<NodeMetadata, Future<JcloudsSshMachineLocation>> entry : futures.entrySet()) {
+                try {
+                    result.add(entry.getValue().get());
+                } catch (Exception e) {
+                    LOG.error("Failed to set up VM {} for {}: {}", new Object[] {entry.getKey().getId(), setup.getDescription(), e.getMessage()});
+                    failedNodes.add(entry.getKey());
+                    if (failure == null) failure = e;
+                }
+            }
+            
+            if (failure != null) {
+                for (SshMachineLocation machine : result) {
+                    try {
+                        release(machine);
+                    } catch (Exception e) {
+                        LOG.warn("Problem releasing "+machine+" after failing to obtain "+count+" VMs in "+setup.getDescription()+"; continuing", e);
+                    }
+                }
+                destroyNodesQuietly(computeService, failedNodes);
+                throw Throwables.propagate(failure);
+            }
+            return result;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+    
+    /** connects to a newly created node, registering it as a machine of this location, and applies any customization */
+    protected JcloudsSshMachineLocation connectAndCustomizeNode(ComputeService computeService, NodeMetadata node, ConfigBag setup) throws Exception {
+        LoginCredentials initialCredentials = extractVmCredentials(setup, node);
+        if (initialCredentials != null)
+            node = NodeMetadataBuilder.fromNodeMetadata(node).credentials(initialCredentials).build();
+        else
+            // only happens if something broke above...
+            initialCredentials = LoginCredentials.fromCredentials(node.getCredentials());
+        
+        // Wait for the VM to be reachable over SSH
+        waitForReachable(computeService, node, initialCredentials, setup);
+        
+        String vmHostname = getPublicHostname(node, setup);
+        JcloudsSshMachineLocation sshLocByHostname = registerJcloudsSshMachineLocation(node, vmHostname, setup);
+        try {
+            customizeNode(computeService, node, initialCredentials, sshLocByHostname, setup);
+        } catch (Exception e) {
+            // the caller will destroy the VM, so it should not remain a machine of this location
+            unregisterJcloudsSshMachineLocation(sshLocByHostname);
+            throw e;
+        }
+        return sshLocByHostname;
+    }
+    
+    /** sets up a newly created and registered machine: iptables, /dev/random, and any customizers */
+    protected void customizeNode(ComputeService computeService, NodeMetadata node, LoginCredentials initialCredentials, 
+            JcloudsSshMachineLocation sshLocByHostname, ConfigBag setup) {
+        // Apply same securityGroups rules to iptables, if iptables is running on the node
+        String waitForSshable = setup.get(WAIT_FOR_SSHABLE);
+        if (!(waitForSshable!=null && "false".equalsIgnoreCase(waitForSshable))) {
+            if (setup.get(JcloudsLocationConfig.MAP_DEV_RANDOM_TO_DEV_URANDOM))
+                sshLocByHostname.execCommands("using urandom instead of random", 
+                    Arrays.asList("sudo mv /dev/random /dev/random-real", "sudo ln -s /dev/urandom /dev/random"));
+            
+            if (setup.get(OPEN_IPTABLES)) {
+                mapSecurityGroupRuleToIpTables(computeService, node, initialCredentials, "eth0", 
+                        (Iterable<Integer>) setup.get(INBOUND_PORTS));
+            }
+            
+        } else {
+            // Otherwise would break CloudStack, where port-forwarding means that jclouds opinion 
+            // of using port 22 is wrong.
+        }
+        
+        // Apply any optional app-specific customization.
+        for (JcloudsLocationCustomizer customizer : getCustomizers(setup)) {
+            customizer.customize(computeService, sshLocByHostname);
+        }
+    }
+    
+    private void destroyNodesQuietly(ComputeService computeService, Iterable<? extends NodeMetadata> nodes) {
+        for (NodeMetadata node : nodes) {
+            try {
+                LOG.info("Destroying VM {} in {}, after failure to obtain VMs", node.getId(), this);
+                computeService.destroyNode(node.getId());
+            } catch (Exception e) {
+                LOG.warn("Problem destroying VM "+node.getId()+" in "+this+"; continuing", e);
+            }
+        }
+    }
+
     private void mapSecurityGroupRuleToIpTables(ComputeService computeService, NodeMetadata node,
             LoginCredentials credentials, String networkInterface, Iterable<Integer> ports) {
         for (Integer port : ports) {
@@ -581,7 +797,68 @@ public class JcloudsLocation extends AbstractCloudMachineProvisioningLocation im
             customizer.customize(computeService, templateBuilder);
         }
         
-        // Finally try to build the template
+        // Finally try to build the template, re-using the image and hardware recently resolved for the same config if possible
+        List<Object> templateCacheKey = makeTemplateCacheKey(computeService, config);
+        Template template = getCachedTemplate(templateCacheKey, computeService, templateBuilder);
+        if (template == null) {
+            template = resolveTemplate(templateBuilder, config);
+            cacheTemplate(templateCacheKey, template, config);
+        }
+        TemplateOptions options = template.getOptions();
+               
+        for (Map.Entry<ConfigKey<?>, CustomizeTemplateOptions> entry : SUPPORTED_TEMPLATE_OPTIONS_PROPERTIES.entrySet()) {
+            ConfigKey<?> key = entry.getKey();
+            CustomizeTemplateOptions code = entry.getValue();
+            if (config.containsKey(key))
+                code.apply(options, config, config.get(key));
+        }
+        
+        // Setup the user
+        
+        //NB: we ignore private key here because, by default we probably should not be installing it remotely;
+        //also, it may not be valid for first login (it is created before login e.g. on amazon, so valid there;
+        //but not elsewhere, e.g. on rackspace)
+        String user = getUser(config);
+        String loginUser = config.get(LOGIN_USER);
+        Boolean dontCreateUser = config.get(DONT_CREATE_USER);
+        String publicKeyData = LocationConfigUtils.getPublicKeyData(config);
+        if (truth(user) && !NON_ADDABLE_USERS.contains(user) && 
+                !user.equals(loginUser) && !truth(dontCreateUser)) {
+            // create the user, if it's not the login user and not a known root-level user
+            // by default we now give these users sudo privileges.
+            // if you want something else, that can be specified manually, 
+            // e.g. using jclouds UserAdd.Builder, with RunScriptOnNode, or template.options.runScript(xxx)
+            // (if that is a common use case, we could expose a property here)
+            // note AdminAccess requires _all_ fields set, due to http://code.google.com/p/jclouds/issues/detail?id=1095
+            AdminAccess.Builder adminBuilder = AdminAccess.builder().
+                    adminUsername(user).
+                    grantSudoToAdminUser(true);
+            adminBuilder.adminPassword(truth(config.get(PASSWORD)) ? config.get(PASSWORD) : Identifiers.makeRandomId(12));
+            if (publicKeyData!=null)
+                adminBuilder.authorizeAdminPublicKey(true).adminPublicKey(publicKeyData);
+            else
+                adminBuilder.authorizeAdminPublicKey(false).adminPublicKey("ignored").lockSsh(true);
+            adminBuilder.installAdminPrivateKey(false).adminPrivateKey("ignored");
+            adminBuilder.resetLoginPassword(true).loginPassword(Identifiers.makeRandomId(12));
+            adminBuilder.lockSsh(true);
+            options.runScript(adminBuilder.build());
+        } else if (truth(publicKeyData)) {
+            // don't create the user, but authorize the public key for the default user
+            options.authorizePublicKey(publicKeyData);
+        }
+        
+        // Finally, apply any optional app-specific customization.
+        for (JcloudsLocationCustomizer customizer : getCustomizers(config)) {
+            customizer.customize(computeService, options);
+        }
+        
+        LOG.debug("jclouds using template {} / options {} to provision machine in {}", new Object[] {
+                template, options, config.getDescription()});
+        return template;
+    }
+
+    /** resolves the template described by the given builder, against the cloud */
+    protected Template resolveTemplate(TemplateBuilder templateBuilder, ConfigBag config) {
         Template template;
         try {
             template = templateBuilder.build();
@@ -645,59 +922,67 @@ public class JcloudsLocation extends AbstractCloudMachineProvisioningLocation im
             }
             throw new IllegalStateException("Unable to match required VM template constraints "+templateBuilder+" when trying to provision VM in "+this+". See list of images in log.", e);
         }
-        TemplateOptions options = template.getOptions();
-               
-        for (Map.Entry<ConfigKey<?>, CustomizeTemplateOptions> entry : SUPPORTED_TEMPLATE_OPTIONS_PROPERTIES.entrySet()) {
-            ConfigKey<?> key = entry.getKey();
-            CustomizeTemplateOptions code = entry.getValue();
-            if (config.containsKey(key))
-                code.apply(options, config, config.get(key));
-        }
-        
-        // Setup the user
+        return template;
+    }
+
+    /**
+     * Returns the key under which the template resolved for this config is cached, or null if it should not be cached.
+     * <p>
+     * The key is the compute service (which identifies the cloud account and endpoint) and the values of all the
+     * config which customizes the template builder; a template builder supplied in the config cannot be compared,
+     * so is never cached. Customizers are compared by identity, and are assumed to customize the template builder
+     * in the same way each time.
+     */
+    protected List<Object> makeTemplateCacheKey(ComputeService computeService, ConfigBag config) {
+        if (config.get(TEMPLATE_BUILDER) != null) return null;
         
-        //NB: we ignore private key here because, by default we probably should not be installing it remotely;
-        //also, it may not be valid for first login (it is created before login e.g. on amazon, so valid there;
-        //but not elsewhere, e.g. on rackspace)
-        String user = getUser(config);
-        String loginUser = config.get(LOGIN_USER);
-        Boolean dontCreateUser = config.get(DONT_CREATE_USER);
-        String publicKeyData = LocationConfigUtils.getPublicKeyData(config);
-        if (truth(user) && !NON_ADDABLE_USERS.contains(user) && 
-                !user.equals(loginUser) && !truth(dontCreateUser)) {
-            // create the user, if it's not the login user and not a known root-level user
-            // by default we now give these users sudo privileges.
-            // if you want something else, that can be specified manually, 
-            // e.g. using jclouds UserAdd.Builder, with RunScriptOnNode, or template.options.runScript(xxx)
-            // (if that is a common use case, we could expose a property here)
-            // note AdminAccess requires _all_ fields set, due to http://code.google.com/p/jclouds/issues/detail?id=1095
-            AdminAccess.Builder adminBuilder = AdminAccess.builder().
-                    adminUsername(user).
-                    grantSudoToAdminUser(true);
-            adminBuilder.adminPassword(truth(config.get(PASSWORD)) ? config.get(PASSWORD) : Identifiers.makeRandomId(12));
-            if (publicKeyData!=null)
-                adminBuilder.authorizeAdminPublicKey(true).adminPublicKey(publicKeyData);
-            else
-                adminBuilder.authorizeAdminPublicKey(false).adminPublicKey("ignored").lockSsh(true);
-            adminBuilder.installAdminPrivateKey(false).adminPrivateKey("ignored");
-            adminBuilder.resetLoginPassword(true).loginPassword(Identifiers.makeRandomId(12));
-            adminBuilder.lockSsh(true);
-            options.runScript(adminBuilder.build());
-        } else if (truth(publicKeyData)) {
-            // don't create the user, but authorize the public key for the default user
-            options.authorizePublicKey(publicKeyData);
+        List<Object> result = Lists.newArrayList();
+        result.add(computeService);
+        result.add(config.get(CLOUD_REGION_ID));
+        for (ConfigKey<?> key : SUPPORTED_TEMPLATE_BUILDER_PROPERTIES.keySet()) {
+            result.add(config.containsKey(key) ? config.get(key) : null);
         }
-        
-        // Finally, apply any optional app-specific customization.
-        for (JcloudsLocationCustomizer customizer : getCustomizers(config)) {
-            customizer.customize(computeService, options);
+        result.add(ImmutableList.copyOf(getCustomizers(config)));
+        return result;
+    }
+    
+    /**
+     * Returns a template with the image and hardware (and cloud location) cached for the given key, if not expired,
+     * and with the options from the given template builder; otherwise null.
+     */
+    protected Template getCachedTemplate(List<Object> key, ComputeService computeService, TemplateBuilder templateBuilder) {
+        if (key == null || !(templateBuilder instanceof PortableTemplateBuilder)) return null;
+        CachedTemplate cached = templateCache.get(key);
+        if (cached == null) return null;
+        if (cached.expiryTime < System.currentTimeMillis()) {
+            templateCache.remove(key, cached);
+            return null;
         }
         
-        LOG.debug("jclouds using template {} / options {} to provision machine in {}", new Object[] {
-                template, options, config.getDescription()});
+        TemplateOptions options = ((PortableTemplateBuilder<?>)templateBuilder).newJcloudsTemplateOptions(computeService);
+        Template template = new TemplateImpl(cached.template.getImage(), cached.template.getHardware(), cached.template.getLocation(), options);
+        LOG.debug(""+this+" re-using template "+template+" (image "+template.getImage()+")");
         return template;
     }
-
+    
+    protected void cacheTemplate(List<Object> key, Template template, ConfigBag config) {
+        String ttlString = config.get(TEMPLATE_CACHE_TTL);
+        if (key == null || !truth(ttlString)) return;
+        long ttl = Time.parseTimeString(ttlString);
+        if (ttl <= 0) return;
+        templateCache.put(key, new CachedTemplate(template, System.currentTimeMillis() + ttl));
+    }
+    
+    private static class CachedTemplate {
+        final Template template;
+        final long expiryTime;
+        
+        CachedTemplate(Template template, long expiryTime) {
+            this.template = template;
+            this.expiryTime = expiryTime;
+        }
+    }
+    
     // TODO we really need a better way to decide which images are preferred
     // though to be fair this is similar to jclouds strategies
     // we fall back to the "bad" images (^^^ above) if we can't find a good one above
@@ -787,6 +1072,12 @@ public class JcloudsLocation extends AbstractCloudMachineProvisioningLocation im
         return machine;
     }
 
+    /** reverses {@link #registerJcloudsSshMachineLocation(NodeMetadata, String, ConfigBag)}, without releasing the VM */
+    protected void unregisterJcloudsSshMachineLocation(JcloudsSshMachineLocation machine) {
+        vmInstanceIds.remove(machine);
+        removeChildLocation(machine);
+    }
+
     protected JcloudsSshMachineLocation createJcloudsSshMachineLocation(NodeMetadata node, String vmHostname, ConfigBag setup) throws IOException {
         Map<?,?> sshConfig = extractSshConfig(setup, node);
         if (LOG.isDebugEnabled())
@@ -836,8 +1127,16 @@ public class JcloudsLocation extends AbstractCloudMachineProvisioningLocation im
     }
 
     public void release(SshMachineLocation machine) {
+        BrooklynMachinePool pool = machinePools.remove(machine);
+        if (pool != null) pool.released(machine);
+        
         String instanceId = vmInstanceIds.remove(machine);
         if (!truth(instanceId)) {
+            if (machine.getParent() instanceof JcloudsLocation && machine.getParent() != this) {
+                // e.g. claimed from a machine pool which provisions through another location
+                ((JcloudsLocation) machine.getParent()).release(machine);
+                return;
+            }
             throw new IllegalArgumentException("Unknown machine "+machine);
         }
         
@@ -12,6 +12,7 @@ import brooklyn.entity.basic.ConfigKeys;
 import brooklyn.event.basic.BasicConfigKey;
 import brooklyn.location.basic.LocationConfigKeys;
 import brooklyn.location.cloud.CloudLocationConfig;
+import brooklyn.location.jclouds.pool.ReusableMachineTemplate;
 import brooklyn.util.internal.ssh.SshTool;
 
 public interface JcloudsLocationConfig extends CloudLocationConfig {
@@ -121,6 +122,23 @@ public interface JcloudsLocationConfig extends CloudLocationConfig {
     public static final ConfigKey<Integer> VM_NAME_MAX_LENGTH = ConfigKeys.newIntegerConfigKey(
             "vmNameMaxLength", "Maximum length of VM name", 61);
 
+    public static final ConfigKey<String> TEMPLATE_CACHE_TTL = ConfigKeys.newStringConfigKey("templateCacheTtl", 
+            "How long a resolved template (image and hardware) is re-used when obtaining further VMs with the same " +
+            "template-relevant config, rather than being resolved again; " +
+            "a time string e.g. '10m' (the default) or a number of milliseconds, or '0' to resolve every time", "10m");
+
+    public static final ConfigKey<String> CATALOG_CACHE_TTL = ConfigKeys.newStringConfigKey("catalogCacheTtl", 
+            "How long the images and hardware profiles listed from the cloud are cached, by the compute service " +
+            "shared by all locations using the same cloud account; " +
+            "a time string e.g. '10m' (the default) or a number of milliseconds", "10m");
+
+    public static final ConfigKey<BrooklynMachinePool> MACHINE_POOL = new BasicConfigKey<BrooklynMachinePool>(BrooklynMachinePool.class, 
+            "machinePool", "A pool from which to claim a warm machine (matching machinePoolTemplate), if one is available, " +
+            "before provisioning a new VM", null);
+
+    public static final ConfigKey<ReusableMachineTemplate> MACHINE_POOL_TEMPLATE = new BasicConfigKey<ReusableMachineTemplate>(ReusableMachineTemplate.class, 
+            "machinePoolTemplate", "The template of the warm machine to claim from the machinePool", null);
+
     // TODO
     
 //  "noDefaultSshKeys" - hints that local ssh keys should not be read as defaults
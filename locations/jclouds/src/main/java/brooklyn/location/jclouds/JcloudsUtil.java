@@ -52,6 +52,7 @@ import brooklyn.entity.basic.Entities;
 import brooklyn.util.collections.MutableMap;
 import brooklyn.util.config.ConfigBag;
 import brooklyn.util.internal.Repeater;
+import brooklyn.util.time.Time;
 
 import com.google.common.base.Charsets;
 import com.google.common.base.Predicate;
@@ -228,6 +229,14 @@ public class JcloudsUtil implements JcloudsLocationConfig {
         if (!truth(endpoint)) endpoint = getDeprecatedProperty(conf, Constants.PROPERTY_ENDPOINT);
         if (truth(endpoint)) properties.setProperty(Constants.PROPERTY_ENDPOINT, endpoint);
 
+        // jclouds caches the images and hardware profiles it lists for the session interval; as compute services
+        // are shared (below), so are those catalogs, and template resolution need not list them each time
+        String catalogCacheTtl = conf.get(CATALOG_CACHE_TTL);
+        if (truth(catalogCacheTtl)) {
+            long catalogCacheTtlSecs = Time.parseTimeString(catalogCacheTtl) / 1000;
+            if (catalogCacheTtlSecs > 0) properties.setProperty(Constants.PROPERTY_SESSION_INTERVAL, Long.toString(catalogCacheTtlSecs));
+        }
+
         if (allowReuse) {
             ComputeService result = cachedComputeServices.get(properties);
             if (result!=null) {
@@ -8,6 +8,7 @@ import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.jclouds.compute.ComputeService;
 import org.jclouds.compute.RunNodesException;
@@ -30,8 +31,10 @@ import com.google.common.collect.Iterables;
  * Claims however are specific to this instance of the class, i.e. <b>not</b> persisted.
  * <p>
  * This class is believed to be thread-safe.
- * Refreshes to the remote detected machines are synchronized on the pool instance.
- * Details of detected and claimed machines are also synchronized on the pool instance.
+ * Refreshes to the remote detected machines list the machines without holding the lock on the pool instance,
+ * so that machines can be claimed during a refresh (other than the initial refresh);
+ * the results are then applied synchronized on the pool instance, most recent listing wins.
+ * Details of detected and claimed machines are synchronized on the pool instance.
  * (If it is necessary to claim machines whilst the pool is being rescanned,
  * we can investigate a more sophisticated threading model.
  * Access to some fields is clearly independent and uses a tighter synchonization
@@ -54,6 +57,9 @@ public class MachinePool {
     
     protected final ComputeService computeService;
     final AtomicBoolean refreshNeeded = new AtomicBoolean(true);
+    /** sequence of refreshes, so that a slow listing does not overwrite the results of a later one */
+    final AtomicLong refreshCount = new AtomicLong();
+    long lastAppliedRefresh = 0;
     final List<ReusableMachineTemplate> templates = new ArrayList<ReusableMachineTemplate>();
     String poolName = null;
     
@@ -88,9 +94,11 @@ public class MachinePool {
         return poolName;
     }
     
-    /** refreshes the pool of machines from the server (finding all instances matching the registered templates) */
-    public synchronized void refresh() {
-        refreshNeeded.set(false);
+    /** refreshes the pool of machines from the server (finding all instances matching the registered templates);
+     * machines seen before are updated with their latest state, and any which are no longer running are dropped */
+    public void refresh() {
+        long refreshId = refreshCount.incrementAndGet();
+        // listing can be slow, so is done without holding the lock on the pool
         Set<? extends ComputeMetadata> computes = computeService.listNodes();
         Set<NodeMetadata> nodes = new LinkedHashSet<NodeMetadata>();
         for (ComputeMetadata c: computes) {
@@ -101,10 +109,24 @@ public class MachinePool {
                 log.warn("MachinePool "+this+" ignoring non-Node record for remote machine: "+c);
             }
         }
+        synchronized (this) {
+            if (refreshId < lastAppliedRefresh) {
+                if (log.isDebugEnabled()) log.debug("Pool "+this+", discarding out-of-date refresh "+refreshId);
+                return;
+            }
+            lastAppliedRefresh = refreshId;
+            updateDetectedMachines(nodes);
+            refreshNeeded.set(false);
+        }
+    }
 
+    /** updates the detected and matched machines from the given (complete) set of nodes at the server,
+     * taking the latest state of machines seen before; only newly appeared machines are reported individually */
+    protected synchronized void updateDetectedMachines(Set<NodeMetadata> nodes) {
         MachineSet allNewDetectedMachines = new MachineSet(nodes);
         MachineSet newDetectedMachines = filterForAllowedMachines(allNewDetectedMachines);
         MachineSet oldDetectedMachines = detectedMachines;
+        MachineSet oldMatchedMachines = matchedMachines;
         MachineSet newMatchedMachines = new MachineSet();
         detectedMachines = newDetectedMachines;
 
@@ -113,25 +135,30 @@ public class MachinePool {
         if (appearedMachinesIncludingBlacklist.size()>appearedMachines.size())
             if (log.isDebugEnabled()) log.debug("Pool "+this+", ignoring "+(appearedMachinesIncludingBlacklist.size()-appearedMachines.size())+" disallowed");
         int matchedAppeared = 0;
-        for (NodeMetadata m: appearedMachines) {
+        for (NodeMetadata m: newDetectedMachines) {
+            boolean appeared = appearedMachines.contains(m);
             if (m.getStatus() != NodeMetadata.Status.RUNNING) {
-                if (log.isDebugEnabled()) 
+                if (appeared && log.isDebugEnabled()) 
                     log.debug("Pool "+this+", newly detected machine "+m+", not running ("+m.getStatus()+")");
             } else {
                 Set<ReusableMachineTemplate> ts = getTemplatesMatchingInstance(m);
                 if (!ts.isEmpty()) {
-                    matchedAppeared++;
                     newMatchedMachines = newMatchedMachines.added(new MachineSet(m));
-                    if (log.isDebugEnabled()) 
-                        log.debug("Pool "+this+", newly detected machine "+m+", matches pool templates "+ts);
+                    if (appeared) {
+                        matchedAppeared++;
+                        if (log.isDebugEnabled()) 
+                            log.debug("Pool "+this+", newly detected machine "+m+", matches pool templates "+ts);
+                    }
                 } else {
-                    if (log.isDebugEnabled()) 
+                    if (appeared && log.isDebugEnabled()) 
                         log.debug("Pool "+this+", newly detected machine "+m+", does not match any pool templates");
                 }
             }
         }
-        if (matchedAppeared>0) {
-            log.info("Pool "+this+" discovered "+matchedAppeared+" matching machines (of "+appearedMachines.size()+" total new; "+newDetectedMachines.size()+" total including claimed and unmatched)");
+        int matchedGone = oldMatchedMachines.removed(newMatchedMachines).size();
+        if (matchedAppeared>0 || matchedGone>0) {
+            log.info("Pool "+this+" discovered "+matchedAppeared+" matching machines (of "+appearedMachines.size()+" total new; "+newDetectedMachines.size()+" total including claimed and unmatched)"+
+                    (matchedGone>0 ? "; "+matchedGone+" previously matching machines are gone or no longer running" : ""));
         } else {
             if (log.isDebugEnabled()) 
                 log.debug("Pool "+this+" discovered "+matchedAppeared+" matching machines (of "+appearedMachines.size()+" total new; "+newDetectedMachines.size()+" total including claimed and unmatched)");
@@ -338,6 +365,10 @@ public class MachinePool {
         }
     }
     
+    public synchronized boolean isClaimed(NodeMetadata m) {
+        return claimedMachines.contains(m);
+    }
+    
     public int unclaim(MachineSet set) {
         init();
         synchronized (this) {
@@ -350,25 +381,25 @@ public class MachinePool {
     
     public int destroy(final MachineSet set) {
         init();
-        synchronized (this) {
-            detectedMachines = detectedMachines.removed(set);
-            matchedMachines = matchedMachines.removed(set);
-            claimedMachines = claimedMachines.removed(set);
-        }
+        forget(set);
         Set<? extends NodeMetadata> destroyed = computeService.destroyNodesMatching(new Predicate<NodeMetadata>() {
             @Override
             public boolean apply(NodeMetadata input) {
                 return set.contains(input);
             }
         });
-        synchronized (this) {
-            //in case a rescan happened while we were destroying
-            detectedMachines = detectedMachines.removed(set);
-            matchedMachines = matchedMachines.removed(set);
-            claimedMachines = claimedMachines.removed(set);
-        }
+        //in case a rescan happened while we were destroying
+        forget(set);
         return destroyed.size();        
     }
+
+    /** removes the given machines from the pool (including any claims on them), without destroying them;
+     * for use when they have been destroyed by other means */
+    public synchronized void forget(MachineSet set) {
+        detectedMachines = detectedMachines.removed(set);
+        matchedMachines = matchedMachines.removed(set);
+        claimedMachines = claimedMachines.removed(set);
+    }
         
     
 }
@@ -52,6 +52,14 @@ public class PortableTemplateBuilder<T extends PortableTemplateBuilder<?>> exten
         return newJcloudsTemplateBuilder(svc).build();
     }
 
+    /** returns the options which {@link #newJcloudsTemplate(ComputeService)} would set on the template,
+     * e.g. for use with an image and hardware which have already been resolved */
+    public TemplateOptions newJcloudsTemplateOptions(ComputeService svc) {
+        TemplateOptions result = svc.templateOptions();
+        computeAggregatedOptions(true).copyTo(result);
+        return result;
+    }
+
     /** Adds template options which are used for building, but not for matching/filtering. 
      * (eg tags added here will be set on any machine created by this template,
      * but will not be required when matching this template to existing machines) */
@@ -12,6 +12,10 @@ import brooklyn.location.jclouds.pool.MachinePoolPredicates;
 import brooklyn.location.jclouds.pool.MachineSet;
 import brooklyn.location.jclouds.pool.ReusableMachineTemplate;
 import brooklyn.management.internal.LocalManagementContext;
+import brooklyn.util.collections.MutableMap;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
 
 public class BrooklynMachinePoolLiveTest {
 
@@ -79,6 +83,28 @@ public class BrooklynMachinePoolLiveTest {
     }
     
 
+    @Test(groups="Live")
+    public void warmMachineClaimedByLocation() throws Exception {
+        JcloudsLocation loc = resolve("aws-ec2:us-west-1");
+        SamplePool p = new SamplePool(loc);
+        p.setWarmTarget(SamplePool.VM_SMALL1, 1);
+        p.topUpWarmMachines();
+        JcloudsSshMachineLocation warm = Iterables.getOnlyElement(p.getWarmMachines(SamplePool.VM_SMALL1));
+        log.info("warmMachineClaimedByLocation: warmed "+warm);
+        
+        JcloudsSshMachineLocation l = loc.obtain(MutableMap.of(
+                JcloudsLocationConfig.MACHINE_POOL, p, 
+                JcloudsLocationConfig.MACHINE_POOL_TEMPLATE, SamplePool.VM_SMALL1));
+        try {
+            Assert.assertEquals(l, warm);
+            Assert.assertTrue(p.getWarmMachines(SamplePool.VM_SMALL1).isEmpty());
+            Assert.assertEquals(l.exec(ImmutableList.of("whoami")), 0);
+        } finally {
+            p.setWarmTarget(SamplePool.VM_SMALL1, 0);
+            loc.release(l);
+        }
+    }
+
     private JcloudsLocation resolve(String spec) {
         return (JcloudsLocation) managementContext.getLocationRegistry().resolve(JcloudsResolver.JCLOUDS+":"+spec);
     }
@@ -0,0 +1,218 @@
+package brooklyn.location.jclouds;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+import org.jclouds.compute.domain.NodeMetadata;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import brooklyn.location.Location;
+import brooklyn.location.basic.SshMachineLocation;
+import brooklyn.location.jclouds.pool.MachineSet;
+import brooklyn.location.jclouds.pool.ReusableMachineTemplate;
+import brooklyn.util.collections.MutableMap;
+import brooklyn.util.text.Identifiers;
+
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
+
+/**
+ * Tests the warm machines of a {@link BrooklynMachinePool}, using the jclouds "stub" provider
+ * (which creates VMs in memory; they cannot be ssh'ed to, so the location does not wait for ssh or create a user).
+ */
+public class BrooklynMachinePoolTest implements JcloudsLocationConfig {
+
+    public static class StubPool extends BrooklynMachinePool {
+        public StubPool(JcloudsLocation l, ReusableMachineTemplate ...templates) {
+            super(l);
+            registerTemplates(templates);
+        }
+
+        /** binds without checking the machine can be ssh'ed to */
+        @Override
+        protected SshMachineLocation toSshMachineLocation(NodeMetadata m) {
+            try {
+                return location.registerJcloudsSshMachineLocation(m, Iterables.getFirst(m.getPublicAddresses(), null), location.getConfigBag());
+            } catch (IOException e) {
+                throw Throwables.propagate(e);
+            }
+        }
+    }
+
+    /** as {@link StubPool}, but each machine is claimed (as though by someone else) while the pool is binding to it */
+    public static class ClaimedWhileBindingPool extends StubPool {
+        public ClaimedWhileBindingPool(JcloudsLocation l, ReusableMachineTemplate ...templates) {
+            super(l, templates);
+        }
+
+        @Override
+        protected SshMachineLocation toSshMachineLocation(NodeMetadata m) {
+            SshMachineLocation result = super.toSshMachineLocation(m);
+            claim(new MachineSet(m));
+            return result;
+        }
+    }
+
+    /** config for a location using the stub provider; a new identity each time, so it does not see VMs created by other tests */
+    public static Map<?,?> newStubLocationConfig() {
+        return MutableMap.of(
+                CLOUD_PROVIDER, "stub",
+                ACCESS_IDENTITY, "brooklyn-test-"+Identifiers.makeRandomId(8),
+                ACCESS_CREDENTIAL, "bogus",
+                USER, "root",
+                PASSWORD, "bogus",
+                WAIT_FOR_SSHABLE, "false");
+    }
+    
+    public static JcloudsLocation newStubLocation() {
+        return new JcloudsLocation(newStubLocationConfig());
+    }
+
+    private final ReusableMachineTemplate template = new ReusableMachineTemplate().strict(false);
+    private JcloudsLocation loc;
+    private StubPool pool;
+
+    @BeforeMethod(alwaysRun=true)
+    public void setUp() throws Exception {
+        loc = newStubLocation();
+        pool = new StubPool(loc, template);
+    }
+
+    @AfterMethod(alwaysRun=true)
+    public void tearDown() throws Exception {
+        if (pool != null) pool.stopWarming();
+    }
+
+    @Test
+    public void testTopUpCreatesWarmMachinesToTarget() throws Exception {
+        pool.setWarmTarget(template, 2);
+        pool.topUpWarmMachines();
+        assertEquals(pool.getWarmMachines(template).size(), 2);
+
+        // already at target, so nothing more is created
+        pool.topUpWarmMachines();
+        assertEquals(pool.getWarmMachines(template).size(), 2);
+        assertEquals(pool.all().size(), 2);
+    }
+
+    @Test
+    public void testClaimWarmIsNoLongerWarmAndTopUpReplacesIt() throws Exception {
+        pool.setWarmTarget(template, 2);
+        pool.topUpWarmMachines();
+
+        JcloudsSshMachineLocation claimed = pool.claimWarm(template);
+        assertNotNull(claimed);
+        assertTrue(pool.isClaimed(claimed.getNode()));
+        assertEquals(pool.getWarmMachines(template).size(), 1);
+        assertFalse(pool.getWarmMachines(template).contains(claimed));
+
+        pool.topUpWarmMachines();
+        assertEquals(pool.getWarmMachines(template).size(), 2);
+        assertFalse(pool.getWarmMachines(template).contains(claimed));
+        assertEquals(pool.all().size(), 3);
+    }
+
+    @Test
+    public void testClaimByTemplateIsNoLongerWarm() throws Exception {
+        pool.setWarmTarget(template, 2);
+        pool.topUpWarmMachines();
+
+        MachineSet claimed = pool.claim(1, template);
+        NodeMetadata node = Iterables.getOnlyElement(claimed);
+        assertEquals(pool.getWarmMachines(template).size(), 1);
+        assertFalse(pool.warmMachines.containsKey(node));
+
+        // the remaining warm machine is still available, and is not handed out twice
+        assertNotNull(pool.claimWarm(template));
+        assertEquals(pool.getWarmMachines(template).size(), 0);
+        assertEquals(pool.unclaimed().size(), 0);
+    }
+
+    @Test
+    public void testLocationClaimsWarmMachineOnlyIfSetUpTheSame() throws Exception {
+        pool.setWarmTarget(template, 1);
+        pool.topUpWarmMachines();
+        JcloudsSshMachineLocation warm = Iterables.getOnlyElement(pool.getWarmMachines(template));
+
+        // different inbound ports: a new VM is created, and the warm machine left alone
+        SshMachineLocation other = loc.obtain(MutableMap.of(MACHINE_POOL, pool, MACHINE_POOL_TEMPLATE, template, INBOUND_PORTS, ImmutableList.of(8080)));
+        assertFalse(other.equals(warm));
+        assertEquals(pool.getWarmMachines(template).size(), 1);
+
+        SshMachineLocation claimed = loc.obtain(MutableMap.of(MACHINE_POOL, pool, MACHINE_POOL_TEMPLATE, template));
+        assertEquals(claimed, warm);
+        assertEquals(pool.getWarmMachines(template).size(), 0);
+    }
+
+    @Test
+    public void testLocationObtainSeveralClaimsWarmMachinesFirst() throws Exception {
+        pool.setWarmTarget(template, 1);
+        pool.topUpWarmMachines();
+        JcloudsSshMachineLocation warm = Iterables.getOnlyElement(pool.getWarmMachines(template));
+
+        List<SshMachineLocation> machines = loc.obtain(3, MutableMap.of(MACHINE_POOL, pool, MACHINE_POOL_TEMPLATE, template));
+        assertEquals(machines.size(), 3);
+        assertTrue(machines.contains(warm));
+        assertEquals(pool.getWarmMachines(template).size(), 0);
+        assertTrue(pool.isClaimed(warm.getNode()));
+    }
+
+    @Test
+    public void testUnclaimedWarmMachineIsWarmAgainAndNotReboundByTopUp() throws Exception {
+        pool.setWarmTarget(template, 1);
+        pool.topUpWarmMachines();
+        JcloudsSshMachineLocation claimed = pool.claimWarm(template);
+        
+        pool.unclaimWarm(claimed);
+        assertFalse(pool.isClaimed(claimed.getNode()));
+        assertEquals(pool.getWarmMachines(template), ImmutableList.of(claimed));
+        
+        pool.topUpWarmMachines();
+        assertEquals(pool.getWarmMachines(template), ImmutableList.of(claimed));
+        assertEquals(pool.all().size(), 1);
+        assertEquals(loc.getChildren().size(), 1);
+    }
+
+    @Test
+    public void testTopUpUnbindsMachineClaimedWhileBindingToIt() throws Exception {
+        ClaimedWhileBindingPool racingPool = new ClaimedWhileBindingPool(loc, template);
+        NodeMetadata existing = Iterables.getOnlyElement(racingPool.create(1, template));
+        assertEquals(countChildrenBoundTo(existing), 1);
+        
+        racingPool.setWarmTarget(template, 1);
+        racingPool.topUpWarmMachines();
+        assertTrue(racingPool.isClaimed(existing));
+        assertFalse(racingPool.warmMachines.containsKey(existing));
+        assertEquals(countChildrenBoundTo(existing), 1);
+    }
+
+    @Test
+    public void testReleaseTellsPoolMachineWasClaimedFromWhenPoolGivenAsObtainFlag() throws Exception {
+        pool.setWarmTarget(template, 1);
+        pool.topUpWarmMachines();
+        JcloudsSshMachineLocation warm = Iterables.getOnlyElement(pool.getWarmMachines(template));
+        
+        SshMachineLocation claimed = loc.obtain(MutableMap.of(MACHINE_POOL, pool, MACHINE_POOL_TEMPLATE, template));
+        assertEquals(claimed, warm);
+        loc.release(claimed);
+        assertFalse(pool.all().contains(warm.getNode()));
+        assertFalse(pool.isClaimed(warm.getNode()));
+    }
+
+    private int countChildrenBoundTo(NodeMetadata node) {
+        int result = 0;
+        for (Location child : loc.getChildren()) {
+            if (child instanceof JcloudsSshMachineLocation && ((JcloudsSshMachineLocation)child).getNode().equals(node)) result++;
+        }
+        return result;
+    }
+}
@@ -0,0 +1,138 @@
+package brooklyn.location.jclouds;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jclouds.compute.ComputeService;
+import org.jclouds.compute.domain.ComputeMetadata;
+import org.jclouds.compute.domain.NodeMetadata;
+import org.jclouds.compute.domain.Template;
+import org.jclouds.compute.domain.TemplateBuilder;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import brooklyn.location.basic.SshMachineLocation;
+import brooklyn.util.collections.MutableMap;
+import brooklyn.util.collections.MutableSet;
+import brooklyn.util.config.ConfigBag;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Tests {@link JcloudsLocation} against the jclouds "stub" provider, which creates VMs in memory
+ * (see {@link BrooklynMachinePoolTest#newStubLocationConfig()}).
+ */
+public class JcloudsLocationStubTest implements JcloudsLocationConfig {
+
+    private JcloudsLocation loc;
+
+    @BeforeMethod(alwaysRun=true)
+    public void setUp() throws Exception {
+        loc = BrooklynMachinePoolTest.newStubLocation();
+    }
+
+    @Test
+    public void testObtainSeveral() throws Exception {
+        List<SshMachineLocation> machines = loc.obtain(3, MutableMap.of());
+
+        assertEquals(machines.size(), 3);
+        assertEquals(MutableSet.copyOf(loc.getChildren()), MutableSet.copyOf(machines));
+        assertEquals(runningNodes(loc.getComputeService()).size(), 3);
+    }
+
+    @Test
+    public void testObtainNone() throws Exception {
+        assertEquals(loc.obtain(0, MutableMap.of()), ImmutableList.of());
+        assertEquals(runningNodes(loc.getComputeService()).size(), 0);
+    }
+
+    @Test(expectedExceptions=IllegalArgumentException.class)
+    public void testObtainNegativeFails() throws Exception {
+        loc.obtain(-1, MutableMap.of());
+    }
+
+    @Test
+    public void testObtainSeveralWhenOneFailsReleasesAll() throws Exception {
+        final AtomicInteger count = new AtomicInteger();
+        JcloudsLocationCustomizer failSecond = new BasicJcloudsLocationCustomizer() {
+            @Override
+            public void customize(ComputeService computeService, JcloudsSshMachineLocation machine) {
+                if (count.incrementAndGet() == 2) throw new IllegalStateException("simulated failure of "+machine);
+            }
+        };
+
+        try {
+            loc.obtain(3, MutableMap.of(JCLOUDS_LOCATION_CUSTOMIZER, failSecond));
+            fail("should have failed to obtain machines");
+        } catch (Exception e) {
+            // expected
+        }
+
+        assertEquals(count.get(), 3);
+        assertTrue(loc.getChildren().isEmpty(), "children="+loc.getChildren());
+        assertEquals(runningNodes(loc.getComputeService()).size(), 0);
+    }
+
+    @Test
+    public void testTemplateResolvedOnceForSameConfig() throws Exception {
+        CountingJcloudsLocation countingLoc = new CountingJcloudsLocation(BrooklynMachinePoolTest.newStubLocationConfig());
+        countingLoc.obtain(MutableMap.of());
+        countingLoc.obtain(MutableMap.of());
+        assertEquals(countingLoc.templatesResolved.get(), 1);
+
+        // different template config is resolved afresh
+        countingLoc.obtain(MutableMap.of(MIN_RAM, 1024));
+        assertEquals(countingLoc.templatesResolved.get(), 2);
+        countingLoc.obtain(MutableMap.of(MIN_RAM, 1024));
+        assertEquals(countingLoc.templatesResolved.get(), 2);
+    }
+
+    @Test
+    public void testTemplateResolvedAgainWhenCacheExpires() throws Exception {
+        CountingJcloudsLocation countingLoc = new CountingJcloudsLocation(MutableMap.builder()
+                .putAll(BrooklynMachinePoolTest.newStubLocationConfig())
+                .put(TEMPLATE_CACHE_TTL, "1ms")
+                .build());
+        countingLoc.obtain(MutableMap.of());
+        Thread.sleep(10);
+        countingLoc.obtain(MutableMap.of());
+        assertEquals(countingLoc.templatesResolved.get(), 2);
+    }
+
+    @Test
+    public void testTemplateNotCachedIfTtlZero() throws Exception {
+        CountingJcloudsLocation countingLoc = new CountingJcloudsLocation(BrooklynMachinePoolTest.newStubLocationConfig());
+        countingLoc.obtain(MutableMap.of(TEMPLATE_CACHE_TTL, "0"));
+        countingLoc.obtain(MutableMap.of(TEMPLATE_CACHE_TTL, "0"));
+        assertEquals(countingLoc.templatesResolved.get(), 2);
+    }
+
+    private static class CountingJcloudsLocation extends JcloudsLocation {
+        final AtomicInteger templatesResolved = new AtomicInteger();
+
+        CountingJcloudsLocation(Map<?,?> conf) {
+            super(conf);
+        }
+
+        @Override
+        protected Template resolveTemplate(TemplateBuilder templateBuilder, ConfigBag config) {
+            templatesResolved.incrementAndGet();
+            return super.resolveTemplate(templateBuilder, config);
+        }
+    }
+
+    private static Set<NodeMetadata> runningNodes(ComputeService computeService) {
+        Set<NodeMetadata> result = MutableSet.of();
+        for (ComputeMetadata node : computeService.listNodes()) {
+            if (node instanceof NodeMetadata && ((NodeMetadata)node).getStatus() == NodeMetadata.Status.RUNNING)
+                result.add((NodeMetadata)node);
+        }
+        return result;
+    }
+}
@@ -2,6 +2,7 @@ package brooklyn.location.jclouds;
 
 import static org.testng.Assert.assertTrue;
 
+import java.util.List;
 import java.util.Map;
 
 import javax.annotation.Nullable;
@@ -13,6 +14,7 @@ import org.testng.annotations.Test;
 
 import brooklyn.location.jclouds.JcloudsLocation;
 import brooklyn.location.jclouds.JcloudsLocationConfig;
+import brooklyn.location.jclouds.templates.PortableTemplateBuilder;
 import brooklyn.util.collections.MutableMap;
 import brooklyn.util.config.ConfigBag;
 import brooklyn.util.exceptions.Exceptions;
@@ -45,8 +47,11 @@ public class JcloudsLocationTest implements JcloudsLocationConfig {
             throw BAIL_OUT_FOR_TESTING;
         }
         protected synchronized void tryObtainAndCheck(Map<?,?> flags, Predicate<ConfigBag> test) {
+            tryObtainAndCheck(1, flags, test);
+        }
+        protected synchronized void tryObtainAndCheck(int count, Map<?,?> flags, Predicate<ConfigBag> test) {
             try {
-                obtain(flags);
+                obtain(count, flags);
             } catch (Throwable e) {
                 if (e==BAIL_OUT_FOR_TESTING) {
                     test.apply(lastConfigBag);
@@ -98,6 +103,25 @@ public class JcloudsLocationTest implements JcloudsLocationConfig {
         jcl.tryObtainAndCheck(MutableMap.of(MIN_CORES, 3), checkerFor("jon", 16, 3));
     }
 
+    @Test
+    public void testCreateSeveralWithFlagsDirectly() throws Exception {
+        BailOutJcloudsLocation jcl = newSampleBailOutJcloudsLocationForTesting();
+        jcl.tryObtainAndCheck(3, MutableMap.of(MIN_CORES, 2, MIN_RAM, 8), checkerFor("fred", 8, 2));
+    }
+
+    @Test
+    public void testTemplateCacheKeyDependsOnTemplateBuilderConfig() throws Exception {
+        BailOutJcloudsLocation jcl = newSampleBailOutJcloudsLocationForTesting();
+        List<Object> key = jcl.makeTemplateCacheKey(null, ConfigBag.newInstanceExtending(jcl.getConfigBag(), MutableMap.of(MIN_CORES, 2)));
+        List<Object> sameKey = jcl.makeTemplateCacheKey(null, ConfigBag.newInstanceExtending(jcl.getConfigBag(), MutableMap.of(MIN_CORES, 2, INBOUND_PORTS, 22)));
+        List<Object> otherKey = jcl.makeTemplateCacheKey(null, ConfigBag.newInstanceExtending(jcl.getConfigBag(), MutableMap.of(MIN_CORES, 3)));
+        List<Object> noKey = jcl.makeTemplateCacheKey(null, ConfigBag.newInstanceExtending(jcl.getConfigBag(), MutableMap.of(TEMPLATE_BUILDER, new PortableTemplateBuilder())));
+        
+        // options (such as inbound ports) are applied to the template afterwards, so do not affect the key
+        Assert.assertEquals(sameKey, key);
+        Assert.assertNotEquals(otherKey, key);
+        Assert.assertNull(noKey);
+    }
 
     // TODO more tests, where flags come in from resolver, named locations, etc
 }
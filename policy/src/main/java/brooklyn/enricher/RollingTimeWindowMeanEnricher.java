@@ -1,7 +1,7 @@
 package brooklyn.enricher;
 
-import java.util.Iterator;
-import java.util.LinkedList;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import com.google.common.base.Preconditions;
 
@@ -10,6 +10,7 @@ import brooklyn.entity.Entity;
 import brooklyn.event.AttributeSensor;
 import brooklyn.event.Sensor;
 import brooklyn.event.SensorEvent;
+import brooklyn.util.collections.DoubleTimeSeries;
 import brooklyn.util.time.Duration;
 
 /**
@@ -34,8 +35,13 @@ import brooklyn.util.time.Duration;
  * the average is no longer meaningful.
  * <p>
  * The default average when no data has been received is 0, with a confidence of 0
+ * <p>
+ * Values are held in a {@link DoubleTimeSeries}, which maintains the weighted sum as values are
+ * added and expire, so computing the average does not iterate over the window.
  */
 public class RollingTimeWindowMeanEnricher<T extends Number> extends AbstractTypeTransformingEnricher<T,Double> {
+    private static final Logger LOG = LoggerFactory.getLogger(RollingTimeWindowMeanEnricher.class);
+    
     public static class ConfidenceQualifiedNumber {
         final Double value;
         final double confidence;
@@ -46,8 +52,7 @@ public class RollingTimeWindowMeanEnricher<T extends Number> extends AbstractTyp
         }
     }
     
-    private final LinkedList<T> values = new LinkedList<T>();
-    private final LinkedList<Long> timestamps = new LinkedList<Long>();
+    private final DoubleTimeSeries values = new DoubleTimeSeries();
     volatile ConfidenceQualifiedNumber lastAverage = new ConfidenceQualifiedNumber(0d,0d);
     
     Duration timePeriod;
@@ -71,9 +76,15 @@ public class RollingTimeWindowMeanEnricher<T extends Number> extends AbstractTyp
     }
     
     public void onEvent(SensorEvent<T> event, long eventTime) {
-        values.addLast(event.getValue());
-        timestamps.addLast(eventTime);
-        pruneValues(eventTime);
+        synchronized (values) {
+            if (!values.isEmpty() && eventTime < values.getLastTimestamp()) {
+                // out-of-order values would have been ignored when averaging, so don't keep them
+                if (LOG.isDebugEnabled()) LOG.debug("{} ignoring out-of-order value {} at {}", new Object[] {this, event.getValue(), eventTime});
+                return;
+            }
+            values.add(event.getValue(), eventTime);
+            pruneValues(eventTime);
+        }
         entity.setAttribute((AttributeSensor<Double>)target, getAverage(eventTime).value); //TODO this can potentially go stale... maybe we need to timestamp as well?
     }
     
@@ -82,47 +93,36 @@ public class RollingTimeWindowMeanEnricher<T extends Number> extends AbstractTyp
     }
     
     public ConfidenceQualifiedNumber getAverage(long now) {
-        pruneValues(now);
-        if (timestamps.isEmpty()) {
-            return lastAverage = new ConfidenceQualifiedNumber(lastAverage.value, 0.0d);
-        }
-
-        // XXX grkvlt - see email to development list
-
-        
-        long lastTimestamp = timestamps.get(timestamps.size()-1);
-        Double confidence = ((double)(timePeriod.toMilliseconds() - (now - lastTimestamp))) / timePeriod.toMilliseconds();
-        if (confidence <= 0.0d) {
-            double lastValue = values.get(values.size()-1).doubleValue();
-            return lastAverage = new ConfidenceQualifiedNumber(lastValue, 0.0d);
-        }
-        
-        long start = (now - timePeriod.toMilliseconds());
-        long end;
-        double weightedAverage = 0.0d;
-        
-        Iterator<T> valuesIter = values.iterator();
-        Iterator<Long> timestampsIter = timestamps.iterator();
-        while (valuesIter.hasNext()) {
-            // Ignores null and out-of-date values (and also values that are received out-of-order, but that shouldn't happen!)
-            Number val = valuesIter.next();
-            Long timestamp = timestampsIter.next();
-            if (val!=null && timestamp >= start) {
-                end = timestamp;
-                weightedAverage += ((end - start) / (confidence * timePeriod.toMilliseconds())) * val.doubleValue();
-                start = timestamp;
+        synchronized (values) {
+            pruneValues(now);
+            if (values.isEmpty()) {
+                return lastAverage = new ConfidenceQualifiedNumber(lastAverage.value, 0.0d);
             }
+    
+            // XXX grkvlt - see email to development list
+    
+            long lastTimestamp = values.getLastTimestamp();
+            Double confidence = ((double)(timePeriod.toMilliseconds() - (now - lastTimestamp))) / timePeriod.toMilliseconds();
+            if (confidence <= 0.0d) {
+                double lastValue = values.getLastValue();
+                return lastAverage = new ConfidenceQualifiedNumber(Double.isNaN(lastValue) ? null : lastValue, 0.0d);
+            }
+            
+            // after pruning, all values are within the window (null values are ignored), so the 
+            // weighted sum is each value multiplied by the time since the previous one (or since 
+            // the start of the window, for the first)
+            long start = (now - timePeriod.toMilliseconds());
+            double weightedAverage = values.getTimeWeightedSum(start) / (confidence * timePeriod.toMilliseconds());
+            
+            return lastAverage = new ConfidenceQualifiedNumber(weightedAverage, confidence);
         }
-        
-        return lastAverage = new ConfidenceQualifiedNumber(weightedAverage, confidence);
     }
     
     /**
      * Discards out-of-date values, but keeps at least one value.
      */
     private void pruneValues(long now) {
-        while(timestamps.size() > 1 && timestamps.get(0) < (now - timePeriod.toMilliseconds())) {
-            timestamps.removeFirst();
+        while(values.size() > 1 && values.getFirstTimestamp() < (now - timePeriod.toMilliseconds())) {
             values.removeFirst();
         }
     }
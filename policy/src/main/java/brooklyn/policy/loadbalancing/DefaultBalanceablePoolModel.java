@@ -3,10 +3,14 @@ package brooklyn.policy.loadbalancing;
 import java.io.ByteArrayOutputStream;
 import java.io.PrintStream;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeSet;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -36,6 +40,10 @@ public class DefaultBalanceablePoolModel<ContainerType, ItemType> implements Bal
      *  - Unfortunately changing threading model (so have a "rebalancer" thread, and a thread that 
      *    processes events to update the model), get ConcurrentModificationException if don't take
      *    copy of containerToItems.get(node)...
+     *  - Container workrates are maintained incrementally as item workrates change and items move, 
+     *    rather than summing the items on each call; and containers are indexed by how far their workrate 
+     *    is above their high threshold, so the hottest and coldest can be found in O(log n) during a 
+     *    rebalance (see findHottestContainer and findColdestContainer).
      */
     
     // Concurrent maps cannot have null value; use this to represent when no container is supplied for an item 
@@ -54,6 +62,39 @@ public class DefaultBalanceablePoolModel<ContainerType, ItemType> implements Bal
     private volatile double poolHighThreshold = 0;
     private volatile double currentPoolWorkrate = 0;
     
+    /**
+     * Running workrate totals for containers in the pool, indexed by overshoot (i.e. workrate minus high threshold).
+     * All updates to item placement and workrates are done while synchronized on containerIndex, so that the totals 
+     * stay consistent with the items.
+     */
+    private final Map<ContainerType, ContainerWorkrate<ContainerType>> containerWorkrates = new ConcurrentHashMap<ContainerType, ContainerWorkrate<ContainerType>>();
+    private final TreeSet<ContainerWorkrate<ContainerType>> containerIndex = new TreeSet<ContainerWorkrate<ContainerType>>(ContainerWorkrate.BY_OVERSHOOT);
+    
+    private static class ContainerWorkrate<ContainerType> {
+        static final Comparator<ContainerWorkrate<?>> BY_OVERSHOOT = new Comparator<ContainerWorkrate<?>>() {
+            @Override public int compare(ContainerWorkrate<?> o1, ContainerWorkrate<?> o2) {
+                int result = Double.compare(o1.getOvershoot(), o2.getOvershoot());
+                return (result != 0) ? result : (o1.seq < o2.seq ? -1 : (o1.seq == o2.seq ? 0 : 1));
+            }
+        };
+        private static final AtomicLong nextSeq = new AtomicLong();
+        
+        final ContainerType container;
+        final double highThreshold;
+        final long seq = nextSeq.incrementAndGet();
+        // only modified while not in the index (see adjustContainerWorkrate)
+        double totalWorkrate;
+        
+        ContainerWorkrate(ContainerType container, double highThreshold, double totalWorkrate) {
+            this.container = container;
+            this.highThreshold = highThreshold;
+            this.totalWorkrate = totalWorkrate;
+        }
+        double getOvershoot() {
+            return totalWorkrate - highThreshold;
+        }
+    }
+    
     public DefaultBalanceablePoolModel(String name) {
         this.name = name;
     }
@@ -100,6 +141,18 @@ public class DefaultBalanceablePoolModel<ContainerType, ItemType> implements Bal
     }
     
     @Override public double getTotalWorkrate(ContainerType container) {
+        ContainerWorkrate<ContainerType> containerWorkrate = containerWorkrates.get(container);
+        if (containerWorkrate != null) {
+            synchronized (containerIndex) {
+                return containerWorkrate.totalWorkrate;
+            }
+        }
+        
+        // not in the pool, so not tracked
+        return sumItemWorkrates(container);
+    }
+    
+    private double sumItemWorkrates(ContainerType container) {
         double totalWorkrate = 0;
         for (ItemType item : getItemsForContainer(container)) {
             Double workrate = itemToWorkrate.get(item);
@@ -132,6 +185,42 @@ public class DefaultBalanceablePoolModel<ContainerType, ItemType> implements Bal
         return true; // TODO?
     }
     
+    /**
+     * Identifies the container with the maximum overshoot (currentWorkrate - highThreshold), 
+     * returns null if none of the model's nodes has an overshoot. 
+     * 
+     * @see PolicyUtilForPool#findHottestContainer(Set)
+     */
+    public ContainerType findHottestContainer(Set<ContainerType> excludedContainers) {
+        synchronized (containerIndex) {
+            for (Iterator<ContainerWorkrate<ContainerType>> iter = containerIndex.descendingIterator(); iter.hasNext();) {
+                ContainerWorkrate<ContainerType> contender = iter.next();
+                if (contender.getOvershoot() <= 0) break;
+                if (contender.highThreshold == -1 || excludedContainers.contains(contender.container)) continue;
+                return contender.container;
+            }
+            return null;
+        }
+    }
+    
+    /**
+     * Identifies the container with the maximum spare capacity (highThreshold - currentWorkrate),
+     * returns null if none of the model's nodes has spare capacity.
+     * 
+     * @see PolicyUtilForPool#findColdestContainer(Set, LocationConstraint)
+     */
+    public ContainerType findColdestContainer(Set<ContainerType> excludedContainers, LocationConstraint locationConstraint) {
+        synchronized (containerIndex) {
+            for (ContainerWorkrate<ContainerType> contender : containerIndex) {
+                if (contender.getOvershoot() >= 0) break;
+                if (contender.highThreshold == -1 || excludedContainers.contains(contender.container)) continue;
+                if (locationConstraint != null && !locationConstraint.isPermitted(getLocation(contender.container))) continue;
+                return contender.container;
+            }
+            return null;
+        }
+    }
+    
     
     // Mutators.
     
@@ -144,10 +233,7 @@ public class DefaultBalanceablePoolModel<ContainerType, ItemType> implements Bal
             		"if onItemAdded subsequently received will get new container then", item, newNode);
             return;
         }
-        ContainerType newNodeNonNull = toNonNullContainer(newNode);
-        ContainerType oldNode = itemToContainer.put(item, newNodeNonNull);
-        if (oldNode != null && oldNode != NULL_CONTAINER) containerToItems.remove(oldNode, item);
-        if (newNode != null) containerToItems.put(newNode, item);
+        setItemContainer(item, newNode);
     }
     
     @Override
@@ -158,6 +244,12 @@ public class DefaultBalanceablePoolModel<ContainerType, ItemType> implements Bal
             LOG.debug("Duplicate container-added event for {}; ignoring", newContainer);
             return;
         }
+        synchronized (containerIndex) {
+            // items may already have been reported in this container
+            ContainerWorkrate<ContainerType> containerWorkrate = new ContainerWorkrate<ContainerType>(newContainer, highThreshold, sumItemWorkrates(newContainer));
+            containerWorkrates.put(newContainer, containerWorkrate);
+            containerIndex.add(containerWorkrate);
+        }
         containerToLowThreshold.put(newContainer, lowThreshold);
         containerToHighThreshold.put(newContainer, highThreshold);
         poolLowThreshold += lowThreshold;
@@ -167,6 +259,10 @@ public class DefaultBalanceablePoolModel<ContainerType, ItemType> implements Bal
     @Override
     public void onContainerRemoved(ContainerType oldContainer) {
         containers.remove(oldContainer);
+        synchronized (containerIndex) {
+            ContainerWorkrate<ContainerType> containerWorkrate = containerWorkrates.remove(oldContainer);
+            if (containerWorkrate != null) containerIndex.remove(containerWorkrate);
+        }
         Double containerLowThreshold = containerToLowThreshold.remove(oldContainer);
         Double containerHighThresold = containerToHighThreshold.remove(oldContainer);
         poolLowThreshold -= (containerLowThreshold != null ? containerLowThreshold : 0);
@@ -188,28 +284,55 @@ public class DefaultBalanceablePoolModel<ContainerType, ItemType> implements Bal
         if (immovable)
             immovableItems.add(item);
         
-        ContainerType parentContainerNonNull = toNonNullContainer(parentContainer);
-        ContainerType oldNode = itemToContainer.put(item, parentContainerNonNull);
-        if (oldNode != null && oldNode != NULL_CONTAINER) containerToItems.remove(oldNode, item);
-        if (parentContainer != null) containerToItems.put(parentContainer, item);
+        setItemContainer(item, parentContainer);
+    }
+    
+    private void setItemContainer(ItemType item, ContainerType newNode) {
+        synchronized (containerIndex) {
+            ContainerType newNodeNonNull = toNonNullContainer(newNode);
+            ContainerType oldNode = itemToContainer.put(item, newNodeNonNull);
+            if (oldNode == newNodeNonNull) return;
+            
+            Double workrate = itemToWorkrate.get(item);
+            if (oldNode != null && oldNode != NULL_CONTAINER) {
+                containerToItems.remove(oldNode, item);
+                if (workrate != null) adjustContainerWorkrate(oldNode, -Math.abs(workrate));
+            }
+            if (newNode != null) {
+                containerToItems.put(newNode, item);
+                if (workrate != null) adjustContainerWorkrate(newNode, Math.abs(workrate));
+            }
+        }
     }
     
     @Override
     public void onItemRemoved(ItemType item) {
-        ContainerType oldNode = itemToContainer.remove(item);
-        if (oldNode != null && oldNode != NULL_CONTAINER) containerToItems.remove(oldNode, item);
-        Double workrate = itemToWorkrate.remove(item);
-        if (workrate != null)
-            currentPoolWorkrate -= workrate;
+        synchronized (containerIndex) {
+            ContainerType oldNode = itemToContainer.remove(item);
+            Double workrate = itemToWorkrate.remove(item);
+            if (oldNode != null && oldNode != NULL_CONTAINER) {
+                containerToItems.remove(oldNode, item);
+                if (workrate != null) adjustContainerWorkrate(oldNode, -Math.abs(workrate));
+            }
+            if (workrate != null)
+                currentPoolWorkrate -= workrate;
+        }
         immovableItems.remove(item);
     }
     
     @Override
     public void onItemWorkrateUpdated(ItemType item, double newValue) {
         if (hasItem(item)) {
-            Double oldValue = itemToWorkrate.put(item, newValue);
-            double delta = ( newValue - (oldValue != null ? oldValue : 0) );
-            currentPoolWorkrate += delta;
+            synchronized (containerIndex) {
+                Double oldValue = itemToWorkrate.put(item, newValue);
+                double delta = ( newValue - (oldValue != null ? oldValue : 0) );
+                currentPoolWorkrate += delta;
+                
+                ContainerType node = itemToContainer.get(item);
+                if (node != null && node != NULL_CONTAINER) {
+                    adjustContainerWorkrate(node, Math.abs(newValue) - (oldValue != null ? Math.abs(oldValue) : 0));
+                }
+            }
         } else {
             // Can happen when item removed - get notification of removal and workrate from group and item
             // respectively, so can overtake each other
@@ -221,6 +344,21 @@ public class DefaultBalanceablePoolModel<ContainerType, ItemType> implements Bal
         return itemToContainer.containsKey(item);
     }
     
+    /** Must be called while synchronized on containerIndex. */
+    private void adjustContainerWorkrate(ContainerType container, double delta) {
+        ContainerWorkrate<ContainerType> containerWorkrate = containerWorkrates.get(container);
+        if (containerWorkrate == null || delta == 0) return;
+        
+        containerIndex.remove(containerWorkrate);
+        if (containerToItems.get(container).isEmpty()) {
+            // avoid accumulating rounding errors
+            containerWorkrate.totalWorkrate = 0;
+        } else {
+            containerWorkrate.totalWorkrate += delta;
+        }
+        containerIndex.add(containerWorkrate);
+    }
+    
     
     // Additional methods for tests.
 
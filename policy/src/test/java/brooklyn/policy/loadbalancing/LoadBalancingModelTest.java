@@ -1,14 +1,19 @@
 package brooklyn.policy.loadbalancing;
 
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
 
 import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
 
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
 
 public class LoadBalancingModelTest {
 
@@ -16,6 +21,7 @@ public class LoadBalancingModelTest {
     
     private MockContainerEntity container1 = new MockContainerEntityImpl();
     private MockContainerEntity container2 = new MockContainerEntityImpl();
+    private MockContainerEntity container3 = new MockContainerEntityImpl();
     private MockItemEntity item1 = new MockItemEntityImpl();
     private MockItemEntity item2 = new MockItemEntityImpl();
     private MockItemEntity item3 = new MockItemEntityImpl();
@@ -86,4 +92,109 @@ public class LoadBalancingModelTest {
         assertEquals(model.getContainerWorkrates(), ImmutableMap.of(container1, 0d, container2, 123d));
         assertEquals(model.getCurrentPoolWorkrate(), 123d);
     }
+    
+    @Test
+    public void testContainerWorkrateIncludesItemsReportedBeforeContainerAdded() throws Exception {
+        model.onItemAdded(item1, container1, false);
+        model.onItemWorkrateUpdated(item1, 5d);
+        model.onContainerAdded(container1, 10d, 20d);
+        
+        assertEquals(model.getTotalWorkrate(container1), 5d, PRECISION);
+        
+        model.onItemWorkrateUpdated(item1, 7d);
+        assertEquals(model.getTotalWorkrate(container1), 7d, PRECISION);
+    }
+    
+    @Test
+    public void testFindsHottestAndColdestContainers() throws Exception {
+        PolicyUtilForPool<MockContainerEntity, MockItemEntity> helper = new PolicyUtilForPool<MockContainerEntity, MockItemEntity>(model);
+        Set<MockContainerEntity> noneExcluded = Collections.emptySet();
+        model.onContainerAdded(container1, 10d, 20d);
+        model.onContainerAdded(container2, 10d, 20d);
+        model.onContainerAdded(container3, 10d, 20d);
+        model.onItemAdded(item1, container1, false);
+        model.onItemAdded(item2, container2, false);
+        model.onItemAdded(item3, container3, false);
+        model.onItemWorkrateUpdated(item1, 15d);
+        model.onItemWorkrateUpdated(item2, 5d);
+        model.onItemWorkrateUpdated(item3, 10d);
+        
+        // none above their high threshold
+        assertNull(helper.findHottestContainer(noneExcluded));
+        assertEquals(helper.findColdestContainer(noneExcluded), container2);
+        assertEquals(helper.findColdestContainer(ImmutableSet.of(container2)), container3);
+        
+        model.onItemWorkrateUpdated(item1, 25d);
+        model.onItemWorkrateUpdated(item3, 30d);
+        assertEquals(helper.findHottestContainer(noneExcluded), container3);
+        assertEquals(helper.findHottestContainer(ImmutableSet.of(container3)), container1);
+        
+        // moving the hottest item makes its old container the coldest
+        model.onItemMoved(item3, container2);
+        assertEquals(helper.findHottestContainer(noneExcluded), container2);
+        assertEquals(helper.findColdestContainer(noneExcluded), container3);
+        
+        model.onItemRemoved(item1);
+        model.onItemRemoved(item3);
+        assertNull(helper.findHottestContainer(noneExcluded));
+        assertEquals(model.getTotalWorkrate(container1), 0d, PRECISION);
+        
+        model.onContainerRemoved(container3);
+        assertEquals(helper.findColdestContainer(noneExcluded), container1);
+        model.onContainerRemoved(container1);
+        model.onContainerRemoved(container2);
+        assertNull(helper.findColdestContainer(noneExcluded));
+    }
+    
+    @Test
+    public void testIndexMatchesFullScanAfterRandomUpdates() throws Exception {
+        Random random = new Random(1234);
+        List<MockContainerEntity> containers = Lists.newArrayList();
+        List<MockItemEntity> items = Lists.newArrayList();
+        for (int i = 0; i < 10; i++) {
+            MockContainerEntity container = new MockContainerEntityImpl();
+            containers.add(container);
+            model.onContainerAdded(container, 0d, 10d + i);
+        }
+        for (int i = 0; i < 50; i++) {
+            MockItemEntity item = new MockItemEntityImpl();
+            items.add(item);
+            model.onItemAdded(item, containers.get(random.nextInt(containers.size())), false);
+        }
+        for (int i = 0; i < 1000; i++) {
+            MockItemEntity item = items.get(random.nextInt(items.size()));
+            if (random.nextBoolean()) {
+                model.onItemWorkrateUpdated(item, random.nextDouble() * 5);
+            } else {
+                model.onItemMoved(item, containers.get(random.nextInt(containers.size())));
+            }
+        }
+        
+        double maxOvershoot = 0;
+        double maxSpareCapacity = 0;
+        for (MockContainerEntity container : containers) {
+            double expected = 0;
+            for (MockItemEntity item : model.getItemsForContainer(container)) {
+                Double workrate = model.getItemWorkrate(item);
+                if (workrate != null) expected += workrate;
+            }
+            assertEquals(model.getTotalWorkrate(container), expected, PRECISION);
+            maxOvershoot = Math.max(maxOvershoot, expected - model.getHighThreshold(container));
+            maxSpareCapacity = Math.max(maxSpareCapacity, model.getHighThreshold(container) - expected);
+        }
+        
+        Set<MockContainerEntity> noneExcluded = Collections.emptySet();
+        MockContainerEntity hottest = model.findHottestContainer(noneExcluded);
+        MockContainerEntity coldest = model.findColdestContainer(noneExcluded, null);
+        if (maxOvershoot > 0) {
+            assertEquals(model.getTotalWorkrate(hottest) - model.getHighThreshold(hottest), maxOvershoot, PRECISION);
+        } else {
+            assertNull(hottest);
+        }
+        if (maxSpareCapacity > 0) {
+            assertEquals(model.getHighThreshold(coldest) - model.getTotalWorkrate(coldest), maxSpareCapacity, PRECISION);
+        } else {
+            assertNull(coldest);
+        }
+    }
 }
@@ -5,6 +5,7 @@ import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.Callable;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.management.Notification;
 import javax.management.NotificationFilter;
@@ -25,14 +26,21 @@ import brooklyn.util.time.Duration;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.HashMultimap;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterables;
+import com.google.common.collect.LinkedHashMultimap;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.collect.SetMultimap;
 import com.google.common.collect.Sets;
 
 
 /**
  * Provides a feed of attribute values, by polling or subscribing over jmx.
+ * <p>
+ * Attributes of the same ObjectName that are polled at the same period are retrieved together, 
+ * with a single {@code getAttributes} call per poll. For an ObjectName pattern, the matching 
+ * MBean is looked up on the first poll and re-used until a poll fails.
  * 
  * Example usage (e.g. in an entity that extends {@link SoftwareProcessImpl}):
  * <pre>
@@ -140,6 +148,8 @@ public class JmxFeed extends AbstractFeed {
     private final SetMultimap<List<?>, JmxOperationPollConfig<?>> operationPolls = HashMultimap.<List<?>,JmxOperationPollConfig<?>>create();
     private final SetMultimap<NotificationFilter, JmxNotificationSubscriptionConfig<?>> notificationSubscriptions = HashMultimap.create();
     private final SetMultimap<ObjectName, NotificationListener> notificationListeners = HashMultimap.create();
+    
+    private final AtomicLong roundTrips = new AtomicLong();
 
     protected JmxFeed(Builder builder) {
         super(builder.entity);
@@ -167,6 +177,14 @@ public class JmxFeed extends AbstractFeed {
         return jmxUri;
     }
     
+    /**
+     * Returns the number of calls this feed has made to the MBean server when polling attributes and
+     * operations (including those to look up the MBeans for ObjectName patterns).
+     */
+    public long getRoundTripCount() {
+        return roundTrips.get();
+    }
+    
     @VisibleForTesting
     @SuppressWarnings("unchecked")
     protected Poller<Object> getPoller() {
@@ -216,9 +234,13 @@ public class JmxFeed extends AbstractFeed {
                 }});
         }
         
-        // Setup polling of sensors
-        for (final String jmxAttributeName : attributePolls.keys()) {
-            registerAttributePoller(attributePolls.get(jmxAttributeName));
+        // Setup polling of sensors, one poller per ObjectName + period
+        SetMultimap<List<?>, JmxAttributePollConfig<?>> attributeBatches = LinkedHashMultimap.create();
+        for (JmxAttributePollConfig<?> config : attributePolls.values()) {
+            attributeBatches.put(ImmutableList.of(config.getObjectName(), config.getPeriod()), config);
+        }
+        for (List<?> batchIdentifier : attributeBatches.keySet()) {
+            registerAttributePoller(attributeBatches.get(batchIdentifier));
         }
         
         // Setup polling of operations
@@ -264,6 +286,7 @@ public class JmxFeed extends AbstractFeed {
                 new Callable<Object>() {
                     public Object call() throws Exception {
                         if (log.isDebugEnabled()) log.debug("jmx operation polling for {} sensors at {} -> {}", new Object[] {getEntity(), jmxUri, operationName});
+                        roundTrips.addAndGet(objectName.isPattern() ? 2 : 1);
                         if (signature.size() == params.size()) {
                             return helper.operation(objectName, operationName, signature, params);
                         } else {
@@ -275,29 +298,120 @@ public class JmxFeed extends AbstractFeed {
     }
 
     /**
-     * Registers to poll a jmx-attribute for an ObjectName, where all the given configs are for that same ObjectName + attribute.
+     * Registers to poll jmx-attributes for an ObjectName, where all the given configs are for that same ObjectName + period.
      */
     private void registerAttributePoller(Set<JmxAttributePollConfig<?>> configs) {
-        Set<AttributePollHandler<Object>> handlers = Sets.newLinkedHashSet();
-        long minPeriod = Integer.MAX_VALUE;
+        SetMultimap<String, AttributePollHandler<Object>> handlers = LinkedHashMultimap.create();
+        long period = Iterables.get(configs, 0).getPeriod();
         
         final ObjectName objectName = Iterables.get(configs, 0).getObjectName();
-        final String jmxAttributeName = Iterables.get(configs, 0).getAttributeName();
         
         for (JmxAttributePollConfig<?> config : configs) {
-            handlers.add(new AttributePollHandler<Object>(config, getEntity(), this));
-            if (config.getPeriod() > 0) minPeriod = Math.min(minPeriod, config.getPeriod());
+            handlers.put(config.getAttributeName(), new AttributePollHandler<Object>(config, getEntity(), this));
         }
+        Map<String, PollHandler<Object>> handlersByAttribute = Maps.newLinkedHashMap();
+        for (String jmxAttributeName : handlers.keySet()) {
+            handlersByAttribute.put(jmxAttributeName, new DelegatingPollHandler(handlers.get(jmxAttributeName)));
+        }
+        
+        AttributeBatchPoller batchPoller = new AttributeBatchPoller(objectName, handlersByAttribute);
         
         // TODO Not good calling this holding the synchronization lock
-        getPoller().scheduleAtFixedRate(
-                new Callable<Object>() {
-                    public Object call() throws Exception {
-                        if (log.isTraceEnabled()) log.trace("jmx attribute polling for {} sensors at {} -> {}", new Object[] {getEntity(), jmxUri, jmxAttributeName});
-                        return helper.getAttribute(objectName, jmxAttributeName);
+        getPoller().scheduleAtFixedRate(batchPoller, batchPoller, (period > 0) ? period : Integer.MAX_VALUE);
+    }
+    
+    /**
+     * Polls a set of attributes of one ObjectName, passing the value of each attribute to its own handler 
+     * (as though it had been polled on its own). The attributes are retrieved together; any that are not 
+     * returned are then retrieved individually, so that the handler is told why.
+     */
+    private class AttributeBatchPoller implements Callable<Object>, PollHandler<Object> {
+        private final ObjectName objectName;
+        private final Map<String, PollHandler<Object>> handlers;
+        private volatile ObjectName resolvedObjectName;
+        
+        AttributeBatchPoller(ObjectName objectName, Map<String, PollHandler<Object>> handlers) {
+            this.objectName = objectName;
+            this.handlers = handlers;
+        }
+        
+        @Override
+        public Object call() throws Exception {
+            if (log.isTraceEnabled()) log.trace("jmx attribute polling for {} sensors at {} -> {}", new Object[] {getEntity(), jmxUri, handlers.keySet()});
+            ObjectName realObjectName = resolveObjectName();
+            if (realObjectName == null) return null;
+            try {
+                roundTrips.incrementAndGet();
+                return helper.getAttributes(realObjectName, handlers.keySet());
+            } catch (RuntimeException e) {
+                // the mbean that matched the pattern may have gone; look it up again on the next poll
+                resolvedObjectName = null;
+                throw e;
+            }
+        }
+        
+        private ObjectName resolveObjectName() {
+            if (!objectName.isPattern()) return objectName;
+            ObjectName result = resolvedObjectName;
+            if (result == null) {
+                roundTrips.incrementAndGet();
+                result = helper.toLiteralObjectName(objectName);
+                resolvedObjectName = result;
+            }
+            return result;
+        }
+        
+        @Override
+        public boolean checkSuccess(Object val) {
+            // success is checked per attribute, in onSuccess
+            return true;
+        }
+        
+        @Override
+        @SuppressWarnings("unchecked")
+        public void onSuccess(Object val) {
+            Map<String, Object> values = (Map<String, Object>) val;
+            for (Map.Entry<String, PollHandler<Object>> entry : handlers.entrySet()) {
+                String jmxAttributeName = entry.getKey();
+                PollHandler<Object> handler = entry.getValue();
+                try {
+                    Object attributeVal;
+                    if (values == null) {
+                        // mbean not found
+                        attributeVal = null;
+                    } else if (values.containsKey(jmxAttributeName)) {
+                        attributeVal = values.get(jmxAttributeName);
+                    } else {
+                        roundTrips.incrementAndGet();
+                        attributeVal = helper.getAttribute(resolveObjectName(), jmxAttributeName);
                     }
-                }, 
-                new DelegatingPollHandler(handlers), minPeriod);
+                    if (handler.checkSuccess(attributeVal)) {
+                        handler.onSuccess(attributeVal);
+                    } else {
+                        handler.onFailure(attributeVal);
+                    }
+                } catch (Exception e) {
+                    handler.onException(e);
+                }
+            }
+        }
+        
+        @Override
+        public void onFailure(Object val) {
+            onSuccess(val);
+        }
+        
+        @Override
+        public void onError(Exception error) {
+            onException(error);
+        }
+        
+        @Override
+        public void onException(Exception exception) {
+            for (PollHandler<Object> handler : handlers.values()) {
+                handler.onException(exception);
+            }
+        }
     }
 
     /**
@@ -9,6 +9,7 @@ import java.security.KeyStore;
 import java.security.PrivateKey;
 import java.security.cert.Certificate;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.Map;
@@ -18,6 +19,8 @@ import java.util.concurrent.Callable;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
 
+import javax.management.Attribute;
+import javax.management.AttributeList;
 import javax.management.AttributeNotFoundException;
 import javax.management.InstanceAlreadyExistsException;
 import javax.management.InstanceNotFoundException;
@@ -548,6 +551,32 @@ public class JmxHelper {
         }
     }
 
+    /**
+     * Returns the given attributes of a JMX {@link ObjectName}, retrieved in a single call. Attributes 
+     * that could not be retrieved (e.g. because they do not exist) are absent from the result.
+     * Returns null if the MBean is not found.
+     */
+    public Map<String, Object> getAttributes(ObjectName objectName, Collection<String> attributes) {
+        final ObjectName realObjectName = toLiteralObjectName(objectName);
+        final String[] attributeNames = attributes.toArray(new String[attributes.size()]);
+        
+        if (realObjectName != null) {
+            AttributeList attributeList = invokeWithReconnect(new Callable<AttributeList>() {
+                    public AttributeList call() throws Exception {
+                        return getConnectionOrFail().getAttributes(realObjectName, attributeNames);
+                    }});
+            
+            Map<String, Object> result = new LinkedHashMap<String, Object>();
+            for (Attribute attribute : attributeList.asList()) {
+                result.put(attribute.getName(), attribute.getValue());
+            }
+            if (LOG.isTraceEnabled()) LOG.trace("From {}, for jmx attributes {}.{}, got values {}", new Object[] {url, objectName.getCanonicalName(), attributes, result});
+            return result;
+        } else {
+            return null;
+        }
+    }
+
     public void setAttribute(String objectName, String attribute, Object val) {
         setAttribute(createObjectName(objectName), attribute, val);
     }
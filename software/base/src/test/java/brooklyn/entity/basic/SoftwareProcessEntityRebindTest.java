@@ -5,6 +5,7 @@ import static org.testng.Assert.assertEquals;
 import java.io.File;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -18,6 +19,7 @@ import brooklyn.entity.rebind.RebindTestUtils;
 import brooklyn.location.MachineProvisioningLocation;
 import brooklyn.location.NoMachinesAvailableException;
 import brooklyn.location.basic.AbstractLocation;
+import brooklyn.location.basic.LocationProvisioningUtils;
 import brooklyn.location.basic.SshMachineLocation;
 import brooklyn.management.ManagementContext;
 import brooklyn.test.entity.TestApplication;
@@ -90,6 +92,11 @@ public class SoftwareProcessEntityRebindTest {
             return new SshMachineLocation(MutableMap.of("address","localhost"));
         }
 
+        @Override
+        public List<SshMachineLocation> obtain(int count, Map flags) throws NoMachinesAvailableException {
+            return LocationProvisioningUtils.obtainEach(this, count, flags);
+        }
+
         @Override
         public void release(SshMachineLocation machine) {
             inUseCount.decrementAndGet();
@@ -9,6 +9,7 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.management.MBeanOperationInfo;
@@ -55,6 +56,7 @@ import brooklyn.test.entity.TestEntity;
 import brooklyn.test.entity.TestEntityImpl;
 
 import com.google.common.base.Function;
+import com.google.common.base.Functions;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 
@@ -141,6 +143,46 @@ public class JmxFeedTest {
         assertSensorEventually(intAttribute, 64, TIMEOUT_MS);
     }
 
+    @Test
+    public void testJmxAttributesOfSameObjectNamePolledTogether() throws Exception {
+        AttributeSensor<Integer> missingAttribute = Sensors.newIntegerSensor("brooklyn.test.missingAttribute", "Brooklyn testing attribute not on mbean");
+        jmxService.registerMBean(ImmutableMap.of(attributeName, 42, "mystring", "abc"), objectName);
+
+        feed = JmxFeed.builder()
+                .entity(entity)
+                .period(1, TimeUnit.HOURS)
+                .pollAttribute(new JmxAttributePollConfig<Integer>(intAttribute)
+                        .objectName(objectName)
+                        .attributeName(attributeName))
+                .pollAttribute(new JmxAttributePollConfig<String>(stringAttribute)
+                        .objectName(objectName)
+                        .attributeName("mystring"))
+                .build();
+        
+        assertSensorEventually(intAttribute, 42, TIMEOUT_MS);
+        assertSensorEventually(stringAttribute, "abc", TIMEOUT_MS);
+        assertEquals(feed.getRoundTripCount(), 1L);
+        feed.stop();
+        
+        // an attribute the mbean does not return is retrieved on its own (so any error is reported for just that attribute)
+        feed = JmxFeed.builder()
+                .entity(entity)
+                .period(1, TimeUnit.HOURS)
+                .pollAttribute(new JmxAttributePollConfig<Integer>(intAttribute)
+                        .objectName(objectName)
+                        .attributeName(attributeName)
+                        .onSuccess(Functions.constant(43)))
+                .pollAttribute(new JmxAttributePollConfig<Integer>(missingAttribute)
+                        .objectName(objectName)
+                        .attributeName("missing")
+                        .onSuccess(Functions.constant(-1)))
+                .build();
+        
+        assertSensorEventually(intAttribute, 43, TIMEOUT_MS);
+        assertSensorEventually(missingAttribute, -1, TIMEOUT_MS);
+        assertEquals(feed.getRoundTripCount(), 2L);
+    }
+
     @Test
     public void testJmxAttributeOfTypeTabularDataProviderConvertedToMap() throws Exception {
         // Create the CompositeType and TabularData
@@ -47,6 +47,11 @@ public interface AbstractController extends SoftwareProcess, LoadBalancer {
     public static final BasicConfigKey<ProxySslConfig> SSL_CONFIG = 
         new BasicConfigKey<ProxySslConfig>(ProxySslConfig.class, "proxy.ssl.config", "configuration (e.g. certificates) for SSL; will use SSL if set, not use SSL if not set");
 
+    @SetFromFlag("updateCoalescePeriod")
+    public static final BasicConfigKey<Long> UPDATE_COALESCE_PERIOD = new BasicConfigKey<Long>(
+            Long.class, "proxy.update.coalescePeriod", "Time (in milliseconds) over which server pool membership changes " +
+                    "are batched into a single reconfigure and reload; 0 means update on every change", 0L);
+    
     public static final AttributeSensor<String> ROOT_URL = WebAppService.ROOT_URL;
     
     public static final BasicAttributeSensor<Set<String>> SERVER_POOL_TARGETS = new BasicAttributeSensor(
@@ -57,6 +62,9 @@ public interface AbstractController extends SoftwareProcess, LoadBalancer {
      */
     public static final BasicAttributeSensor<Set<String>> TARGETS = SERVER_POOL_TARGETS;
     
+    public static final BasicAttributeSensor<Long> RELOADS_AVOIDED = new BasicAttributeSensor<Long>(
+            Long.class, "proxy.reloads.avoided", "Number of reloads avoided, by coalescing membership changes or because the configuration was unchanged");
+    
     public static final MethodEffector<Void> RELOAD = new MethodEffector(AbstractController.class, "reload");
     public static final MethodEffector<Void> UPDATE = new MethodEffector(AbstractController.class, "update");
     
@@ -6,6 +6,7 @@ import static com.google.common.base.Preconditions.checkNotNull;
 import java.util.Collection;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
 
 import javax.annotation.Nullable;
 
@@ -26,8 +27,11 @@ import brooklyn.entity.rebind.RebindSupport;
 import brooklyn.entity.trait.Startable;
 import brooklyn.event.AttributeSensor;
 import brooklyn.location.access.BrooklynAccessUtils;
+import brooklyn.management.Task;
 import brooklyn.mementos.EntityMemento;
 import brooklyn.util.collections.MutableMap;
+import brooklyn.util.task.BasicTask;
+import brooklyn.util.task.ScheduledTask;
 
 import com.google.common.base.Function;
 import com.google.common.collect.Maps;
@@ -50,6 +54,8 @@ public abstract class AbstractControllerImpl extends SoftwareProcessImpl impleme
 
     protected volatile boolean isActive;
     protected volatile boolean updateNeeded = true;
+    protected volatile boolean updateScheduled = false;
+    private long reloadsAvoided = 0;
 
     protected AbstractMembershipTrackingPolicy serverPoolMemberTrackerPolicy;
     protected Set<String> serverPoolAddresses = Sets.newLinkedHashSet();
@@ -236,18 +242,83 @@ public abstract class AbstractControllerImpl extends SoftwareProcessImpl impleme
      */
     protected abstract void reconfigureService();
     
+    /**
+     * Updates the configuration (as for {@link #reconfigureService()}), returning whether the service 
+     * needs to be reloaded. Sub-classes that can tell the deployed configuration is already up-to-date
+     * should override this to return false in that case, so the reload is skipped.
+     */
+    protected boolean reconfigureServiceIfChanged() {
+        reconfigureService();
+        return true;
+    }
+    
+    /** Updates the configuration and reloads, even if the configuration is unchanged (e.g. when invoked as an effector). */
     @Override
     public synchronized void update() {
+        update(true);
+    }
+    
+    /** As {@link #update()}, but skips the reload if {@link #reconfigureServiceIfChanged()} finds nothing has changed. */
+    protected synchronized void updateIfChanged() {
+        update(false);
+    }
+    
+    private synchronized void update(boolean force) {
+        updateScheduled = false;
         if (!isActive()) updateNeeded = true;
         else {
             updateNeeded = false;
             LOG.debug("Updating {} in response to changes", this);
-            reconfigureService();
-            LOG.debug("Reloading {} in response to changes", this);
-            invoke(RELOAD);
+            if (force) {
+                reconfigureService();
+                LOG.debug("Reloading {} in response to changes", this);
+                invoke(RELOAD);
+            } else if (reconfigureServiceIfChanged()) {
+                LOG.debug("Reloading {} in response to changes", this);
+                invoke(RELOAD);
+            } else {
+                LOG.debug("Not reloading {}; configuration unchanged", this);
+                recordReloadAvoided();
+            }
         }
         setAttribute(SERVER_POOL_TARGETS, serverPoolAddresses);
     }
+    
+    /**
+     * Calls {@link #updateIfChanged()} after the {@link #UPDATE_COALESCE_PERIOD}, if one is configured; changes 
+     * requested before then are applied by that same update. Otherwise updates immediately.
+     */
+    protected synchronized void scheduleUpdate() {
+        Long coalescePeriod = getConfig(UPDATE_COALESCE_PERIOD);
+        if (coalescePeriod == null || coalescePeriod <= 0 || !isActive()) {
+            updateIfChanged();
+            return;
+        }
+        if (updateScheduled) {
+            if (LOG.isTraceEnabled()) LOG.trace("Update of {} already scheduled; coalescing change", this);
+            recordReloadAvoided();
+            return;
+        }
+        
+        updateScheduled = true;
+        Callable<Task<?>> taskFactory = new Callable<Task<?>>() {
+            public Task<?> call() {
+                return new BasicTask<Void>(new Runnable() {
+                    public void run() {
+                        updateIfChanged();
+                    }});
+            }};
+        try {
+            getExecutionContext().submit(new ScheduledTask(MutableMap.of("delay", coalescePeriod), taskFactory));
+        } catch (Exception e) {
+            if (LOG.isDebugEnabled()) LOG.debug("Unable to schedule update of "+this+"; updating now", e);
+            updateIfChanged();
+        }
+    }
+    
+    private synchronized void recordReloadAvoided() {
+        setAttribute(RELOADS_AVOIDED, ++reloadsAvoided);
+    }
 
     protected synchronized void resetServerPoolMemberTrackerPolicy() {
         serverPoolMemberTrackerPolicy.reset();
@@ -313,7 +384,7 @@ public abstract class AbstractControllerImpl extends SoftwareProcessImpl impleme
 
         LOG.info("Adding to {}, new member {} with address {}", new Object[] {this, member, address});
         
-        update();
+        scheduleUpdate();
         serverPoolTargets.put(member, address);
     }
     
@@ -330,7 +401,7 @@ public abstract class AbstractControllerImpl extends SoftwareProcessImpl impleme
         
         LOG.info("Removing from {}, member {} with address {}", new Object[] {this, member, address});
         
-        update();
+        scheduleUpdate();
         serverPoolTargets.remove(member);
     }
     
@@ -30,6 +30,7 @@ import brooklyn.util.collections.MutableMap;
 import brooklyn.util.internal.TimeExtras;
 import brooklyn.util.text.Strings;
 
+import com.google.common.base.Charsets;
 import com.google.common.base.Predicates;
 import com.google.common.base.Function;
 import com.google.common.base.Functions;
@@ -38,6 +39,7 @@ import com.google.common.collect.Iterables;
 import com.google.common.collect.LinkedHashMultimap;
 import com.google.common.collect.Multimap;
 import com.google.common.collect.Sets;
+import com.google.common.hash.Hashing;
 
 /**
  * An entity that represents an Nginx proxy (e.g. for routing requests to servers in a cluster).
@@ -64,6 +66,9 @@ public class NginxControllerImpl extends AbstractControllerImpl implements Nginx
 
     private volatile HttpFeed httpFeed;
     
+    /** hash of the config file last copied to the server, so unchanged config need not be re-copied and reloaded */
+    private volatile String deployedConfigHash;
+    
     public NginxControllerImpl() {
         super();
     }
@@ -128,14 +133,14 @@ public class NginxControllerImpl extends AbstractControllerImpl implements Nginx
             // Listen to the targets of each url-mapping changing
             subscribeToMembers(urlMappings, UrlMapping.TARGET_ADDRESSES, new SensorEventListener<Collection<String>>() {
                     @Override public void onEvent(SensorEvent<Collection<String>> event) {
-                        update(); 
+                        scheduleUpdate(); 
                     }});
             
             // Listen to url-mappings being added and removed
             AbstractMembershipTrackingPolicy policy = new AbstractMembershipTrackingPolicy() {
-                @Override protected void onEntityChange(Entity member) { update(); }
-                @Override protected void onEntityAdded(Entity member) { update(); }
-                @Override protected void onEntityRemoved(Entity member) { update(); }
+                @Override protected void onEntityChange(Entity member) { scheduleUpdate(); }
+                @Override protected void onEntityAdded(Entity member) { scheduleUpdate(); }
+                @Override protected void onEntityRemoved(Entity member) { scheduleUpdate(); }
             };
             addPolicy(policy);
             policy.setGroup(urlMappings);
@@ -163,6 +168,7 @@ public class NginxControllerImpl extends AbstractControllerImpl implements Nginx
     }
 
     public void doExtraConfigurationDuringStart() {
+        // may be a new install (e.g. on a different machine), so always copy the config
         reconfigureService();
     }
 
@@ -171,11 +177,24 @@ public class NginxControllerImpl extends AbstractControllerImpl implements Nginx
         return getConfigFile();
     }
     
+    /** copies the config file, even if unchanged since last copied */
     @Override
     protected void reconfigureService() {
+        deployedConfigHash = null;
+        reconfigureServiceIfChanged();
+    }
+    
+    @Override
+    protected boolean reconfigureServiceIfChanged() {
 
         String cfg = getConfigFile();
-        if (cfg==null) return;
+        if (cfg==null) return true;
+        
+        String cfgHash = Hashing.md5().hashBytes(cfg.getBytes(Charsets.UTF_8)).toString();
+        if (cfgHash.equals(deployedConfigHash)) {
+            if (LOG.isDebugEnabled()) LOG.debug("Not reconfiguring {}; config file unchanged", this);
+            return false;
+        }
         
         if (LOG.isDebugEnabled()) LOG.debug("Reconfiguring {}, targetting {} and {}", new Object[] {this, serverPoolAddresses, findUrlMappings()});
         if (LOG.isTraceEnabled()) LOG.trace("Reconfiguring {}, config file:\n{}", this, cfg);
@@ -183,10 +202,11 @@ public class NginxControllerImpl extends AbstractControllerImpl implements Nginx
         NginxSshDriver driver = (NginxSshDriver)getDriver();
         if (!driver.isCustomizationCompleted()) {
             if (LOG.isDebugEnabled()) LOG.debug("Reconfiguring {}, but driver's customization not yet complete so aborting");
-            return;
+            return true;
         }
         
-        driver.getMachine().copyTo(new ByteArrayInputStream(cfg.getBytes()), driver.getRunDir()+"/conf/server.conf");
+        driver.getMachine().copyTo(new ByteArrayInputStream(cfg.getBytes(Charsets.UTF_8)), driver.getRunDir()+"/conf/server.conf");
+        deployedConfigHash = cfgHash;
         
         installSslKeys("global", getConfig(SSL_CONFIG));
         
@@ -194,6 +214,7 @@ public class NginxControllerImpl extends AbstractControllerImpl implements Nginx
             //cache ensures only the first is installed, which is what is assumed below
             installSslKeys(mapping.getDomain(), mapping.getConfig(UrlMapping.SSL_CONFIG));
         }
+        return true;
     }
     
     private final Set<String> installedKeysCache = Sets.newLinkedHashSet();
@@ -60,6 +60,8 @@ public class AbstractControllerTest {
     
     FixedListMachineProvisioningLocation loc;
     List<Collection<String>> updates;
+    AtomicInteger reconfigureCount;
+    AtomicInteger reloadCount;
 
     @BeforeMethod(alwaysRun = true)
     public void setUp() {
@@ -73,6 +75,8 @@ public class AbstractControllerTest {
         }
         loc = new FixedListMachineProvisioningLocation<SshMachineLocation>(MutableMap.of("machines", machines));
         updates = new CopyOnWriteArrayList<Collection<String>>();
+        reconfigureCount = new AtomicInteger();
+        reloadCount = new AtomicInteger();
         
         app = ApplicationBuilder.newManagedApp(TestApplication.class);
         cluster = app.createAndManageChild(EntitySpecs.spec(DynamicCluster.class)
@@ -85,6 +89,8 @@ public class AbstractControllerTest {
                 .put("serverPool", cluster) 
                 .put("portNumberSensor", ClusteredEntity.HTTP_PORT)
                 .put("domain", "mydomain").build()) {
+            
+            Set<String> reconfiguredAddresses;
 
             @Override
             public void connectSensors() {
@@ -95,17 +101,27 @@ public class AbstractControllerTest {
             @Override
             protected void reconfigureService() {
                 log.info("test controller reconfigure, addresses "+serverPoolAddresses);
+                reconfigureCount.incrementAndGet();
+                reconfiguredAddresses = ImmutableSet.copyOf(serverPoolAddresses);
                 if ((!serverPoolAddresses.isEmpty() && updates.isEmpty()) || (!updates.isEmpty() && serverPoolAddresses!=updates.get(updates.size()-1))) {
                     updates.add(serverPoolAddresses);
                 }
             }
 
+            @Override
+            protected boolean reconfigureServiceIfChanged() {
+                // as for nginx, where the config generated is compared with that last deployed
+                if (ImmutableSet.copyOf(serverPoolAddresses).equals(reconfiguredAddresses)) return false;
+                reconfigureService();
+                return true;
+            }
+
             @Override
             public Class getDriverInterface() {
                 return MockSshDriver.class;
             }
             public void reload() {
-                // no-op
+                reloadCount.incrementAndGet();
             }
         };
         Entities.manage(controller);
@@ -184,6 +200,50 @@ public class AbstractControllerTest {
         assertEventuallyAddressesMatch(ImmutableList.<Entity>of());
     }
 
+    @Test
+    public void testUpdatesCoalescedWithinPeriod() {
+        ((EntityLocal)controller).setConfig(AbstractController.UPDATE_COALESCE_PERIOD, 1000L);
+        cluster.resize(5);
+        int reconfiguresBefore = reconfigureCount.get();
+        
+        for (Entity it: cluster.getChildren()) { 
+            ((EntityLocal)it).setAttribute(ClusteredEntity.HTTP_PORT, 1234);
+            ((EntityLocal)it).setAttribute(Startable.SERVICE_UP, true);
+        }
+        assertEventuallyAddressesMatchCluster();
+        
+        int reconfigures = reconfigureCount.get() - reconfiguresBefore;
+        assertTrue(reconfigures < 5, "reconfigures="+reconfigures);
+        assertTrue(controller.getAttribute(AbstractController.RELOADS_AVOIDED) > 0);
+    }
+
+    @Test
+    public void testUpdateIfChangedSkipsReloadButExplicitUpdateReloads() {
+        cluster.resize(1);
+        EntityLocal child = (EntityLocal) Iterables.getOnlyElement(cluster.getChildren());
+        child.setAttribute(ClusteredEntity.HTTP_PORT, 1234);
+        child.setAttribute(Startable.SERVICE_UP, true);
+        assertEventuallyAddressesMatchCluster();
+        
+        // a membership change that leaves the config unchanged does not reconfigure or reload
+        int reconfiguresBefore = reconfigureCount.get();
+        Long avoided = controller.getAttribute(AbstractController.RELOADS_AVOIDED);
+        long avoidedBefore = (avoided == null) ? 0 : avoided;
+        ((AbstractControllerImpl)controller).updateIfChanged();
+        assertEquals(reconfigureCount.get(), reconfiguresBefore);
+        assertTrue(controller.getAttribute(AbstractController.RELOADS_AVOIDED) > avoidedBefore);
+        
+        // but an explicit update always reconfigures and reloads
+        final int reloadsBefore = reloadCount.get();
+        controller.update();
+        assertEquals(reconfigureCount.get(), reconfiguresBefore+1);
+        Asserts.succeedsEventually(new Runnable() {
+            @Override
+            public void run() {
+                assertTrue(reloadCount.get() > reloadsBefore, "reloads="+reloadCount.get());
+            }});
+    }
+
     private void assertEventuallyAddressesMatchCluster() {
         assertEventuallyAddressesMatch(cluster.getChildren());
     }
@@ -0,0 +1,128 @@
+package brooklyn.util.collections;
+
+import com.google.common.annotations.Beta;
+
+/**
+ * A {@link TimeSeriesRingBuffer} of primitive doubles, maintaining running sums so that the
+ * mean and the time-weighted sum of the values can be read in O(1).
+ * <p>
+ * Null values are supported (held as NaN); they count as entries but are excluded from the sums.
+ * Timestamps are expected to be added in non-decreasing order.
+ * <p>
+ * Not thread-safe; callers must synchronize.
+ */
+@Beta
+public class DoubleTimeSeries extends TimeSeriesRingBuffer {
+
+    private double[] values;
+
+    /** sum of the non-null values */
+    private double sum;
+    /** number of non-null values */
+    private int count;
+    /** sum, over each non-null value except the first, of the value multiplied by the time since the previous non-null value */
+    private double intervalWeightedSum;
+    private long lastNonNullTimestamp;
+
+    public DoubleTimeSeries() {
+        super();
+        values = new double[capacity()];
+    }
+
+    public DoubleTimeSeries(int initialCapacity) {
+        super(initialCapacity);
+        values = new double[capacity()];
+    }
+
+    /** Adds the value; null is held as an entry without a value. */
+    public void add(Number val, long timestamp) {
+        add((val == null) ? Double.NaN : val.doubleValue(), timestamp);
+    }
+
+    public void add(double val, long timestamp) {
+        int index = appendTimestamp(timestamp);
+        values[index] = val;
+        if (!Double.isNaN(val)) {
+            if (count > 0) intervalWeightedSum += (timestamp - lastNonNullTimestamp) * val;
+            lastNonNullTimestamp = timestamp;
+            sum += val;
+            count++;
+        }
+    }
+
+    /** @return the i'th oldest value, or NaN if it was null */
+    public double getValue(int i) {
+        checkIndex(i);
+        return values[physicalIndex(i)];
+    }
+
+    /** @return the most recent value, or NaN if it was null or there are no values */
+    public double getLastValue() {
+        return isEmpty() ? Double.NaN : values[physicalIndex(size() - 1)];
+    }
+
+    /** @return the number of non-null values */
+    public int getCount() {
+        return count;
+    }
+
+    /** @return the sum of the non-null values */
+    public double getSum() {
+        return sum;
+    }
+
+    /** @return the mean of the non-null values, or NaN if there are none */
+    public double getMean() {
+        return (count == 0) ? Double.NaN : sum / count;
+    }
+
+    /**
+     * Returns the sum of each non-null value multiplied by the time since the previous non-null value,
+     * where for the first non-null value that is the time since the given start of the window. That is,
+     * each value is taken to have applied for the interval leading up to its timestamp.
+     * Dividing by the length of the window gives the time-weighted mean over it.
+     */
+    public double getTimeWeightedSum(long windowStart) {
+        if (count == 0) return 0;
+        int first = firstNonNullIndex(0);
+        return (getTimestamp(first) - windowStart) * getValue(first) + intervalWeightedSum;
+    }
+
+    @Override
+    protected void onRemoveFirst(int physicalIndex) {
+        double val = values[physicalIndex];
+        if (Double.isNaN(val)) return;
+
+        count--;
+        if (count <= 1) {
+            // nothing (or only the first value) left, for which the interval-weighted sum is empty;
+            // resetting here also stops rounding errors accumulating
+            intervalWeightedSum = 0;
+            sum = (count == 0) ? 0 : getValue(firstNonNullIndex(1));
+        } else {
+            // the next non-null value is now the first, so it no longer contributes its interval
+            int next = firstNonNullIndex(1);
+            intervalWeightedSum -= (getTimestamp(next) - getTimestamp(0)) * getValue(next);
+            sum -= val;
+        }
+    }
+
+    @Override
+    protected void onGrow(int newCapacity) {
+        double[] newValues = new double[newCapacity];
+        copyInOrder(values, newValues);
+        values = newValues;
+    }
+
+    private int firstNonNullIndex(int from) {
+        for (int i = from; i < size(); i++) {
+            if (!Double.isNaN(values[physicalIndex(i)])) return i;
+        }
+        throw new IllegalStateException("No non-null value in "+this);
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName()+"[size="+size()+"; count="+count+"; sum="+sum+"]";
+    }
+}
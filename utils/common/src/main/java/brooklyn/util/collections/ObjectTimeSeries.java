@@ -0,0 +1,55 @@
+package brooklyn.util.collections;
+
+import com.google.common.annotations.Beta;
+
+/**
+ * A {@link TimeSeriesRingBuffer} of arbitrary values, held without allocating a wrapper per entry.
+ * <p>
+ * Not thread-safe; callers must synchronize.
+ */
+@Beta
+public class ObjectTimeSeries<T> extends TimeSeriesRingBuffer {
+
+    private Object[] values;
+
+    public ObjectTimeSeries() {
+        super();
+        values = new Object[capacity()];
+    }
+
+    public ObjectTimeSeries(int initialCapacity) {
+        super(initialCapacity);
+        values = new Object[capacity()];
+    }
+
+    public void add(T val, long timestamp) {
+        int index = appendTimestamp(timestamp);
+        values[index] = val;
+    }
+
+    @SuppressWarnings("unchecked")
+    public T getValue(int i) {
+        checkIndex(i);
+        return (T) values[physicalIndex(i)];
+    }
+
+    public T getLastValue() {
+        return isEmpty() ? null : getValue(size() - 1);
+    }
+
+    public TimestampedValue<T> get(int i) {
+        return new TimestampedValue<T>(getValue(i), getTimestamp(i));
+    }
+
+    @Override
+    protected void onRemoveFirst(int physicalIndex) {
+        values[physicalIndex] = null;
+    }
+
+    @Override
+    protected void onGrow(int newCapacity) {
+        Object[] newValues = new Object[newCapacity];
+        copyInOrder(values, newValues);
+        values = newValues;
+    }
+}
@@ -0,0 +1,123 @@
+package brooklyn.util.collections;
+
+import java.lang.reflect.Array;
+import java.util.NoSuchElementException;
+
+import com.google.common.annotations.Beta;
+
+/**
+ * A series of timestamps (oldest first) held in a circular {@code long[]}, to which sub-classes
+ * add a parallel array of values. Adding to the end and removing from the start are O(1) amortized
+ * and allocate nothing except when the buffer grows (it doubles in size, and never shrinks).
+ * <p>
+ * Not thread-safe; callers must synchronize.
+ */
+@Beta
+public abstract class TimeSeriesRingBuffer {
+
+    private static final int DEFAULT_INITIAL_CAPACITY = 16;
+
+    private long[] timestamps;
+    private int head;
+    private int size;
+
+    protected TimeSeriesRingBuffer() {
+        this(DEFAULT_INITIAL_CAPACITY);
+    }
+
+    protected TimeSeriesRingBuffer(int initialCapacity) {
+        int capacity = Integer.highestOneBit(Math.max(2, initialCapacity) - 1) << 1;
+        timestamps = new long[capacity];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    protected int capacity() {
+        return timestamps.length;
+    }
+
+    /** @return the position in the value arrays of the i'th oldest entry */
+    protected int physicalIndex(int i) {
+        return (head + i) & (timestamps.length - 1);
+    }
+
+    public long getTimestamp(int i) {
+        checkIndex(i);
+        return timestamps[physicalIndex(i)];
+    }
+
+    public long getFirstTimestamp() {
+        if (size == 0) throw new NoSuchElementException();
+        return timestamps[head];
+    }
+
+    public long getLastTimestamp() {
+        if (size == 0) throw new NoSuchElementException();
+        return timestamps[physicalIndex(size - 1)];
+    }
+
+    /**
+     * Appends the timestamp, growing the buffer if necessary.
+     *
+     * @return the position in the value arrays at which the sub-class should store the value
+     */
+    protected int appendTimestamp(long timestamp) {
+        if (size == timestamps.length) {
+            int newCapacity = timestamps.length * 2;
+            long[] newTimestamps = new long[newCapacity];
+            copyInOrder(timestamps, newTimestamps);
+            onGrow(newCapacity);
+            timestamps = newTimestamps;
+            head = 0;
+        }
+        int result = physicalIndex(size);
+        timestamps[result] = timestamp;
+        size++;
+        return result;
+    }
+
+    /** Removes the oldest entry; {@link #onRemoveFirst(int)} is called first so sub-classes can update their state. */
+    public void removeFirst() {
+        if (size == 0) throw new NoSuchElementException();
+        onRemoveFirst(head);
+        head = (head + 1) & (timestamps.length - 1);
+        size--;
+    }
+
+    public void clear() {
+        while (size > 0) {
+            removeFirst();
+        }
+        head = 0;
+    }
+
+    /**
+     * Called before the oldest entry (at the given position in the value arrays) is removed.
+     * Sub-classes should release any reference held there.
+     */
+    protected abstract void onRemoveFirst(int physicalIndex);
+
+    /**
+     * Called when the buffer is full and is about to double in size; sub-classes should replace
+     * their value arrays with ones of the new capacity, populated using {@link #copyInOrder(Object, Object)}.
+     */
+    protected abstract void onGrow(int newCapacity);
+
+    /** Copies the entries of the given (full) array, which is laid out as this buffer's, to the start of dest, oldest first. */
+    protected void copyInOrder(Object src, Object dest) {
+        int capacity = Array.getLength(src);
+        int firstPart = Math.min(size, capacity - head);
+        System.arraycopy(src, head, dest, 0, firstPart);
+        System.arraycopy(src, 0, dest, firstPart, size - firstPart);
+    }
+
+    protected void checkIndex(int i) {
+        if (i < 0 || i >= size) throw new IndexOutOfBoundsException("index="+i+"; size="+size);
+    }
+}
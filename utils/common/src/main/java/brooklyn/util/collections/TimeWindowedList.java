@@ -1,10 +1,10 @@
 package brooklyn.util.collections;
 
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
 
 /**
  * Keeps a list of timestamped values that are in the given time-period (millis).
@@ -12,11 +12,14 @@ import com.google.common.collect.ImmutableList;
  * and to keep the given number of out-of-date values.
  * 
  * For example, this is useful if we want to determine if a metric has been consistently high.
+ * <p>
+ * Values are held in an {@link ObjectTimeSeries}, so adding and pruning do not allocate; the
+ * {@link TimestampedValue}s are only created when the values are read.
  * 
  * @author aled
  */
 public class TimeWindowedList<T> {
-    private final LinkedList<TimestampedValue<T>> values = new LinkedList<TimestampedValue<T>>();
+    private final ObjectTimeSeries<T> values = new ObjectTimeSeries<T>();
     private volatile long timePeriod;
     private final int minVals;
     private final int minExpiredVals;
@@ -48,7 +51,7 @@ public class TimeWindowedList<T> {
     }
     
     public synchronized T getLatestValue() {
-        return (values.isEmpty()) ? null : values.get(values.size()-1).getValue();
+        return values.getLastValue();
     }
     
     public List<TimestampedValue<T>> getValues() {
@@ -57,30 +60,35 @@ public class TimeWindowedList<T> {
     
     public synchronized List<TimestampedValue<T>> getValues(long now) {
         pruneValues(now);
-        return ImmutableList.copyOf(values);
+        return copyOfValues(0);
     }
     
     public synchronized List<TimestampedValue<T>> getValuesInWindow(long now, long subTimePeriod) {
-        List<TimestampedValue<T>> result = new LinkedList<TimestampedValue<T>>();
-        TimestampedValue<T> mostRecentExpired = null;
-        for (TimestampedValue<T> val : values) {
-            if (val.getTimestamp() < (now-subTimePeriod)) {
+        int numInWindow = 0;
+        int mostRecentExpired = -1;
+        for (int i = 0; i < values.size(); i++) {
+            if (values.getTimestamp(i) < (now-subTimePeriod)) {
                 // discard; but remember most recent too-old value so we include that as the "initial"
-                mostRecentExpired = val;
+                mostRecentExpired = i;
             } else {
-                result.add(val);
+                numInWindow++;
             }
         }
-        if (minExpiredVals > 0 && mostRecentExpired != null) {
-            result.add(0, mostRecentExpired);
-        }
+        boolean includeExpired = (minExpiredVals > 0 && mostRecentExpired >= 0);
         
-        if (result.size() < minVals) {
-            int minIndex = Math.max(0, values.size()-minVals);
-            return ImmutableList.copyOf(values.subList(minIndex, values.size()));
-        } else {
-            return result;
+        if (numInWindow + (includeExpired ? 1 : 0) < minVals) {
+            return copyOfValues(Math.max(0, values.size()-minVals));
+        }
+        List<TimestampedValue<T>> result = Lists.newArrayListWithCapacity(numInWindow + 1);
+        if (includeExpired) {
+            result.add(values.get(mostRecentExpired));
+        }
+        for (int i = 0; i < values.size(); i++) {
+            if (values.getTimestamp(i) >= (now-subTimePeriod)) {
+                result.add(values.get(i));
+            }
         }
+        return result;
     }
     
     public void add(T val) {
@@ -88,14 +96,14 @@ public class TimeWindowedList<T> {
     }
     
     public synchronized void add(T val, long timestamp) {
-        values.add(values.size(), new TimestampedValue<T>(val, timestamp));
+        values.add(val, timestamp);
         pruneValues(timestamp);
     }
     
     public synchronized void pruneValues(long now) {
         int expiredValsCount = 0;
-        for (TimestampedValue<T> val : values) {
-            if (timePeriod == 0 || val.getTimestamp() < (now-timePeriod)) {
+        for (int i = 0; i < values.size(); i++) {
+            if (timePeriod == 0 || values.getTimestamp(i) < (now-timePeriod)) {
                 expiredValsCount++;
             } else {
                 break;
@@ -107,8 +115,16 @@ public class TimeWindowedList<T> {
         }
     }
     
+    private List<TimestampedValue<T>> copyOfValues(int fromIndex) {
+        ImmutableList.Builder<TimestampedValue<T>> result = ImmutableList.builder();
+        for (int i = fromIndex; i < values.size(); i++) {
+            result.add(values.get(i));
+        }
+        return result.build();
+    }
+    
     @Override
-    public String toString() {
-        return "timePeriod="+timePeriod+", vals="+values;
+    public synchronized String toString() {
+        return "timePeriod="+timePeriod+", vals="+copyOfValues(0);
     }
 }
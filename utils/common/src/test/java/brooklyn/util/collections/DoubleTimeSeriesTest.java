@@ -0,0 +1,95 @@
+package brooklyn.util.collections;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import org.testng.annotations.Test;
+
+public class DoubleTimeSeriesTest {
+
+    @Test
+    public void testRunningSumAndMean() {
+        DoubleTimeSeries series = new DoubleTimeSeries();
+        assertTrue(Double.isNaN(series.getMean()));
+
+        series.add(10, 0);
+        series.add((Number)null, 1);
+        series.add(20, 2);
+        assertEquals(series.size(), 3);
+        assertEquals(series.getCount(), 2);
+        assertEquals(series.getSum(), 30d);
+        assertEquals(series.getMean(), 15d);
+        assertTrue(Double.isNaN(series.getValue(1)));
+
+        series.removeFirst();
+        series.removeFirst();
+        assertEquals(series.getSum(), 20d);
+        assertEquals(series.getMean(), 20d);
+        assertEquals(series.getLastValue(), 20d);
+        assertEquals(series.getFirstTimestamp(), 2L);
+    }
+
+    @Test
+    public void testTimeWeightedSum() {
+        DoubleTimeSeries series = new DoubleTimeSeries();
+        assertEquals(series.getTimeWeightedSum(0), 0d);
+
+        series.add(10, 1000);
+        series.add(20, 1100);
+        series.add(30, 1300);
+        series.add(40, 1600);
+        series.add(50, 2000);
+        assertEquals(series.getTimeWeightedSum(1000), 20*100d + 30*200 + 40*300 + 50*400);
+
+        series.removeFirst();
+        assertEquals(series.getTimeWeightedSum(1050), 20*50d + 30*200 + 40*300 + 50*400);
+    }
+
+    @Test
+    public void testTimeWeightedSumSkipsNulls() {
+        DoubleTimeSeries series = new DoubleTimeSeries();
+        series.add(10, 100);
+        series.add((Number)null, 200);
+        series.add(20, 300);
+        assertEquals(series.getTimeWeightedSum(0), 10*100d + 20*200);
+
+        // with the first value gone, the null's interval still belongs to the next value
+        series.removeFirst();
+        assertEquals(series.getTimeWeightedSum(150), 20*150d);
+        series.removeFirst();
+        assertEquals(series.getTimeWeightedSum(150), 20*150d);
+    }
+
+    @Test
+    public void testGrowsAndWrapsAround() {
+        DoubleTimeSeries series = new DoubleTimeSeries(2);
+        long expectedSum = 0;
+        for (int i = 0; i < 100; i++) {
+            series.add(i, i);
+            expectedSum += i;
+            if (i % 3 == 0) {
+                expectedSum -= (long) series.getValue(0);
+                series.removeFirst();
+            }
+        }
+        assertEquals(series.getSum(), (double) expectedSum);
+        assertEquals(series.getLastValue(), 99d);
+        for (int i = 1; i < series.size(); i++) {
+            assertEquals(series.getTimestamp(i), series.getTimestamp(i-1) + 1);
+        }
+    }
+
+    @Test
+    public void testObjectTimeSeriesReleasesRemovedValues() {
+        ObjectTimeSeries<String> series = new ObjectTimeSeries<String>(2);
+        series.add("a", 1);
+        series.add("b", 2);
+        series.add("c", 3);
+        series.removeFirst();
+        assertEquals(series.get(0), new TimestampedValue<String>("b", 2));
+        assertEquals(series.getLastValue(), "c");
+        series.clear();
+        assertTrue(series.isEmpty());
+        assertEquals(series.getLastValue(), null);
+    }
+}